@@ -18,5 +18,9 @@ public interface ServerConfig {
 
     void setUseJsQuery(boolean b);
 
+    Integer getAqlStreamFetchSize();
+
+    Integer getAqlBranchParallelism();
+
     public boolean isDisableStrictValidation();
 }
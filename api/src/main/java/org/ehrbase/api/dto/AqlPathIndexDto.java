@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.api.dto;
+
+/**
+ * An AQL path of a template backed by an index.
+ */
+public class AqlPathIndexDto {
+
+    private final String templateId;
+    private final String path;
+    private final String type;
+    private final String indexName;
+
+    public AqlPathIndexDto(String templateId, String path, String type, String indexName) {
+        this.templateId = templateId;
+        this.path = path;
+        this.type = type;
+        this.indexName = indexName;
+    }
+
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the database type of the indexed value, null for text
+     */
+    public String getType() {
+        return type;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.api.dto;
+
+/**
+ * Outcome of a record of a bulk ingest: the created composition, or the error the record failed with.
+ */
+public class IngestResultDto {
+
+    private final long line;
+    private final String ehrId;
+    private final String uid;
+    private final String error;
+
+    public IngestResultDto(long line, String ehrId, String uid, String error) {
+        this.line = line;
+        this.ehrId = ehrId;
+        this.uid = uid;
+        this.error = error;
+    }
+
+    /**
+     * @return the line of the record in the stream, starting at 1
+     */
+    public long getLine() {
+        return line;
+    }
+
+    /**
+     * @return the EHR of the record, null if it could not be read
+     */
+    public String getEhrId() {
+        return ehrId;
+    }
+
+    /**
+     * @return the versioned uid of the created composition, null if the record failed
+     */
+    public String getUid() {
+        return uid;
+    }
+
+    /**
+     * @return the error of a failed record, null if its composition was created
+     */
+    public String getError() {
+        return error;
+    }
+}
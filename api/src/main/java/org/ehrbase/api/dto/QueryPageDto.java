@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.api.dto;
+
+import org.ehrbase.response.ehrscape.QueryResultDto;
+
+/**
+ * A page of a query result, with the token to retrieve the next page if the query is paginated by keyset.
+ */
+public class QueryPageDto {
+
+    private final QueryResultDto result;
+    private final String continuationToken;
+
+    public QueryPageDto(QueryResultDto result, String continuationToken) {
+        this.result = result;
+        this.continuationToken = continuationToken;
+    }
+
+    public QueryResultDto getResult() {
+        return result;
+    }
+
+    /**
+     * @return the continuation token, null if there is no next page or the query is not paginated by keyset
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+}
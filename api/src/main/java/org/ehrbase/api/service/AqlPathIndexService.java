@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.api.service;
+
+import org.ehrbase.api.dto.AqlPathIndexDto;
+
+import java.util.List;
+
+/**
+ * Declaration of the AQL paths of a template which are backed by a database index. The index is used by the AQL
+ * queries with a WHERE condition on the path, including range conditions.
+ */
+public interface AqlPathIndexService {
+
+    /**
+     * @param templateId - Template id, e.g. "IDCR - Vital Signs Encounter.v1"
+     * @return - The indexed paths of the template
+     */
+    List<AqlPathIndexDto> getPathIndexes(String templateId);
+
+    /**
+     * Declares an indexed path and builds its index. Only single valued paths can be indexed.
+     *
+     * @param templateId - Template id
+     * @param path - AQL path of a value from the composition root, e.g. "/content[openEHR-EHR-OBSERVATION.blood_pressure.v1]/data[at0001]/events[at0006]/data[at0003]/items[at0004]/value/magnitude"
+     * @return - The declared index
+     * @throws IllegalArgumentException if the path cannot be indexed
+     * @throws org.ehrbase.api.exception.ObjectNotFoundException if the template does not exist
+     */
+    AqlPathIndexDto createPathIndex(String templateId, String path);
+
+    /**
+     * Drops the index of a path.
+     *
+     * @param templateId - Template id
+     * @param path - The declared AQL path
+     * @return - Whether an index was declared for the path
+     */
+    boolean deletePathIndex(String templateId, String path);
+}
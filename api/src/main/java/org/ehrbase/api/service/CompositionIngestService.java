@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.api.service;
+
+import org.ehrbase.api.dto.IngestResultDto;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Bulk creation of compositions, f.e. to migrate legacy documents.
+ */
+public interface CompositionIngestService {
+
+    /**
+     * Creates a composition, with its own contribution, for each line of a NDJSON stream. Each line is an object
+     * <code>{"ehr_id": "...", "composition": {...}}</code> holding a canonical JSON composition.
+     * <p>
+     * Records are validated concurrently and written in batches, a failing record does not prevent the others from
+     * being created. The result of each record is passed on as soon as its batch is written, so nothing is kept
+     * across batches.
+     *
+     * @param ndjson      - the NDJSON stream, UTF-8 encoded
+     * @param description - Optional audit description of the contributions
+     * @param results     - Called once per batch with the result of each of its records, in input order
+     * @throws org.ehrbase.api.exception.InternalServerException if the stream cannot be read
+     */
+    void ingest(InputStream ndjson, String description, Consumer<List<IngestResultDto>> results);
+}
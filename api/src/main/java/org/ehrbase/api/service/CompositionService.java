@@ -22,6 +22,7 @@ import com.nedap.archie.rm.changecontrol.OriginalVersion;
 import com.nedap.archie.rm.composition.Composition;
 import com.nedap.archie.rm.ehr.VersionedComposition;
 import com.nedap.archie.rm.generic.RevisionHistory;
+import com.nedap.archie.rm.support.identification.ObjectVersionId;
 import org.ehrbase.api.exception.InternalServerException;
 import org.ehrbase.api.exception.ObjectNotFoundException;
 import org.ehrbase.response.ehrscape.CompositionDto;
@@ -29,8 +30,10 @@ import org.ehrbase.response.ehrscape.CompositionFormat;
 import org.ehrbase.response.ehrscape.StructuredString;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface CompositionService extends BaseService, VersionedObjectService<Composition, CompositionDto> {
     /**
@@ -136,4 +139,39 @@ public interface CompositionService extends BaseService, VersionedObjectService<
     Optional<OriginalVersion<Composition>> getOriginalVersionComposition(UUID versionedObjectUid, int version);
 
     Composition buildComposition(String content, CompositionFormat format, String templateId);
+
+    /**
+     * Validates the composition against its template, the same check as done before each create or update.
+     * @param composition Given composition
+     * @throws org.ehrbase.api.exception.ValidationException when the composition is invalid
+     * @throws org.ehrbase.api.exception.UnprocessableEntityException when the template is unknown
+     */
+    void validate(Composition composition);
+
+    /**
+     * Resolves the templates of {@link #validate(Composition)} once on the calling thread, within its transaction.
+     * The returned validation only does CPU work, so it can run on worker threads without database access.
+     * @param templateIds Template IDs of the compositions to validate
+     * @return Validation of a composition, throwing as {@link #validate(Composition)}
+     */
+    Consumer<Composition> prepareValidation(Collection<String> templateIds);
+
+    /**
+     * Creation with a given contribution, of a composition already checked with {@link #validate(Composition)}.
+     * @param ehrId EHR ID of context
+     * @param objData Validated composition
+     * @param contribution Contribution for operation
+     * @return Created composition
+     */
+    Optional<CompositionDto> createValidated(UUID ehrId, Composition objData, UUID contribution);
+
+    /**
+     * Update with a given contribution, of a composition already checked with {@link #validate(Composition)}.
+     * @param ehrId EHR ID of context
+     * @param targetObjId ID of target object
+     * @param objData Validated composition
+     * @param contribution Contribution for operation
+     * @return Updated composition
+     */
+    Optional<CompositionDto> updateValidated(UUID ehrId, ObjectVersionId targetObjId, Composition objData, UUID contribution);
 }
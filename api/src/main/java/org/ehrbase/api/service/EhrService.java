@@ -29,6 +29,8 @@ import org.ehrbase.response.ehrscape.CompositionFormat;
 import org.ehrbase.response.ehrscape.EhrStatusDto;
 
 import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -176,4 +178,11 @@ public interface EhrService extends BaseService {
      * @return Linked external subject reference or null
      */
     String getSubjectExtRef(String ehrId);
+
+    /**
+     * Bulk version of {@link #getSubjectExtRef(String)}, resolved with a single query.
+     * @param ehrIds Given EHR IDs
+     * @return Linked external subject reference by EHR ID, EHRs without reference or not found are missing
+     */
+    Map<UUID, String> getSubjectExtRefs(Collection<UUID> ehrIds);
 }
@@ -19,6 +19,7 @@
 package org.ehrbase.api.service;
 
 import org.ehrbase.api.definitions.QueryMode;
+import org.ehrbase.api.dto.QueryPageDto;
 import org.ehrbase.response.ehrscape.QueryDefinitionResultDto;
 import org.ehrbase.response.ehrscape.QueryResultDto;
 
@@ -39,6 +40,42 @@ public interface QueryService extends BaseService {
 
     QueryResultDto query(String queryString, Map<String, Object> parameters, QueryMode queryMode, boolean explain);
 
+    /**
+     * execute a page of an AQL query. An ordered query with a LIMIT is paginated by keyset: instead of an OFFSET, the
+     * next page is retrieved with the continuation token returned with the current one, so that each page costs about
+     * the same whatever its position. Rows sharing their ORDER BY values are ordered on a key computed from all their
+     * columns, hence a paginated query returns distinct rows: identical rows are returned once, as by DISTINCT.
+     *
+     * @param queryString       the AQL expression, with its LIMIT
+     * @param parameters        optional query parameters, may be null
+     * @param continuationToken the token returned with the previous page, null for the first page
+     * @return the page with the token of the next page, if any
+     */
+    QueryPageDto queryPage(String queryString, Map<String, Object> parameters, String continuationToken);
+
+    /**
+     * execute an AQL query and pass the rows to the handler as they are read from the database. The result set is
+     * never materialized, hence memory usage does not depend on the number of rows returned.
+     *
+     * @param queryString the AQL expression
+     * @param parameters  optional query parameters, may be null
+     * @param handler     the handler receiving the column definitions then each row
+     */
+    void queryStreaming(String queryString, Map<String, Object> parameters, ResultRowHandler handler);
+
+    /**
+     * execute a stored AQL query. If the result cache of stored queries is enabled, the result is served from the
+     * cache as long as no commit it depends on took place: a commit of a composition of a template the query resolved
+     * to, restricted to the EHR the query is pinned to if any.
+     *
+     * @param qualifiedName the qualified name of the stored query
+     * @param version       the version of the stored query
+     * @param queryString   the AQL expression of the stored query, with its FETCH and OFFSET if any
+     * @param parameters    optional query parameters, may be null
+     * @return the query result
+     */
+    QueryResultDto queryStored(String qualifiedName, String version, String queryString, Map<String, Object> parameters);
+
     //=== DEFINITION: manage stored queries
     List<QueryDefinitionResultDto> retrieveStoredQueries(String fullyQualifiedName);
 
@@ -53,4 +90,25 @@ public interface QueryService extends BaseService {
 
     //the audit variables
     Map<String, Set<Object>> getAuditResultMap();
+
+    /**
+     * receives the result of a streamed query
+     */
+    interface ResultRowHandler {
+
+        /**
+         * called once before the first row
+         *
+         * @param variables column names mapped to their AQL path, in select order
+         */
+        void columns(Map<String, String> variables);
+
+        /**
+         * called for each row of the result set
+         *
+         * @param values the column values in the same order as the columns, JSON values are passed as
+         *               {@link org.ehrbase.response.ehrscape.StructuredString}
+         */
+        void row(List<Object> values);
+    }
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.api.service;
+
+/**
+ * Static reference data of the database (openEHR concepts, ISO 3166-1 territories and ISO 639-1 languages), held in
+ * memory for the lookups performed on each commit and read.
+ */
+public interface ReferenceDataService {
+
+    /**
+     * Reload the reference data from the database, f.e. after a manual change of the code sets.
+     */
+    void reload();
+}
@@ -21,6 +21,7 @@ package org.ehrbase.api.service;
 import com.nedap.archie.rm.composition.Composition;
 import com.nedap.archie.rm.ehr.EhrStatus;
 
+import java.util.Collection;
 import java.util.UUID;
 
 /**
@@ -64,6 +65,23 @@ public interface ValidationService {
      */
     void check(EhrStatus ehrStatus);
 
+    /**
+     * Resolves the validators of the given templates on the calling thread, so the returned check reads no
+     * template storage and can run on threads outside of the caller's transaction
+     * @param templateIDs the template Ids (String) of the compositions to check
+     * @return the check of {@link #check(Composition)}, failing on templates not given here
+     * @throws Exception if a template cannot be resolved
+     */
+    PreparedCheck prepare(Collection<String> templateIDs) throws Exception;
+
+    /**
+     * A composition check with its validators already resolved
+     */
+    @FunctionalInterface
+    interface PreparedCheck {
+        void check(Composition composition) throws Exception;
+    }
+
 
     /**
      * Remove all mappings in the cache
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.application.config;
+
+import org.ehrbase.service.KnowledgeCacheService;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Out of service while the templates are loaded at startup. Part of the readiness group only (see
+ * <code>management.endpoint.health.group.readiness</code>), so a long warm-up does not fail the liveness probe.
+ */
+@Component("knowledgeCache")
+public class KnowledgeCacheHealthIndicator implements HealthIndicator {
+
+    private final KnowledgeCacheService knowledgeCacheService;
+
+    public KnowledgeCacheHealthIndicator(KnowledgeCacheService knowledgeCacheService) {
+        this.knowledgeCacheService = knowledgeCacheService;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = knowledgeCacheService.isWarmedUp() ? Health.up() : Health.outOfService();
+        return builder
+                .withDetail("templates", knowledgeCacheService.getWarmUpTotal())
+                .withDetail("loaded", knowledgeCacheService.getWarmUpLoaded())
+                .build();
+    }
+}
@@ -70,6 +70,16 @@ public class ServerConfigImp implements org.ehrbase.api.definitions.ServerConfig
         aqlConfig.setUseJsQuery(b);
     }
 
+    @Override
+    public Integer getAqlStreamFetchSize() {
+        return aqlConfig.getStreamFetchSize();
+    }
+
+    @Override
+    public Integer getAqlBranchParallelism() {
+        return aqlConfig.getBranchParallelism();
+    }
+
     public AqlConfig getAqlConfig() {
         return aqlConfig;
     }
@@ -83,6 +93,8 @@ public class ServerConfigImp implements org.ehrbase.api.definitions.ServerConfig
         private Boolean useJsQuery;
         private String ignoreIterativeNodeList;
         private Integer iterationScanDepth = 1;
+        private Integer streamFetchSize = 1000;
+        private Integer branchParallelism = 1;
 
         public Boolean getUseJsQuery() {
             return useJsQuery;
@@ -107,6 +119,22 @@ public class ServerConfigImp implements org.ehrbase.api.definitions.ServerConfig
         public void setIterationScanDepth(Integer iterationScanDepth) {
             this.iterationScanDepth = iterationScanDepth;
         }
+
+        public Integer getStreamFetchSize() {
+            return streamFetchSize;
+        }
+
+        public void setStreamFetchSize(Integer streamFetchSize) {
+            this.streamFetchSize = streamFetchSize;
+        }
+
+        public Integer getBranchParallelism() {
+            return branchParallelism;
+        }
+
+        public void setBranchParallelism(Integer branchParallelism) {
+            this.branchParallelism = branchParallelism;
+        }
     }
 
     @Override
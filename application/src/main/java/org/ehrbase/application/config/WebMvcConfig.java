@@ -19,11 +19,11 @@
 package org.ehrbase.application.config;
 
 import org.ehrbase.api.service.CompositionService;
-import org.ehrbase.api.service.EhrService;
 import org.ehrbase.application.util.IsoDateTimeConverter;
 import org.ehrbase.application.util.StringToEnumConverter;
 import org.ehrbase.rest.openehr.audit.CompositionAuditInterceptor;
 import org.ehrbase.rest.openehr.audit.EhrAuditInterceptor;
+import org.ehrbase.rest.openehr.audit.OpenEhrAuditQueue;
 import org.ehrbase.rest.openehr.audit.QueryAuditInterceptor;
 import org.openehealth.ipf.commons.audit.AuditContext;
 import org.springframework.context.annotation.Configuration;
@@ -40,13 +40,13 @@ public class WebMvcConfig extends WebMvcConfigurerAdapter implements WebMvcConfi
 
     private final AuditContext auditContext;
 
-    private final EhrService ehrService;
+    private final OpenEhrAuditQueue auditQueue;
 
     private final CompositionService compositionService;
 
-    public WebMvcConfig(AuditContext auditContext, EhrService ehrService, CompositionService compositionService) {
+    public WebMvcConfig(AuditContext auditContext, OpenEhrAuditQueue auditQueue, CompositionService compositionService) {
         this.auditContext = auditContext;
-        this.ehrService = ehrService;
+        this.auditQueue = auditQueue;
         this.compositionService = compositionService;
     }
 
@@ -75,15 +75,15 @@ public class WebMvcConfig extends WebMvcConfigurerAdapter implements WebMvcConfi
         if (auditContext.isAuditEnabled()) {
             // Composition endpoint
             registry
-                    .addInterceptor(new CompositionAuditInterceptor(auditContext, ehrService, compositionService))
+                    .addInterceptor(new CompositionAuditInterceptor(auditContext, auditQueue, compositionService))
                     .addPathPatterns("/rest/openehr/v1/**/composition/**");
             // Ehr endpoint
             registry
-                    .addInterceptor(new EhrAuditInterceptor(auditContext, ehrService))
+                    .addInterceptor(new EhrAuditInterceptor(auditContext, auditQueue))
                     .addPathPatterns("/rest/openehr/v1/ehr", "/rest/openehr/v1/ehr/*");
             // Query endpoint
             registry
-                    .addInterceptor(new QueryAuditInterceptor(auditContext, ehrService))
+                    .addInterceptor(new QueryAuditInterceptor(auditContext, auditQueue))
                     .addPathPatterns("/rest/openehr/v1/query/**");
         }
     }
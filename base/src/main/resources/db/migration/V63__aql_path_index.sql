@@ -0,0 +1,32 @@
+/*
+ *  Copyright (c) 2021 Vitasystems GmbH.
+ *
+ *  This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+-- AQL paths declared per template, each one is backed by a B-tree expression index on ehr.entry
+-- named after the template id and the path (see PathProjection)
+CREATE TABLE ehr.aql_path_index
+(
+    id              UUID PRIMARY KEY DEFAULT ext.uuid_generate_v4(),
+    template_id     TEXT      NOT NULL,
+    aql_path        TEXT      NOT NULL,
+    jsonb_path      TEXT      NOT NULL,
+    cast_type       TEXT,
+    index_name      TEXT      NOT NULL,
+    sys_transaction TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE (template_id, aql_path)
+);
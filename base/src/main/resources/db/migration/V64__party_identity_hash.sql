@@ -0,0 +1,69 @@
+/*
+ *  Copyright (c) 2021 Vitasystems GmbH.
+ *
+ *  This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+-- canonical identity of a party, see PartyIdentityHash: md5 of its external ref, or of its type, name, relationship
+-- and sorted identifiers when it has none. Parties are upserted on this key.
+ALTER TABLE ehr.party_identified ADD COLUMN identity_hash TEXT;
+
+-- internal users (see BaseServiceImp.getUserUuid) were stored with a random external ref and found by name and
+-- identifiers, the ref is derived from the name from now on
+UPDATE ehr.party_identified
+SET party_ref_value = md5(name)::uuid::text
+WHERE party_type = 'party_identified'
+  AND party_ref_namespace = 'User'
+  AND party_ref_scheme = 'DEMOGRAPHIC'
+  AND name LIKE 'EHRbase Internal %';
+
+-- only the first row of an identity gets the hash, duplicates stored before keep NULL
+WITH identifier AS (
+    SELECT party,
+           E'\x1e' || concat_ws(E'\x1f', id_value, coalesce(issuer, ''), coalesce(assigner, ''), coalesce(type_name, '')) AS canonical
+    FROM ehr.identifier
+    WHERE id_value IS NOT NULL
+),
+     identifiers AS (
+         SELECT party, string_agg(canonical, '' ORDER BY canonical COLLATE "C") AS canonical
+         FROM identifier
+         GROUP BY party
+     ),
+     party AS (
+         SELECT p.id,
+                CASE
+                    WHEN p.party_ref_value IS NOT NULL
+                        THEN concat_ws(E'\x1f', 'ref', coalesce(p.party_ref_namespace, ''), coalesce(p.party_ref_scheme, ''), p.party_ref_value)
+                    WHEN p.party_type = 'party_self'
+                        THEN 'self'
+                    WHEN p.party_type = 'party_related'
+                        THEN concat_ws(E'\x1f', 'related', coalesce(p.name, ''), coalesce((p.relationship).value, '')) || coalesce(i.canonical, '')
+                    ELSE concat_ws(E'\x1f', 'identified', coalesce(p.name, '')) || coalesce(i.canonical, '')
+                    END AS canonical
+         FROM ehr.party_identified p
+                  LEFT JOIN identifiers i ON i.party = p.id
+     ),
+     first_of_identity AS (
+         SELECT DISTINCT ON (canonical) id, canonical
+         FROM party
+         ORDER BY canonical, id
+     )
+UPDATE ehr.party_identified
+SET identity_hash = md5(first_of_identity.canonical)
+FROM first_of_identity
+WHERE party_identified.id = first_of_identity.id;
+
+CREATE UNIQUE INDEX party_identified_identity_hash_idx ON ehr.party_identified (identity_hash);
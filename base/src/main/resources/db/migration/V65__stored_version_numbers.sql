@@ -0,0 +1,124 @@
+/*
+ *  Copyright (c) 2021 Vitasystems GmbH.
+ *
+ *  This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+-- the version numbers of compositions, EHR_STATUS and folders were derived by counting the rows of their history,
+-- they are stored with each row from now on and maintained by the triggers below
+
+ALTER TABLE ehr.composition ADD COLUMN version INTEGER;
+ALTER TABLE ehr.composition_history ADD COLUMN version INTEGER;
+ALTER TABLE ehr.status ADD COLUMN version INTEGER;
+ALTER TABLE ehr.status_history ADD COLUMN version INTEGER;
+ALTER TABLE ehr.folder ADD COLUMN version INTEGER;
+ALTER TABLE ehr.folder_history ADD COLUMN version INTEGER;
+
+-- the n-th history row by sys_transaction is version n, the current row follows the history (as counted before)
+UPDATE ehr.composition_history h
+SET version = v.version
+FROM (SELECT ctid AS row_id, row_number() OVER (PARTITION BY id ORDER BY sys_transaction) AS version
+      FROM ehr.composition_history) v
+WHERE h.ctid = v.row_id;
+
+UPDATE ehr.status_history h
+SET version = v.version
+FROM (SELECT ctid AS row_id, row_number() OVER (PARTITION BY id ORDER BY sys_transaction) AS version
+      FROM ehr.status_history) v
+WHERE h.ctid = v.row_id;
+
+UPDATE ehr.folder_history h
+SET version = v.version
+FROM (SELECT ctid AS row_id, row_number() OVER (PARTITION BY id ORDER BY sys_transaction) AS version
+      FROM ehr.folder_history) v
+WHERE h.ctid = v.row_id;
+
+ALTER TABLE ehr.composition DISABLE TRIGGER versioning_trigger;
+ALTER TABLE ehr.status DISABLE TRIGGER versioning_trigger;
+ALTER TABLE ehr.folder DISABLE TRIGGER versioning_trigger;
+
+UPDATE ehr.composition c
+SET version = 1 + (SELECT count(*) FROM ehr.composition_history h WHERE h.id = c.id);
+
+UPDATE ehr.status s
+SET version = 1 + (SELECT count(*) FROM ehr.status_history h WHERE h.id = s.id);
+
+UPDATE ehr.folder f
+SET version = 1 + (SELECT count(*) FROM ehr.folder_history h WHERE h.id = f.id);
+
+ALTER TABLE ehr.composition ENABLE TRIGGER versioning_trigger;
+ALTER TABLE ehr.status ENABLE TRIGGER versioning_trigger;
+ALTER TABLE ehr.folder ENABLE TRIGGER versioning_trigger;
+
+ALTER TABLE ehr.composition ALTER COLUMN version SET NOT NULL;
+ALTER TABLE ehr.composition_history ALTER COLUMN version SET NOT NULL;
+ALTER TABLE ehr.status ALTER COLUMN version SET NOT NULL;
+ALTER TABLE ehr.status_history ALTER COLUMN version SET NOT NULL;
+ALTER TABLE ehr.folder ALTER COLUMN version SET NOT NULL;
+ALTER TABLE ehr.folder_history ALTER COLUMN version SET NOT NULL;
+
+CREATE INDEX composition_history_version_idx ON ehr.composition_history (id, version);
+CREATE INDEX status_history_version_idx ON ehr.status_history (id, version);
+CREATE INDEX folder_history_version_idx ON ehr.folder_history (id, version);
+
+-- current tables: a new row follows the last version of its history (1 for a new object), an update increments the
+-- version; the versioning trigger moves the previous row to the history with its number
+-- argument: the history table
+CREATE OR REPLACE FUNCTION ehr.next_version_number()
+    RETURNS TRIGGER AS
+$$
+DECLARE
+    last_version INTEGER;
+BEGIN
+    IF TG_OP = 'UPDATE' THEN
+        NEW.version := OLD.version + 1;
+    ELSE
+        EXECUTE format('SELECT max(version) FROM %s WHERE id = $1', TG_ARGV[0]) INTO last_version USING NEW.id;
+        NEW.version := coalesce(last_version, 0) + 1;
+    END IF;
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+-- history tables: a version inserted directly (the version documenting a deletion) follows the last one
+CREATE OR REPLACE FUNCTION ehr.next_history_version_number()
+    RETURNS TRIGGER AS
+$$
+DECLARE
+    last_version INTEGER;
+BEGIN
+    IF NEW.version IS NULL THEN
+        EXECUTE format('SELECT max(version) FROM %I.%I WHERE id = $1', TG_TABLE_SCHEMA, TG_TABLE_NAME) INTO last_version USING NEW.id;
+        NEW.version := coalesce(last_version, 0) + 1;
+    END IF;
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER version_number_trigger BEFORE INSERT OR UPDATE ON ehr.composition
+    FOR EACH ROW EXECUTE PROCEDURE ehr.next_version_number('ehr.composition_history');
+CREATE TRIGGER version_number_trigger BEFORE INSERT ON ehr.composition_history
+    FOR EACH ROW EXECUTE PROCEDURE ehr.next_history_version_number();
+
+CREATE TRIGGER version_number_trigger BEFORE INSERT OR UPDATE ON ehr.status
+    FOR EACH ROW EXECUTE PROCEDURE ehr.next_version_number('ehr.status_history');
+CREATE TRIGGER version_number_trigger BEFORE INSERT ON ehr.status_history
+    FOR EACH ROW EXECUTE PROCEDURE ehr.next_history_version_number();
+
+CREATE TRIGGER version_number_trigger BEFORE INSERT OR UPDATE ON ehr.folder
+    FOR EACH ROW EXECUTE PROCEDURE ehr.next_version_number('ehr.folder_history');
+CREATE TRIGGER version_number_trigger BEFORE INSERT ON ehr.folder_history
+    FOR EACH ROW EXECUTE PROCEDURE ehr.next_history_version_number();
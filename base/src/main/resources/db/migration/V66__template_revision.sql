@@ -0,0 +1,36 @@
+/*
+ *  Copyright (c) 2021 Vitasystems GmbH.
+ *
+ *  This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+-- sys_transaction is the revision used to detect stale cached operational templates, it must change whenever the
+-- content is replaced
+CREATE OR REPLACE FUNCTION ehr.admin_update_template(target_id TEXT, update_content TEXT)
+RETURNS TEXT
+AS $$
+DECLARE
+  new_template TEXT;
+BEGIN
+	UPDATE ehr.template_store
+	SET "content" = update_content,
+	    sys_transaction = now()
+	WHERE template_id = target_id;
+	SELECT ts."content" INTO new_template
+	FROM ehr.template_store ts
+	WHERE ts.template_id = target_id;
+	RETURN new_template;
+END;$$ LANGUAGE plpgsql;
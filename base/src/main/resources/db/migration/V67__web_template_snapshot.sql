@@ -0,0 +1,31 @@
+/*
+ *  Copyright (c) 2021 Vitasystems GmbH.
+ *
+ *  This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+-- WebTemplate built from a template, java serialized, so the templates need not be parsed at startup.
+-- A snapshot is only used if its template_revision still is the sys_transaction (in ms) of the template and its
+-- format_version the one of the running release.
+CREATE TABLE ehr.web_template_snapshot
+(
+    template_id       TEXT PRIMARY KEY REFERENCES ehr.template_store (template_id) ON DELETE CASCADE,
+    template_uid      UUID NOT NULL,
+    template_revision BIGINT NOT NULL,
+    format_version    INTEGER NOT NULL,
+    web_template      BYTEA NOT NULL,
+    sys_transaction   TIMESTAMP NOT NULL
+);
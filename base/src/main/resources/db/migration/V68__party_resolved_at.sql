@@ -0,0 +1,42 @@
+/*
+ *  Copyright (c) 2021 Vitasystems GmbH.
+ *
+ *  This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and  limitations under the License.
+ *
+
+-- when a party was last resolved by its identity hash (stored, or read back by the upsert). Ids are cached by nodes
+-- for cache.party-identity.ttl after that, so purges only delete unused parties not resolved within twice the TTL.
+ALTER TABLE ehr.party_identified ADD COLUMN resolved_at TIMESTAMP NOT NULL DEFAULT now();
+
+-- unused parties are no longer deleted here, but by EhrServiceImp with the grace period above
+CREATE OR REPLACE FUNCTION ehr.delete_orphan_history()
+  RETURNS BOOLEAN AS
+$$
+	WITH
+		delete_orphan_compo_history as (
+			delete from ehr.composition_history where not exists(select 1 from ehr.composition where id = ehr.composition_history.id)
+		),
+		delete_orphan_event_context_history as (
+			delete from ehr.event_context_history where not exists(select 1 from ehr.event_context where event_context.composition_id = ehr.event_context_history.composition_id)
+		),
+		delete_orphan_participation_history as (
+			delete from ehr.participation_history where not exists(select 1 from ehr.participation where participation.event_context = ehr.participation_history.event_context)
+		),
+        delete_orphan_entry_history as (
+            delete from ehr.entry_history where not exists(select 1 from ehr.composition where composition.id = ehr.entry_history.composition_id)
+        )
+	select true;
+$$
+LANGUAGE sql;
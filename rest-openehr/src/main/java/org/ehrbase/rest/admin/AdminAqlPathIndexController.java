@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ehrbase.rest.admin;
+
+import io.swagger.annotations.*;
+import org.ehrbase.api.dto.AqlPathIndexDto;
+import org.ehrbase.api.exception.InvalidApiParameterException;
+import org.ehrbase.api.service.AqlPathIndexService;
+import org.ehrbase.response.openehr.admin.AdminDeleteResponseData;
+import org.ehrbase.rest.BaseController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin API controller for the indexed AQL paths of a template. A declared path is backed by a database index used by
+ * the AQL WHERE conditions on this path.
+ */
+@Api(tags = {"Admin", "Template"})
+@ConditionalOnProperty(prefix = "admin-api", name = "active")
+@RestController
+@RequestMapping(path = "${admin-api.context-path:/rest/admin}/template/{template_id}/aql_path_index", produces = {MediaType.APPLICATION_JSON_VALUE})
+public class AdminAqlPathIndexController extends BaseController {
+
+    private static final String PATH = "path";
+
+    private final AqlPathIndexService aqlPathIndexService;
+
+    @Autowired
+    AdminAqlPathIndexController(AqlPathIndexService aqlPathIndexService) {
+        this.aqlPathIndexService = aqlPathIndexService;
+    }
+
+    @GetMapping
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "The indexed paths of the template."),
+            @ApiResponse(code = 401, message = "Client credentials are invalid or have expired."),
+            @ApiResponse(code = 403, message = "Client has no access permission since admin role is missing.")
+    })
+    public ResponseEntity<List<AqlPathIndexDto>> getPathIndexes(
+            @ApiParam(value = "Template id. The value comes from the 'template_id' property.")
+            @PathVariable(value = "template_id")
+                    String templateId
+    ) {
+        return ResponseEntity.ok(aqlPathIndexService.getPathIndexes(templateId));
+    }
+
+    @PostMapping(consumes = {MediaType.APPLICATION_JSON_VALUE})
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = "The path has been indexed."),
+            @ApiResponse(code = 400, message = "The path is invalid or cannot be indexed, f.e. if it crosses a multi-valued node."),
+            @ApiResponse(code = 401, message = "Client credentials are invalid or have expired."),
+            @ApiResponse(code = 403, message = "Client has no access permission since admin role is missing."),
+            @ApiResponse(code = 404, message = "Template could not be found.")
+    })
+    public ResponseEntity<AqlPathIndexDto> createPathIndex(
+            @ApiParam(value = "Template id. The value comes from the 'template_id' property.")
+            @PathVariable(value = "template_id")
+                    String templateId,
+            @ApiParam(value = "The AQL path of a value from the composition root, as {\"path\": \"/content[openEHR-EHR-OBSERVATION.blood_pressure.v1]/data[at0001]/events[at0006]/data[at0003]/items[at0004]/value/magnitude\"}")
+            @RequestBody Map<String, String> body
+    ) {
+        String path = body.get(PATH);
+        if (path == null)
+            throw new InvalidApiParameterException("Missing parameter: " + PATH);
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(aqlPathIndexService.createPathIndex(templateId, path));
+    }
+
+    @DeleteMapping
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "The index of the path has been dropped."),
+            @ApiResponse(code = 401, message = "Client credentials are invalid or have expired."),
+            @ApiResponse(code = 403, message = "Client has no access permission since admin role is missing.")
+    })
+    public ResponseEntity<AdminDeleteResponseData> deletePathIndex(
+            @ApiParam(value = "Template id. The value comes from the 'template_id' property.")
+            @PathVariable(value = "template_id")
+                    String templateId,
+            @ApiParam(value = "The indexed AQL path")
+            @RequestParam(value = PATH)
+                    String path
+    ) {
+        int deleted = aqlPathIndexService.deletePathIndex(templateId, path) ? 1 : 0;
+
+        return ResponseEntity.ok().body(new AdminDeleteResponseData(deleted));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ehrbase.rest.admin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.ehrbase.api.dto.IngestResultDto;
+import org.ehrbase.api.service.CompositionIngestService;
+import org.ehrbase.rest.BaseController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Admin API controller for the bulk creation of compositions from a NDJSON stream.
+ */
+@Api(tags = {"Admin", "Composition"})
+@ConditionalOnProperty(prefix = "admin-api", name = "active")
+@RestController
+@RequestMapping(path = "${admin-api.context-path:/rest/admin}/ingest", produces = {MediaType.APPLICATION_JSON_VALUE})
+public class AdminIngestController extends BaseController {
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final CompositionIngestService compositionIngestService;
+    private final ObjectWriter resultWriter;
+
+    @Autowired
+    AdminIngestController(CompositionIngestService compositionIngestService, ObjectMapper objectMapper) {
+        this.compositionIngestService = compositionIngestService;
+        this.resultWriter = Objects.requireNonNull(objectMapper).writerFor(IngestResultDto.class);
+    }
+
+    /**
+     * Streams back one NDJSON line per record in input order, {"line", "ehrId", "uid", "error"} with the uid of the
+     * created composition or the error of the record; the lines of a batch are flushed once it is written.
+     */
+    @PostMapping(path = "/composition", consumes = {NDJSON}, produces = {NDJSON})
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "The stream is being processed, each response line holds the created composition or the error of a record."),
+            @ApiResponse(code = 401, message = "Client credentials are invalid or have expired."),
+            @ApiResponse(code = 403, message = "Client has no access permission since admin role is missing.")
+    })
+    public void ingestCompositions(
+            @ApiParam(value = "Optional audit description of the created contributions")
+            @RequestParam(value = "description", required = false)
+                    String description,
+            @ApiParam(value = "One {\"ehr_id\": \"...\", \"composition\": {...}} object per line, the composition in canonical JSON")
+                    InputStream body,
+            HttpServletResponse response
+    ) {
+        try {
+            OutputStream output = response.getOutputStream();
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(NDJSON);
+
+            compositionIngestService.ingest(body, description, results -> write(output, results));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            // nothing has been sent yet: drop the partial output to let the error handling build the response
+            if (!response.isCommitted())
+                response.resetBuffer();
+            throw e;
+        }
+    }
+
+    private void write(OutputStream output, List<IngestResultDto> results) {
+        try {
+            for (IngestResultDto result : results) {
+                output.write(resultWriter.writeValueAsBytes(result));
+                output.write('\n');
+            }
+            output.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
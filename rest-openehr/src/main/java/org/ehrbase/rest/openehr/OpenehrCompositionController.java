@@ -130,9 +130,9 @@ public class OpenehrCompositionController extends BaseController {
 
         Optional<CompositionDto> optionalCompositionDto = compositionService.create(ehrId, compoObj);
 
-        var compositionUuid = optionalCompositionDto.orElseThrow(() ->
-            new InternalServerException("Failed to create composition"))
-            .getUuid();
+        var compositionDto = optionalCompositionDto.orElseThrow(() ->
+            new InternalServerException("Failed to create composition"));
+        var compositionUuid = compositionDto.getUuid();
 
         var uri = URI.create(this.encodePath(getBaseEnvLinkURL() + "/rest/openehr/v1/ehr/" + ehrId.toString() + "/composition/" + compositionUuid.toString()));
 
@@ -141,14 +141,15 @@ public class OpenehrCompositionController extends BaseController {
         Optional<InternalResponse<CompositionResponseData>> respData;   // variable to overload with more specific object if requested
 
         if (Optional.ofNullable(prefer).map(i -> i.equals(RETURN_REPRESENTATION)).orElse(false)) {      // null safe way to test prefer header
-            respData = buildCompositionResponseData(compositionUuid, 0, accept, uri, headerList, () -> new CompositionResponseData(null, null));
+            respData = buildCompositionResponseData(compositionDto, accept, uri, headerList, () -> new CompositionResponseData(null, null));
         } else {    // "minimal" is default fallback
-            respData = buildCompositionResponseData(compositionUuid, 0, accept, uri, headerList, () -> null);
+            respData = buildCompositionResponseData(compositionDto, accept, uri, headerList, () -> null);
         }
 
-        // Enriches request attributes with current compositionId for later audit processing
+        // Enriches request attributes with current compositionId and version for later audit processing
         request.setAttribute(OpenEhrAuditInterceptor.EHR_ID_ATTRIBUTE, Collections.singleton(ehrId));
         request.setAttribute(CompositionAuditInterceptor.COMPOSITION_ID_ATTRIBUTE, compositionUuid);
+        request.setAttribute(CompositionAuditInterceptor.VERSION_ATTRIBUTE, extractVersionFromVersionUid(compositionDto.getComposition().getUid().toString()));
 
         // returns 201 with body + headers, 204 only with headers or 500 error depending on what processing above yields
         return respData.map(i -> Optional.ofNullable(i.getResponseData()).map(StructuredString::getValue).map(j -> ResponseEntity.created(uri).headers(i.getHeaders()).body(j))
@@ -226,9 +227,9 @@ public class OpenehrCompositionController extends BaseController {
             Optional<CompositionDto> dtoOptional = compositionService
                 .update(ehrId, new ObjectVersionId(ifMatch), compoObj);
 
-            var compositionVersionUid = dtoOptional.orElseThrow(() ->
-                new InternalServerException("Failed to create composition"))
-                .getComposition().getUid().toString();
+            var compositionDto = dtoOptional.orElseThrow(() ->
+                new InternalServerException("Failed to create composition"));
+            var compositionVersionUid = compositionDto.getComposition().getUid().toString();
 
             var uri = URI.create(this.encodePath(getBaseEnvLinkURL() + "/rest/openehr/v1/ehr/" + ehrId.toString() + "/composition/" + compositionVersionUid));
 
@@ -236,15 +237,16 @@ public class OpenehrCompositionController extends BaseController {
 
             UUID compositionId = extractVersionedObjectUidFromVersionUid(compositionVersionUid);
             if (RETURN_REPRESENTATION.equals(prefer)) {
-                // both options extract needed info from versionUid
-                respData = buildCompositionResponseData(compositionId, extractVersionFromVersionUid(compositionVersionUid), accept, uri, headerList, () -> new CompositionResponseData(null, null));
+                // both options use the written composition, nothing is read back
+                respData = buildCompositionResponseData(compositionDto, accept, uri, headerList, () -> new CompositionResponseData(null, null));
             } else {    // "minimal" is default fallback
-                respData = buildCompositionResponseData(compositionId, extractVersionFromVersionUid(compositionVersionUid), accept, uri, headerList, () -> null);
+                respData = buildCompositionResponseData(compositionDto, accept, uri, headerList, () -> null);
             }
 
-            // Enriches request attributes with current compositionId for later audit processing
+            // Enriches request attributes with current compositionId and version for later audit processing
             request.setAttribute(OpenEhrAuditInterceptor.EHR_ID_ATTRIBUTE, Collections.singleton(ehrId));
             request.setAttribute(CompositionAuditInterceptor.COMPOSITION_ID_ATTRIBUTE, compositionId);
+            request.setAttribute(CompositionAuditInterceptor.VERSION_ATTRIBUTE, extractVersionFromVersionUid(compositionVersionUid));
 
         } catch (ObjectNotFoundException e) { // composition not found
             return ResponseEntity.notFound().build();
@@ -320,9 +322,10 @@ public class OpenehrCompositionController extends BaseController {
             headers.setETag("\"" + latestVersionId + "\"");
             headers.setLastModified(ZonedDateTime.of(LocalDateTime.now(), ZoneId.systemDefault()).toInstant().toEpochMilli());
 
-            // Enriches request attributes with current compositionId for later audit processing
+            // Enriches request attributes with current compositionId and deleted version for later audit processing
             request.setAttribute(OpenEhrAuditInterceptor.EHR_ID_ATTRIBUTE, Collections.singleton(ehrId));
             request.setAttribute(CompositionAuditInterceptor.COMPOSITION_ID_ATTRIBUTE, extractVersionedObjectUidFromVersionUid(precedingVersionUid));
+            request.setAttribute(CompositionAuditInterceptor.VERSION_ATTRIBUTE, extractVersionFromVersionUid(precedingVersionUid));
 
             return ResponseEntity.noContent().headers(headers).build();
         } catch (ObjectNotFoundException e) {
@@ -410,7 +413,10 @@ public class OpenehrCompositionController extends BaseController {
                 // when optional request parameter was provided, retrieve version according to given time
                 Optional<Integer> versionFromTimestamp = Optional.ofNullable(compositionService.getVersionByTimestamp(compositionUid, versionAtTime));
                 version = versionFromTimestamp.orElseThrow(() -> new ObjectNotFoundException("composition", "No composition version matching the timestamp condition"));
-            } // else continue with fallback: latest version
+            } else {
+                // latest version, resolved here so the audit records the version actually read
+                version = compositionService.getLastVersionNumber(compositionUid);
+            }
         }
 
         URI uri = URI.create(this.encodePath(getBaseEnvLinkURL() + "/rest/openehr/v1/ehr/" + ehrId.toString() + "/composition/" + versionedObjectUid));
@@ -445,6 +451,36 @@ public class OpenehrCompositionController extends BaseController {
      * @return
      */
     private <T extends CompositionResponseData> Optional<InternalResponse<T>> buildCompositionResponseData(UUID compositionId, Integer version, String accept, URI uri, List<String> headerList, Supplier<T> factory) {
+        return buildCompositionResponseData(
+                () -> compositionId + "::" + compositionService.getServerConfig().getNodename() + "::" + compositionService.getLastVersionNumber(compositionId),
+                () -> {
+                    // version handling allows to request specific version
+                    Integer versionNumber = version;
+                    if (versionNumber == 0) {
+                        versionNumber = compositionService.getLastVersionNumber(compositionId);
+                    }
+                    return compositionService.retrieve(compositionId, versionNumber);
+                },
+                accept, uri, headerList, factory);
+    }
+
+    /**
+     * Same as above for a composition which has just been written: the version uid and the representation are taken
+     * from the written DTO, nothing is read back from the database.
+     *
+     * @param <T>            Type of the response body
+     * @param compositionDto the written composition, its uid being the version uid
+     * @param accept         Format the response should be delivered in, as given by request
+     * @param uri            Location of resource
+     * @param headerList     List of headers to be set for response
+     * @param factory        Lambda function to constructor of desired object
+     * @return
+     */
+    private <T extends CompositionResponseData> Optional<InternalResponse<T>> buildCompositionResponseData(CompositionDto compositionDto, String accept, URI uri, List<String> headerList, Supplier<T> factory) {
+        return buildCompositionResponseData(() -> compositionDto.getComposition().getUid().getValue(), () -> Optional.of(compositionDto), accept, uri, headerList, factory);
+    }
+
+    private <T extends CompositionResponseData> Optional<InternalResponse<T>> buildCompositionResponseData(Supplier<String> versionUid, Supplier<Optional<CompositionDto>> content, String accept, URI uri, List<String> headerList, Supplier<T> factory) {
         // create either CompositionResponseData or null (means no body, only headers incl. link to resource), via lambda request
         T minimalOrRepresentation = factory.get();
 
@@ -457,7 +493,7 @@ public class OpenehrCompositionController extends BaseController {
                     respHeaders.setLocation(uri);
                     break;
                 case ETAG:
-                    respHeaders.setETag("\"" + compositionId + "::" + compositionService.getServerConfig().getNodename() + "::" + compositionService.getLastVersionNumber(compositionId) + "\"");
+                    respHeaders.setETag("\"" + versionUid.get() + "\"");
                     break;
                 case LAST_MODIFIED:
                     // TODO should be VERSION.commit_audit.time_committed.value which is not implemented yet - mock for now
@@ -476,13 +512,7 @@ public class OpenehrCompositionController extends BaseController {
 
             CompositionFormat format = extractCompositionFormat(accept);
 
-            // version handling allows to request specific version
-            Integer versionNumber = version;
-            if (versionNumber == 0) {
-                versionNumber = compositionService.getLastVersionNumber(compositionId);
-            }
-
-            Optional<CompositionDto> compositionDto = compositionService.retrieve(compositionId, versionNumber);
+            Optional<CompositionDto> compositionDto = content.get();
             // TODO how to handle error situation here only with Optional? is there a better way without java 9 Optional.ifPresentOrElse()?
             if (compositionDto.isPresent()) {
                 StructuredString ss = compositionService.serialize(compositionDto.get(), format);
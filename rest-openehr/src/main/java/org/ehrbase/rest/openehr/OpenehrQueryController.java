@@ -18,6 +18,8 @@
 
 package org.ehrbase.rest.openehr;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import io.swagger.annotations.Api;
@@ -27,6 +29,8 @@ import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import io.swagger.annotations.ResponseHeader;
 import org.ehrbase.api.definitions.QueryMode;
+import org.ehrbase.api.dto.QueryPageDto;
+import org.ehrbase.api.exception.InvalidApiParameterException;
 import org.ehrbase.api.service.QueryService;
 import org.ehrbase.response.ehrscape.QueryDefinitionResultDto;
 import org.ehrbase.response.openehr.ErrorBodyPayload;
@@ -38,6 +42,7 @@ import org.ehrbase.rest.openehr.audit.QueryAuditInterceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -52,7 +57,11 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -65,14 +74,23 @@ public class OpenehrQueryController extends BaseController {
 
     final static Logger log = LoggerFactory.getLogger(OpenehrQueryController.class);
     private final String QUERY_PARAMETERS = "query_parameters";
+    private static final String STREAM = "stream";
+    private static final String CONTINUATION_TOKEN = "continuation_token";
+    public static final String CONTINUATION_TOKEN_HEADER = "Continuation-Token";
     private QueryService queryService;
+    private final ObjectMapper objectMapper;
+
+    // streamed results are written before @PostAuthorize is evaluated, hence streaming is not used with ABAC
+    @Value("${abac.enabled:false}")
+    private boolean abacEnabled;
 
     @Autowired
-    public OpenehrQueryController(QueryService queryService) {
+    public OpenehrQueryController(QueryService queryService, ObjectMapper objectMapper) {
         this.queryService = Objects.requireNonNull(queryService);
+        this.objectMapper = Objects.requireNonNull(objectMapper);
     }
 
-    @GetMapping("/aql{?q, offset, fetch, query_parameter}")
+    @GetMapping("/aql{?q, offset, fetch, continuation_token, query_parameter}")
     @PostAuthorize("checkAbacPostQuery(@queryServiceImp.getAuditResultMap())")
     @ApiOperation(value = "Execute ad-hoc (non-stored) AQL query", response = QueryResponseData.class)
     @ApiResponses(value = {
@@ -88,7 +106,12 @@ public class OpenehrQueryController extends BaseController {
                                                            @ApiParam(value = "row number in result-set to start result-set from (0-based), default 0") @RequestParam(value = "offset", required = false) Integer offset,
                                                            @ApiParam(value = "number of rows to fetch, default depends on the implementation") @RequestParam(value = "fetch", required = false) Integer fetch,
                                                            @ApiParam(value = "query parameters (can appear multiple times)") @RequestParam Map<String, Object> queryParameters,
-                                                           HttpServletRequest request) {
+                                                           @ApiParam(value = "stream the result set instead of building it in memory, default false") @RequestParam(value = STREAM, required = false) Boolean stream,
+                                                           @ApiParam(value = "token returned with the previous page of an ordered query (keyset pagination), replaces offset") @RequestParam(value = CONTINUATION_TOKEN, required = false) String continuationToken,
+                                                           HttpServletRequest request,
+                                                           HttpServletResponse response) {
+
+        validatePagination(offset != null, fetch != null, isStreaming(stream), continuationToken);
 
         //deal with offset and fetch
         if (fetch != null)
@@ -101,16 +124,25 @@ public class OpenehrQueryController extends BaseController {
             // Enriches request attributes with aql for later audit processing
             request.setAttribute(QueryAuditInterceptor.QUERY_ATTRIBUTE, query);
 
-            QueryResponseData queryResponseData;
+            if (isStreaming(stream)) {
+                stream(query, queryParameters, null, request, response);
+                return null;
+            }
 
-            if (queryParameters != null && !queryParameters.isEmpty())
-                queryResponseData = new QueryResponseData(queryService.query(query, queryParameters, QueryMode.AQL, false));
-            else
-                queryResponseData = new QueryResponseData(queryService.query(query, QueryMode.AQL, false));
+            QueryResponseData queryResponseData;
 
-            // Enriches request attributes with EhrId(s) for later audit processing
-            Map<String, Set<Object>> auditResultMap = queryService.getAuditResultMap();
-            request.setAttribute(OpenEhrAuditInterceptor.EHR_ID_ATTRIBUTE, auditResultMap.get("ehr_id/value"));
+            if (isPaged(offset != null, fetch != null))
+                queryResponseData = invokePage(query, queryParameters, continuationToken, request, response);
+            else {
+                if (queryParameters != null && !queryParameters.isEmpty())
+                    queryResponseData = new QueryResponseData(queryService.query(query, queryParameters, QueryMode.AQL, false));
+                else
+                    queryResponseData = new QueryResponseData(queryService.query(query, QueryMode.AQL, false));
+
+                // Enriches request attributes with EhrId(s) for later audit processing
+                Map<String, Set<Object>> auditResultMap = queryService.getAuditResultMap();
+                request.setAttribute(OpenEhrAuditInterceptor.EHR_ID_ATTRIBUTE, auditResultMap.get("ehr_id/value"));
+            }
 
             if (queryResponseData.getRows().size() > 0)
                 return ResponseEntity.ok(queryResponseData);
@@ -135,7 +167,8 @@ public class OpenehrQueryController extends BaseController {
     public ResponseEntity<QueryResponseData> postAdhocQuery(@ApiParam(value = REQ_ACCEPT) @RequestHeader(value = ACCEPT, required = false) String accept,
                                                             @ApiParam(value = REQ_CONTENT_TYPE_BODY, required = true) @RequestHeader(value = CONTENT_TYPE) String contentType,
                                                             @ApiParam(value = "AQL query to be executed", required = true) @RequestBody String query,
-                                                            HttpServletRequest request) {
+                                                            HttpServletRequest request,
+                                                            HttpServletResponse response) {
 
         log.debug("Got following input: {}", query);
 
@@ -153,8 +186,19 @@ public class OpenehrQueryController extends BaseController {
             // Enriches request attributes with aql for later audit processing
             request.setAttribute(QueryAuditInterceptor.QUERY_ATTRIBUTE, aql);
 
+            String continuationToken = continuationToken(mapped);
+            validatePagination(mapped.containsKey("offset"), mapped.containsKey("fetch"), isStreaming(mapped), continuationToken);
+
             aql = withOffsetLimit(aql, mapped);
 
+            if (isStreaming(mapped)) {
+                stream(aql, parameters, null, request, response);
+                return null;
+            }
+
+            if (isPaged(mapped.containsKey("offset"), mapped.containsKey("fetch")))
+                return ResponseEntity.ok(invokePage(aql, parameters, continuationToken, request, response));
+
             //get the query and pass it to the service
             if (parameters != null && !parameters.isEmpty())
                 queryResponseData = new QueryResponseData(queryService.query(aql, parameters, QueryMode.AQL, false));
@@ -197,7 +241,7 @@ public class OpenehrQueryController extends BaseController {
         return (Double.valueOf(value)).intValue();
     }
 
-    @GetMapping(value = {"/{qualified_query_name}/{version}{?offset,fetch,query_parameter}", "/{qualified_query_name}{?offset,fetch,query_parameter}"})
+    @GetMapping(value = {"/{qualified_query_name}/{version}{?offset,fetch,continuation_token,query_parameter}", "/{qualified_query_name}{?offset,fetch,continuation_token,query_parameter}"})
     @PostAuthorize("checkAbacPostQuery(@queryServiceImp.getAuditResultMap())")
     @ApiOperation(value = "Execute stored AQL query", response = QueryResponseData.class)
     @ApiResponses(value = {
@@ -212,7 +256,12 @@ public class OpenehrQueryController extends BaseController {
                                                             @ApiParam(value = "row number in result-set to start result-set from (0-based), default 0") @RequestParam(value = "offset", required = false) Integer offset,
                                                             @ApiParam(value = "number of rows to fetch, default depends on the implementation") @RequestParam(value = "fetch", required = false) Integer fetch,
                                                             @ApiParam(value = "query parameters (can appear multiple times)") @RequestParam Map<String, Object> queryParameter,
-                                                            HttpServletRequest request) {
+                                                            @ApiParam(value = "stream the result set instead of building it in memory, default false") @RequestParam(value = STREAM, required = false) Boolean stream,
+                                                            @ApiParam(value = "token returned with the previous page of an ordered query (keyset pagination), replaces offset") @RequestParam(value = CONTINUATION_TOKEN, required = false) String continuationToken,
+                                                            HttpServletRequest request,
+                                                            HttpServletResponse response) {
+
+        validatePagination(offset != null, fetch != null, isStreaming(stream), continuationToken);
 
         log.debug("getStoredQuery not implemented but got following input: " + qualifiedQueryName + " - " + version + " - " + offset + " - " + fetch + " - " + queryParameter);
         // Enriches request attributes with query name for later audit processing
@@ -236,7 +285,14 @@ public class OpenehrQueryController extends BaseController {
             query = withOffset(query, offset);
         }
 
-        QueryResponseData queryResponseData = invoke(query, queryParameter, request);
+        if (isStreaming(stream)) {
+            stream(query, queryParameter, queryDefinitionResultDto.getQualifiedName() + "/" + queryDefinitionResultDto.getVersion(), request, response);
+            return null;
+        }
+
+        QueryResponseData queryResponseData = isPaged(offset != null, fetch != null) ?
+                invokePage(query, queryParameter, continuationToken, request, response) :
+                invokeStored(queryDefinitionResultDto, query, queryParameter, request);
 
         if (queryResponseData == null) {
             return ResponseEntity.noContent().build();
@@ -265,7 +321,8 @@ public class OpenehrQueryController extends BaseController {
                                                              @ApiParam(value = "query name to be executed, example: org.openehr::compositions", required = true) @PathVariable(value = "qualified_query_name") String qualifiedQueryName,
                                                              @ApiParam(value = "query version (SEMVER), default is LATEST") @PathVariable(value = "version") Optional<String> version,
                                                              @ApiParam(value = "parameters used to execute the query") @RequestBody(required = false) String parameterBody,
-                                                             HttpServletRequest request) {
+                                                             HttpServletRequest request,
+                                                             HttpServletResponse response) {
 
         log.debug("postStoredQuery with the following input: " + qualifiedQueryName + " - " + version + " - " + parameterBody);
 
@@ -283,16 +340,31 @@ public class OpenehrQueryController extends BaseController {
             //retrieve the parameter from body
             //get the query and parameters if any
             Map<String, Object> queryParameter = null;
+            boolean streaming = false;
+            boolean paged = false;
+            String continuationToken = null;
 
             if (parameterBody != null && !parameterBody.isEmpty()) {
                 Gson gson = new GsonBuilder().create();
                 Map<String, Object> mapped = gson.fromJson(parameterBody, Map.class);
                 queryParameter = (Map<String, Object>) mapped.get(QUERY_PARAMETERS);
 
+                continuationToken = continuationToken(mapped);
+                validatePagination(mapped.containsKey("offset"), mapped.containsKey("fetch"), isStreaming(mapped), continuationToken);
+
                 query = withOffsetLimit(query, mapped);
+                streaming = isStreaming(mapped);
+                paged = isPaged(mapped.containsKey("offset"), mapped.containsKey("fetch"));
+            }
 
+            if (streaming) {
+                stream(query, queryParameter, queryDefinitionResultDto.getQualifiedName() + "/" + queryDefinitionResultDto.getVersion(), request, response);
+                return null;
             }
-            QueryResponseData queryResponseData = invoke(query, queryParameter, request);
+
+            QueryResponseData queryResponseData = paged ?
+                    invokePage(query, queryParameter, continuationToken, request, response) :
+                    invokeStored(queryDefinitionResultDto, query, queryParameter, request);
 
             if (queryResponseData == null) {
                 return badRequestResponseEntity(qualifiedQueryName, version);
@@ -315,15 +387,15 @@ public class OpenehrQueryController extends BaseController {
         return new ResponseEntity(errorBody, HttpStatus.BAD_REQUEST);
     }
 
-    QueryResponseData invoke(String query, Map<String, Object> queryParameter, HttpServletRequest request) {
-        QueryResponseData queryResponseData;
+    /**
+     * Execute a stored query, see {@link QueryService#queryStored(String, String, String, Map)}.
+     */
+    QueryResponseData invokeStored(QueryDefinitionResultDto queryDefinition, String query, Map<String, Object> queryParameter, HttpServletRequest request) {
+        Map<String, Object> parameters = null;
+        if (queryParameter != null && !queryParameter.isEmpty())
+            parameters = new HashMap<>(queryParameter);
 
-        if (queryParameter != null && !queryParameter.isEmpty()) {
-            Map<String, Object> parameters = new HashMap<>();
-            parameters.putAll(queryParameter);
-            queryResponseData = new QueryResponseData(queryService.query(query, parameters, QueryMode.AQL, false));
-        } else
-            queryResponseData = new QueryResponseData(queryService.query(query, QueryMode.AQL, false));
+        QueryResponseData queryResponseData = new QueryResponseData(queryService.queryStored(queryDefinition.getQualifiedName(), queryDefinition.getVersion(), query, parameters));
 
         // Enriches request attributes with EhrId(s) for later audit processing
         Map<String, Set<Object>> auditResultMap = queryService.getAuditResultMap();
@@ -332,6 +404,132 @@ public class OpenehrQueryController extends BaseController {
         return queryResponseData;
     }
 
+    /**
+     * Execute a page of a query, see {@link QueryService#queryPage(String, Map, String)}. If the query is paginated by
+     * keyset and there may be a next page, its continuation token is returned in the {@link #CONTINUATION_TOKEN_HEADER}
+     * header.
+     */
+    QueryResponseData invokePage(String query, Map<String, Object> queryParameter, String continuationToken, HttpServletRequest request, HttpServletResponse response) {
+        Map<String, Object> parameters = null;
+        if (queryParameter != null && !queryParameter.isEmpty())
+            parameters = new HashMap<>(queryParameter);
+
+        QueryPageDto page = queryService.queryPage(query, parameters, continuationToken);
+
+        if (page.getContinuationToken() != null)
+            response.setHeader(CONTINUATION_TOKEN_HEADER, page.getContinuationToken());
+
+        // Enriches request attributes with EhrId(s) for later audit processing
+        Map<String, Set<Object>> auditResultMap = queryService.getAuditResultMap();
+        request.setAttribute(OpenEhrAuditInterceptor.EHR_ID_ATTRIBUTE, auditResultMap.get("ehr_id/value"));
+
+        return new QueryResponseData(page.getResult());
+    }
+
+    /**
+     * a page size without offset lets the query be paginated by keyset
+     */
+    private boolean isPaged(boolean hasOffset, boolean hasFetch) {
+        return hasFetch && !hasOffset;
+    }
+
+    private String continuationToken(Map<String, Object> mapped) {
+        Object continuationToken = mapped.get(CONTINUATION_TOKEN);
+        return continuationToken == null ? null : continuationToken.toString();
+    }
+
+    private void validatePagination(boolean hasOffset, boolean hasFetch, boolean streaming, String continuationToken) {
+        if (continuationToken == null)
+            return;
+        if (hasOffset || !hasFetch || streaming)
+            throw new InvalidApiParameterException("A continuation token requires fetch and can neither be used with offset nor with a streamed result");
+    }
+
+    private boolean isStreaming(Boolean stream) {
+        return Boolean.TRUE.equals(stream) && !abacEnabled;
+    }
+
+    private boolean isStreaming(Map<String, Object> mapped) {
+        return isStreaming(Boolean.valueOf(String.valueOf(mapped.get(STREAM))));
+    }
+
+    /**
+     * Write the result set of a query straight to the response, in the same format as {@link QueryResponseData}.
+     * Rows are serialized as they are read from the database, an empty result gives HTTP 200 with no rows.
+     */
+    void stream(String query, Map<String, Object> queryParameter, String name, HttpServletRequest request, HttpServletResponse response) {
+        try {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+
+            queryService.queryStreaming(query, queryParameter, new JsonRowWriter(generator, query, name));
+
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            // nothing has been sent yet: drop the partial output to let the error handling build the response
+            if (!response.isCommitted())
+                response.resetBuffer();
+            throw e;
+        }
+
+        // Enriches request attributes with EhrId(s) for later audit processing
+        Map<String, Set<Object>> auditResultMap = queryService.getAuditResultMap();
+        request.setAttribute(OpenEhrAuditInterceptor.EHR_ID_ATTRIBUTE, auditResultMap.get("ehr_id/value"));
+    }
+
+    /**
+     * serializes a streamed result set, the opening of the document is deferred until the columns are known so that
+     * a query failing at compile time leaves the response untouched.
+     */
+    private static class JsonRowWriter implements QueryService.ResultRowHandler {
+
+        private final JsonGenerator generator;
+        private final String query;
+        private final String name;
+
+        JsonRowWriter(JsonGenerator generator, String query, String name) {
+            this.generator = generator;
+            this.query = query;
+            this.name = name;
+        }
+
+        @Override
+        public void columns(Map<String, String> variables) {
+            try {
+                generator.writeStartObject();
+                generator.writeStringField("q", query);
+                if (name != null)
+                    generator.writeStringField("name", name);
+                generator.writeArrayFieldStart("columns");
+                for (Map.Entry<String, String> variable : variables.entrySet()) {
+                    generator.writeStartObject();
+                    generator.writeStringField("name", variable.getKey());
+                    generator.writeStringField("path", variable.getValue());
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+                generator.writeArrayFieldStart("rows");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void row(List<Object> values) {
+            try {
+                generator.writeObject(values);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
     String withOffsetLimit(String query, Map<String, Object> mapped) {
         if (mapped.containsKey("fetch")) {
             //append LIMIT clause to aql
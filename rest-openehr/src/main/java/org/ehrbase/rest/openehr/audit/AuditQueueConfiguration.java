@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.rest.openehr.audit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings of the {@link OpenEhrAuditQueue}, bound to <code>audit.queue.*</code>.
+ */
+@Component
+@ConfigurationProperties(prefix = "audit.queue")
+public class AuditQueueConfiguration {
+
+    /**
+     * What to do with a request's audit dataset when the queue is full. Only DROP and BLOCK may lose audit records,
+     * they have to be chosen explicitly.
+     */
+    public enum OverflowPolicy {
+        /**
+         * discard the dataset, counted in <code>ehrbase.audit.queue.dropped</code>
+         */
+        DROP,
+        /**
+         * wait up to <code>block-timeout</code> for room in the queue, then discard the dataset
+         */
+        BLOCK,
+        /**
+         * build and send the messages on the request thread, the default
+         */
+        CALLER_RUNS
+    }
+
+    /**
+     * maximum number of audit datasets waiting to be sent
+     */
+    private int capacity = 10000;
+
+    /**
+     * maximum number of datasets whose subjects are resolved in one query and whose messages are sent together
+     */
+    private int batchSize = 100;
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.CALLER_RUNS;
+
+    private Duration blockTimeout = Duration.ofMillis(100);
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public Duration getBlockTimeout() {
+        return blockTimeout;
+    }
+
+    public void setBlockTimeout(Duration blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+}
@@ -17,6 +17,8 @@
  */
 package org.ehrbase.rest.openehr.audit;
 
+import java.util.UUID;
+
 /**
  * {@link OpenEhrAuditDataset} used for Composition audit messages
  */
@@ -26,6 +28,12 @@ public class CompositionAuditDataset extends OpenEhrAuditDataset {
 
     private String templateId;
 
+    private UUID ehrId;
+
+    private UUID compositionId;
+
+    private Integer version;
+
     public String getCompositionUri() {
         return compositionUri;
     }
@@ -45,4 +53,31 @@ public class CompositionAuditDataset extends OpenEhrAuditDataset {
     public void setTemplateId(String templateId) {
         this.templateId = templateId;
     }
+
+    public UUID getEhrId() {
+        return ehrId;
+    }
+
+    public void setEhrId(UUID ehrId) {
+        this.ehrId = ehrId;
+    }
+
+    public UUID getCompositionId() {
+        return compositionId;
+    }
+
+    public void setCompositionId(UUID compositionId) {
+        this.compositionId = compositionId;
+    }
+
+    /**
+     * @return the version of the request, null or 0 for the latest one
+     */
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
 }
@@ -19,7 +19,6 @@ package org.ehrbase.rest.openehr.audit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.ehrbase.api.service.CompositionService;
-import org.ehrbase.api.service.EhrService;
 import org.ehrbase.response.ehrscape.CompositionDto;
 import org.ehrbase.rest.openehr.audit.support.CompositionAuditMessageBuilder;
 import org.openehealth.ipf.commons.audit.AuditContext;
@@ -43,8 +42,8 @@ public class CompositionAuditInterceptor extends OpenEhrAuditInterceptor<Composi
 
     private final CompositionService compositionService;
 
-    public CompositionAuditInterceptor(AuditContext auditContext, EhrService ehrService, CompositionService compositionService) {
-        super(auditContext, ehrService);
+    public CompositionAuditInterceptor(AuditContext auditContext, OpenEhrAuditQueue auditQueue, CompositionService compositionService) {
+        super(auditContext, auditQueue);
         this.compositionService = compositionService;
     }
 
@@ -57,8 +56,34 @@ public class CompositionAuditInterceptor extends OpenEhrAuditInterceptor<Composi
     protected void enrichDataset(CompositionAuditDataset auditDataset, HttpServletRequest request, HttpServletResponse response) {
         super.enrichDataset(auditDataset, request, response);
 
-        auditDataset.setCompositionUri(getCompositionUri(request));
-        auditDataset.setTemplateId(getTemplateId(request));
+        UUID compositionId = (UUID) request.getAttribute(COMPOSITION_ID_ATTRIBUTE);
+        if (compositionId != null) {
+            auditDataset.setEhrId(getUniqueEhrId(request));
+            auditDataset.setCompositionId(compositionId);
+            auditDataset.setVersion((Integer) request.getAttribute(VERSION_ATTRIBUTE));
+        } else {
+            auditDataset.setCompositionUri(StringUtils.remove(request.getRequestURI(), "/ehrbase/rest/openehr/v1/"));
+        }
+    }
+
+    /**
+     * Runs on the queue worker, so only the version captured on the request thread (see {@link #VERSION_ATTRIBUTE}) is
+     * used: a later version may have been committed meanwhile.
+     */
+    @Override
+    protected void completeDataset(CompositionAuditDataset auditDataset) {
+        UUID compositionId = auditDataset.getCompositionId();
+        Integer version = auditDataset.getVersion();
+        if (compositionId == null || version == null) {
+            return;
+        }
+
+        URI uri = UriComponentsBuilder.fromPath("ehr/{ehrId}/composition/{compositionId}::{nodeName}::{version}")
+                .build(auditDataset.getEhrId(), compositionId, compositionService.getServerConfig().getNodename(), version);
+        auditDataset.setCompositionUri(uri.toString());
+        auditDataset.setTemplateId(compositionService.retrieve(compositionId, version)
+                .map(CompositionDto::getTemplateId)
+                .orElse(null));
     }
 
     @Override
@@ -72,36 +97,4 @@ public class CompositionAuditInterceptor extends OpenEhrAuditInterceptor<Composi
         }
         return builder.getMessages();
     }
-
-    private String getCompositionUri(HttpServletRequest request) {
-        UUID compositionId = (UUID) request.getAttribute(COMPOSITION_ID_ATTRIBUTE);
-        if (compositionId != null) {
-            UUID ehrId = getUniqueEhrId(request);
-            Integer version = (Integer) request.getAttribute(VERSION_ATTRIBUTE);
-            if (version == null || version == 0) {
-                version = compositionService.getLastVersionNumber(compositionId);
-            }
-            URI uri = UriComponentsBuilder.fromPath("ehr/{ehrId}/composition/{compositionId}::{nodeName}::{version}")
-                    .build(ehrId, compositionId, compositionService.getServerConfig().getNodename(), version);
-            return uri.toString();
-        } else {
-            return StringUtils.remove(request.getRequestURI(), "/ehrbase/rest/openehr/v1/");
-        }
-    }
-
-    private String getTemplateId(HttpServletRequest request) {
-        UUID compositionId = (UUID) request.getAttribute(COMPOSITION_ID_ATTRIBUTE);
-        if (compositionId == null) {
-            return null;
-        }
-
-        Integer version = (Integer) request.getAttribute(VERSION_ATTRIBUTE);
-        if (version == null || version == 0) {
-            version = compositionService.getLastVersionNumber(compositionId);
-        }
-        return compositionService.retrieve(compositionId, version)
-                .map(CompositionDto::getTemplateId)
-                .orElse(null);
-
-    }
 }
@@ -17,7 +17,6 @@
  */
 package org.ehrbase.rest.openehr.audit;
 
-import org.ehrbase.api.service.EhrService;
 import org.ehrbase.rest.openehr.audit.support.EhrAuditMessageBuilder;
 import org.openehealth.ipf.commons.audit.AuditContext;
 import org.openehealth.ipf.commons.audit.model.AuditMessage;
@@ -27,8 +26,8 @@ import org.openehealth.ipf.commons.audit.model.AuditMessage;
  */
 public class EhrAuditInterceptor extends OpenEhrAuditInterceptor<OpenEhrAuditDataset> {
 
-    public EhrAuditInterceptor(AuditContext auditContext, EhrService ehrService) {
-        super(auditContext, ehrService);
+    public EhrAuditInterceptor(AuditContext auditContext, OpenEhrAuditQueue auditQueue) {
+        super(auditContext, auditQueue);
     }
 
     @Override
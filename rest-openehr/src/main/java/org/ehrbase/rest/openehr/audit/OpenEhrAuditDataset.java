@@ -25,6 +25,7 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.UUID;
 
 /**
  * Base class for openEHR audit dataset
@@ -41,6 +42,8 @@ public class OpenEhrAuditDataset implements Serializable {
 
     private String sourceParticipantNetworkId;
 
+    private Set<UUID> ehrIds = new HashSet<>();
+
     private Set<String> patientParticipantObjectIds = new HashSet<>();
 
     public EventOutcomeIndicator getEventOutcomeIndicator() {
@@ -83,6 +86,17 @@ public class OpenEhrAuditDataset implements Serializable {
         this.sourceParticipantNetworkId = sourceParticipantNetworkId;
     }
 
+    /**
+     * @return the EHRs of the request, their subjects become the patient participant object ids
+     */
+    public Set<UUID> getEhrIds() {
+        return ehrIds;
+    }
+
+    public void setEhrIds(Set<UUID> ehrIds) {
+        this.ehrIds = ehrIds;
+    }
+
     public Set<String> getPatientParticipantObjectIds() {
         return patientParticipantObjectIds;
     }
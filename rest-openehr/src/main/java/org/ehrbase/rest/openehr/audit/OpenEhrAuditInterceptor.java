@@ -19,7 +19,6 @@ package org.ehrbase.rest.openehr.audit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.ehrbase.api.exception.InternalServerException;
-import org.ehrbase.api.service.EhrService;
 import org.openehealth.ipf.commons.audit.AuditContext;
 import org.openehealth.ipf.commons.audit.codes.EventOutcomeIndicator;
 import org.openehealth.ipf.commons.audit.model.AuditMessage;
@@ -34,12 +33,15 @@ import javax.servlet.http.HttpServletResponse;
 import java.security.Principal;
 import java.time.Instant;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 /**
  * Base {@link HandlerInterceptor} that provides the common logic for handling audit feature.
+ * <p>
+ * The dataset is captured from the request on the request thread, without any database access; the messages are
+ * built and sent by the {@link OpenEhrAuditQueue}.
  */
 public abstract class OpenEhrAuditInterceptor<T extends OpenEhrAuditDataset> implements HandlerInterceptor {
 
@@ -49,11 +51,11 @@ public abstract class OpenEhrAuditInterceptor<T extends OpenEhrAuditDataset> imp
 
     protected final AuditContext auditContext;
 
-    protected final EhrService ehrService;
+    protected final OpenEhrAuditQueue auditQueue;
 
-    protected OpenEhrAuditInterceptor(AuditContext auditContext, EhrService ehrService) {
+    protected OpenEhrAuditInterceptor(AuditContext auditContext, OpenEhrAuditQueue auditQueue) {
         this.auditContext = auditContext;
-        this.ehrService = ehrService;
+        this.auditQueue = auditQueue;
     }
 
     @Override
@@ -68,8 +70,7 @@ public abstract class OpenEhrAuditInterceptor<T extends OpenEhrAuditDataset> imp
                                 @NonNull Object handler, Exception ex) {
         T auditDataset = createAuditDataset();
         enrichDataset(auditDataset, request, response);
-        AuditMessage[] messages = getAuditMessages(auditDataset);
-        auditContext.audit(messages);
+        auditQueue.submit(this, auditDataset);
     }
 
     protected abstract T createAuditDataset();
@@ -100,8 +101,15 @@ public abstract class OpenEhrAuditInterceptor<T extends OpenEhrAuditDataset> imp
             auditDataset.setEventOutcomeDescription(eventOutcomeDescription);
         }
 
-        // Patient ParticipantObjectIdentification
-        auditDataset.addPatientParticipantObjectIds(getPatientNumbers(request));
+        // Patient ParticipantObjectIdentification, resolved by the queue
+        auditDataset.setEhrIds(new HashSet<>(getEhrIds(request)));
+    }
+
+    /**
+     * Completes the dataset with what requires the database, called by the {@link OpenEhrAuditQueue} once the
+     * patient participant object ids are resolved.
+     */
+    protected void completeDataset(T auditDataset) {
     }
 
     protected abstract AuditMessage[] getAuditMessages(T auditDataset);
@@ -141,11 +149,4 @@ public abstract class OpenEhrAuditInterceptor<T extends OpenEhrAuditDataset> imp
         }
         return ehrIds;
     }
-
-    protected Set<String> getPatientNumbers(HttpServletRequest request) {
-        return getEhrIds(request)
-                .stream()
-                .map(ehrId -> ehrService.getSubjectExtRef(ehrId.toString()))
-                .collect(Collectors.toSet());
-    }
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.rest.openehr.audit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.ehrbase.api.service.EhrService;
+import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue between the {@link OpenEhrAuditInterceptor}s and the audit repository: the interceptors only capture
+ * their dataset on the request thread, a single worker thread takes up to <code>audit.queue.batch-size</code> datasets
+ * at a time, resolves the subjects of all their EHRs with one query, builds the messages and sends them together.
+ * <p>
+ * When the queue is full the {@link AuditQueueConfiguration.OverflowPolicy} applies. The queue depth and the number of
+ * dropped datasets are published as <code>ehrbase.audit.queue.depth</code> and <code>ehrbase.audit.queue.dropped</code>.
+ * On shutdown the worker sends what is still queued.
+ */
+@Component
+public class OpenEhrAuditQueue {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final AuditContext auditContext;
+    private final EhrService ehrService;
+    private final AuditQueueConfiguration settings;
+    private final BlockingQueue<Entry<?>> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    /**
+     * A captured dataset with the interceptor building its messages
+     */
+    private static class Entry<T extends OpenEhrAuditDataset> {
+        private final OpenEhrAuditInterceptor<T> interceptor;
+        private final T auditDataset;
+
+        private Entry(OpenEhrAuditInterceptor<T> interceptor, T auditDataset) {
+            this.interceptor = interceptor;
+            this.auditDataset = auditDataset;
+        }
+
+        private List<AuditMessage> getAuditMessages(Map<UUID, String> subjects) {
+            auditDataset.getEhrIds().stream()
+                    .map(subjects::get)
+                    .filter(Objects::nonNull)
+                    .forEach(auditDataset.getPatientParticipantObjectIds()::add);
+            interceptor.completeDataset(auditDataset);
+            return Arrays.asList(interceptor.getAuditMessages(auditDataset));
+        }
+    }
+
+    @Autowired
+    public OpenEhrAuditQueue(AuditContext auditContext, EhrService ehrService, AuditQueueConfiguration settings,
+                             ObjectProvider<MeterRegistry> meterRegistries) {
+        this.auditContext = auditContext;
+        this.ehrService = ehrService;
+        this.settings = settings;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, settings.getCapacity()));
+
+        MeterRegistry meterRegistry = meterRegistries.getIfAvailable();
+        if (meterRegistry != null) {
+            Gauge.builder("ehrbase.audit.queue.depth", queue, BlockingQueue::size)
+                    .description("Audit datasets waiting to be sent")
+                    .register(meterRegistry);
+            FunctionCounter.builder("ehrbase.audit.queue.dropped", dropped, AtomicLong::get)
+                    .description("Audit datasets discarded because the queue was full")
+                    .register(meterRegistry);
+        }
+
+        this.worker = new Thread(this::run, "audit-queue");
+        this.worker.setDaemon(true);
+        if (auditContext.isAuditEnabled()) {
+            this.worker.start();
+        }
+    }
+
+    /**
+     * Queues the dataset captured by the interceptor, its messages are built and sent by the worker.
+     */
+    public <T extends OpenEhrAuditDataset> void submit(OpenEhrAuditInterceptor<T> interceptor, T auditDataset) {
+        Entry<T> entry = new Entry<>(interceptor, auditDataset);
+        if (!worker.isAlive()) {
+            send(Collections.singletonList(entry));
+            return;
+        }
+
+        switch (settings.getOverflowPolicy()) {
+            case CALLER_RUNS:
+                if (!queue.offer(entry)) {
+                    send(Collections.singletonList(entry));
+                }
+                break;
+            case BLOCK:
+                try {
+                    if (!queue.offer(entry, settings.getBlockTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                        drop();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop();
+                }
+                break;
+            default:
+                if (!queue.offer(entry)) {
+                    drop();
+                }
+        }
+    }
+
+    public int getDepth() {
+        return queue.size();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            logger.warn("{} audit datasets were not sent before shutdown", queue.size());
+        }
+    }
+
+    private void run() {
+        int batchSize = Math.max(1, settings.getBatchSize());
+        List<Entry<?>> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry<?> first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Could not send audit messages", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(List<Entry<?>> batch) {
+        Set<UUID> ehrIds = new HashSet<>();
+        batch.forEach(entry -> ehrIds.addAll(entry.auditDataset.getEhrIds()));
+
+        Map<UUID, String> subjects = Collections.emptyMap();
+        try {
+            subjects = ehrService.getSubjectExtRefs(ehrIds);
+        } catch (RuntimeException e) {
+            logger.error("Could not resolve the subjects of the audited EHRs", e);
+        }
+
+        List<AuditMessage> messages = new ArrayList<>();
+        for (Entry<?> entry : batch) {
+            try {
+                messages.addAll(entry.getAuditMessages(subjects));
+            } catch (RuntimeException e) {
+                logger.error("Could not build audit message", e);
+            }
+        }
+
+        if (!messages.isEmpty()) {
+            auditContext.audit(messages.toArray(new AuditMessage[0]));
+        }
+    }
+
+    private void drop() {
+        long count = dropped.incrementAndGet();
+        if (count == 1 || count % 1000 == 0) {
+            logger.warn("Audit queue full, {} audit datasets dropped so far", count);
+        }
+    }
+}
@@ -17,7 +17,6 @@
  */
 package org.ehrbase.rest.openehr.audit;
 
-import org.ehrbase.api.service.EhrService;
 import org.ehrbase.rest.openehr.audit.support.QueryAuditMessageBuilder;
 import org.openehealth.ipf.commons.audit.AuditContext;
 import org.openehealth.ipf.commons.audit.model.AuditMessage;
@@ -34,8 +33,8 @@ public class QueryAuditInterceptor extends OpenEhrAuditInterceptor<QueryAuditDat
 
     public static final String QUERY_ID_ATTRIBUTE = CompositionAuditInterceptor.class.getName() + ".QUERY_ID";
 
-    public QueryAuditInterceptor(AuditContext auditContext, EhrService ehrService) {
-        super(auditContext, ehrService);
+    public QueryAuditInterceptor(AuditContext auditContext, OpenEhrAuditQueue auditQueue) {
+        super(auditContext, auditQueue);
     }
 
     @Override
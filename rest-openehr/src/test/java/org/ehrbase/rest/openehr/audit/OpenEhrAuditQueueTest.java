@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.rest.openehr.audit;
+
+import org.ehrbase.api.service.EhrService;
+import org.junit.After;
+import org.junit.Test;
+import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OpenEhrAuditQueueTest {
+
+    private final AuditContext auditContext = mock(AuditContext.class);
+    private final EhrService ehrService = mock(EhrService.class);
+
+    /**
+     * Number of messages of each call to the audit repository, and the thread which sent them
+     */
+    private final List<Integer> sent = new CopyOnWriteArrayList<>();
+    private final List<String> senders = new CopyOnWriteArrayList<>();
+
+    /**
+     * The worker waits in its first call to the audit repository until released, so the queue fills up
+     */
+    private final CountDownLatch workerSending = new CountDownLatch(1);
+    private final CountDownLatch releaseWorker = new CountDownLatch(1);
+
+    private OpenEhrAuditQueue cut;
+
+    private static class TestInterceptor extends OpenEhrAuditInterceptor<OpenEhrAuditDataset> {
+
+        private TestInterceptor(AuditContext auditContext, OpenEhrAuditQueue auditQueue) {
+            super(auditContext, auditQueue);
+        }
+
+        @Override
+        protected OpenEhrAuditDataset createAuditDataset() {
+            return new OpenEhrAuditDataset();
+        }
+
+        @Override
+        protected AuditMessage[] getAuditMessages(OpenEhrAuditDataset auditDataset) {
+            return new AuditMessage[]{mock(AuditMessage.class)};
+        }
+    }
+
+    @After
+    public void tearDown() {
+        releaseWorker.countDown();
+        if (cut != null) {
+            cut.shutdown();
+        }
+    }
+
+    @Test
+    public void sendsQueuedDatasetsInBatches() throws InterruptedException {
+        cut = startQueue(10, 2, AuditQueueConfiguration.OverflowPolicy.DROP);
+        TestInterceptor interceptor = new TestInterceptor(auditContext, cut);
+
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        submitAndWaitForWorker(interceptor);
+        cut.submit(interceptor, dataset(first));
+        cut.submit(interceptor, dataset(second));
+        cut.submit(interceptor, dataset(UUID.randomUUID()));
+        assertThat(cut.getDepth()).isEqualTo(3);
+
+        releaseWorker.countDown();
+        cut.shutdown();
+
+        assertThat(sent).containsExactly(1, 2, 1);
+        // the subjects of a batch are resolved together
+        verify(ehrService, times(3)).getSubjectExtRefs(any());
+        verify(ehrService).getSubjectExtRefs(Set.of(first, second));
+    }
+
+    @Test
+    public void dropsWhenFull() throws InterruptedException {
+        cut = startQueue(1, 10, AuditQueueConfiguration.OverflowPolicy.DROP);
+        TestInterceptor interceptor = new TestInterceptor(auditContext, cut);
+
+        submitAndWaitForWorker(interceptor);
+        cut.submit(interceptor, dataset(UUID.randomUUID()));
+        cut.submit(interceptor, dataset(UUID.randomUUID()));
+
+        assertThat(cut.getDropped()).isEqualTo(1);
+        releaseWorker.countDown();
+        cut.shutdown();
+        assertThat(sent).containsExactly(1, 1);
+    }
+
+    @Test
+    public void blocksThenDropsWhenFull() throws InterruptedException {
+        cut = startQueue(1, 10, AuditQueueConfiguration.OverflowPolicy.BLOCK);
+        TestInterceptor interceptor = new TestInterceptor(auditContext, cut);
+
+        submitAndWaitForWorker(interceptor);
+        cut.submit(interceptor, dataset(UUID.randomUUID()));
+        long start = System.nanoTime();
+        cut.submit(interceptor, dataset(UUID.randomUUID()));
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(Duration.ofMillis(50).toNanos());
+        assertThat(cut.getDropped()).isEqualTo(1);
+        releaseWorker.countDown();
+        cut.shutdown();
+        assertThat(sent).containsExactly(1, 1);
+    }
+
+    @Test
+    public void callerSendsWhenFull() throws InterruptedException {
+        cut = startQueue(1, 10, AuditQueueConfiguration.OverflowPolicy.CALLER_RUNS);
+        TestInterceptor interceptor = new TestInterceptor(auditContext, cut);
+
+        submitAndWaitForWorker(interceptor);
+        cut.submit(interceptor, dataset(UUID.randomUUID()));
+        cut.submit(interceptor, dataset(UUID.randomUUID()));
+
+        assertThat(cut.getDropped()).isZero();
+        assertThat(senders).containsExactly("audit-queue", Thread.currentThread().getName());
+        releaseWorker.countDown();
+        cut.shutdown();
+        assertThat(sent).containsExactly(1, 1, 1);
+    }
+
+    @Test
+    public void defaultsToCallerRuns() {
+        assertThat(new AuditQueueConfiguration().getOverflowPolicy()).isEqualTo(AuditQueueConfiguration.OverflowPolicy.CALLER_RUNS);
+    }
+
+    @Test
+    public void sendsQueuedDatasetsOnShutdown() throws InterruptedException {
+        cut = startQueue(100, 100, AuditQueueConfiguration.OverflowPolicy.DROP);
+        TestInterceptor interceptor = new TestInterceptor(auditContext, cut);
+
+        submitAndWaitForWorker(interceptor);
+        for (int i = 0; i < 50; i++) {
+            cut.submit(interceptor, dataset(UUID.randomUUID()));
+        }
+
+        releaseWorker.countDown();
+        cut.shutdown();
+
+        assertThat(cut.getDepth()).isZero();
+        assertThat(sent.stream().mapToInt(Integer::intValue).sum()).isEqualTo(51);
+    }
+
+    @SuppressWarnings("unchecked")
+    private OpenEhrAuditQueue startQueue(int capacity, int batchSize, AuditQueueConfiguration.OverflowPolicy overflowPolicy) {
+        AuditQueueConfiguration settings = new AuditQueueConfiguration();
+        settings.setCapacity(capacity);
+        settings.setBatchSize(batchSize);
+        settings.setOverflowPolicy(overflowPolicy);
+        settings.setBlockTimeout(Duration.ofMillis(50));
+
+        when(auditContext.isAuditEnabled()).thenReturn(true);
+        doAnswer(invocation -> {
+            sent.add(invocation.getArguments().length);
+            senders.add(Thread.currentThread().getName());
+            if (Thread.currentThread().getName().equals("audit-queue")) {
+                workerSending.countDown();
+                releaseWorker.await();
+            }
+            return null;
+        }).when(auditContext).audit(any());
+
+        return new OpenEhrAuditQueue(auditContext, ehrService, settings, mock(ObjectProvider.class));
+    }
+
+    private void submitAndWaitForWorker(TestInterceptor interceptor) throws InterruptedException {
+        cut.submit(interceptor, dataset(UUID.randomUUID()));
+        assertThat(workerSending.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static OpenEhrAuditDataset dataset(UUID ehrId) {
+        OpenEhrAuditDataset auditDataset = new OpenEhrAuditDataset();
+        auditDataset.setEhrIds(new HashSet<>(Set.of(ehrId)));
+        return auditDataset;
+    }
+}
@@ -20,6 +20,7 @@ package org.ehrbase.aql.compiler;
 
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.apache.commons.lang3.StringUtils;
 import org.ehrbase.aql.containment.IdentifierMapper;
 import org.ehrbase.aql.definition.FromEhrDefinition;
 import org.ehrbase.aql.definition.I_VariableDefinition;
@@ -28,11 +29,19 @@ import org.ehrbase.aql.sql.binding.VariableDefinitions;
 import org.ehrbase.aql.sql.queryimpl.attribute.ehr.EhrResolver;
 import org.ehrbase.dao.access.interfaces.I_OpenehrTerminologyServer;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 @SuppressWarnings({"java:S3740"})
 public class Statements {
 
+    private static final String EHR_ID_PATH = "ehr_id/value";
+    private static final List<String> NON_CONJUNCTIVE_OPERATORS = Arrays.asList("OR", "XOR", "NOT");
+
     private ParseTree parseTree;
     private List<Object> whereClause;
     private List<I_VariableDefinition> variables;
@@ -125,6 +134,39 @@ public class Statements {
         variables.add(variableDefinition);
     }
 
+    /**
+     * Resolve the EHRs a query is restricted to: the values of the conditions <code>ehr_id/value = '...'</code> on an
+     * EHR identifier, from the WHERE clause or the EHR predicate of the FROM clause. The conditions are taken from the
+     * parsed clause, hence literals, comments and parameters are already resolved.
+     *
+     * @return the EHR ids, empty if the query is not restricted to given EHRs or if the restriction cannot be
+     * established (the WHERE clause is not a pure conjunction, or an EHR id is not a literal UUID)
+     */
+    public Set<UUID> getPinnedEhrIds() {
+        Set<UUID> ehrIds = new HashSet<>();
+
+        for (int i = 0; i < whereClause.size(); i++) {
+            Object item = whereClause.get(i);
+            if (item instanceof String && NON_CONJUNCTIVE_OPERATORS.contains(((String) item).toUpperCase()))
+                return Collections.emptySet();
+
+            if (isEhrIdVariable(item) && i + 2 < whereClause.size() && "=".equals(whereClause.get(i + 1))) {
+                try {
+                    ehrIds.add(UUID.fromString(StringUtils.strip(String.valueOf(whereClause.get(i + 2)), "'\"")));
+                } catch (IllegalArgumentException e) {
+                    return Collections.emptySet();
+                }
+            }
+        }
+        return ehrIds;
+    }
+
+    private boolean isEhrIdVariable(Object item) {
+        return item instanceof I_VariableDefinition
+                && EHR_ID_PATH.equals(((I_VariableDefinition) item).getPath())
+                && identifierMapper.getContainer(((I_VariableDefinition) item).getIdentifier()) instanceof FromEhrDefinition.EhrPredicate;
+    }
+
     public String getParsedExpression(){
         return parseTree.getText();
 
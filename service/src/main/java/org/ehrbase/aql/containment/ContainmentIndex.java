@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.aql.containment;
+
+import org.ehrbase.webtemplate.model.WebTemplateNode;
+import org.ehrbase.webtemplate.parser.NodeId;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index of the archetyped nodes of the loaded templates: for an archetype node id (or a bare class name) it
+ * gives the templates containing it and the AQL paths of the matching nodes in each template.
+ * <p>
+ * The index is built once per template when it is loaded and is used to restrict the containment resolution to the
+ * candidate templates instead of walking every WebTemplate tree.
+ * <p>
+ * The matching rules are the ones of {@link org.ehrbase.service.KnowledgeCacheService#resolveForTemplate}: a NodeId
+ * without archetype node id matches on class name only.
+ */
+public class ContainmentIndex {
+
+    //node id -> template id -> aql paths
+    private final Map<NodeId, Map<String, Set<String>>> byNodeId = new ConcurrentHashMap<>();
+    //class name -> template id -> aql paths
+    private final Map<String, Map<String, Set<String>>> byClassName = new ConcurrentHashMap<>();
+    //template id -> indexed keys, used on removal
+    private final Map<String, Set<Object>> keysByTemplate = new ConcurrentHashMap<>();
+
+    /**
+     * index the archetyped nodes of a template, replacing any previous entry for the same template
+     *
+     * @param templateId the template id
+     * @param root       the root node of the WebTemplate
+     */
+    public synchronized void add(String templateId, WebTemplateNode root) {
+        remove(templateId);
+
+        Map<NodeId, Set<String>> nodeIdPaths = new HashMap<>();
+        Map<String, Set<String>> classNamePaths = new HashMap<>();
+
+        Deque<WebTemplateNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            WebTemplateNode node = stack.pop();
+            if (node.getNodeId() != null) {
+                NodeId nodeId = new NodeId(node.getNodeId());
+                String aqlPath = node.getAqlPath(false);
+                nodeIdPaths.computeIfAbsent(nodeId, k -> new TreeSet<>()).add(aqlPath);
+                if (nodeId.getClassName() != null)
+                    classNamePaths.computeIfAbsent(nodeId.getClassName(), k -> new TreeSet<>()).add(aqlPath);
+            }
+            node.getChildren().forEach(stack::push);
+        }
+
+        Set<Object> keys = new HashSet<>();
+        nodeIdPaths.forEach((nodeId, paths) -> {
+            byNodeId.computeIfAbsent(nodeId, k -> new ConcurrentHashMap<>()).put(templateId, Collections.unmodifiableSet(paths));
+            keys.add(nodeId);
+        });
+        classNamePaths.forEach((className, paths) -> {
+            byClassName.computeIfAbsent(className, k -> new ConcurrentHashMap<>()).put(templateId, Collections.unmodifiableSet(paths));
+            keys.add(className);
+        });
+        keysByTemplate.put(templateId, keys);
+    }
+
+    /**
+     * remove all the entries of a template
+     *
+     * @param templateId the template id
+     */
+    public synchronized void remove(String templateId) {
+        Set<Object> keys = keysByTemplate.remove(templateId);
+        if (keys == null)
+            return;
+
+        for (Object key : keys) {
+            Map<?, Map<String, Set<String>>> index = key instanceof NodeId ? byNodeId : byClassName;
+            Map<String, Set<String>> templates = index.get(key);
+            if (templates != null) {
+                templates.remove(templateId);
+                if (templates.isEmpty())
+                    index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @param templateId the template id
+     * @return true if the template has been indexed
+     */
+    public boolean contains(String templateId) {
+        return keysByTemplate.containsKey(templateId);
+    }
+
+    /**
+     * the templates containing every node of a containment expression, that is the only ones for which it can resolve
+     *
+     * @param nodeIds the containment expression
+     * @return the candidate template ids
+     */
+    public Set<String> candidates(Collection<NodeId> nodeIds) {
+        Set<String> candidates = null;
+        for (NodeId nodeId : nodeIds) {
+            Set<String> templates = templates(nodeId).keySet();
+            if (candidates == null)
+                candidates = new HashSet<>(templates);
+            else
+                candidates.retainAll(templates);
+
+            if (candidates.isEmpty())
+                break;
+        }
+        return candidates == null ? new HashSet<>(keysByTemplate.keySet()) : candidates;
+    }
+
+    /**
+     * @param templateId the template id
+     * @param nodeId     a node id or a bare class name
+     * @return the AQL paths of the nodes of the template matching nodeId, empty if none
+     */
+    public Set<String> paths(String templateId, NodeId nodeId) {
+        return templates(nodeId).getOrDefault(templateId, Collections.emptySet());
+    }
+
+    private Map<String, Set<String>> templates(NodeId nodeId) {
+        Map<String, Set<String>> templates = nodeId.getNodeId() == null ? byClassName.get(nodeId.getClassName()) : byNodeId.get(nodeId);
+        return templates == null ? Collections.emptyMap() : templates;
+    }
+}
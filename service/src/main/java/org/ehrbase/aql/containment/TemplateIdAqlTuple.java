@@ -14,6 +14,10 @@ public class TemplateIdAqlTuple implements Serializable {
         this.aql = aql;
     }
 
+    public String getTemplateId() {
+        return templateId;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -45,8 +45,8 @@ public class Templates {
             return null;
 
         List<JsonPathQueryResult> jsonPathQueryResults = new ArrayList<>();
-        //traverse the templates and identify the ones satisfying the query
-        for (String templateId : knowledgeCache.getAllTemplateIds()) {
+        //only the templates containing every node of the expression can satisfy it
+        for (String templateId : knowledgeCache.findCandidateTemplates(jsonQueryExpression)) {
             JsonPathQueryResult result = resolveForTemplate(templateId, jsonQueryExpression);
             if (result != null) {
                 jsonPathQueryResults.add(result);
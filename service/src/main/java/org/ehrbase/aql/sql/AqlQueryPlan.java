@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.aql.sql;
+
+import org.ehrbase.aql.definition.I_VariableDefinition;
+import org.ehrbase.aql.sql.postprocessing.RawJsonTransform;
+import org.jooq.Field;
+import org.jooq.Param;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Compiled form of an AQL expression: the rendered SQL, its bind parameters and the selected fields.
+ * <p>
+ * A plan is immutable once built. It keeps the jOOQ {@link Param} and {@link Field} objects of the rendered query, but
+ * not the query itself nor its context. These parts are only read after the compilation: the values of the parameters
+ * are bound to the SQL, and the fields give the columns of the result. So a plan can be shared between threads and
+ * re-executed against any attached context, as long as the parameters are not modified (f.e. by
+ * {@link Param#setValue(Object)}).
+ * <p>
+ * If the query can be partitioned, the plan also holds one plan per template branch of the <code>UNION</code> together
+ * with the way to merge their results, see {@link BranchMerge}.
+ */
+public class AqlQueryPlan {
+
+    private final String sql;
+    private final List<Param<?>> bindings;
+    private final List<Field<?>> fields;
+    private final List<RawJsonTransform.ColumnType> columnTypes;
+    private final String aqlExpression;
+    private final List<I_VariableDefinition> variableDefinitions;
+    private final List<AqlQueryPlan> branches;
+    private final BranchMerge branchMerge;
+    private final List<BranchMerge.SortKey> keyset;
+    private final Integer limit;
+    private final Set<String> templateIds;
+    private final Set<UUID> ehrIds;
+
+    AqlQueryPlan(String sql, List<Param<?>> bindings, List<Field<?>> fields, String aqlExpression, List<I_VariableDefinition> variableDefinitions) {
+        this(sql, bindings, fields, aqlExpression, variableDefinitions, Collections.emptyList(), null, Collections.emptyList(), null, Collections.emptySet(), Collections.emptySet());
+    }
+
+    AqlQueryPlan(String sql, List<Param<?>> bindings, List<Field<?>> fields, String aqlExpression, List<I_VariableDefinition> variableDefinitions, List<AqlQueryPlan> branches, BranchMerge branchMerge, List<BranchMerge.SortKey> keyset, Integer limit, Set<String> templateIds, Set<UUID> ehrIds) {
+        this.sql = sql;
+        this.bindings = Collections.unmodifiableList(new ArrayList<>(bindings));
+        this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+        this.columnTypes = Collections.unmodifiableList(RawJsonTransform.columnTypes(fields));
+        this.aqlExpression = aqlExpression;
+        this.variableDefinitions = Collections.unmodifiableList(new ArrayList<>(variableDefinitions));
+        this.branches = Collections.unmodifiableList(new ArrayList<>(branches));
+        this.branchMerge = branchMerge;
+        this.keyset = Collections.unmodifiableList(new ArrayList<>(keyset));
+        this.limit = limit;
+        this.templateIds = Collections.unmodifiableSet(new LinkedHashSet<>(templateIds));
+        this.ehrIds = Collections.unmodifiableSet(new LinkedHashSet<>(ehrIds));
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public List<Param<?>> getBindings() {
+        return bindings;
+    }
+
+    public List<Field<?>> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return how the JSON values of each result column are transformed
+     */
+    public List<RawJsonTransform.ColumnType> getColumnTypes() {
+        return columnTypes;
+    }
+
+    public String getAqlExpression() {
+        return aqlExpression;
+    }
+
+    public List<I_VariableDefinition> getVariableDefinitions() {
+        return variableDefinitions;
+    }
+
+    /**
+     * @return true if the template branches of the query can be executed separately
+     */
+    public boolean isPartitioned() {
+        return branchMerge != null && branches.size() > 1;
+    }
+
+    public List<AqlQueryPlan> getBranches() {
+        return branches;
+    }
+
+    public BranchMerge getBranchMerge() {
+        return branchMerge;
+    }
+
+    /**
+     * @return the ORDER BY columns if the query can be paginated by keyset, empty otherwise
+     */
+    public List<BranchMerge.SortKey> getKeyset() {
+        return keyset;
+    }
+
+    /**
+     * @return the LIMIT (or TOP) of the query, null if none
+     */
+    public Integer getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the templates the CONTAINS clause resolved to, {@link QueryProcessor#NIL_TEMPLATE} if the query is not
+     * restricted to compositions of given templates
+     */
+    public Set<String> getTemplateIds() {
+        return templateIds;
+    }
+
+    /**
+     * @return the EHRs the query is restricted to, empty if not restricted, see {@link org.ehrbase.aql.compiler.Statements#getPinnedEhrIds()}
+     */
+    public Set<UUID> getEhrIds() {
+        return ehrIds;
+    }
+}
@@ -21,31 +21,39 @@ package org.ehrbase.aql.sql;
 import org.jooq.Record;
 import org.jooq.Result;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 /**
  * Wrapper calls for a query result
  */
 public class AqlResult {
     private final Result<Record> records;
-    private final List<List<String>> explain;
+    private final QueryDiagnostics diagnostics;
     private Map<String, String> aqlColumns;
     private Map<String, Set<Object>> auditResultMap = new HashMap<>();
+    private String continuationToken;
+    private Set<String> templateIds = Collections.emptySet();
+    private Set<UUID> ehrIds = Collections.emptySet();
 
-    AqlResult(Result<Record> records, List<List<String>> explain) {
+    AqlResult(Result<Record> records, QueryDiagnostics diagnostics) {
         this.records = records;
-        this.explain = explain;
+        this.diagnostics = diagnostics;
     }
 
     public Result<Record> getRecords() {
         return records;
     }
 
+    /**
+     * @return the query diagnostics if requested, null otherwise
+     */
     public List<List<String>> getExplain() {
-        return explain;
+        return diagnostics == null ? null : diagnostics.toExplain();
     }
 
     public Map<String, String> getVariables() {
@@ -65,13 +73,56 @@ public class AqlResult {
         return auditResultMap;
     }
 
+    /**
+     * @return the token to retrieve the next page of a query paginated by keyset, null if none
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+
+    /**
+     * @return the templates the query was resolved to, see {@link AqlQueryPlan#getTemplateIds()}
+     */
+    public Set<String> getTemplateIds() {
+        return templateIds;
+    }
+
+    public void setTemplateIds(Set<String> templateIds) {
+        this.templateIds = templateIds;
+    }
+
+    /**
+     * @return the EHRs the query is restricted to, see {@link AqlQueryPlan#getEhrIds()}
+     */
+    public Set<UUID> getEhrIds() {
+        return ehrIds;
+    }
+
+    public void setEhrIds(Set<UUID> ehrIds) {
+        this.ehrIds = ehrIds;
+    }
+
 
     public boolean variablesContains(String fieldName){
-        if (aqlColumns.containsKey(fieldName))
+        return variablesContains(aqlColumns, fieldName);
+    }
+
+    /**
+     * check whether a result field is a (non hidden) variable, either by its alias or its path
+     * @param variables the variables as name -> path
+     * @param fieldName the name of the result field
+     * @return true if the field is a variable
+     */
+    public static boolean variablesContains(Map<String, String> variables, String fieldName){
+        if (variables.containsKey(fieldName))
             return true;
 
         //else iterate on values
-        for (String value: aqlColumns.values()){
+        for (String value: variables.values()){
             if (value.equals(fieldName))
                 return true;
         }
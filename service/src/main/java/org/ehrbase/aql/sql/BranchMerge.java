@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.aql.sql;
+
+import org.jooq.Record;
+
+import java.math.BigDecimal;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Merge the partial results of the template branches of a query executed separately.
+ * <p>
+ * The branches are the members of a <code>UNION</code>, each one is expected to be distinct and, if the query defines
+ * an ORDER BY, sorted and limited to <code>offset + limit</code> rows. The merge removes the duplicates across
+ * branches, performs a k-way merge on the sort keys and re-applies the offset and limit of the query.
+ * </p>
+ * <p>
+ * Sort values are compared in Java with the PostgreSQL conventions (NULLS LAST when ascending, NULLS FIRST when
+ * descending). Only numbers, booleans and date/time values can be compared consistently with the database: text
+ * ordering depends on the database collation. A query is therefore only partitioned when the columns it is sorted on
+ * have such a type (see {@link #isComparableType(Class)}), this is decided when it is compiled.
+ * </p>
+ */
+public class BranchMerge {
+
+    public static class SortKey {
+        private final String column;
+        private final boolean descending;
+
+        public SortKey(String column, boolean descending) {
+            this.column = column;
+            this.descending = descending;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+    }
+
+    private final List<SortKey> sortKeys;
+    private final Integer offset;
+    private final Integer limit;
+
+    public BranchMerge(List<SortKey> sortKeys, Integer offset, Integer limit) {
+        this.sortKeys = Collections.unmodifiableList(new ArrayList<>(sortKeys));
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    public List<SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    public Integer getOffset() {
+        return offset;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of rows a branch has to return for the merge to be complete, null if unlimited
+     */
+    public Integer branchRowCount() {
+        if (limit == null)
+            return null;
+        return (offset == null ? 0 : offset) + limit;
+    }
+
+    /**
+     * merge the branch results
+     *
+     * @param partials the records of each branch, in branch order
+     * @return the merged records
+     */
+    public List<Record> merge(List<? extends List<Record>> partials) {
+        List<Record> merged = new ArrayList<>();
+        Set<List<Object>> seen = new HashSet<>();
+        int skip = offset == null ? 0 : offset;
+
+        Comparator<Record> recordComparator = recordComparator();
+        Comparator<int[]> cursorComparator = (a, b) -> {
+            int compare = recordComparator.compare(partials.get(a[0]).get(a[1]), partials.get(b[0]).get(b[1]));
+            //stable: on equal keys, the first branch wins
+            return compare != 0 ? compare : Integer.compare(a[0], b[0]);
+        };
+
+        //each cursor is {branch index, position in branch}
+        PriorityQueue<int[]> cursors = new PriorityQueue<>(Math.max(1, partials.size()), cursorComparator);
+        for (int i = 0; i < partials.size(); i++) {
+            if (!partials.get(i).isEmpty())
+                cursors.add(new int[]{i, 0});
+        }
+
+        while (!cursors.isEmpty() && (limit == null || merged.size() < limit)) {
+            int[] cursor = cursors.poll();
+            Record record = partials.get(cursor[0]).get(cursor[1]);
+
+            if (seen.add(record.intoList())) {
+                if (skip > 0)
+                    skip--;
+                else
+                    merged.add(record);
+            }
+
+            if (++cursor[1] < partials.get(cursor[0]).size())
+                cursors.add(cursor);
+        }
+
+        return merged;
+    }
+
+    private Comparator<Record> recordComparator() {
+        return (a, b) -> {
+            for (SortKey sortKey : sortKeys) {
+                int compare = compareValues(a.get(sortKey.getColumn()), b.get(sortKey.getColumn()));
+                if (compare != 0)
+                    return sortKey.isDescending() ? -compare : compare;
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * @param type the type of a sort column
+     * @return true if its values are compared in Java the same way as in the database
+     */
+    public static boolean isComparableType(Class<?> type) {
+        return Number.class.isAssignableFrom(type)
+                || Boolean.class.equals(type)
+                || Date.class.isAssignableFrom(type)
+                || (Temporal.class.isAssignableFrom(type) && Comparable.class.isAssignableFrom(type));
+    }
+
+    /**
+     * compare two sort values, a null value is greater than any value (PostgreSQL default)
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compareValues(Object a, Object b) {
+        if (a == null || b == null)
+            return a == null ? (b == null ? 0 : 1) : -1;
+
+        if (a instanceof Number && b instanceof Number && !a.getClass().equals(b.getClass()))
+            return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+
+        return ((Comparable) a).compareTo(b);
+    }
+}
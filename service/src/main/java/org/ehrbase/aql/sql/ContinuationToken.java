@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.aql.sql;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import org.jooq.JSON;
+import org.jooq.JSONB;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Opaque token identifying the position of a page in a query paginated by keyset: it holds the ORDER BY values of the
+ * last row returned, and a hash of the query it was issued for.
+ * <p>
+ * The values keep their JSON type: numbers and booleans as such, date/times as ISO-8601 (with the offset of the
+ * instant for a timestamp), anything else as text. They are converted back to the type of their column when the next
+ * page is compiled, see {@link org.ehrbase.aql.sql.binding.LimitBinding#keysetCondition}.
+ * </p>
+ */
+public class ContinuationToken {
+
+    private static final Gson gson = new Gson();
+
+    private final String q;
+    private final List<JsonElement> k;
+
+    private ContinuationToken(String q, List<JsonElement> k) {
+        this.q = q;
+        this.k = k;
+    }
+
+    /**
+     * @param query        the normalized AQL expression
+     * @param keysetValues the ORDER BY values of the last row of the page
+     * @return the token
+     */
+    public static String encode(String query, List<Object> keysetValues) {
+        List<JsonElement> values = new ArrayList<>();
+        for (Object value : keysetValues) {
+            values.add(encodeValue(value));
+        }
+        String json = gson.toJson(new ContinuationToken(queryHash(query), values));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token the token returned with the previous page
+     * @param query the normalized AQL expression, must be the one the token was issued for
+     * @return the ORDER BY values of the last row of the previous page: null, a BigDecimal, a Boolean or a String
+     * @throws IllegalArgumentException if the token is malformed or was issued for another query
+     */
+    public static List<Object> decode(String token, String query) {
+        ContinuationToken continuationToken;
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            continuationToken = gson.fromJson(json, ContinuationToken.class);
+        } catch (IllegalArgumentException | JsonParseException e) {
+            throw new IllegalArgumentException("Invalid continuation token:" + token);
+        }
+
+        if (continuationToken == null || continuationToken.k == null || !queryHash(query).equals(continuationToken.q))
+            throw new IllegalArgumentException("Continuation token does not match the query:" + token);
+
+        List<Object> values = new ArrayList<>();
+        for (JsonElement value : continuationToken.k) {
+            values.add(decodeValue(value));
+        }
+        return values;
+    }
+
+    private static JsonElement encodeValue(Object value) {
+        if (value == null)
+            return JsonNull.INSTANCE;
+        if (value instanceof Number)
+            return new JsonPrimitive((Number) value);
+        if (value instanceof Boolean)
+            return new JsonPrimitive((Boolean) value);
+        if (value instanceof java.sql.Date)
+            return new JsonPrimitive(((java.sql.Date) value).toLocalDate().toString());
+        if (value instanceof Date)
+            return new JsonPrimitive(OffsetDateTime.ofInstant(((Date) value).toInstant(), ZoneId.systemDefault()).toString());
+        if (value instanceof Temporal)
+            return new JsonPrimitive(value.toString());
+        if (value instanceof JSONB)
+            return new JsonPrimitive(((JSONB) value).data());
+        if (value instanceof JSON)
+            return new JsonPrimitive(((JSON) value).data());
+        return new JsonPrimitive(value.toString());
+    }
+
+    private static Object decodeValue(JsonElement value) {
+        if (value == null || value.isJsonNull())
+            return null;
+        if (!value.isJsonPrimitive())
+            throw new IllegalArgumentException("Invalid continuation token value:" + value);
+
+        JsonPrimitive primitive = value.getAsJsonPrimitive();
+        if (primitive.isNumber())
+            return primitive.getAsBigDecimal();
+        if (primitive.isBoolean())
+            return primitive.getAsBoolean();
+        return primitive.getAsString();
+    }
+
+    private static String queryHash(String query) {
+        return Integer.toHexString(query.hashCode());
+    }
+}
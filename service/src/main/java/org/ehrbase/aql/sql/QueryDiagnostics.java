@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.aql.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Diagnostics of a single AQL query execution, only computed on request (explain).
+ * <p>
+ * Collects the generated SQL with its parameters, the PostgreSQL execution plan (<code>EXPLAIN (ANALYZE, BUFFERS)</code>)
+ * and the time spent in each processing stage. A disabled instance just runs the stages.
+ * </p>
+ * <p>
+ * The plan is obtained by executing the query a second time, after the execution returning the rows: its duration is
+ * reported as the separate {@link #EXPLAIN_ANALYZE} stage, {@link #EXECUTION} only covers the first execution.
+ * </p>
+ */
+public class QueryDiagnostics {
+
+    public static final String PARSE = "parse";
+    public static final String CONTAINMENT = "containment resolution";
+    public static final String COMPILE = "compile";
+    public static final String SQL_BUILD = "SQL build";
+    public static final String EXECUTION = "execution";
+    public static final String JSON_TRANSFORM = "JSON transform";
+    public static final String EXPLAIN_ANALYZE = "EXPLAIN ANALYZE (second execution)";
+
+    private static final QueryDiagnostics DISABLED = new QueryDiagnostics(false);
+
+    private final boolean enabled;
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+    private List<String> sqlDetails = Collections.emptyList();
+    private List<String> executionPlan = Collections.emptyList();
+
+    private QueryDiagnostics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public static QueryDiagnostics enabled() {
+        return new QueryDiagnostics(true);
+    }
+
+    public static QueryDiagnostics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * run a processing stage, its duration is added to the stage total
+     */
+    public <T> T time(String stage, Supplier<T> supplier) {
+        if (!enabled)
+            return supplier.get();
+
+        long start = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            timings.merge(stage, System.nanoTime() - start, Long::sum);
+        }
+    }
+
+    public void run(String stage, Runnable runnable) {
+        time(stage, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * @param sql        the rendered SQL
+     * @param parameters the bind parameter values
+     */
+    public void setSql(String sql, List<String> parameters) {
+        List<String> details = new ArrayList<>();
+        details.add(sql);
+        details.addAll(parameters);
+        this.sqlDetails = details;
+    }
+
+    public void setExecutionPlan(List<String> executionPlan) {
+        this.executionPlan = executionPlan;
+    }
+
+    public Map<String, Long> getTimings() {
+        return Collections.unmodifiableMap(timings);
+    }
+
+    /**
+     * format the diagnostics for the query response: the generated SQL followed by its parameters, the lines of the
+     * execution plan, then the duration of each stage in ms.
+     *
+     * @return the explain details or null if not enabled
+     */
+    public List<List<String>> toExplain() {
+        if (!enabled)
+            return null;
+
+        List<String> stageTimings = new ArrayList<>();
+        for (Map.Entry<String, Long> timing : timings.entrySet()) {
+            stageTimings.add(String.format(Locale.ROOT, "%s: %.3f ms", timing.getKey(), timing.getValue() / 1e6));
+        }
+
+        List<List<String>> explain = new ArrayList<>();
+        explain.add(sqlDetails);
+        explain.add(executionPlan);
+        explain.add(stageTimings);
+        return explain;
+    }
+}
@@ -22,6 +22,7 @@
 
 package org.ehrbase.aql.sql;
 
+import org.apache.commons.lang3.StringUtils;
 import org.ehrbase.aql.compiler.Contains;
 import org.ehrbase.aql.compiler.Statements;
 import org.ehrbase.aql.compiler.TopAttributes;
@@ -40,6 +41,10 @@ import org.jooq.conf.Settings;
 import org.jooq.impl.DSL;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import static org.ehrbase.jooq.pg.Tables.ENTRY;
 
@@ -69,12 +74,22 @@ public class QueryProcessor extends TemplateMetaData {
         private final SelectQuery<Record> selectQuery;
         private final Collection<List<QuerySteps>> querySteps;
         private boolean outputWithJson;
+        private final List<AqlQueryPlan> branches;
+        private final BranchMerge branchMerge;
+        private final List<BranchMerge.SortKey> keyset;
+        private final Integer limit;
+        private final Set<String> templateIds;
 
 
-        AqlSelectQuery(SelectQuery<Record> selectQuery, Collection<List<QuerySteps>> querySteps, boolean outputWithJson) {
+        AqlSelectQuery(SelectQuery<Record> selectQuery, Collection<List<QuerySteps>> querySteps, boolean outputWithJson, List<AqlQueryPlan> branches, BranchMerge branchMerge, List<BranchMerge.SortKey> keyset, Integer limit, Set<String> templateIds) {
             this.selectQuery = selectQuery;
             this.querySteps = querySteps;
             this.outputWithJson = outputWithJson;
+            this.branches = branches;
+            this.branchMerge = branchMerge;
+            this.keyset = keyset;
+            this.limit = limit;
+            this.templateIds = templateIds;
         }
 
         public SelectQuery<Record> getSelectQuery() {
@@ -88,6 +103,26 @@ public class QueryProcessor extends TemplateMetaData {
         Collection<List<QuerySteps>> getQuerySteps() {
             return querySteps;
         }
+
+        List<AqlQueryPlan> getBranches() {
+            return branches;
+        }
+
+        BranchMerge getBranchMerge() {
+            return branchMerge;
+        }
+
+        List<BranchMerge.SortKey> getKeyset() {
+            return keyset;
+        }
+
+        Integer getLimit() {
+            return limit;
+        }
+
+        Set<String> getTemplateIds() {
+            return templateIds;
+        }
     }
 
     private final I_DomainAccess domainAccess;
@@ -95,6 +130,8 @@ public class QueryProcessor extends TemplateMetaData {
     private Statements statements;
     private final String serverNodeId;
     private JoinSetup joinSetup = new JoinSetup();
+    private boolean partitionBranches = false;
+    private List<Object> keysetValues;
 
     public QueryProcessor(I_DomainAccess domainAccess, IntrospectService introspectCache, Contains contains, Statements statements, String serverNodeId) {
         super(introspectCache);
@@ -105,17 +142,145 @@ public class QueryProcessor extends TemplateMetaData {
     }
 
 
+    /**
+     * @param partitionBranches if true, the compiled plan also holds a plan for each template branch when the query
+     *                          can be partitioned, see {@link #executeBranches(I_DomainAccess, AqlQueryPlan, ExecutorService)}
+     */
+    public void setPartitionBranches(boolean partitionBranches) {
+        this.partitionBranches = partitionBranches;
+    }
+
+    /**
+     * @param keysetValues the ORDER BY values of the last row of the previous page when the query is paginated by
+     *                     keyset (see {@link ContinuationToken}), null otherwise
+     */
+    public void setKeysetValues(List<Object> keysetValues) {
+        this.keysetValues = keysetValues;
+    }
+
     public AqlResult execute() {
+        return execute(domainAccess, compile(), QueryDiagnostics.disabled(), null);
+    }
+
+    public AqlQueryPlan compile() {
+        return compile(QueryDiagnostics.disabled());
+    }
+
+    /**
+     * build the SQL query and render it into a reusable plan. The plan keeps the rendered SQL, the bind parameters
+     * and the selected fields, so that it can be executed again without going through the AQL compilation.
+     *
+     * @param diagnostics receives the formatted SQL and its parameters if enabled
+     * @return the compiled query plan
+     */
+    public AqlQueryPlan compile(QueryDiagnostics diagnostics) {
+        Set<UUID> ehrIds = statements.getPinnedEhrIds();
         AqlSelectQuery aqlSelectQuery = buildAqlSelectQuery();
+        SelectQuery<Record> selectQuery = aqlSelectQuery.getSelectQuery();
+
+        List<Param<?>> bindings = bindings(selectQuery);
+
+        List<I_VariableDefinition> variableDefinitions = new ArrayList<>();
+        statements.getVariables().iterator().forEachRemaining(variableDefinitions::add);
+
+        if (diagnostics.isEnabled())
+            buildExplain(selectQuery, diagnostics);
+
+        return new AqlQueryPlan(
+                selectQuery.getSQL(),
+                bindings,
+                selectQuery.getSelect(),
+                statements.getParsedExpression(),
+                variableDefinitions,
+                aqlSelectQuery.getBranches(),
+                aqlSelectQuery.getBranchMerge(),
+                aqlSelectQuery.getKeyset(),
+                aqlSelectQuery.getLimit(),
+                aqlSelectQuery.getTemplateIds(),
+                ehrIds);
+    }
 
-        Result<Record> result = fetchResultSet(aqlSelectQuery.getSelectQuery(), null);
+    /**
+     * execute a compiled plan
+     *
+     * @param domainAccess the access providing the context to run the query with
+     * @param queryPlan    the plan as returned by {@link #compile()}
+     * @param diagnostics  records the execution and transform timings and the PostgreSQL plan if enabled
+     * @param executor     transforms the JSON values of a large result in parallel, null to transform on the calling
+     *                     thread
+     * @return the query result
+     */
+    public static AqlResult execute(I_DomainAccess domainAccess, AqlQueryPlan queryPlan, QueryDiagnostics diagnostics, ExecutorService executor) {
+        Result<Record> result = diagnostics.time(QueryDiagnostics.EXECUTION, () -> fetchResultSet(domainAccess, queryPlan));
 
         //if any jsonb data field transform them into raw json
-        RawJsonTransform.toRawJson(result);
+        diagnostics.run(QueryDiagnostics.JSON_TRANSFORM, () -> RawJsonTransform.toRawJson(result, queryPlan.getColumnTypes(), executor));
 
-        List<List<String>> explainList = buildExplain(aqlSelectQuery.getSelectQuery());
+        if (!diagnostics.isEnabled())
+            return new AqlResult(result, null);
 
-        return new AqlResult(result, explainList);
+        diagnostics.setExecutionPlan(diagnostics.time(QueryDiagnostics.EXPLAIN_ANALYZE, () -> explainAnalyze(domainAccess, queryPlan)));
+        return new AqlResult(result, diagnostics);
+    }
+
+    /**
+     * execute the template branches of a partitioned plan concurrently and merge their results, see {@link BranchMerge}.
+     * The branches run outside of the calling thread, hence each one on its own pooled connection and outside of any
+     * transaction of the caller.
+     *
+     * @param domainAccess the access providing the context to run the query with
+     * @param queryPlan    a partitioned plan, see {@link AqlQueryPlan#isPartitioned()}
+     * @param executor     the executor running the branches and transforming the JSON values of a large result, its
+     *                     pool size bounds the degree of parallelism
+     * @return the query result
+     */
+    public static AqlResult executeBranches(I_DomainAccess domainAccess, AqlQueryPlan queryPlan, ExecutorService executor) {
+        List<Future<Result<Record>>> futures = new ArrayList<>();
+        for (AqlQueryPlan branch : queryPlan.getBranches()) {
+            futures.add(executor.submit(() -> fetchResultSet(domainAccess, branch)));
+        }
+
+        List<Result<Record>> partials = new ArrayList<>();
+        try {
+            for (Future<Result<Record>> future : futures) {
+                partials.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while executing query branches, AQL expression:" + queryPlan.getAqlExpression(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw queryFailure(queryPlan, e);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        List<Record> merged = queryPlan.getBranchMerge().merge(partials);
+
+        Result<Record> result = domainAccess.getContext().newResult(queryPlan.getFields().toArray(new Field<?>[0]));
+        result.addAll(merged);
+
+        //if any jsonb data field transform them into raw json
+        RawJsonTransform.toRawJson(result, queryPlan.getColumnTypes(), executor);
+
+        return new AqlResult(result, null);
+    }
+
+    /**
+     * run the plan with EXPLAIN (ANALYZE, BUFFERS). NB. the query is actually executed, a second time after the
+     * execution returning the rows.
+     */
+    private static List<String> explainAnalyze(I_DomainAccess domainAccess, AqlQueryPlan queryPlan) {
+        List<String> planLines = new ArrayList<>();
+        try {
+            for (Record planLine : domainAccess.getContext().resultQuery("EXPLAIN (ANALYZE, BUFFERS) " + queryPlan.getSql(), queryPlan.getBindings().toArray()).fetch()) {
+                planLines.add(planLine.get(0, String.class));
+            }
+        } catch (Exception e) {
+            throw queryFailure(queryPlan, e);
+        }
+        return planLines;
     }
 
     public AqlSelectQuery buildAqlSelectQuery() {
@@ -138,9 +303,8 @@ public class QueryProcessor extends TemplateMetaData {
             }
         }
 
-        //assemble the query from the cache
-        SelectQuery unionSetQuery = domainAccess.getContext().selectQuery();
-        boolean first = true;
+        //prepare the selects of each template
+        Map<String, List<SelectQuery<?>>> templateSelects = new LinkedHashMap<>();
 
         for (List<QuerySteps> queryStepList : cacheQuery.values()) {
 
@@ -165,6 +329,43 @@ public class QueryProcessor extends TemplateMetaData {
                 if (condition != null)
                     select.addConditions(Operator.AND, condition);
 
+                templateSelects.computeIfAbsent(queryStep.getTemplateId(), k -> new ArrayList<>()).add(select);
+            }
+
+        }
+
+        Integer limit = Optional
+                .ofNullable(statements.getTopAttributes())
+                .map(TopAttributes::getWindow)
+                .orElse(statements.getLimitAttribute());
+
+        //keyset pagination identifies the rows of a page by their ORDER BY values, followed by a unique row key
+        List<SortField<Object>> orderFields = isKeysetPaginable() ? orderByFields() : Collections.emptyList();
+        if (keysetValues != null && orderFields.isEmpty())
+            throw new IllegalArgumentException("A continuation token requires an AQL query with ORDER BY and without DISTINCT or aggregate function");
+        List<Field<?>> columns = limit == null || templateSelects.isEmpty() ? Collections.emptyList() : unionColumns(templateSelects.values().iterator().next());
+        Field<String> rowKey = orderFields.isEmpty() || columns.isEmpty() ? null : LimitBinding.rowKey(columns);
+        List<BranchMerge.SortKey> keyset = sortKeys(orderFields);
+        if (rowKey != null)
+            keyset.add(new BranchMerge.SortKey(LimitBinding.ROW_KEY, false));
+        Condition keysetCondition = keysetValues == null ? null : keysetCondition(orderFields, columns, rowKey);
+
+        //the branches must be rendered before being assembled into the UNION
+        List<AqlQueryPlan> branches = Collections.emptyList();
+        BranchMerge branchMerge = null;
+        if (isPartitionable(templateSelects, limit, orderFields)) {
+            branchMerge = new BranchMerge(keyset, statements.getOffsetAttribute(), limit);
+            branches = buildBranches(templateSelects, branchMerge, keysetCondition, rowKey);
+        }
+
+        //assemble the query from the cache
+        SelectQuery unionSetQuery = domainAccess.getContext().selectQuery();
+        boolean first = true;
+
+        for (List<SelectQuery<?>> selects : templateSelects.values()) {
+
+            for (SelectQuery select : selects) {
+
                 if (first) {
                     unionSetQuery = select;
                     first = false;
@@ -187,17 +388,170 @@ public class QueryProcessor extends TemplateMetaData {
         } else if (statements.getOrderAttributes() != null && !statements.getOrderAttributes().isEmpty()) {
             unionSetQuery = superQuery.selectOrderBy(statements.getOrderAttributes());
             containsJson = superQuery.isOutputWithJson();
+            if (rowKey != null)
+                addRowKey(unionSetQuery, columns, rowKey);
         }
 
         // Add Top , Limit or Offset; Top and Limit can not be both present.
-        LimitBinding limitBinding = new LimitBinding(Optional
-                .ofNullable(statements.getTopAttributes())
-                .map(TopAttributes::getWindow)
-                .orElse(statements.getLimitAttribute()), statements.getOffsetAttribute(), unionSetQuery);
+        LimitBinding limitBinding = new LimitBinding(limit, statements.getOffsetAttribute(), unionSetQuery, keysetCondition);
 
         unionSetQuery = limitBinding.bind();
 
-        return new AqlSelectQuery(unionSetQuery, cacheQuery.values(), containsJson);
+        return new AqlSelectQuery(unionSetQuery, cacheQuery.values(), containsJson, branches, branchMerge, keyset, limit, new LinkedHashSet<>(cacheQuery.keySet()));
+    }
+
+    /**
+     * @param selects the selects of a UNION
+     * @return the columns of the UNION (those of its first select) referenced by name with their data type, empty if
+     * one of them is not named
+     */
+    private static List<Field<?>> unionColumns(List<SelectQuery<?>> selects) {
+        List<Field<?>> columns = new ArrayList<>();
+        for (Field<?> field : selects.get(0).getSelect()) {
+            String name = StringUtils.strip(field.getName(), "\"");
+            if (StringUtils.isEmpty(name))
+                return Collections.emptyList();
+            columns.add(DSL.field(DSL.name(name), field.getDataType()));
+        }
+        return columns;
+    }
+
+    /**
+     * the rows following the keyset of the previous page, each value typed as its column, see {@link ContinuationToken}
+     */
+    private Condition keysetCondition(List<SortField<Object>> orderFields, List<Field<?>> columns, Field<String> rowKey) {
+        List<SortField<?>> keysetOrder = new ArrayList<>(orderFields);
+        List<Field<?>> keyFields = new ArrayList<>();
+        for (BranchMerge.SortKey sortKey : sortKeys(orderFields)) {
+            keyFields.add(columns.stream()
+                    .filter(column -> column.getName().equals(sortKey.getColumn()))
+                    .findFirst()
+                    .orElse(DSL.field(DSL.name(sortKey.getColumn()))));
+        }
+        if (rowKey != null) {
+            keysetOrder.add(rowKey.asc());
+            keyFields.add(rowKey);
+        }
+        return LimitBinding.keysetCondition(keysetOrder, keyFields, keysetValues);
+    }
+
+    /**
+     * select the row key besides the columns and order on it last, see {@link LimitBinding#rowKey(List)}. The rows are
+     * made distinct as those of a UNION or of a branch: a single select may return identical rows, which would share
+     * their key and be skipped after a page ending on one of them.
+     */
+    @SuppressWarnings("unchecked")
+    private static void addRowKey(SelectQuery selectQuery, List<Field<?>> columns, Field<String> rowKey) {
+        selectQuery.setDistinct(true);
+        selectQuery.addSelect(columns);
+        selectQuery.addSelect(rowKey.as(LimitBinding.ROW_KEY));
+        selectQuery.addOrderBy(DSL.field(DSL.name(LimitBinding.ROW_KEY)).asc());
+    }
+
+    /**
+     * the template branches can be executed separately if none of the query clauses requires the whole result set
+     * (DISTINCT, aggregate functions), an offset is only used with a limit and the branch results can be merged on the
+     * sort columns in each template (see {@link BranchMerge#isComparableType(Class)})
+     */
+    private boolean isPartitionable(Map<String, List<SelectQuery<?>>> templateSelects, Integer limit, List<SortField<Object>> orderFields) {
+        if (!partitionBranches || templateSelects.size() < 2)
+            return false;
+
+        Variables variables = new Variables(statements.getVariables());
+        if (variables.hasDefinedDistinct() || variables.hasDefinedFunction())
+            return false;
+
+        if (limit == null && statements.getOffsetAttribute() != null)
+            return false;
+
+        for (BranchMerge.SortKey sortKey : sortKeys(orderFields)) {
+            for (List<SelectQuery<?>> selects : templateSelects.values()) {
+                for (SelectQuery<?> select : selects) {
+                    if (!isComparableColumn(select, sortKey.getColumn()))
+                        return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isComparableColumn(SelectQuery<?> select, String column) {
+        for (Field<?> field : select.getSelect()) {
+            if (StringUtils.strip(field.getName(), "\"").equals(column))
+                return BranchMerge.isComparableType(field.getType());
+        }
+        return false;
+    }
+
+    /**
+     * a query can be paginated by keyset if it is ordered and its rows are not computed from the whole result set
+     */
+    private boolean isKeysetPaginable() {
+        if (statements.getOrderAttributes() == null || statements.getOrderAttributes().isEmpty())
+            return false;
+
+        Variables variables = new Variables(statements.getVariables());
+        return !variables.hasDefinedDistinct() && !variables.hasDefinedFunction();
+    }
+
+    private List<SortField<Object>> orderByFields() {
+        return new SuperQuery(domainAccess, statements.getVariables(), null, false).orderByFields(statements.getOrderAttributes());
+    }
+
+    private static List<BranchMerge.SortKey> sortKeys(List<SortField<Object>> orderFields) {
+        List<BranchMerge.SortKey> sortKeys = new ArrayList<>();
+
+        for (SortField<Object> sortField : orderFields) {
+            sortKeys.add(new BranchMerge.SortKey(StringUtils.strip(sortField.getName(), "\""), sortField.getOrder() == SortOrder.DESC));
+        }
+        return sortKeys;
+    }
+
+    /**
+     * render a plan for each template: the UNION of its steps, ordered and limited as required by the merge
+     */
+    private List<AqlQueryPlan> buildBranches(Map<String, List<SelectQuery<?>>> templateSelects, BranchMerge branchMerge, Condition keysetCondition, Field<String> rowKey) {
+        List<I_VariableDefinition> variableDefinitions = new ArrayList<>();
+        statements.getVariables().iterator().forEachRemaining(variableDefinitions::add);
+
+        List<AqlQueryPlan> branches = new ArrayList<>();
+
+        for (List<SelectQuery<?>> selects : templateSelects.values()) {
+            //the step selects are wrapped so that they are not altered by the UNION of the branch
+            SelectQuery<Record> templateQuery = domainAccess.getContext().selectQuery();
+            templateQuery.addFrom(selects.get(0));
+            for (SelectQuery<?> select : selects.subList(1, selects.size())) {
+                SelectQuery<Record> stepQuery = domainAccess.getContext().selectQuery();
+                stepQuery.addFrom(select);
+                templateQuery.union(stepQuery);
+            }
+
+            SelectQuery<Record> branchQuery = new SuperQuery(domainAccess, statements.getVariables(), templateQuery, false)
+                    .selectBranch(statements.getOrderAttributes(), branchMerge.branchRowCount(), keysetCondition);
+            List<Field<?>> fields = new ArrayList<>(selects.get(0).getSelect());
+            if (rowKey != null) {
+                addRowKey(branchQuery, unionColumns(selects), rowKey);
+                fields.add(rowKey.as(LimitBinding.ROW_KEY));
+            }
+
+            branches.add(new AqlQueryPlan(
+                    branchQuery.getSQL(),
+                    bindings(branchQuery),
+                    fields,
+                    statements.getParsedExpression(),
+                    variableDefinitions));
+        }
+
+        return branches;
+    }
+
+    private static List<Param<?>> bindings(Select<?> select) {
+        List<Param<?>> bindings = new ArrayList<>();
+        for (Param<?> param : select.getParams().values()) {
+            if (!param.isInline())
+                bindings.add(param);
+        }
+        return bindings;
     }
 
     private List<QuerySteps> buildQuerySteps(String templateId) {
@@ -287,39 +641,76 @@ public class QueryProcessor extends TemplateMetaData {
         return lateralJoinsList;
     }
 
-    private Result<Record> fetchResultSet(Select<?> select, Result<Record> result) {
-        Result<Record> intermediary;
+    /**
+     * execute a compiled plan using a database cursor: rows are fetched by chunks of <code>fetchSize</code>,
+     * transformed and passed to the consumer one at a time, the result set is never materialized.
+     * <p>
+     * NB. PostgreSQL only honors the fetch size within a transaction (auto-commit off).
+     * </p>
+     *
+     * @param domainAccess the access providing the context to run the query with
+     * @param queryPlan    the plan as returned by {@link #compile()}
+     * @param fetchSize    number of rows retrieved per round trip
+     * @param consumer     the record consumer
+     */
+    public static void stream(I_DomainAccess domainAccess, AqlQueryPlan queryPlan, int fetchSize, Consumer<Record> consumer) {
+        try (Cursor<Record> cursor = openCursor(domainAccess, queryPlan, fetchSize)) {
+            while (true) {
+                Record record;
+                try {
+                    record = cursor.fetchNext();
+                } catch (Exception e) {
+                    throw queryFailure(queryPlan, e);
+                }
+                if (record == null)
+                    break;
+
+                //if any jsonb data field transform them into raw json
+                RawJsonTransform.toRawJson(record, queryPlan.getColumnTypes());
+                consumer.accept(record);
+            }
+        }
+    }
+
+    private static Cursor<Record> openCursor(I_DomainAccess domainAccess, AqlQueryPlan queryPlan, int fetchSize) {
         try {
-            intermediary = (Result<Record>) select.fetch();
+            return resultQuery(domainAccess, queryPlan).fetchSize(fetchSize).fetchLazy();
         } catch (Exception e) {
-
-            String reason = "Could not perform SQL query:" + e.getCause() +
-                    ", AQL expression:" +
-                    statements.getParsedExpression() +
-                    ", Translated SQL:" +
-                    select.getSQL();
-            throw new IllegalArgumentException(reason);
+            throw queryFailure(queryPlan, e);
         }
-        if (result != null) {
-            result.addAll(intermediary);
-        } else if (intermediary != null) {
-            result = intermediary;
+    }
+
+    private static ResultQuery<Record> resultQuery(I_DomainAccess domainAccess, AqlQueryPlan queryPlan) {
+        return domainAccess.getContext()
+                .resultQuery(queryPlan.getSql(), queryPlan.getBindings().toArray())
+                .coerce(queryPlan.getFields().toArray(new Field<?>[0]));
+    }
+
+    private static Result<Record> fetchResultSet(I_DomainAccess domainAccess, AqlQueryPlan queryPlan) {
+        try {
+            return resultQuery(domainAccess, queryPlan).fetch();
+        } catch (Exception e) {
+            throw queryFailure(queryPlan, e);
         }
-        return result;
     }
 
-    private List<List<String>> buildExplain(Select<?> select) {
-        List<List<String>> explainList = new ArrayList<>();
+    private static IllegalArgumentException queryFailure(AqlQueryPlan queryPlan, Exception e) {
+        String reason = "Could not perform SQL query:" + e.getCause() +
+                ", AQL expression:" +
+                queryPlan.getAqlExpression() +
+                ", Translated SQL:" +
+                queryPlan.getSql();
+        return new IllegalArgumentException(reason);
+    }
 
+    private void buildExplain(Select<?> select, QueryDiagnostics diagnostics) {
         DSLContext pretty = DSL.using(domainAccess.getContext().dialect(), new Settings().withRenderFormatted(true));
         String sql = pretty.render(select);
-        List<String> details = new ArrayList<>();
-        details.add(sql);
+        List<String> parameters = new ArrayList<>();
         for (Param<?> parameter : select.getParams().values()) {
-            details.add(parameter.getValue().toString());
+            parameters.add(String.valueOf(parameter.getValue()));
         }
-        explainList.add(details);
-        return explainList;
+        diagnostics.setSql(sql, parameters);
     }
 
     private List<QuerySteps> buildNullSelect(String templateId) {
@@ -18,7 +18,26 @@
 
 package org.ehrbase.aql.sql.binding;
 
+import org.jooq.Condition;
+import org.jooq.DataType;
+import org.jooq.Field;
+import org.jooq.JSON;
+import org.jooq.JSONB;
+import org.jooq.QueryPart;
 import org.jooq.SelectQuery;
+import org.jooq.SortField;
+import org.jooq.SortOrder;
+import org.jooq.exception.DataTypeException;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.StringJoiner;
 
 /**
  * Created by christian on 4/27/2018.
@@ -26,22 +45,131 @@ import org.jooq.SelectQuery;
 @SuppressWarnings({"java:S3776","java:S3740","java:S1452"})
 public class LimitBinding {
 
+    /**
+     * name of the column added to the queries paginated by keyset, see {@link #rowKey(List)}
+     */
+    public static final String ROW_KEY = "_ROW_KEY";
+
     private SelectQuery selectQuery;
     private final Integer limitAttribute;
     private final Integer offsetAttribute;
+    private final Condition keysetCondition;
 
     public LimitBinding(Integer limitAttribute, Integer offsetAttribute, SelectQuery selectQuery) {
+        this(limitAttribute, offsetAttribute, selectQuery, null);
+    }
+
+    /**
+     * @param keysetCondition the rows following the previous page (keyset pagination, see
+     *                        {@link #keysetCondition(List, List, List)}), null if the query is not paginated by keyset
+     */
+    public LimitBinding(Integer limitAttribute, Integer offsetAttribute, SelectQuery selectQuery, Condition keysetCondition) {
         this.selectQuery = selectQuery;
         this.limitAttribute = limitAttribute;
         this.offsetAttribute = offsetAttribute;
+        this.keysetCondition = keysetCondition;
     }
 
     public SelectQuery bind() {
 
+        if (keysetCondition != null) {
+            selectQuery.addConditions(keysetCondition);
+        }
+
         if (limitAttribute != null || offsetAttribute != null) {
             selectQuery.addLimit(offsetAttribute == null ? 0 : offsetAttribute,
                     limitAttribute == null ? 0 : limitAttribute);
         }
         return selectQuery;
     }
+
+    /**
+     * A key unique to each row of a query (the query must select distinct rows), used as last ORDER BY column of the
+     * queries paginated by keyset so that rows with equal ORDER BY values are neither repeated nor skipped across
+     * pages: the md5 of the text of the row, in the "C" collation so that it is ordered the same way in Java.
+     *
+     * @param columns the columns of the rows
+     * @return the key expression
+     */
+    public static Field<String> rowKey(List<? extends Field<?>> columns) {
+        StringJoiner row = new StringJoiner(", ", "md5(cast(row(", ") as text)) collate \"C\"");
+        for (int i = 0; i < columns.size(); i++) {
+            row.add("{" + i + "}");
+        }
+        return DSL.field(row.toString(), SQLDataType.VARCHAR, columns.toArray(new QueryPart[0]));
+    }
+
+    /**
+     * build the predicate selecting the rows following a keyset, that is the rows ordered after the given ORDER BY
+     * values: <code>(a > v1) OR (a = v1 AND b > v2) ...</code>. Nulls are ordered as PostgreSQL does by default
+     * (NULLS LAST when ascending, NULLS FIRST when descending).
+     * <p>
+     * The values are bound with the data type of their field (see {@link org.ehrbase.aql.sql.ContinuationToken} for
+     * their encoding), only the values of untyped fields are inlined as literals resolved by PostgreSQL.
+     * </p>
+     *
+     * @param orderFields  the ORDER BY fields, giving the direction
+     * @param keyFields    the field (or expression) of each ORDER BY field, giving the data type
+     * @param keysetValues the values of the ORDER BY fields of the last row of the previous page
+     * @return the keyset condition
+     */
+    public static Condition keysetCondition(List<? extends SortField<?>> orderFields, List<? extends Field<?>> keyFields, List<Object> keysetValues) {
+        if (orderFields.isEmpty() || orderFields.size() != keysetValues.size() || orderFields.size() != keyFields.size())
+            throw new IllegalArgumentException("Invalid continuation token for this query");
+
+        Condition condition = DSL.falseCondition();
+        Condition previousEqual = DSL.trueCondition();
+
+        for (int i = 0; i < orderFields.size(); i++) {
+            Field<?> field = keyFields.get(i);
+            Object value = keysetValues.get(i);
+            boolean descending = orderFields.get(i).getOrder() == SortOrder.DESC;
+
+            Condition after;
+            Condition equal;
+            if (value == null) {
+                after = descending ? field.isNotNull() : DSL.falseCondition();
+                equal = field.isNull();
+            } else {
+                Field<?> bound = keysetValue(field.getDataType(), value);
+                after = descending ? DSL.condition("{0} < {1}", field, bound) : DSL.condition("{0} > {1}", field, bound).or(field.isNull());
+                equal = DSL.condition("{0} = {1}", field, bound);
+            }
+
+            condition = condition.or(previousEqual.and(after));
+            previousEqual = previousEqual.and(equal);
+        }
+
+        return condition;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Field<?> keysetValue(DataType<?> dataType, Object value) {
+        Class<?> type = dataType.getType();
+        if (Object.class.equals(type))
+            return DSL.inline(value.toString());
+
+        try {
+            Object converted;
+            if (Timestamp.class.equals(type))
+                converted = Timestamp.from(OffsetDateTime.parse(value.toString()).toInstant());
+            else if (OffsetDateTime.class.equals(type))
+                converted = OffsetDateTime.parse(value.toString());
+            else if (LocalDateTime.class.equals(type))
+                converted = LocalDateTime.parse(value.toString());
+            else if (java.sql.Date.class.equals(type))
+                converted = java.sql.Date.valueOf(LocalDate.parse(value.toString()));
+            else if (LocalDate.class.equals(type))
+                converted = LocalDate.parse(value.toString());
+            else if (JSONB.class.equals(type))
+                converted = JSONB.valueOf(value.toString());
+            else if (JSON.class.equals(type))
+                converted = JSON.valueOf(value.toString());
+            else
+                converted = dataType.convert(value);
+            return DSL.val(converted, (DataType<Object>) dataType);
+        } catch (DataTypeException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid continuation token for this query");
+        }
+    }
 }
@@ -29,9 +29,11 @@ import org.ehrbase.aql.definition.I_VariableDefinition;
 import org.ehrbase.aql.definition.Variables;
 import org.ehrbase.aql.sql.queryimpl.DefaultColumnId;
 import org.ehrbase.dao.access.interfaces.I_DomainAccess;
+import org.jooq.Condition;
 import org.jooq.DSLContext;
 import org.jooq.Field;
 import org.jooq.SelectQuery;
+import org.jooq.SortField;
 import org.jooq.impl.DSL;
 
 import java.util.ArrayList;
@@ -171,6 +173,37 @@ public class SuperQuery {
         return new OrderByBinder(variableDefinitions, orderAttributes, selectQuery).bind();
     }
 
+    public List<SortField<Object>> orderByFields(List<OrderAttribute> orderAttributes) {
+        return new OrderByBinder(variableDefinitions, orderAttributes, null).getOrderByFields();
+    }
+
+    /**
+     * wrap a template branch to be executed on its own: rows are distinct as in the UNION of all branches and, if
+     * required, ordered and limited to the rows which can be part of the final result.
+     *
+     * @param condition an optional condition on the rows of the branch (f.e. a keyset), may be null
+     */
+    @SuppressWarnings("unchecked")
+    public SelectQuery selectBranch(List<OrderAttribute> orderAttributes, Integer rowCount, Condition condition) {
+
+        SelectQuery selectQuery = context.selectQuery();
+
+        selectQuery.setDistinct(true);
+
+        selectQuery.addFrom(query);
+
+        if (condition != null)
+            selectQuery.addConditions(condition);
+
+        if (orderAttributes != null && !orderAttributes.isEmpty())
+            selectQuery = setOrderBy(orderAttributes, selectQuery);
+
+        if (rowCount != null)
+            selectQuery.addLimit(rowCount);
+
+        return selectQuery;
+    }
+
     public SelectQuery select() {
 
         SelectQuery selectQuery = context.selectQuery();
@@ -22,18 +22,32 @@
 package org.ehrbase.aql.sql.postprocessing;
 
 import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.ehrbase.serialisation.dbencoding.rawjson.LightRawJsonEncoder;
 import org.jooq.Field;
+import org.jooq.JSON;
 import org.jooq.JSONB;
 import org.jooq.Record;
 import org.jooq.Result;
 
-import jakarta.json.Json;
-import jakarta.json.JsonException;
-import jakarta.json.JsonReader;
+import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
+ * Transform the JSON values of a result set from their DB encoding into raw json.
+ * <p>
+ * Which columns are transformed is decided once per query from the data type of the selected SQL fields, see
+ * {@link #columnTypes(List)}: only JSON columns and text columns (f.e. a path extracted as text) are considered, and
+ * each JSON value is parsed only once, by the encoder. Large results are transformed in chunks on the given executor
+ * (the pool of the AQL branches).
+ * </p>
  * Created by christian on 2/21/2017.
  */
 @SuppressWarnings({"unchecked","java:S3776"})
@@ -42,56 +56,159 @@ public class RawJsonTransform implements IRawJsonTransform {
     public static final String TEMPLATE_ID = "_TEMPLATE_ID";
     public static final String ARRAY_MARKER = "$array$";
 
+    //number of rows from which the records are transformed in parallel, also the size of the chunks
+    static final int PARALLEL_THRESHOLD = 1000;
+
+    /**
+     * how the values of a result column are transformed
+     */
+    public enum ColumnType {
+        //a JSON value (jsonb), always transformed
+        JSON,
+        //a text value which may hold JSON, transformed if it is a JSON object or array
+        TEXT,
+        //never holds JSON (numeric, boolean, temporal...)
+        SCALAR
+    }
+
     private RawJsonTransform(){}
 
+    /**
+     * @param fields the selected fields of a query
+     * @return the type of each column, in field order
+     */
+    public static List<ColumnType> columnTypes(List<? extends Field<?>> fields) {
+        List<ColumnType> columnTypes = new ArrayList<>(fields.size());
+        for (Field<?> field : fields) {
+            columnTypes.add(columnType(field));
+        }
+        return columnTypes;
+    }
+
+    private static ColumnType columnType(Field<?> field) {
+        Class<?> type = field.getType();
+        if (JSONB.class.equals(type) || JSON.class.equals(type))
+            return ColumnType.JSON;
+        if (String.class.equals(type) || Object.class.equals(type))
+            return ColumnType.TEXT;
+        return ColumnType.SCALAR;
+    }
+
+    private static boolean hasJsonColumn(List<ColumnType> columnTypes) {
+        return columnTypes.contains(ColumnType.JSON) || columnTypes.contains(ColumnType.TEXT);
+    }
+
     public static void toRawJson(Result<Record> result) {
 
         if (result.isEmpty())
             return;
 
-        for (Record record : result) {
-
-            for (Field field : record.fields()) {
-                //get associated value
-                if (record.getValue(field) instanceof String || record.getValue(field) instanceof JSONB) {
-                    String value = record.getValue(field).toString();
-                    String jsonbOrigin = null;
-                    if (value.startsWith("[")) {
-                        //check if this is a valid array
-                        JsonReader jsonReader =  Json.createReader(new StringReader(value));
-                        try {
-                            jsonReader.readArray();
-                            jsonbOrigin = "{\"$array$\":" + value + "}";
-                        } catch (JsonException e) {
-                            //not a json array, do nothing
-                        }
-                        finally {
-                            jsonReader.close();
-                        }
-                    } else if (value.startsWith("{")) {
-                        JsonReader jsonReader =  Json.createReader(new StringReader(value));
-                        try {
-                            jsonReader.readObject();
-                            jsonbOrigin = value;
-                        } catch (JsonException e) {
-                            //not a json object, do nothing
-                        }
-                        finally {
-                            jsonReader.close();
-                        }
-                    }
-                    //apply the transformation
-                    if (jsonbOrigin != null) {
-                        JsonElement jsonElement = new LightRawJsonEncoder(jsonbOrigin).encodeContentAsJson(null);
-                        if (jsonElement.getAsJsonObject().has(ARRAY_MARKER)) {
-                            jsonElement = jsonElement.getAsJsonObject().getAsJsonArray(ARRAY_MARKER);
-
-                        }
-                        record.setValue(field, jsonElement);
-                    }
+        toRawJson(result, columnTypes(Arrays.asList(result.fields())));
+    }
+
+    /**
+     * @param result      the result set
+     * @param columnTypes the column types of the result, as returned by {@link #columnTypes(List)}
+     */
+    public static void toRawJson(Result<Record> result, List<ColumnType> columnTypes) {
+        toRawJson(result, columnTypes, null);
+    }
+
+    /**
+     * @param result      the result set
+     * @param columnTypes the column types of the result, as returned by {@link #columnTypes(List)}
+     * @param executor    transforms the chunks of a large result, its pool size bounds the degree of parallelism. If
+     *                    null, the result is transformed on the calling thread
+     */
+    public static void toRawJson(Result<Record> result, List<ColumnType> columnTypes, ExecutorService executor) {
+
+        if (result.isEmpty() || !hasJsonColumn(columnTypes))
+            return;
+
+        if (executor == null || result.size() < PARALLEL_THRESHOLD) {
+            for (Record record : result) {
+                toRawJson(record, columnTypes);
+            }
+            return;
+        }
+
+        //records are independent, each chunk is transformed by a task
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = 0; from < result.size(); from += PARALLEL_THRESHOLD) {
+            List<Record> chunk = result.subList(from, Math.min(from + PARALLEL_THRESHOLD, result.size()));
+            futures.add(executor.submit(() -> chunk.forEach(record -> toRawJson(record, columnTypes))));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while transforming the JSON values of a result", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Could not transform the JSON values of a result", e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    public static void toRawJson(Record record) {
+        toRawJson(record, columnTypes(Arrays.asList(record.fields())));
+    }
+
+    public static void toRawJson(Record record, List<ColumnType> columnTypes) {
+
+        for (int i = 0; i < columnTypes.size(); i++) {
+            ColumnType columnType = columnTypes.get(i);
+            if (columnType == ColumnType.SCALAR)
+                continue;
+
+            Object value = record.get(i);
+            if (!(value instanceof String || value instanceof JSONB || value instanceof JSON))
+                continue;
+
+            String text = value.toString().trim();
+            String jsonbOrigin = null;
+
+            //a JSON column is valid JSON, a text column must be checked first
+            if (columnType == ColumnType.JSON || isJson(text)) {
+                if (text.startsWith("["))
+                    jsonbOrigin = "{\"" + ARRAY_MARKER + "\":" + text + "}";
+                else if (text.startsWith("{"))
+                    jsonbOrigin = text;
+            }
+
+            //apply the transformation
+            if (jsonbOrigin != null) {
+                JsonElement jsonElement = new LightRawJsonEncoder(jsonbOrigin).encodeContentAsJson(null);
+                if (jsonElement.getAsJsonObject().has(ARRAY_MARKER)) {
+                    jsonElement = jsonElement.getAsJsonObject().getAsJsonArray(ARRAY_MARKER);
                 }
+                record.set((Field<Object>) record.field(i), jsonElement);
             }
         }
     }
 
+    /**
+     * check whether a text is a JSON object or array, surrounding whitespace allowed. The text is only scanned (strict
+     * syntax), no value is built.
+     */
+    static boolean isJson(String value) {
+        String text = value.trim();
+        if (!(text.startsWith("{") && text.endsWith("}")) && !(text.startsWith("[") && text.endsWith("]")))
+            return false;
+
+        try (JsonReader jsonReader = new JsonReader(new StringReader(text))) {
+            jsonReader.setLenient(false);
+            jsonReader.skipValue();
+            return jsonReader.peek() == JsonToken.END_DOCUMENT;
+        } catch (IOException | IllegalStateException e) {
+            //not JSON, do nothing
+            return false;
+        }
+    }
+
 }
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.aql.sql.queryimpl;
+
+import org.ehrbase.api.definitions.ServerConfig;
+import org.ehrbase.ehr.util.LocatableHelper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.ehrbase.aql.sql.queryimpl.IterativeNodeConstants.ENV_AQL_ARRAY_DEPTH;
+import static org.ehrbase.aql.sql.queryimpl.IterativeNodeConstants.ENV_AQL_ARRAY_IGNORE_NODE;
+
+/**
+ * Per template data used by {@link IterativeNode} to locate the arrays in a JSONB path.
+ * <p>
+ * The multi-valued AQL paths of the template are filtered once against the skip list and pre-split into segments;
+ * the array positions computed for a JSONB path are then memoized. Instances are built by the
+ * {@link org.ehrbase.service.IntrospectService} and cached with the template.
+ */
+@SuppressWarnings({"java:S3776", "java:S135"})
+public class IterativeNodeMetaData {
+
+    //upper bound of memoized paths per template
+    static final int MAX_MEMOIZED_PATHS = 4096;
+
+    private static final Integer[] NOT_ITERATIVE = new Integer[]{-1};
+
+    /**
+     * Runtime parameters of the array resolution: skip list and depth. Environment variables take precedence over the
+     * server configuration.
+     */
+    public static class Settings {
+        private final List<Pattern> ignoreIterativeNode;
+        private final int depth;
+
+        Settings(List<String> ignoreIterativeNode, int depth) {
+            this.ignoreIterativeNode = ignoreIterativeNode.stream()
+                    .map(regex -> Pattern.compile("^" + regex + ".*"))
+                    .collect(Collectors.toList());
+            this.depth = depth;
+        }
+
+        public static Settings of(ServerConfig serverConfig) {
+            List<String> ignoreIterativeNode;
+            if (System.getenv(ENV_AQL_ARRAY_IGNORE_NODE) != null)
+                ignoreIterativeNode = Arrays.asList(System.getenv(ENV_AQL_ARRAY_IGNORE_NODE).split(","));
+            else if (serverConfig.getAqlIterationSkipList() != null && !serverConfig.getAqlIterationSkipList().isBlank())
+                ignoreIterativeNode = Arrays.asList(serverConfig.getAqlIterationSkipList().split(","));
+            else
+                ignoreIterativeNode = Arrays.asList("^/content.*", "^/events.*");
+
+            int depth;
+            if (System.getenv(ENV_AQL_ARRAY_DEPTH) != null)
+                depth = Integer.parseInt(System.getenv(ENV_AQL_ARRAY_DEPTH));
+            else if (serverConfig.getAqlDepth() != null)
+                depth = serverConfig.getAqlDepth();
+            else
+                depth = 1;
+
+            return new Settings(ignoreIterativeNode, depth);
+        }
+
+        boolean isIgnored(String segment) {
+            for (Pattern pattern : ignoreIterativeNode) {
+                if (pattern.matcher(segment).matches())
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private static class UnboundedPath {
+        private final String aqlPath;
+        private final List<String> segments;
+
+        private UnboundedPath(String aqlPath, List<String> segments) {
+            this.aqlPath = aqlPath;
+            this.segments = segments;
+        }
+    }
+
+    private final boolean hasUnbounded;
+    //candidate paths, in scan order
+    private final List<UnboundedPath> candidates;
+    private final int depth;
+    private final Map<List<String>, Integer[]> positions = new ConcurrentHashMap<>();
+
+    public IterativeNodeMetaData(List<String> unbounded, Settings settings) {
+        this.hasUnbounded = !unbounded.isEmpty();
+        this.depth = settings.depth;
+
+        List<UnboundedPath> paths = new ArrayList<>();
+        for (int i = unbounded.size() - 1; i >= 0; i--) {
+            String aqlPath = unbounded.get(i);
+            if (aqlPath.endsWith("value") || aqlPath.endsWith("name"))
+                continue;
+
+            List<String> aqlPathSegments = LocatableHelper.dividePathIntoSegments(aqlPath);
+            if (settings.isIgnored(aqlPathSegments.get(aqlPathSegments.size() - 1)))
+                continue;
+
+            paths.add(new UnboundedPath(aqlPath, Collections.unmodifiableList(aqlPathSegments)));
+        }
+        this.candidates = Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * @param segmentedPath the JSONB path
+     * @return the positions in segmentedPath of the iterative nodes (max > 1), {-1} if the template has none
+     */
+    public Integer[] iterativeAt(List<String> segmentedPath) {
+        if (!hasUnbounded)
+            return NOT_ITERATIVE.clone();
+
+        Integer[] memoized = positions.get(segmentedPath);
+        if (memoized != null)
+            return memoized.clone();
+
+        Integer[] result = compute(segmentedPath);
+        if (positions.size() < MAX_MEMOIZED_PATHS)
+            positions.put(new ArrayList<>(segmentedPath), result);
+        return result.clone();
+    }
+
+    private Integer[] compute(List<String> segmentedPath) {
+        SortedSet<Integer> retarray = new TreeSet<>();
+        String path = "/" + String.join("/", compact(segmentedPath));
+
+        for (UnboundedPath candidate : candidates) {
+            if (path.startsWith(candidate.aqlPath)) {
+                retarray.add(aqlPathInJsonbArray(candidate.segments, segmentedPath));
+                if (retarray.size() >= depth)
+                    break;
+            }
+        }
+        return retarray.toArray(new Integer[0]);
+    }
+
+    /**
+     * make the path usable to perform JsonPath queries
+     *
+     * @param segmentedPath
+     * @return
+     */
+    static List<String> compact(List<String> segmentedPath) {
+        List<String> resultPath = new ArrayList<>();
+        for (String item : segmentedPath) {
+            try {
+                Integer.parseInt(item);
+            } catch (Exception e) {
+                //not an index, add into the list
+                if (!item.startsWith("/composition")) {
+                    if (item.startsWith("/")) {
+                        //skip structure containers that are specific to DB encoding (that is: /events/events[openEHR...])
+                        //this also applies to /activities
+                        if (!item.equals("/events") && !item.equals("/activities")) {
+                            resultPath.add(item.substring(1));
+                        }
+                    } else
+                        resultPath.add(item);
+                }
+            }
+        }
+        return resultPath;
+    }
+
+    static int aqlPathInJsonbArray(List<String> aqlSegmented, List<String> jsonbSegmented) {
+        int retval = 0;
+        int aqlSegIndex = 0;
+
+        for (int i = 0; aqlSegIndex < aqlSegmented.size(); i++) {
+            if (jsonbSegmented.get(i).startsWith("/composition")) {
+                retval++;
+                continue;
+            }
+            try {
+                Integer.parseInt(jsonbSegmented.get(i));
+                retval++;
+            } catch (Exception e) {
+
+                if (jsonbSegmented.get(retval).equals("/events") || jsonbSegmented.get(retval).equals("/activities")) {
+                    retval++; //skip this structural item
+                    continue;
+                }
+
+                try {
+                    if (jsonbSegmented.get(retval).startsWith("/"))
+                        assert jsonbSegmented.get(retval).substring(1).equals(aqlSegmented.get(aqlSegIndex));
+                    else
+                        assert jsonbSegmented.get(retval).equals(aqlSegmented.get(aqlSegIndex));
+                } catch (Exception e1) {
+                    throw new IllegalArgumentException("Drift in locating array marker: aql:" + aqlSegmented.get(aqlSegIndex) + ", jsonb:" + jsonbSegmented.get(retval) + ", @index:" + retval);
+                }
+
+                retval++;
+                aqlSegIndex++;
+            }
+        }
+        return retval;
+    }
+}
@@ -56,7 +56,7 @@ public class JsonbEntryQuery extends ObjectQuery implements IQueryImpl {
 
     private static final String JSONB_PATH_SELECTOR_EXPR = " #>> '{";
     private static final String JSONB_AT_AT_SELECTOR_EXPR = " @@ '";
-    private static final String JSONB_SELECTOR_COMPOSITION_OPEN = ENTRY.ENTRY_ + JSONB_PATH_SELECTOR_EXPR;
+    static final String JSONB_SELECTOR_COMPOSITION_OPEN = ENTRY.ENTRY_ + JSONB_PATH_SELECTOR_EXPR;
     public static final String JSQUERY_COMPOSITION_OPEN = ENTRY.ENTRY_ + JSONB_AT_AT_SELECTOR_EXPR;
 
     public static final String COMPOSITION = "composition";
@@ -87,7 +87,7 @@ public class JsonbEntryQuery extends ObjectQuery implements IQueryImpl {
     public static final String TERMINOLOGY_ID = "terminologyId";
 
     //Generic stuff
-    private static final String JSONB_SELECTOR_CLOSE = "}'";
+    static final String JSONB_SELECTOR_CLOSE = "}'";
     public static final String JSQUERY_CLOSE = " '::jsquery";
 
     public static final String TAG_ACTIVITIES = "/" + ACTIVITIES;
@@ -153,14 +153,9 @@ public class JsonbEntryQuery extends ObjectQuery implements IQueryImpl {
         List<QualifiedAqlField> fieldList = new ArrayList<>();
 
         for (String path: pathSet) {
-            List<String> itemPathArray = new ArrayList<>();
-            itemPathArray.add(pathResolver.entryRoot(templateId));
-
-            if (!path.startsWith(TAG_COMPOSITION) && !isRootContent)
-                itemPathArray.addAll(new JqueryPath(PATH_PART.IDENTIFIER_PATH_PART, path, "0").evaluate());
-
-            JqueryPath jqueryPath = new JqueryPath(PATH_PART.VARIABLE_PATH_PART, variableDefinition.getPath(), "0");
-            itemPathArray.addAll(new NormalizedRmAttributePath(jqueryPath.evaluate()).transformStartingAt(1));
+            List<String> itemPathArray = entryItemPath(pathResolver.entryRoot(templateId),
+                    path.startsWith(TAG_COMPOSITION) || isRootContent ? null : path,
+                    variableDefinition.getPath());
 
             try {
                 IterativeNode iterativeNode = new IterativeNode(domainAccess, templateId, introspectCache);
@@ -185,6 +180,7 @@ public class JsonbEntryQuery extends ObjectQuery implements IQueryImpl {
             }
 
             String itemPath = StringUtils.join(itemPathArray.toArray(new String[]{}), ",");
+            String jsonbPath = itemPath;
 
             if (!itemPath.startsWith(QueryImplConstants.AQL_NODE_NAME_PREDICATE_FUNCTION) && !itemPath.contains(QueryImplConstants.AQL_NODE_ITERATIVE_FUNCTION))
                 itemPath = wrapQuery(itemPath, JSONB_SELECTOR_COMPOSITION_OPEN, JSONB_SELECTOR_CLOSE);
@@ -197,6 +193,7 @@ public class JsonbEntryQuery extends ObjectQuery implements IQueryImpl {
             castTypeAs = dataTypeFromTemplate.getIdentifiedType();
 
             Field<?> fieldPathItem;
+            boolean projected = false;
             if (clause.equals(Clause.SELECT)) {
                 if (StringUtils.isNotEmpty(alias))
                     fieldPathItem = buildFieldWithCast(itemPath, castTypeAs, alias);
@@ -205,13 +202,20 @@ public class JsonbEntryQuery extends ObjectQuery implements IQueryImpl {
                     fieldPathItem = buildFieldWithCast(itemPath, castTypeAs, tempAlias);
                 }
             } else if (clause.equals(Clause.WHERE)) {
-                fieldPathItem = buildFieldWithCast(itemPath, castTypeAs, null);
+                //use the declared projection if any: its expression is the one backed by an index, hence
+                //it must not be wrapped in a sub-select
+                PathProjection projection = itemPathArray.contains(AQL_NODE_ITERATIVE_MARKER) ? null : introspectCache.findPathProjection(templateId, jsonbPath);
+                projected = projection != null && projection.hasCastType(castTypeAs);
+                if (projected)
+                    fieldPathItem = projection.field();
+                else
+                    fieldPathItem = buildFieldWithCast(itemPath, castTypeAs, null);
                 if (itemPathArray.contains(AQL_NODE_ITERATIVE_MARKER))
                     fieldPathItem = DSL.field(DSL.select(fieldPathItem));
             } else
                 throw new IllegalStateException("Unhandled clause:" + clause);
 
-            if (setReturningFunctionInWhere)
+            if (setReturningFunctionInWhere && !projected)
                 fieldPathItem = DSL.select(fieldPathItem).asField();
 
             QualifiedAqlField aqlField = new QualifiedAqlField(fieldPathItem,
@@ -225,6 +229,26 @@ public class JsonbEntryQuery extends ObjectQuery implements IQueryImpl {
         return new MultiFields(variableDefinition, fieldList, templateId);
     }
 
+    /**
+     * build the segments of the JSONB path of a node in an entry
+     *
+     * @param entryRoot      the root of the entry, f.e. /composition[openEHR-EHR-COMPOSITION.report.v1]
+     * @param identifierPath the containment path of the identifier, null if the path starts at the root
+     * @param variablePath   the path of the node relative to the identifier
+     * @return the path segments, with the default array index 0
+     */
+    static List<String> entryItemPath(String entryRoot, String identifierPath, String variablePath) {
+        List<String> itemPathArray = new ArrayList<>();
+        itemPathArray.add(entryRoot);
+
+        if (identifierPath != null)
+            itemPathArray.addAll(new JqueryPath(PATH_PART.IDENTIFIER_PATH_PART, identifierPath, "0").evaluate());
+
+        JqueryPath jqueryPath = new JqueryPath(PATH_PART.VARIABLE_PATH_PART, variablePath, "0");
+        itemPathArray.addAll(new NormalizedRmAttributePath(jqueryPath.evaluate()).transformStartingAt(1));
+        return itemPathArray;
+    }
+
     private Field<?> buildFieldWithCast(String itemPath, DataType castTypeAs, String alias){
         Field fieldPathItem;
 
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.aql.sql.queryimpl;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ehrbase.api.definitions.ServerConfig;
+import org.ehrbase.ehr.util.LocatableHelper;
+import org.ehrbase.service.IntrospectService;
+import org.jooq.DSLContext;
+import org.jooq.DataType;
+import org.jooq.Field;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultDataType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.ehrbase.aql.sql.queryimpl.JsonbEntryQuery.JSONB_SELECTOR_CLOSE;
+import static org.ehrbase.aql.sql.queryimpl.JsonbEntryQuery.JSONB_SELECTOR_COMPOSITION_OPEN;
+import static org.ehrbase.aql.sql.queryimpl.QueryImplConstants.AQL_NODE_NAME_PREDICATE_MARKER;
+import static org.ehrbase.jooq.pg.Tables.ENTRY;
+
+/**
+ * A declared AQL path of a template, projected as a typed expression on <code>ehr.entry.entry</code> and backed by a
+ * B-tree expression index.
+ * <p>
+ * The expression is exactly the one generated by {@link JsonbEntryQuery} for the path in a WHERE clause, hence the
+ * index is maintained by the database on commit and used by the planner whenever the path is queried. Only single
+ * valued paths can be projected: a path crossing a multi-valued node is resolved with a set returning function.
+ */
+public class PathProjection {
+
+    private static final String INDEX_PREFIX = "aql_path_idx_";
+
+    private final String templateId;
+    private final String aqlPath;
+    private final String jsonbPath;
+    private final DataType<?> castType;
+
+    public PathProjection(String templateId, String aqlPath, String jsonbPath, DataType<?> castType) {
+        this.templateId = templateId;
+        this.aqlPath = aqlPath;
+        this.jsonbPath = jsonbPath;
+        this.castType = castType;
+    }
+
+    /**
+     * rebuild a projection from its stored definition
+     *
+     * @param castTypeName the name of the PostgreSQL type of the projection, null for text
+     */
+    public static PathProjection of(String templateId, String aqlPath, String jsonbPath, String castTypeName) {
+        DataType<?> castType = castTypeName == null ? null : DefaultDataType.getDataType(SQLDialect.POSTGRES, castTypeName);
+        return new PathProjection(templateId, aqlPath, jsonbPath, castType);
+    }
+
+    /**
+     * resolve the projection of an AQL path
+     *
+     * @param introspectService the template introspection
+     * @param serverConfig      the configuration of the array resolution
+     * @param templateId        the template id
+     * @param aqlPath           the AQL path of the node from the composition root, f.e.
+     *                          <code>/content[openEHR-EHR-OBSERVATION.blood_pressure.v1]/data[at0001]/events[at0006]/data[at0003]/items[at0004]/value/magnitude</code>
+     * @return the projection
+     * @throws IllegalArgumentException if the path cannot be projected
+     */
+    public static PathProjection resolve(IntrospectService introspectService, ServerConfig serverConfig, String templateId, String aqlPath) {
+        if (StringUtils.isBlank(aqlPath) || !aqlPath.startsWith("/") || StringUtils.containsAny(aqlPath, "'#,"))
+            throw new IllegalArgumentException("Invalid AQL path, expected an absolute path without name predicate:" + aqlPath);
+
+        //the containment path ends at the last archetyped node
+        List<String> segments = LocatableHelper.dividePathIntoSegments(aqlPath);
+        int lastArchetyped = -1;
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).contains("[openEHR-"))
+                lastArchetyped = i;
+        }
+        if (lastArchetyped == segments.size() - 1)
+            throw new IllegalArgumentException("AQL path does not designate a value:" + aqlPath);
+
+        String identifierPath = lastArchetyped < 0 ? null : "/" + String.join("/", segments.subList(0, lastArchetyped + 1));
+        String variablePath = String.join("/", segments.subList(lastArchetyped + 1, segments.size()));
+        String entryRoot = "/composition[" + introspectService.getQueryOptMetaData(templateId).getTree().getNodeId() + "]";
+
+        List<String> itemPathArray = JsonbEntryQuery.entryItemPath(entryRoot, identifierPath, variablePath);
+
+        if (itemPathArray.contains(AQL_NODE_NAME_PREDICATE_MARKER) || itemPathArray.stream().anyMatch(s -> s.contains("/item_count")))
+            throw new IllegalArgumentException("AQL path cannot be projected:" + aqlPath);
+
+        for (Integer position : introspectService.iterativeNodeMetaData(templateId, serverConfig).iterativeAt(itemPathArray)) {
+            if (position >= 0)
+                throw new IllegalArgumentException("AQL path crosses a multi-valued node and cannot be projected:" + aqlPath);
+        }
+
+        DataTypeFromTemplate dataTypeFromTemplate = new DataTypeFromTemplate(introspectService, false, IQueryImpl.Clause.WHERE);
+        dataTypeFromTemplate.evaluate(templateId, itemPathArray);
+
+        return new PathProjection(templateId, aqlPath, String.join(",", itemPathArray), dataTypeFromTemplate.getIdentifiedType());
+    }
+
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    public String getAqlPath() {
+        return aqlPath;
+    }
+
+    /**
+     * @return the comma separated JSONB path of the node in the entry
+     */
+    public String getJsonbPath() {
+        return jsonbPath;
+    }
+
+    /**
+     * @return the PostgreSQL type of the projection, null for text
+     */
+    public String getCastTypeName() {
+        return castType == null ? null : castType.getCastTypeName();
+    }
+
+    public boolean hasCastType(DataType<?> dataType) {
+        if (castType == null || dataType == null)
+            return castType == dataType;
+        return castType.getCastTypeName().equals(dataType.getCastTypeName());
+    }
+
+    /**
+     * @return the name of the backing index, derived from the template id, the path and the projected expression: a
+     * path declared again with another expression gets a new index instead of keeping the existing one
+     */
+    public String getIndexName() {
+        String definition = String.join("\n", templateId, aqlPath, jsonbPath, String.valueOf(getCastTypeName()));
+        return INDEX_PREFIX + UUID.nameUUIDFromBytes(definition.getBytes(StandardCharsets.UTF_8)).toString().replace("-", "");
+    }
+
+    /**
+     * @return the projected expression, as rendered in a WHERE clause
+     */
+    public Field<?> field() {
+        Field<String> field = DSL.field(JSONB_SELECTOR_COMPOSITION_OPEN + jsonbPath + JSONB_SELECTOR_CLOSE, String.class);
+        return castType == null ? field : field.cast(castType);
+    }
+
+    /**
+     * the index is partial and limited to the entries of the template: the predicate is the one added by
+     * {@link org.ehrbase.aql.sql.QueryProcessor} to each template branch, so the planner can match it
+     */
+    public String createIndexStatement(DSLContext context) {
+        String expression = context.renderInlined(field());
+        return "create index concurrently if not exists " + getIndexName()
+                + " on " + context.render(ENTRY) + " ((" + expression + "))"
+                + " where " + context.renderInlined(ENTRY.TEMPLATE_ID.eq(templateId))
+                + " and (" + expression + ") is not null";
+    }
+
+    public String dropIndexStatement() {
+        return dropIndexStatement(getIndexName());
+    }
+
+    /**
+     * @param indexName the name of an index of a projection, f.e. as stored with its declaration
+     */
+    public static String dropIndexStatement(String indexName) {
+        return "drop index concurrently if exists " + ENTRY.getSchema().getName() + "." + indexName;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(" ", Arrays.asList(templateId, aqlPath, String.valueOf(getCastTypeName())));
+    }
+}
@@ -18,9 +18,16 @@
 
 package org.ehrbase.configuration;
 
+import org.ehcache.core.InternalCacheManager;
+import org.ehcache.core.spi.service.CacheManagerProviderService;
+import org.ehcache.core.spi.service.StatisticsService;
+import org.ehcache.core.statistics.DefaultStatisticsService;
+import org.ehcache.spi.service.Service;
+import org.ehcache.spi.service.ServiceProvider;
 import org.ehrbase.aql.containment.JsonPathQueryResult;
 import org.ehrbase.aql.containment.TemplateIdAqlTuple;
 import org.ehrbase.aql.containment.TemplateIdQueryTuple;
+import org.ehrbase.aql.sql.AqlQueryPlan;
 import org.ehrbase.aql.sql.queryimpl.ItemInfo;
 import org.ehrbase.validation.Validator;
 import org.ehrbase.webtemplate.model.WebTemplate;
@@ -36,7 +43,11 @@ import javax.cache.expiry.CreatedExpiryPolicy;
 import javax.cache.expiry.Duration;
 import javax.cache.spi.CachingProvider;
 import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Configuration
@@ -49,12 +60,143 @@ public class CacheConfiguration {
     public static final String QUERY_CACHE = "queryCache";
     public static final String FIELDS_CACHE = "fieldsCache";
     public static final String MULTI_VALUE_CACHE = "multivaluedCache";
+    public static final String QUERY_PLAN_CACHE = "queryPlanCache";
 
 
     private String configPath;
     private boolean enabled;
     private boolean preBuildQueries;
     private int preBuildQueriesDepth;
+    private java.time.Duration templateSyncInterval = java.time.Duration.ofSeconds(5);
+    private StoredQuery storedQuery = new StoredQuery();
+    private PartyIdentity partyIdentity = new PartyIdentity();
+    private WarmUp warmUp = new WarmUp();
+
+    /**
+     * Settings of the result cache of stored queries. The limits apply to each stored query, and can be overridden by
+     * qualified name (f.e. <code>cache.stored-query.queries[org.openehr::worklist].ttl=30s</code>).
+     */
+    public static class StoredQuery {
+        private boolean enabled = false;
+        private java.time.Duration ttl = java.time.Duration.ofMinutes(5);
+        private int maxEntries = 100;
+        private Map<String, Limits> queries = new HashMap<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public java.time.Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(java.time.Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public Map<String, Limits> getQueries() {
+            return queries;
+        }
+
+        public void setQueries(Map<String, Limits> queries) {
+            this.queries = queries;
+        }
+
+        /**
+         * @param qualifiedName the qualified name of a stored query
+         * @return the limits of the query, a zero TTL or size disables its caching
+         */
+        public Limits limitsOf(String qualifiedName) {
+            Limits limits = queries.get(qualifiedName);
+            Limits effective = new Limits();
+            effective.setTtl(limits == null || limits.getTtl() == null ? ttl : limits.getTtl());
+            effective.setMaxEntries(limits == null || limits.getMaxEntries() == null ? maxEntries : limits.getMaxEntries());
+            return effective;
+        }
+    }
+
+    /**
+     * Settings of the in-process cache of party ids by identity hash, a size of 0 disables it. Ids are dropped after
+     * the TTL, the purges of unused parties skip the ones resolved within the TTL plus the max transaction time (the
+     * longest a transaction resolving a party may run before it commits).
+     */
+    public static class PartyIdentity {
+        private int maxEntries = 10000;
+        private java.time.Duration ttl = java.time.Duration.ofMinutes(10);
+        private java.time.Duration maxTransactionTime = java.time.Duration.ofMinutes(10);
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public java.time.Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(java.time.Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public java.time.Duration getMaxTransactionTime() {
+            return maxTransactionTime;
+        }
+
+        public void setMaxTransactionTime(java.time.Duration maxTransactionTime) {
+            this.maxTransactionTime = maxTransactionTime;
+        }
+    }
+
+    /**
+     * Settings of the background loading of the templates and pre-building of their queries.
+     */
+    public static class WarmUp {
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+    }
+
+    public static class Limits {
+        private java.time.Duration ttl;
+        private Integer maxEntries;
+
+        public java.time.Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(java.time.Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public Integer getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(Integer maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
 
     public String getConfigPath() {
         return configPath;
@@ -88,8 +230,53 @@ public class CacheConfiguration {
         this.preBuildQueriesDepth = preBuildQueriesDepth;
     }
 
+    /**
+     * How often the templates of this node are compared to the template storage, which other nodes may have changed
+     * (see {@link org.ehrbase.service.KnowledgeCacheService#syncTemplates()}), zero to disable the sync
+     */
+    public java.time.Duration getTemplateSyncInterval() {
+        return templateSyncInterval;
+    }
+
+    public void setTemplateSyncInterval(java.time.Duration templateSyncInterval) {
+        this.templateSyncInterval = templateSyncInterval;
+    }
+
+    public StoredQuery getStoredQuery() {
+        return storedQuery;
+    }
+
+    public void setStoredQuery(StoredQuery storedQuery) {
+        this.storedQuery = storedQuery;
+    }
+
+    public PartyIdentity getPartyIdentity() {
+        return partyIdentity;
+    }
+
+    public void setPartyIdentity(PartyIdentity partyIdentity) {
+        this.partyIdentity = partyIdentity;
+    }
+
+    public WarmUp getWarmUp() {
+        return warmUp;
+    }
+
+    public void setWarmUp(WarmUp warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    /**
+     * The Ehcache statistics of the knowledge caches, with the entries and occupied bytes of each tier that JSR-107
+     * does not expose. Published by KnowledgeCacheMetrics.
+     */
+    @Bean
+    public static StatisticsService cacheStatisticsService() {
+        return new DefaultStatisticsService();
+    }
+
     @Bean
-    public static CacheManager cacheManagerCustomizer(CacheConfiguration cacheProperties) throws URISyntaxException {
+    public static CacheManager cacheManagerCustomizer(CacheConfiguration cacheProperties, StatisticsService cacheStatisticsService) throws URISyntaxException {
         CachingProvider cachingProvider = Caching.getCachingProvider();
         final CacheManager cacheManager;
         if (cacheProperties.isEnabled()) {
@@ -98,21 +285,58 @@ public class CacheConfiguration {
         } else {
             cacheManager = cachingProvider.getCacheManager();
         }
+        registerStatistics(cacheManager, cacheStatisticsService);
         buildCache(INTROSPECT_CACHE, UUID.class, WebTemplate.class, cacheManager, cacheProperties.isEnabled());
         buildCache(OPERATIONAL_TEMPLATE_CACHE, String.class, OPERATIONALTEMPLATE.class, cacheManager, cacheProperties.isEnabled());
         buildCache(VALIDATOR_CACHE, UUID.class, Validator.class, cacheManager, cacheProperties.isEnabled());
         buildCache(QUERY_CACHE, TemplateIdQueryTuple.class, JsonPathQueryResult.class, cacheManager, cacheProperties.isEnabled());
         buildCache(FIELDS_CACHE, TemplateIdAqlTuple.class, ItemInfo.class, cacheManager, cacheProperties.isEnabled());
         buildCache(MULTI_VALUE_CACHE, String.class, List.class, cacheManager, cacheProperties.isEnabled());
+        buildCache(QUERY_PLAN_CACHE, String.class, AqlQueryPlan.class, cacheManager, cacheProperties.isEnabled());
         return cacheManager;
     }
 
+    /**
+     * Starts the statistics service on the Ehcache manager behind the JSR-107 one, it then tracks every cache created
+     * afterwards.
+     */
+    public static void registerStatistics(CacheManager cacheManager, StatisticsService statisticsService) {
+        InternalCacheManager ehcacheManager = (InternalCacheManager) cacheManager.unwrap(org.ehcache.CacheManager.class);
+        CacheManagerProviderService cacheManagerProvider = new CacheManagerProviderService() {
+            @Override
+            public InternalCacheManager getCacheManager() {
+                return ehcacheManager;
+            }
+
+            @Override
+            public void start(ServiceProvider<Service> serviceProvider) {
+            }
+
+            @Override
+            public void stop() {
+            }
+        };
+        statisticsService.start(new ServiceProvider<Service>() {
+            @Override
+            public <U extends Service> U getService(Class<U> serviceType) {
+                return serviceType.isInstance(cacheManagerProvider) ? serviceType.cast(cacheManagerProvider) : null;
+            }
+
+            @Override
+            public <U extends Service> Collection<U> getServicesOfType(Class<U> serviceType) {
+                U service = getService(serviceType);
+                return service == null ? Collections.emptyList() : Collections.singletonList(service);
+            }
+        });
+    }
 
     public static <K, V> void buildCache(String cacheName, Class<K> keyClass, Class<V> valueClass, CacheManager cacheManager, boolean enabled) {
         MutableConfiguration<K, V> config
                 = new MutableConfiguration<>();
         config.setTypes(keyClass, valueClass);
         config.setStoreByValue(false);
+        //hits, misses and evictions, published by KnowledgeCacheMetrics
+        config.setStatisticsEnabled(true);
         //disable Cache
         if (!enabled) {
             config.setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(Duration.ZERO));
@@ -21,6 +21,7 @@ package org.ehrbase.dao.access.interfaces;
 import com.nedap.archie.rm.generic.AuditDetails;
 import org.ehrbase.api.exception.InternalServerException;
 import org.ehrbase.dao.access.jooq.AuditDetailsAccess;
+import org.ehrbase.dao.access.support.CommitBatch;
 import org.ehrbase.jooq.pg.enums.ContributionChangeType;
 import org.ehrbase.jooq.pg.tables.records.AuditDetailsRecord;
 
@@ -73,6 +74,14 @@ public interface I_AuditDetailsAccess extends I_SimpleCRUD {
      */
     UUID commit(UUID systemId, UUID committerId, String description);
 
+    /**
+     * Adds the insert of this audit to the given batch instead of executing it, the id is assigned beforehand.
+     * @param batch           batch of the enclosing commit
+     * @param transactionTime time of commit
+     * @return ID of the audit DB entry, which exists once the batch is executed
+     */
+    UUID commit(CommitBatch batch, Timestamp transactionTime);
+
     /**
      * Update method with all optional parameters to only set and invoke update with given parameters.
      * @param systemId Optional
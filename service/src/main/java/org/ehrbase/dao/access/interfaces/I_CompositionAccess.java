@@ -27,6 +27,7 @@ import com.nedap.archie.rm.support.identification.ObjectVersionId;
 import org.ehrbase.api.exception.InternalServerException;
 import org.ehrbase.api.exception.ObjectNotFoundException;
 import org.ehrbase.dao.access.jooq.CompositionAccess;
+import org.ehrbase.dao.access.support.CommitBatch;
 import com.nedap.archie.rm.composition.Composition;
 import com.nedap.archie.rm.composition.EventContext;
 import org.ehrbase.jooq.pg.tables.records.*;
@@ -35,6 +36,7 @@ import org.jooq.Table;
 import org.jooq.exception.DataAccessException;
 
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -127,9 +129,22 @@ public interface I_CompositionAccess extends I_VersionedCRUD {
      * @throws IllegalArgumentException when retrieval failed because of wrong input
      */
     static I_CompositionAccess getNewInstance(I_DomainAccess domain, Composition composition, UUID ehrId) {
-        return new CompositionAccess(domain.getContext(), domain.getKnowledgeManager(), domain.getIntrospectService(), domain.getServerConfig(), composition, ehrId);
+        return new CompositionAccess(domain.getContext(), domain.getKnowledgeManager(), domain.getIntrospectService(), domain.getServerConfig(), domain.getReferenceData(), domain.getPartyIdentityCache(), composition, ehrId);
     }
 
+    /**
+     * Adds the inserts of this new composition, with a new contribution, to the given batch instead of executing them.
+     * Used to write many compositions in a single round trip.
+     *
+     * @param batch       batch of the enclosing commit
+     * @param timestamp   transaction time
+     * @param committerId audit committer
+     * @param systemId    audit system
+     * @param description optional audit description
+     * @return ID of the composition, which exists once the batch is executed
+     */
+    UUID commit(CommitBatch batch, LocalDateTime timestamp, UUID committerId, UUID systemId, String description);
+
     /**
      * Retrieve composition(s) for an identified version
      *
@@ -232,6 +247,9 @@ public interface I_CompositionAccess extends I_VersionedCRUD {
 
     // TODO: doc! what's the logic behind the returned int code?
     static Integer fetchTerritoryCode(I_DomainAccess domainAccess, String territoryAsString) {
+        Integer territoryCode = domainAccess.getReferenceData() == null ? null : domainAccess.getReferenceData().getTerritoryCode(territoryAsString);
+        if (territoryCode != null)
+            return territoryCode;
         Result<TerritoryRecord> result = domainAccess.getContext().selectFrom(TERRITORY).where(TERRITORY.TWOLETTER.equal(territoryAsString)).fetch();
         if (result.isEmpty())
             return -1;
@@ -239,6 +257,8 @@ public interface I_CompositionAccess extends I_VersionedCRUD {
     }
 
     static boolean isValidLanguageCode(I_DomainAccess domainAccess, String languageCode) {
+        if (domainAccess.getReferenceData() != null && domainAccess.getReferenceData().isLanguage(languageCode))
+            return true;
         return !domainAccess.getContext().selectFrom(LANGUAGE).where(LANGUAGE.CODE.equal(languageCode)).fetch().isEmpty();
     }
 
@@ -397,6 +417,9 @@ public interface I_CompositionAccess extends I_VersionedCRUD {
 
     void setAuditDetailsAccess(I_AuditDetailsAccess auditDetailsAccess);
 
+    /**
+     * @return the version number of the record as read from the database, null before the composition is stored
+     */
     Integer getVersion();
 
     /**
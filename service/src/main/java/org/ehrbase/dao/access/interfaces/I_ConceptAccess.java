@@ -22,6 +22,7 @@
 package org.ehrbase.dao.access.interfaces;
 
 import org.ehrbase.jooq.pg.tables.records.ConceptRecord;
+import org.ehrbase.service.ReferenceDataRegistry;
 import com.nedap.archie.rm.datatypes.CodePhrase;
 import com.nedap.archie.rm.datavalues.DvCodedText;
 import com.nedap.archie.rm.support.identification.TerminologyId;
@@ -59,22 +60,47 @@ public interface I_ConceptAccess {
      * @return the record {@link UUID} or null if not found
      */
     static UUID fetchConcept(I_DomainAccess domainAccess, Integer conceptId, String language) {
+        ReferenceDataRegistry.Concept concept = referenceConcept(domainAccess, conceptId, language);
+        if (concept != null)
+            return concept.getId();
         return domainAccess.getContext().fetchAny(CONCEPT, CONCEPT.CONCEPTID.eq(conceptId).and(CONCEPT.LANGUAGE.equal(language))).getId();
     }
 
     static DvCodedText fetchConceptText(I_DomainAccess domainAccess, UUID uuid) {
+        ReferenceDataRegistry.Concept concept = referenceConcept(domainAccess, uuid);
+        if (concept != null)
+            return new DvCodedText(concept.getDescription(), new CodePhrase(new TerminologyId("openehr"), "" + concept.getConceptId()));
         ConceptRecord conceptRecord = domainAccess.getContext().fetchAny(CONCEPT, CONCEPT.ID.eq(uuid));
         return new DvCodedText(conceptRecord.getDescription(), new CodePhrase(new TerminologyId("openehr"), "" + conceptRecord.getConceptid()));
     }
 
     static String fetchConceptLiteral(I_DomainAccess domainAccess, Integer conceptId, String language) {
+        ReferenceDataRegistry.Concept concept = referenceConcept(domainAccess, conceptId, language);
+        if (concept != null)
+            return concept.getDescription();
         return domainAccess.getContext().fetchAny(CONCEPT, CONCEPT.CONCEPTID.eq(conceptId).and(CONCEPT.LANGUAGE.equal(language))).getDescription();
     }
 
     static String fetchConceptLiteral(I_DomainAccess domainAccess, UUID uuid) {
+        ReferenceDataRegistry.Concept concept = referenceConcept(domainAccess, uuid);
+        if (concept != null)
+            return concept.getDescription();
         return domainAccess.getContext().fetchAny(CONCEPT, CONCEPT.ID.eq(uuid)).getDescription();
     }
 
+    /**
+     * @return the concept from the in-memory reference data, null if not available
+     */
+    private static ReferenceDataRegistry.Concept referenceConcept(I_DomainAccess domainAccess, Integer conceptId, String language) {
+        ReferenceDataRegistry referenceData = domainAccess.getReferenceData();
+        return referenceData == null || conceptId == null ? null : referenceData.getConcept(conceptId, language);
+    }
+
+    private static ReferenceDataRegistry.Concept referenceConcept(I_DomainAccess domainAccess, UUID uuid) {
+        ReferenceDataRegistry referenceData = domainAccess.getReferenceData();
+        return referenceData == null || uuid == null ? null : referenceData.getConcept(uuid);
+    }
+
     /**
      * retrieve a concept
      *
@@ -85,15 +111,13 @@ public interface I_ConceptAccess {
      */
     static UUID fetchContributionChangeType(I_DomainAccess domainAccess, String changeTypeStr) {
         ContributionChangeType contributionChangeType = ContributionChangeType.valueOf(changeTypeStr.toUpperCase());
-        int code = contributionChangeType.getCode();
-        return domainAccess.getContext().fetchAny(CONCEPT, CONCEPT.CONCEPTID.eq(code).and(CONCEPT.LANGUAGE.equal("en"))).getId();
+        return fetchConcept(domainAccess, contributionChangeType.getCode(), "en");
     }
 
     static UUID fetchContributionChangeType(I_DomainAccess domainAccess, ContributionChangeType contributionChangeType) {
         if (contributionChangeType == null)
             return null;
-        int code = contributionChangeType.getCode();
-        return domainAccess.getContext().fetchAny(CONCEPT, CONCEPT.CONCEPTID.eq(code).and(CONCEPT.LANGUAGE.equal("en"))).getId();
+        return fetchConcept(domainAccess, contributionChangeType.getCode(), "en");
     }
 
     /**
@@ -104,7 +128,7 @@ public interface I_ConceptAccess {
      * @return the record {@link UUID}
      */
     static UUID getVlcsDraft(I_DomainAccess domainAccess) {
-        return domainAccess.getContext().fetchAny(CONCEPT, CONCEPT.CONCEPTID.eq(244).and(CONCEPT.LANGUAGE.equal("en"))).getId();
+        return fetchConcept(domainAccess, 244, "en");
     }
 
     /**
@@ -115,7 +139,7 @@ public interface I_ConceptAccess {
      * @return the record {@link UUID}
      */
     static UUID getVlcsActive(I_DomainAccess domainAccess) {
-        return domainAccess.getContext().fetchAny(CONCEPT, CONCEPT.CONCEPTID.eq(245).and(CONCEPT.LANGUAGE.equal("en"))).getId();
+        return fetchConcept(domainAccess, 245, "en");
     }
 
     /**
@@ -126,7 +150,7 @@ public interface I_ConceptAccess {
      * @return the record {@link UUID}
      */
     static UUID getVlcsInactive(I_DomainAccess domainAccess) {
-        return domainAccess.getContext().fetchAny(CONCEPT, CONCEPT.CONCEPTID.eq(246).and(CONCEPT.LANGUAGE.equal("en"))).getId();
+        return fetchConcept(domainAccess, 246, "en");
     }
 
     /**
@@ -137,6 +161,6 @@ public interface I_ConceptAccess {
      * @return the record {@link UUID}
      */
     static UUID getVlcsAwaitingApproval(I_DomainAccess domainAccess) {
-        return domainAccess.getContext().fetchAny(CONCEPT, CONCEPT.CONCEPTID.eq(247).and(CONCEPT.LANGUAGE.equal("en"))).getId();
+        return fetchConcept(domainAccess, 247, "en");
     }
 }
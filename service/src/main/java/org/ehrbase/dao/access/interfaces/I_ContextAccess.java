@@ -22,6 +22,7 @@
 package org.ehrbase.dao.access.interfaces;
 
 import org.ehrbase.dao.access.jooq.ContextAccess;
+import org.ehrbase.dao.access.support.CommitBatch;
 import com.nedap.archie.rm.composition.EventContext;
 import org.ehrbase.api.exception.InternalServerException;
 import org.jooq.Result;
@@ -47,9 +48,19 @@ public interface I_ContextAccess extends I_SimpleCRUD {
      * @see EventContext
      */
     static I_ContextAccess getInstance(I_DomainAccess domain, EventContext eventContext) {
-        return new ContextAccess(domain.getContext(), domain.getServerConfig(), eventContext);
+        return new ContextAccess(domain, eventContext);
     }
 
+    /**
+     * add the inserts of the event context and its participations to the batch of the enclosing composition commit
+     * instead of executing them
+     *
+     * @param batch           the batch of the composition commit
+     * @param transactionTime the transaction time
+     * @return the id of the event context, which exists once the batch is executed
+     */
+    UUID commit(CommitBatch batch, Timestamp transactionTime);
+
     /**
      * retrieve an Event Context access layer instance from the DB
      *
@@ -25,6 +25,7 @@ import com.nedap.archie.rm.generic.AuditDetails;
 import org.ehrbase.api.exception.InternalServerException;
 import org.ehrbase.dao.access.interfaces.I_ConceptAccess.ContributionChangeType;
 import org.ehrbase.dao.access.jooq.ContributionAccess;
+import org.ehrbase.dao.access.support.CommitBatch;
 import org.ehrbase.dao.access.util.ContributionDef;
 import org.ehrbase.jooq.pg.enums.ContributionDataType;
 
@@ -45,7 +46,7 @@ public interface I_ContributionAccess extends I_SimpleCRUD {
      * @return a new minimal {@link I_ContributionAccess}
      */
     static I_ContributionAccess getInstance(I_DomainAccess domain, UUID ehrId) {
-        return new ContributionAccess(domain.getContext(), domain.getKnowledgeManager(), domain.getIntrospectService(), domain.getServerConfig(), ehrId);
+        return new ContributionAccess(domain, ehrId);
     }
 
     /**
@@ -72,6 +73,15 @@ public interface I_ContributionAccess extends I_SimpleCRUD {
      */
     UUID commit(Timestamp transactionTime, ContributionDataType contributionType, ContributionDef.ContributionState state);
 
+    /**
+     * Adds the inserts of the contribution and its audit to the given batch instead of executing them, ids are assigned beforehand.
+     *
+     * @param batch           batch of the enclosing commit
+     * @param transactionTime Timestamp of transaction time
+     * @return {@link UUID} of the contribution, which exists once the batch is executed
+     */
+    UUID commit(CommitBatch batch, Timestamp transactionTime);
+
     /**
      * Commits given input as contribution record. Embeds creation of audit for this commit. All parameters are optional and will be provided with default values if NULL.
      *
@@ -26,6 +26,8 @@ import org.ehrbase.dao.access.support.DataAccess;
 import org.ehrbase.dao.access.support.ServiceDataAccess;
 import org.ehrbase.ehr.knowledge.I_KnowledgeCache;
 import org.ehrbase.service.IntrospectService;
+import org.ehrbase.service.PartyIdentityCache;
+import org.ehrbase.service.ReferenceDataRegistry;
 import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
 
@@ -110,5 +112,19 @@ public interface I_DomainAccess {
 
     ServerConfig getServerConfig();
 
+    /**
+     * get the in-memory reference data (concepts, territories, languages)
+     *
+     * @return the registry, null if lookups must be performed on the database
+     */
+    ReferenceDataRegistry getReferenceData();
+
+    /**
+     * get the cache of party ids by identity hash
+     *
+     * @return the cache, null if parties must always be resolved on the database
+     */
+    PartyIdentityCache getPartyIdentityCache();
+
     DataAccess getDataAccess();
 }
@@ -24,9 +24,11 @@ package org.ehrbase.dao.access.interfaces;
 import com.nedap.archie.rm.composition.Composition;
 import org.ehrbase.api.exception.InternalServerException;
 import org.ehrbase.dao.access.jooq.EntryAccess;
+import org.ehrbase.dao.access.support.CommitBatch;
 import org.ehrbase.jooq.pg.udt.records.DvCodedTextRecord;
 import org.jooq.JSONB;
 
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -54,6 +56,15 @@ public interface I_EntryAccess extends I_SimpleCRUD {
         return new EntryAccess(domain, templateId, sequence, compositionId, composition);
     }
 
+    /**
+     * add the insert of this entry to the batch of the enclosing composition commit instead of executing it
+     *
+     * @param batch           the batch of the composition commit
+     * @param transactionTime the transaction time
+     * @return the id of the entry, which exists once the batch is executed
+     */
+    UUID commit(CommitBatch batch, Timestamp transactionTime);
+
     /**
      * retrieve the list of entries for a composition
      *
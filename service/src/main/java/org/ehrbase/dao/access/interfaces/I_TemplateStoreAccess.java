@@ -24,7 +24,9 @@ import org.ehrbase.dao.access.jooq.TemplateStoreAccess;
 import org.ehrbase.ehr.knowledge.TemplateMetaData;
 import org.openehr.schemas.v1.OPERATIONALTEMPLATE;
 
+import java.sql.Timestamp;
 import java.util.List;
+import java.util.Map;
 
 public interface I_TemplateStoreAccess extends I_SimpleCRUD {
 
@@ -40,6 +42,14 @@ public interface I_TemplateStoreAccess extends I_SimpleCRUD {
         return TemplateStoreAccess.retrieveInstanceByTemplateId(domainAccess, templateId);
     }
 
+    static Timestamp retrieveSysTransaction(I_DomainAccess domainAccess, String templateId) {
+        return TemplateStoreAccess.retrieveSysTransaction(domainAccess, templateId);
+    }
+
+    static Map<String, Long> fetchRevisions(I_DomainAccess domainAccess) {
+        return TemplateStoreAccess.fetchRevisions(domainAccess);
+    }
+
     static List<TemplateMetaData> fetchAll(I_DomainAccess domainAccess) {
         return TemplateStoreAccess.fetchAll(domainAccess);
     }
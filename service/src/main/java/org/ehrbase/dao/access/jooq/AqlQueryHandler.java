@@ -24,7 +24,11 @@ package org.ehrbase.dao.access.jooq;
 import org.apache.commons.lang3.StringUtils;
 import org.ehrbase.aql.compiler.*;
 import org.ehrbase.aql.definition.I_VariableDefinition;
+import org.ehrbase.aql.sql.AqlQueryPlan;
+import org.ehrbase.aql.sql.BranchMerge;
+import org.ehrbase.aql.sql.ContinuationToken;
 import org.ehrbase.aql.sql.AqlResult;
+import org.ehrbase.aql.sql.QueryDiagnostics;
 import org.ehrbase.aql.sql.QueryProcessor;
 import org.ehrbase.dao.access.interfaces.I_DomainAccess;
 import org.ehrbase.dao.access.interfaces.I_OpenehrTerminologyServer;
@@ -35,63 +39,253 @@ import org.jooq.Record;
 import org.jooq.Result;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 
 /**
  * Created by christian on 6/9/2016.
  */
 public class AqlQueryHandler extends DataAccess {
 
+    private static final String TERMINOLOGY_FUNCTION = "TERMINOLOGY";
+
     private I_OpenehrTerminologyServer tsAdapter;
     private Map<String, Set<Object>> auditResultMap = new HashMap<>(); //we add a map of audit related data (f.e. ehr_id/value)
+    private ExecutorService branchExecutor; //if set, the template branches of a query are executed concurrently
 
     public AqlQueryHandler(I_DomainAccess domainAccess, FhirTerminologyServerR4AdaptorImpl tsAdapter) {
         super(domainAccess);
         this.tsAdapter = tsAdapter;
     }
 
+    public AqlQueryHandler(I_DomainAccess domainAccess, FhirTerminologyServerR4AdaptorImpl tsAdapter, ExecutorService branchExecutor) {
+        this(domainAccess, tsAdapter);
+        this.branchExecutor = branchExecutor;
+    }
+
 
     public AqlResult process(String query) {
-        AqlExpression aqlExpression = new AqlExpression().parse(query);
-        return execute(aqlExpression);
+        return execute(prepare(query), QueryDiagnostics.disabled());
     }
 
     public AqlResult process(String query, Map<String, Object> parameters) {
-        AqlExpression aqlExpression = new AqlExpressionWithParameters().parse(query, parameters);
-        return execute(aqlExpression);
+        return execute(prepare(query, parameters), QueryDiagnostics.disabled());
     }
 
-    @SuppressWarnings("unchecked")
-    private AqlResult execute(AqlExpression aqlExpression){
+    /**
+     * Process a query collecting its diagnostics: generated SQL, PostgreSQL execution plan and stage timings. The plan
+     * cache is bypassed so that the compilation stages are measured. The query is executed twice: once for its rows,
+     * timed as {@link QueryDiagnostics#EXECUTION}, then by EXPLAIN ANALYZE for the plan, reported as the separate
+     * {@link QueryDiagnostics#EXPLAIN_ANALYZE} stage.
+     *
+     * @param query      the AQL expression
+     * @param parameters optional query parameters, may be null
+     * @return the query result, with its diagnostics returned by {@link AqlResult#getExplain()}
+     */
+    public AqlResult processWithDiagnostics(String query, Map<String, Object> parameters) {
+        QueryDiagnostics diagnostics = QueryDiagnostics.enabled();
+        String expression = parameters == null ? query : new AqlExpressionWithParameters().substitute(query, parameters);
 
-        AuditVariables auditVariables = new AuditVariables();
+        AqlQueryPlan queryPlan = compile(expression, diagnostics);
+
+        return execute(queryPlan, diagnostics);
+    }
+
+    /**
+     * Process a page of a query. If the query is ordered and has a LIMIT (see {@link AqlQueryPlan#getKeyset()}), it is
+     * paginated by keyset: a full page comes with a continuation token ({@link AqlResult#getContinuationToken()}) to
+     * retrieve the next one. Pages following the first one are not taken from the plan cache, as the keyset is part
+     * of their SQL.
+     *
+     * @param query             the AQL expression, with its LIMIT
+     * @param parameters        optional query parameters, may be null
+     * @param continuationToken the token returned with the previous page, null for the first page
+     * @return the page
+     */
+    public AqlResult processPage(String query, Map<String, Object> parameters, String continuationToken) {
+        String expression = parameters == null ? query : new AqlExpressionWithParameters().substitute(query, parameters);
+        String normalized = normalize(expression);
+
+        AqlQueryPlan queryPlan;
+        if (continuationToken == null)
+            queryPlan = prepare(expression);
+        else
+            queryPlan = compile(expression, QueryDiagnostics.disabled(), ContinuationToken.decode(continuationToken, normalized));
+
+        AqlResult aqlResult = execute(queryPlan, QueryDiagnostics.disabled());
+
+        Result<Record> records = aqlResult.getRecords();
+        Integer limit = queryPlan.getLimit();
+        if (!queryPlan.getKeyset().isEmpty() && limit != null && limit > 0 && records.size() == limit) {
+            List<Object> keysetValues = new ArrayList<>();
+            Record last = records.get(records.size() - 1);
+            for (BranchMerge.SortKey sortKey : queryPlan.getKeyset()) {
+                keysetValues.add(last.get(sortKey.getColumn()));
+            }
+            aqlResult.setContinuationToken(ContinuationToken.encode(normalized, keysetValues));
+        }
+
+        return aqlResult;
+    }
+
+    /**
+     * Retrieve the compiled plan of a query from the plan cache, compile and cache it on a miss.
+     *
+     * @param query the AQL expression
+     * @return the query plan
+     */
+    public AqlQueryPlan prepare(String query) {
+        KnowledgeCacheService knowledgeCache = (KnowledgeCacheService) this.getDataAccess().getIntrospectService();
+        String normalized = normalize(query);
+
+        //expansions from the terminology server are resolved at compile time and must not be frozen in a plan
+        if (StringUtils.containsIgnoreCase(normalized, TERMINOLOGY_FUNCTION))
+            return compile(query, QueryDiagnostics.disabled());
+
+        //the key is computed once so that a plan compiled across a template change is not stored as current
+        String key = knowledgeCache.queryPlanKey(normalized, branchExecutor != null);
+        AqlQueryPlan queryPlan = knowledgeCache.getQueryPlan(key);
+
+        if (queryPlan == null) {
+            queryPlan = compile(query, QueryDiagnostics.disabled());
+            knowledgeCache.putQueryPlan(key, queryPlan);
+        }
+
+        return queryPlan;
+    }
+
+    public AqlQueryPlan prepare(String query, Map<String, Object> parameters) {
+        if (parameters == null)
+            return prepare(query);
+        return prepare(new AqlExpressionWithParameters().substitute(query, parameters));
+    }
+
+    /**
+     * Execute a plan through a database cursor, see {@link QueryProcessor#stream(I_DomainAccess, AqlQueryPlan, int, Consumer)}.
+     * The audit variables are collected on the fly.
+     *
+     * @param queryPlan the plan to execute
+     * @param fetchSize number of rows retrieved per round trip
+     * @param consumer  the record consumer
+     */
+    public void stream(AqlQueryPlan queryPlan, int fetchSize, Consumer<Record> consumer) {
+        Map<I_VariableDefinition, Set<Object>> auditResults = auditResults(queryPlan);
+
+        QueryProcessor.stream(this, queryPlan, fetchSize, record -> {
+            collectAuditValues(auditResults, record);
+            consumer.accept(record);
+        });
+    }
+
+    private AqlQueryPlan compile(String query, QueryDiagnostics diagnostics) {
+        return compile(query, diagnostics, null);
+    }
+
+    private AqlQueryPlan compile(String query, QueryDiagnostics diagnostics, List<Object> keysetValues) {
+        KnowledgeCacheService knowledgeCache = (KnowledgeCacheService) this.getDataAccess().getIntrospectService();
+
+        AqlExpression aqlExpression = diagnostics.time(QueryDiagnostics.PARSE, () -> new AqlExpression().parse(query));
 
-        Contains contains = new Contains(aqlExpression.getParseTree(), (KnowledgeCacheService)this.getDataAccess().getIntrospectService()).process();
+        Contains contains = diagnostics.time(QueryDiagnostics.CONTAINMENT, () -> new Contains(aqlExpression.getParseTree(), knowledgeCache).process());
 
-        Statements statements = new Statements(aqlExpression.getParseTree(), contains.getIdentifierMapper(), tsAdapter).process();
+        Statements statements = diagnostics.time(QueryDiagnostics.COMPILE, () -> new Statements(aqlExpression.getParseTree(), contains.getIdentifierMapper(), tsAdapter).process());
 
         QueryProcessor queryProcessor = new QueryProcessor(this, this.getIntrospectService(), contains, statements, getDataAccess().getServerConfig().getNodename());
+        queryProcessor.setPartitionBranches(branchExecutor != null);
+        queryProcessor.setKeysetValues(keysetValues);
 
-        AqlResult aqlResult = queryProcessor.execute();
+        return diagnostics.time(QueryDiagnostics.SQL_BUILD, () -> queryProcessor.compile(diagnostics));
+    }
+
+    private AqlResult execute(AqlQueryPlan queryPlan, QueryDiagnostics diagnostics){
+
+        AqlResult aqlResult;
+        if (branchExecutor != null && queryPlan.isPartitioned() && !diagnostics.isEnabled())
+            aqlResult = QueryProcessor.executeBranches(this, queryPlan, branchExecutor);
+        else
+            aqlResult = QueryProcessor.execute(this, queryPlan, diagnostics, branchExecutor);
+
+        Map<I_VariableDefinition, Set<Object>> auditResults = auditResults(queryPlan);
+        for (Record record : aqlResult.getRecords()) {
+            collectAuditValues(auditResults, record);
+        }
+
+        aqlResult.setVariables(variables(queryPlan));
+        aqlResult.setAuditResultMap(auditResultMap);
+        aqlResult.setTemplateIds(queryPlan.getTemplateIds());
+        aqlResult.setEhrIds(queryPlan.getEhrIds());
+        return aqlResult;
+    }
 
-        //add the variable from statements
+    /**
+     * @param queryPlan a compiled plan
+     * @return the non hidden variables of the query, as column name -> path
+     */
+    public Map<String, String> variables(AqlQueryPlan queryPlan) {
         Map<String, String> variables = new LinkedHashMap<>();
 
-        Iterator<I_VariableDefinition> iterator = statements.getVariables().iterator();
         int serial = 0;
-        while (iterator.hasNext()) {
-            I_VariableDefinition variableDefinition = iterator.next();
+        for (I_VariableDefinition variableDefinition : queryPlan.getVariableDefinitions()) {
+            if (!variableDefinition.isHidden())
+                variables.put(variableDefinition.getAlias() == null ? "#" + serial++ : variableDefinition.getAlias(), StringUtils.isNotBlank(variableDefinition.getPath()) ? "/" + variableDefinition.getPath() : variableDefinition.getIdentifier());
+        }
+        return variables;
+    }
+
+    /**
+     * register the result sets of the audit variables of a plan, the sets are filled while iterating the records
+     */
+    private Map<I_VariableDefinition, Set<Object>> auditResults(AqlQueryPlan queryPlan) {
+        AuditVariables auditVariables = new AuditVariables();
+        Map<I_VariableDefinition, Set<Object>> auditResults = new LinkedHashMap<>();
 
-            if (auditVariables.isAuditVariable(variableDefinition)){
+        for (I_VariableDefinition variableDefinition : queryPlan.getVariableDefinitions()) {
+            if (auditVariables.isAuditVariable(variableDefinition)) {
                 //add the result to the list of audit variables
-                auditVariables.addResults(auditResultMap, variableDefinition.getPath(), resultSetForVariable(variableDefinition, aqlResult.getRecords()));
+                Set<Object> resultSet = new HashSet<>();
+                auditResults.put(variableDefinition, resultSet);
+                auditVariables.addResults(auditResultMap, variableDefinition.getPath(), resultSet);
             }
+        }
+        return auditResults;
+    }
 
-            if (!variableDefinition.isHidden())
-                variables.put(variableDefinition.getAlias() == null ? "#" + serial++ : variableDefinition.getAlias(), StringUtils.isNotBlank(variableDefinition.getPath()) ? "/" + variableDefinition.getPath() : variableDefinition.getIdentifier());
+    private void collectAuditValues(Map<I_VariableDefinition, Set<Object>> auditResults, Record record) {
+        for (Map.Entry<I_VariableDefinition, Set<Object>> auditResult : auditResults.entrySet()) {
+            I_VariableDefinition variableDefinition = auditResult.getKey();
+            if (!isFunctionParameter(variableDefinition))
+                auditResult.getValue().add(record.get(columnIdentifier(variableDefinition)));
         }
-        aqlResult.setVariables(variables);
-        aqlResult.setAuditResultMap(auditResultMap);
-        return aqlResult;
+    }
+
+    /**
+     * Normalize an AQL expression to be used as a query plan key: leading and trailing blanks are removed and any
+     * sequence of whitespace outside of a quoted literal is collapsed into a single space.
+     *
+     * @param query the AQL expression
+     * @return the normalized expression
+     */
+    static String normalize(String query) {
+        StringBuilder normalized = new StringBuilder(query.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+
+        for (char c : query.trim().toCharArray()) {
+            if (quote == 0 && Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            if (quote == 0 && (c == '\'' || c == '"'))
+                quote = c;
+            else if (c == quote)
+                quote = 0;
+            normalized.append(c);
+        }
+        return normalized.toString();
     }
 
     @Override
@@ -102,16 +296,24 @@ public class AqlQueryHandler extends DataAccess {
     public Set<Object> resultSetForVariable(I_VariableDefinition variableDefinition, Result<Record> recordResult){
         Set<Object> resultSet = new HashSet<>();
 
-        String columnIdentifier = variableDefinition.getAlias() != null ? variableDefinition.getAlias() : "/"+variableDefinition.getPath();
+        String columnIdentifier = columnIdentifier(variableDefinition);
 
         for (Record record: recordResult){
-            if (variableDefinition.getAlias() == null || !variableDefinition.getAlias().startsWith("_FCT")) { //if the variable is a function parameter, ignore it (f.e. count())
+            if (!isFunctionParameter(variableDefinition)) { //if the variable is a function parameter, ignore it (f.e. count())
                 resultSet.add(record.get(columnIdentifier));
             }
         }
         return resultSet;
     }
 
+    private static String columnIdentifier(I_VariableDefinition variableDefinition) {
+        return variableDefinition.getAlias() != null ? variableDefinition.getAlias() : "/"+variableDefinition.getPath();
+    }
+
+    private static boolean isFunctionParameter(I_VariableDefinition variableDefinition) {
+        return variableDefinition.getAlias() != null && variableDefinition.getAlias().startsWith("_FCT");
+    }
+
     public Map<String, Set<Object>> getAuditResultMap() {
         return auditResultMap;
     }
@@ -29,6 +29,7 @@ import java.util.Locale;
 import org.ehrbase.api.exception.InternalServerException;
 import org.ehrbase.dao.access.interfaces.*;
 import org.ehrbase.dao.access.jooq.party.PersistedPartyProxy;
+import org.ehrbase.dao.access.support.CommitBatch;
 import org.ehrbase.dao.access.support.DataAccess;
 import org.ehrbase.dao.access.util.TransactionTime;
 import org.ehrbase.jooq.pg.enums.ContributionChangeType;
@@ -45,12 +46,12 @@ public class AuditDetailsAccess extends DataAccess implements I_AuditDetailsAcce
     private AuditDetailsRecord auditDetailsRecord;
 
     public AuditDetailsAccess(I_DomainAccess dataAccess) {
-        super(dataAccess.getContext(), null, null, dataAccess.getServerConfig());
+        super(dataAccess);
         this.auditDetailsRecord = dataAccess.getContext().newRecord(AUDIT_DETAILS);
     }
 
     public AuditDetailsAccess(I_DomainAccess dataAccess, UUID systemId, UUID committer, I_ConceptAccess.ContributionChangeType changeType, String description) {
-        super(dataAccess.getContext(), null, null, dataAccess.getServerConfig());
+        super(dataAccess);
         this.auditDetailsRecord = dataAccess.getContext().newRecord(AUDIT_DETAILS);
         auditDetailsRecord.setSystemId(systemId);
         auditDetailsRecord.setCommitter(committer);
@@ -99,6 +100,16 @@ public class AuditDetailsAccess extends DataAccess implements I_AuditDetailsAcce
         return commit(TransactionTime.millis());
     }
 
+    @Override
+    public UUID commit(CommitBatch batch, Timestamp transactionTime) {
+        auditDetailsRecord.setTimeCommitted(transactionTime);
+        auditDetailsRecord.setTimeCommittedTzid(ZonedDateTime.now().getZone().getId());
+        if (auditDetailsRecord.getId() == null)
+            auditDetailsRecord.setId(UUID.randomUUID());
+        batch.insert("auditDetails", auditDetailsRecord);
+        return auditDetailsRecord.getId();
+    }
+
     @Override
     public UUID commit(UUID systemId, UUID committerId, String description) {
         if (systemId == null || committerId == null)
@@ -234,12 +245,19 @@ public class AuditDetailsAccess extends DataAccess implements I_AuditDetailsAcce
 
     @Override
     public AuditDetails getAsAuditDetails() {
-        String systemId = getSystemId().toString();
-        PartyProxy party = new PersistedPartyProxy(this).retrieve(getCommitter());
-        DvDateTime time = new DvDateTime(getTimeCommitted().toLocalDateTime());
-        DvCodedText changeType = new DvCodedText(getChangeType().getLiteral(),
-            new CodePhrase(new TerminologyId("openehr"), Integer.toString(I_ConceptAccess.ContributionChangeType.valueOf(getChangeType().getLiteral().toUpperCase()).getCode())));
-        DvText description = new DvText(getDescription());
-        return new AuditDetails(systemId, party, time, changeType, description);
+        return toAuditDetails(auditDetailsRecord, new PersistedPartyProxy(this).retrieve(getCommitter()));
+    }
+
+    /**
+     * Builds the RM object of an audit_details row whose committer was already retrieved.
+     */
+    static AuditDetails toAuditDetails(AuditDetailsRecord auditDetailsRecord, PartyProxy committer) {
+        String systemId = auditDetailsRecord.getSystemId().toString();
+        DvDateTime time = new DvDateTime(auditDetailsRecord.getTimeCommitted().toLocalDateTime());
+        String changeTypeLiteral = auditDetailsRecord.getChangeType().getLiteral();
+        DvCodedText changeType = new DvCodedText(changeTypeLiteral,
+            new CodePhrase(new TerminologyId("openehr"), Integer.toString(I_ConceptAccess.ContributionChangeType.valueOf(changeTypeLiteral.toUpperCase()).getCode())));
+        DvText description = new DvText(auditDetailsRecord.getDescription());
+        return new AuditDetails(systemId, committer, time, changeType, description);
     }
 }
@@ -35,6 +35,7 @@ import org.ehrbase.api.exception.InternalServerException;
 import org.ehrbase.api.exception.ObjectNotFoundException;
 import org.ehrbase.dao.access.interfaces.*;
 import org.ehrbase.dao.access.jooq.party.PersistedPartyProxy;
+import org.ehrbase.dao.access.support.CommitBatch;
 import org.ehrbase.dao.access.support.DataAccess;
 import org.ehrbase.dao.access.util.ContributionDef;
 import org.ehrbase.dao.access.util.TransactionTime;
@@ -45,6 +46,8 @@ import org.ehrbase.jooq.pg.tables.records.*;
 import org.ehrbase.serialisation.dbencoding.rmobject.FeederAuditEncoding;
 import org.ehrbase.serialisation.dbencoding.rmobject.LinksEncoding;
 import org.ehrbase.service.IntrospectService;
+import org.ehrbase.service.PartyIdentityCache;
+import org.ehrbase.service.ReferenceDataRegistry;
 import org.ehrbase.util.PartyUtils;
 import org.jooq.DSLContext;
 import org.jooq.JSONB;
@@ -84,7 +87,15 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
      * @throws IllegalArgumentException when seeking language code, territory code or composer ID failed
      */
     public CompositionAccess(DSLContext context, I_KnowledgeCache knowledgeManager, IntrospectService introspectCache, ServerConfig serverConfig, Composition composition, UUID ehrId) {
-        super(context, knowledgeManager, introspectCache, serverConfig);
+        this(context, knowledgeManager, introspectCache, serverConfig, null, null, composition, ehrId);
+    }
+
+    /**
+     * Same as above, the territory and language codes are resolved from the given reference data and the composer
+     * from the given party identity cache when available.
+     */
+    public CompositionAccess(DSLContext context, I_KnowledgeCache knowledgeManager, IntrospectService introspectCache, ServerConfig serverConfig, ReferenceDataRegistry referenceData, PartyIdentityCache partyIdentityCache, Composition composition, UUID ehrId) {
+        super(context, knowledgeManager, introspectCache, serverConfig, referenceData, partyIdentityCache);
 
         this.composition = composition;
 
@@ -187,7 +198,10 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
      */
     @Override
     public UUID commit(LocalDateTime timestamp, UUID committerId, UUID systemId, String description) {
-        return internalCreate(timestamp, committerId, systemId, description, null);
+        CommitBatch batch = new CommitBatch(getContext());
+        UUID compositionId = internalCreate(batch, timestamp, committerId, systemId, description, null);
+        batch.execute();
+        return compositionId;
     }
 
     /**
@@ -195,12 +209,29 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
      */
     @Override
     public UUID commit(LocalDateTime timestamp, UUID contribution) {
-        return internalCreate(timestamp, null, null, null, contribution);
+        CommitBatch batch = new CommitBatch(getContext());
+        UUID compositionId = internalCreate(batch, timestamp, null, null, null, contribution);
+        batch.execute();
+        return compositionId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UUID commit(CommitBatch batch, LocalDateTime timestamp, UUID committerId, UUID systemId, String description) {
+        return internalCreate(batch, timestamp, committerId, systemId, description, null);
     }
 
-    private UUID internalCreate(LocalDateTime timestamp, UUID committerId, UUID systemId,
+    /**
+     * Prepares the creation of the composition and all its rows (contribution and audits, entries, event context and
+     * participations). The inserts are added to the given {@link CommitBatch}, ids are assigned upfront.
+     */
+    private UUID internalCreate(CommitBatch batch, LocalDateTime timestamp, UUID committerId, UUID systemId,
         String description, UUID contribution) {
 
+        Timestamp auditTime = TransactionTime.millis();
+
         // check if custom contribution is already set, because changing it would yield updating in DB which is not desired (creates wrong new "version")
         if (contribution != null) {
             // Retrieve audit metadata from given contribution
@@ -215,7 +246,7 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
             contributionAccess.setState(ContributionDef.ContributionState.COMPLETE);
             contributionAccess.setAuditDetailsValues(committerId, systemId, description, I_ConceptAccess.ContributionChangeType.CREATION);
 
-            UUID contributionId = this.contributionAccess.commit();
+            UUID contributionId = this.contributionAccess.commit(batch, auditTime);
             setContributionId(contributionId);
         }
 
@@ -225,18 +256,18 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
         auditDetailsAccess.setSystemId(systemId);
         auditDetailsAccess.setCommitter(committerId);
         auditDetailsAccess.setDescription(description);
-        UUID auditId = this.auditDetailsAccess.commit();
+        UUID auditId = this.auditDetailsAccess.commit(batch, auditTime);
         compositionRecord.setHasAudit(auditId);
 
         compositionRecord.setSysTransaction(Timestamp.valueOf(timestamp));
-        compositionRecord.store();
+        batch.insert("composition", compositionRecord);
 
         if (content.isEmpty())
             log.warn("Composition has no content:");
 
         try {
             for (I_EntryAccess entryAccess : content)
-                entryAccess.commit(Timestamp.valueOf(timestamp));
+                entryAccess.commit(batch, Timestamp.valueOf(timestamp));
         } catch (Exception exception) {
             log.error("Problem in committing content, rolling back, exception:" + exception);
             throw new IllegalArgumentException("Could not commit content:" + exception);
@@ -247,9 +278,10 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
             I_ContextAccess contextAccess = I_ContextAccess.getInstance(this, eventContext);
             if (!contextAccess.isVoid()) {
                 contextAccess.setCompositionId(compositionRecord.getId());
-                contextAccess.commit(Timestamp.valueOf(timestamp));
+                contextAccess.commit(batch, Timestamp.valueOf(timestamp));
             }
         }
+
         return compositionRecord.getId();
     }
 
@@ -420,57 +452,34 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
             throw new IllegalArgumentException("Version number must be > 0  please check your code");
 
         //check if this version number matches the current version
-        if (getLastVersionNumber(domainAccess, id) == version) { //current version
+        if (domainAccess.getContext().fetchExists(COMPOSITION, COMPOSITION.ID.eq(id).and(COMPOSITION.VERSION.eq(version)))) {
             return retrieveInstance(domainAccess, id);
         }
 
-        // FIXME make jooq compliant
-        String versionQuery =
-                "select " +
-                        "row_id, " +
-                        "in_contribution, " +
-                        "ehr_id, " +
-                        "language, " +
-                        "territory, " +
-                        "composer, " +
-                        "sys_transaction, " +
-                        "has_audit," +
-                        "attestation_ref, " +
-                        "feeder_audit, " +
-                        "links from \n" +
-                        "  (select ROW_NUMBER() OVER (ORDER BY sys_transaction ASC ) AS row_id, * from ehr.composition_history " +
-                        "       WHERE id = ?) \n" +
-                        "    AS Version WHERE row_id = ?;";
-
-        Connection connection = domainAccess.getConnection();
+        CompositionHistoryRecord historyRecord = domainAccess.getContext()
+                .selectFrom(COMPOSITION_HISTORY)
+                .where(COMPOSITION_HISTORY.ID.eq(id))
+                .and(COMPOSITION_HISTORY.VERSION.eq(version))
+                .fetchOne();
 
         I_CompositionAccess compositionHistoryAccess = null;
-        try (PreparedStatement preparedStatement = connection.prepareStatement(versionQuery)) {
-            preparedStatement.setObject(1, id);
-            preparedStatement.setInt(2, version);
-
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-
-                while (resultSet.next()) {
-                    CompositionRecord compositionRecord1 = domainAccess.getContext().newRecord(COMPOSITION);
-                    compositionRecord1.setId(id);
-                    compositionRecord1.setInContribution(UUID.fromString(resultSet.getString("in_contribution")));
-                    compositionRecord1.setEhrId(UUID.fromString(resultSet.getString("ehr_id")));
-                    compositionRecord1.setLanguage(resultSet.getString("language"));
-                    compositionRecord1.setTerritory(resultSet.getInt("territory"));
-                    compositionRecord1.setComposer(UUID.fromString(resultSet.getString("composer")));
-                    compositionRecord1.setSysTransaction(resultSet.getTimestamp("sys_transaction"));
-                    compositionRecord1.setHasAudit(UUID.fromString(resultSet.getString("has_audit")));
-                    compositionRecord1.setFeederAudit(JSONB.valueOf(resultSet.getString("feeder_audit")));
-
-                    /* TODO: uncomment when links encode/decode is fully implemented
-                    compositionRecord1.setLinks(JSONB.valueOf(resultSet.getString("links")));
-                     */
-                    compositionHistoryAccess = new CompositionAccess(domainAccess, compositionRecord1);
-                }
-            }
-        } catch (SQLException e) {
-            throw new ObjectNotFoundException(COMPOSITION_LITERAL, "Composition not found or or invalid DB content", e);
+        if (historyRecord != null) {
+            CompositionRecord compositionRecord1 = domainAccess.getContext().newRecord(COMPOSITION);
+            compositionRecord1.setId(id);
+            compositionRecord1.setInContribution(historyRecord.getInContribution());
+            compositionRecord1.setEhrId(historyRecord.getEhrId());
+            compositionRecord1.setLanguage(historyRecord.getLanguage());
+            compositionRecord1.setTerritory(historyRecord.getTerritory());
+            compositionRecord1.setComposer(historyRecord.getComposer());
+            compositionRecord1.setSysTransaction(historyRecord.getSysTransaction());
+            compositionRecord1.setHasAudit(historyRecord.getHasAudit());
+            compositionRecord1.setFeederAudit(historyRecord.getFeederAudit());
+            compositionRecord1.setVersion(historyRecord.getVersion());
+
+            /* TODO: uncomment when links encode/decode is fully implemented
+            compositionRecord1.setLinks(historyRecord.getLinks());
+             */
+            compositionHistoryAccess = new CompositionAccess(domainAccess, compositionRecord1);
         }
 
         if (compositionHistoryAccess != null) {
@@ -494,17 +503,19 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
 
         }
 
-        domainAccess.releaseConnection(connection);
-
         return compositionHistoryAccess;
     }
 
+    /**
+     * @return the version of the current row, the last one of the history for a deleted composition, 0 if unknown
+     */
     public static Integer getLastVersionNumber(I_DomainAccess domainAccess, UUID compositionId) {
-        // check if compositionId is valid (version count = 1) and add number of existing older versions
-        if (domainAccess.getContext().fetchExists(COMPOSITION, COMPOSITION.ID.eq(compositionId))) {
-            return 1 + domainAccess.getContext().fetchCount(COMPOSITION_HISTORY, COMPOSITION_HISTORY.ID.eq(compositionId));
-        } else
-            return domainAccess.getContext().fetchCount(COMPOSITION_HISTORY, COMPOSITION_HISTORY.ID.eq(compositionId));
+        return domainAccess.getContext()
+                .select(coalesce(
+                        field(select(COMPOSITION.VERSION).from(COMPOSITION).where(COMPOSITION.ID.eq(compositionId))),
+                        field(select(max(COMPOSITION_HISTORY.VERSION)).from(COMPOSITION_HISTORY).where(COMPOSITION_HISTORY.ID.eq(compositionId))),
+                        inline(0)))
+                .fetchOne(0, Integer.class);
     }
 
     public static boolean hasPreviousVersion(I_DomainAccess domainAccess, UUID compositionId) {
@@ -540,30 +551,32 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
         if (timeCommitted == null) {
             return getLastVersionNumber(domainAccess, vCompositionUid);
         }
-        //get the latest composition time (available in ehr.composition) table
-        Record result;
-        try {
-            result = domainAccess.getContext().select(max(COMPOSITION.SYS_TRANSACTION).as("mostRecentInTable")).from(COMPOSITION).where(COMPOSITION.ID.eq(vCompositionUid)).fetchOne();
-        } catch (RuntimeException e) {  // generalize SQL exceptions
-            throw new InternalServerException("Problem with SQL statement or input", e);
+        //the current version, if committed at or before the timestamp
+        Record current = domainAccess.getContext()
+                .select(COMPOSITION.VERSION, COMPOSITION.SYS_TRANSACTION)
+                .from(COMPOSITION)
+                .where(COMPOSITION.ID.eq(vCompositionUid))
+                .fetchOne();
+        if (current != null && timeCommitted.compareTo(current.get(COMPOSITION.SYS_TRANSACTION)) >= 0) {
+            return current.get(COMPOSITION.VERSION);
         }
-        Timestamp latestCompoTime = (Timestamp) result.get("mostRecentInTable");
 
-        //get the latest version (if more than one) time (available in ehr.composition_history) table
-        Record result2;
+        //otherwise the last version of the history committed at or before the timestamp
+        Integer version;
         try {
-            result2 = domainAccess.getContext().select(count().as("countVersionInTable")).from(COMPOSITION_HISTORY).where(COMPOSITION_HISTORY.SYS_TRANSACTION.lessOrEqual(timeCommitted).and(COMPOSITION_HISTORY.ID.eq(vCompositionUid))).fetchOne();
+            version = domainAccess.getContext()
+                    .select(max(COMPOSITION_HISTORY.VERSION))
+                    .from(COMPOSITION_HISTORY)
+                    .where(COMPOSITION_HISTORY.ID.eq(vCompositionUid))
+                    .and(COMPOSITION_HISTORY.SYS_TRANSACTION.lessOrEqual(timeCommitted))
+                    .fetchOne(0, Integer.class);
         } catch (RuntimeException e) { // generalize SQL exceptions
             throw new InternalServerException("Problem with SQL statement or input", e);
         }
-        int versionComHist = (int) result2.get("countVersionInTable");
-        if (timeCommitted.compareTo(latestCompoTime) >= 0) {//if the timestamp is after or equal to the sys_transaction of the latest composition available, add one since its version has not been counted for being the one stored in the ehr.composition table
-            versionComHist++;
-        }
-        if (versionComHist == 0) {
+        if (version == null) {
             throw new ObjectNotFoundException("composition", "There are no versions available prior to date " + timeCommitted + " for the the composition with id: " + vCompositionUid);
         }
-        return versionComHist;
+        return version;
     }
 
     /**
@@ -575,10 +588,6 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
 
         int version = getVersionFromTimeStamp(domainAccess, compositionUid, timeCommitted);
 
-        if (getLastVersionNumber(domainAccess, compositionUid) == version) { //current version
-            return retrieveInstance(domainAccess, compositionUid);
-        }
-
         return retrieveCompositionVersion(domainAccess, compositionUid, version);
     }
 
@@ -593,7 +602,6 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
 
         // get whole "version map" of each matching composition and do fine-grain check for matching contribution
         // precondition: each UUID in `compositions` set is unique, so for each the "version map" is only created once below
-        // (meta: can't do that as jooq query, because the specific version number isn't stored in DB)
         Map<ObjectVersionId, I_CompositionAccess> resultMap = new HashMap<>();
         for (UUID compositionId : compositions) {
             Map<Integer, I_CompositionAccess> map = getVersionMapOfComposition(domainAccess, compositionId);
@@ -610,38 +618,28 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
     public static Map<Integer, I_CompositionAccess> getVersionMapOfComposition(I_DomainAccess domainAccess, UUID compositionId) {
         Map<Integer, I_CompositionAccess> versionMap = new HashMap<>();
 
-        // create counter with highest version, to keep track of version number and allow check in the end
-        Integer versionCounter = getLastVersionNumber(domainAccess, compositionId);
-
         // fetch matching entry
         CompositionRecord record = domainAccess.getContext().fetchOne(COMPOSITION, COMPOSITION.ID.eq(compositionId));
         if (record != null) {
             I_CompositionAccess compositionAccess = new CompositionAccess(domainAccess);
             compositionAccess.setCompositionRecord(record);
             compositionAccess.setContent(I_EntryAccess.retrieveInstanceInComposition(domainAccess, compositionAccess));
-            versionMap.put(versionCounter, compositionAccess);
-
-            versionCounter--;
+            versionMap.put(record.getVersion(), compositionAccess);
         }
 
         // if composition was removed (i.e. from "COMPOSITION" table) *or* other versions are existing
         Result<CompositionHistoryRecord> historyRecords = domainAccess.getContext()
                 .selectFrom(COMPOSITION_HISTORY)
                 .where(COMPOSITION_HISTORY.ID.eq(compositionId))
-                .orderBy(COMPOSITION_HISTORY.SYS_TRANSACTION.desc())
                 .fetch();
 
         for (CompositionHistoryRecord historyRecord : historyRecords) {
             I_CompositionAccess historyAccess = new CompositionAccess(domainAccess);
             historyAccess.setCompositionRecord(historyRecord);
             historyAccess.setContent(I_EntryAccess.retrieveInstanceInComposition(domainAccess, historyAccess));
-            versionMap.put(versionCounter, historyAccess);
-            versionCounter--;
+            versionMap.put(historyRecord.getVersion(), historyAccess);
         }
 
-        if (versionCounter != 0)
-            throw new InternalServerException("Version Map generation failed");
-
         return versionMap;
     }
 
@@ -814,7 +812,8 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
                 historyRecord.getHasAudit(),
                 historyRecord.getAttestationRef(),
                 historyRecord.getFeederAudit(),
-                historyRecord.getLinks()
+                historyRecord.getLinks(),
+                historyRecord.getVersion()
         );
     }
 
@@ -880,8 +879,7 @@ public class CompositionAccess extends DataAccess implements I_CompositionAccess
 
     @Override
     public Integer getVersion() {
-        //default current version, no history   // FIXME
-        return 1;
+        return compositionRecord.getVersion();
     }
 
     /**
@@ -43,6 +43,7 @@ import org.ehrbase.dao.access.interfaces.I_ContextAccess;
 import org.ehrbase.dao.access.interfaces.I_DomainAccess;
 import org.ehrbase.dao.access.jooq.party.PersistedObjectId;
 import org.ehrbase.dao.access.jooq.party.PersistedPartyProxy;
+import org.ehrbase.dao.access.support.CommitBatch;
 import org.ehrbase.dao.access.support.DataAccess;
 import org.ehrbase.dao.access.util.TransactionTime;
 import org.ehrbase.jooq.pg.tables.records.EventContextHistoryRecord;
@@ -91,6 +92,14 @@ public class ContextAccess extends DataAccess implements I_ContextAccess {
         setRecordFields(UUID.randomUUID(), eventContext);
     }
 
+    public ContextAccess(I_DomainAccess domainAccess, EventContext eventContext) {
+        super(domainAccess);
+        if (eventContext == null)
+            return;
+        eventContextRecord = domainAccess.getContext().newRecord(EVENT_CONTEXT);
+        setRecordFields(UUID.randomUUID(), eventContext);
+    }
+
     private ContextAccess(I_DomainAccess domainAccess) {
         super(domainAccess);
     }
@@ -319,6 +328,22 @@ public class ContextAccess extends DataAccess implements I_ContextAccess {
         return eventContextRecord.getId();
     }
 
+    @Override
+    public UUID commit(CommitBatch batch, Timestamp transactionTime) {
+        eventContextRecord.setSysTransaction(transactionTime);
+        batch.insert("event context", eventContextRecord);
+
+        for (ParticipationRecord participation : participations) {
+            participation.setEventContext(eventContextRecord.getId());
+            participation.setSysTransaction(transactionTime);
+            if (participation.getId() == null)
+                participation.setId(UUID.randomUUID());
+            batch.insert("participation", participation);
+        }
+
+        return eventContextRecord.getId();
+    }
+
     /**
      * @throws InternalServerException  when database operation or
      * @throws IllegalArgumentException when context commit failed
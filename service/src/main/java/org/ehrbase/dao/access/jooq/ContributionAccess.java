@@ -29,6 +29,7 @@ import org.ehrbase.api.exception.InternalServerException;
 import org.ehrbase.dao.access.interfaces.*;
 import org.ehrbase.dao.access.interfaces.I_ConceptAccess.ContributionChangeType;
 import org.ehrbase.dao.access.jooq.party.PersistedPartyProxy;
+import org.ehrbase.dao.access.support.CommitBatch;
 import org.ehrbase.dao.access.support.DataAccess;
 import org.ehrbase.dao.access.util.ContributionDef;
 import org.ehrbase.dao.access.util.TransactionTime;
@@ -83,7 +84,7 @@ public class ContributionAccess extends DataAccess implements I_ContributionAcce
      */
     public ContributionAccess(I_DomainAccess domainAccess, UUID ehrId) {
 
-        super(domainAccess.getContext(), domainAccess.getKnowledgeManager(), domainAccess.getIntrospectService(), domainAccess.getServerConfig());
+        super(domainAccess);
 
         this.contributionRecord = domainAccess.getContext().newRecord(CONTRIBUTION);
 
@@ -144,6 +145,23 @@ public class ContributionAccess extends DataAccess implements I_ContributionAcce
         return commit(TransactionTime.millis());
     }
 
+    @Override
+    public UUID commit(CommitBatch batch, Timestamp transactionTime) {
+        UUID auditId = this.auditDetails.commit(batch, transactionTime);
+        contributionRecord.setHasAudit(auditId);
+
+        if (contributionRecord.getState() == ContributionState.incomplete) {
+            log.warn("Contribution state has not been set");
+        }
+
+        contributionRecord.setEhrId(this.getEhrId());
+        if (contributionRecord.getId() == null)
+            contributionRecord.setId(UUID.randomUUID());
+        batch.insert("contribution", contributionRecord);
+
+        return contributionRecord.getId();
+    }
+
     /**
      * Commit the contribution with optional values, excluding audit, which needs to be created and set beforehand.
      */
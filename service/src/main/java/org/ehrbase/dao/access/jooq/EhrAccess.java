@@ -237,23 +237,17 @@ public class EhrAccess extends DataAccess implements I_EhrAccess {
         I_StatusAccess statusAccess = I_StatusAccess.retrieveInstance(domainAccess, status);
         ehrAccess.setStatusAccess(statusAccess);
 
-        // first step of retrieving a particular version is to query for the amount of versions, which depends on the latest one above
-        Integer versions = domainAccess.getContext().fetchCount(STATUS_HISTORY, STATUS_HISTORY.EHR_ID.eq(ehrAccess.getStatusAccess().getStatusRecord().getEhrId())) + 1;
-        // check if input version number fits into existing amount of versions, but is not the same (same equals latest version)
-        // when either there is only one version or the requested one is the latest, continue with record already set
-        if (versions > version && !version.equals(versions)) { // or get the particular requested version
-            // sonarlint says that the expression above is always true? tested it, it can be true and false!?
-            // note: here version is > 1 and there has to be at least one history entry
-            Result<StatusHistoryRecord> result = domainAccess.getContext().selectFrom(STATUS_HISTORY)
-                    .where(STATUS_HISTORY.EHR_ID.eq(ehrId))
-                    .orderBy(STATUS_HISTORY.SYS_TRANSACTION.asc())  // oldest at top, i.e. [0]
-                    .fetch();
-
-            if (result.isEmpty())
+        // the latest version is the record already set, an older one is read from the history by its number
+        Integer versions = ehrAccess.getStatusAccess().getStatusRecord().getVersion();
+        if (versions > version) {
+            StatusHistoryRecord statusHistoryRecord = domainAccess.getContext().selectFrom(STATUS_HISTORY)
+                    .where(STATUS_HISTORY.ID.eq(status))
+                    .and(STATUS_HISTORY.VERSION.eq(version))
+                    .fetchOne();
+
+            if (statusHistoryRecord == null)
                 throw new InternalServerException("Error retrieving EHR_STATUS"); // should never be reached
 
-            // result set of history table is always version+1, because the latest is in non-history table
-            StatusHistoryRecord statusHistoryRecord = result.get(version-1);
             // FIXME EHR_STATUS: manually converting types. dirty, formally break jooq-style, right? the record would considered to be updated when calling methods like .store()
             ehrAccess.getStatusAccess().getStatusRecord().setEhrId(statusHistoryRecord.getEhrId());
             ehrAccess.getStatusAccess().getStatusRecord().setIsQueryable(statusHistoryRecord.getIsQueryable());
@@ -269,6 +263,7 @@ public class EhrAccess extends DataAccess implements I_EhrAccess {
             ehrAccess.getStatusAccess().getStatusRecord().setInContribution(statusHistoryRecord.getInContribution());
             ehrAccess.getStatusAccess().getStatusRecord().setArchetypeNodeId(statusHistoryRecord.getArchetypeNodeId());
             ehrAccess.getStatusAccess().getStatusRecord().setName(statusHistoryRecord.getName());
+            ehrAccess.getStatusAccess().getStatusRecord().setVersion(statusHistoryRecord.getVersion());
 
         }
 
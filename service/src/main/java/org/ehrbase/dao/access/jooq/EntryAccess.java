@@ -43,6 +43,7 @@ import org.ehrbase.dao.access.interfaces.I_DomainAccess;
 import org.ehrbase.dao.access.interfaces.I_EntryAccess;
 import org.ehrbase.dao.access.jooq.party.PersistedPartyProxy;
 import org.ehrbase.dao.access.query.AsyncSqlQuery;
+import org.ehrbase.dao.access.support.CommitBatch;
 import org.ehrbase.dao.access.support.DataAccess;
 import org.ehrbase.jooq.pg.enums.EntryType;
 import org.ehrbase.jooq.pg.tables.records.EntryHistoryRecord;
@@ -88,7 +89,7 @@ public class EntryAccess extends DataAccess implements I_EntryAccess {
      * @param composition   Object representation of linked composition
      */
     public EntryAccess(I_DomainAccess domainAccess, String templateId, Integer sequence, UUID compositionId, Composition composition) {
-        super(domainAccess.getContext(), domainAccess.getKnowledgeManager(), domainAccess.getIntrospectService(), domainAccess.getServerConfig());
+        super(domainAccess);
         setFields(templateId, sequence, compositionId, composition);
     }
 
@@ -113,7 +114,7 @@ public class EntryAccess extends DataAccess implements I_EntryAccess {
         opContextAccess.ifPresent(context -> values.put(SystemValue.CONTEXT, context.mapRmEventContext()));
 
         values.put(SystemValue.LANGUAGE, new CodePhrase(new TerminologyId("ISO_639-1"), compositionAccess.getLanguageCode()));
-        String territory2letters = domainAccess.getContext().fetchOne(TERRITORY, TERRITORY.CODE.eq(compositionAccess.getTerritoryCode())).getTwoletter();
+        String territory2letters = territoryTwoLetter(domainAccess, compositionAccess.getTerritoryCode());
 
         values.put(SystemValue.TERRITORY, new CodePhrase(new TerminologyId("ISO_3166-1"), territory2letters));
 
@@ -125,12 +126,16 @@ public class EntryAccess extends DataAccess implements I_EntryAccess {
 
         List<I_EntryAccess> content = new ArrayList<>();
 
+        //the version number of the composition record, the record UID of all entries
+        Integer version = compositionAccess.getVersion() != null
+                ? compositionAccess.getVersion()
+                : I_CompositionAccess.getLastVersionNumber(domainAccess, compositionAccess.getId());
+
         try {
             EntryAccess entryAccess = new EntryAccess(domainAccess);
 
             for (EntryRecord record : entryRecords) {
                 //set the record UID in the composition with matching version number
-                Integer version = I_CompositionAccess.getLastVersionNumber(domainAccess, compositionAccess.getId());
                 values.put(SystemValue.UID,
                         new ObjectVersionId(compositionAccess.getId().toString() + "::" + domainAccess.getServerConfig().getNodename() + "::" + version));
 
@@ -153,6 +158,13 @@ public class EntryAccess extends DataAccess implements I_EntryAccess {
         return content;
     }
 
+    private static String territoryTwoLetter(I_DomainAccess domainAccess, Integer territoryCode) {
+        String twoLetter = domainAccess.getReferenceData() == null ? null : domainAccess.getReferenceData().getTerritoryTwoLetter(territoryCode);
+        if (twoLetter != null)
+            return twoLetter;
+        return domainAccess.getContext().fetchOne(TERRITORY, TERRITORY.CODE.eq(territoryCode)).getTwoletter();
+    }
+
     private static void buildArchetypeDetails(EntryAccess entryAccess) {
         Archetyped archetypeDetails = new Archetyped();
         TemplateId templateId = new TemplateId();
@@ -183,7 +195,7 @@ public class EntryAccess extends DataAccess implements I_EntryAccess {
         values.put(SystemValue.CONTEXT, context);
 
         values.put(SystemValue.LANGUAGE, new CodePhrase(new TerminologyId("ISO_639-1"), compositionHistoryAccess.getLanguageCode()));
-        String territory2letters = domainAccess.getContext().fetchOne(TERRITORY, TERRITORY.CODE.eq(compositionHistoryAccess.getTerritoryCode())).getTwoletter();
+        String territory2letters = territoryTwoLetter(domainAccess, compositionHistoryAccess.getTerritoryCode());
         values.put(SystemValue.TERRITORY, new CodePhrase(new TerminologyId("ISO_3166-1"), territory2letters));
 
         values.put(SystemValue.FEEDER_AUDIT, new FeederAuditEncoding().fromDB(compositionHistoryAccess.getFeederAudit()));
@@ -366,6 +378,38 @@ public class EntryAccess extends DataAccess implements I_EntryAccess {
         return result.getValue(ENTRY.ID);
     }
 
+    @Override
+    public UUID commit(CommitBatch batch, Timestamp transactionTime) {
+        UUID id = entryRecord.getId() != null ? entryRecord.getId() : UUID.randomUUID();
+
+        batch.add("entry", getContext()
+                .insertInto(ENTRY,
+                        ENTRY.ID,
+                        ENTRY.SEQUENCE,
+                        ENTRY.COMPOSITION_ID,
+                        ENTRY.TEMPLATE_ID,
+                        ENTRY.ITEM_TYPE,
+                        ENTRY.ARCHETYPE_ID,
+                        ENTRY.CATEGORY,
+                        ENTRY.ENTRY_,
+                        ENTRY.SYS_TRANSACTION,
+                        ENTRY.NAME,
+                        ENTRY.RM_VERSION)
+                .values(DSL.val(id),
+                        DSL.val(getSequence()),
+                        DSL.val(getCompositionId()),
+                        DSL.val(getTemplateId()),
+                        DSL.val(EntryType.valueOf(getItemType())),
+                        DSL.val(getArchetypeId()),
+                        DSL.val(getCategory()),
+                        DSL.val(getEntryJson()),
+                        DSL.val(transactionTime),
+                        DSL.val(getCompositionName()),
+                        DSL.val(getRmVersion())));
+
+        return id;
+    }
+
     /**
      * @throws InternalServerException because inherited interface function isn't implemented in this class
      * @deprecated
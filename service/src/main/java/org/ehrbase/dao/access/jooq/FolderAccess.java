@@ -55,7 +55,10 @@ import java.util.*;
 import java.util.UUID;
 
 import static org.ehrbase.jooq.pg.Tables.*;
+import static org.jooq.impl.DSL.coalesce;
 import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.inline;
+import static org.jooq.impl.DSL.max;
 import static org.jooq.impl.DSL.name;
 import static org.jooq.impl.DSL.select;
 import static org.jooq.impl.DSL.table;
@@ -419,7 +422,6 @@ public class FolderAccess extends DataAccess implements I_FolderAccess, Comparab
 
         // get whole "version map" of each matching folder and do fine-grain check for matching contribution
         // precondition: each UUID in `folders` set is unique, so for each the "version map" is only created once below
-        // (meta: can't do that as jooq query, because the specific version number isn't stored in DB)
         Set<ObjectVersionId> result = new HashSet<>();
 
         for (UUID folderId : folders) {
@@ -453,32 +455,22 @@ public class FolderAccess extends DataAccess implements I_FolderAccess, Comparab
     private static Map<Record, Integer> getVersionMapOfFolder(I_DomainAccess domainAccess, UUID folderId) {
         Map<Record, Integer> versionMap = new HashMap<>();
 
-        // create counter with highest version, to keep track of version number and allow check in the end
-        Integer versionCounter = getLastVersionNumber(domainAccess, folderId);
-
         // fetch matching entry
         FolderRecord rec = domainAccess.getContext().fetchOne(FOLDER, FOLDER.ID.eq(folderId));
         if (rec != null) {
-            versionMap.put(rec, versionCounter);
-
-            versionCounter--;
+            versionMap.put(rec, rec.getVersion());
         }
 
-        // if composition was removed (i.e. from "COMPOSITION" table) *or* other versions are existing
+        // if folder was removed (i.e. from "FOLDER" table) *or* other versions are existing
         Result<FolderHistoryRecord> historyRecords = domainAccess.getContext()
                 .selectFrom(FOLDER_HISTORY)
                 .where(FOLDER_HISTORY.ID.eq(folderId))
-                .orderBy(FOLDER_HISTORY.SYS_TRANSACTION.desc())
                 .fetch();
 
         for (FolderHistoryRecord historyRecord : historyRecords) {
-            versionMap.put(historyRecord, versionCounter);
-            versionCounter--;
+            versionMap.put(historyRecord, historyRecord.getVersion());
         }
 
-        if (versionCounter != 0)
-            throw new InternalServerException("Version Map generation failed");
-
         return versionMap;
     }
 
@@ -900,10 +892,8 @@ public class FolderAccess extends DataAccess implements I_FolderAccess, Comparab
     }
 
     /**
-     * Returns the last version number of a given folder by counting all
-     * previous versions of a given folder id. If there are no previous versions
-     * in the history table the version number will be 1. Otherwise the current
-     * version equals the count of entries in the folder history table plus 1.
+     * Returns the last version number of a given folder: the version of the current folder entry or, for a deleted
+     * folder, the one following the last version of the folder history table. A folder not found has version 1.
      *
      * @param domainAccess - Database connection access context
      * @param folderId     - ObjectVersionUid of the folder to check for the last version
@@ -917,17 +907,14 @@ public class FolderAccess extends DataAccess implements I_FolderAccess, Comparab
     }
 
     // whole ObjectVersionId is just not necessary for DB query, so this works on access layer (without info like the nodeName), too.
-    private static Integer getLastVersionNumber(I_DomainAccess domainAccess, UUID folderUuid) {
-
-        if (!hasPreviousVersion(domainAccess, folderUuid)) {
-            return 1;
-        }
-        // Get number of entries as the history table of folders
-        int versionCount = domainAccess
+    static Integer getLastVersionNumber(I_DomainAccess domainAccess, UUID folderUuid) {
+        return domainAccess
                 .getContext()
-                .fetchCount(FOLDER_HISTORY, FOLDER_HISTORY.ID.eq(folderUuid));
-        // Latest version will be entries plus actual entry count (always 1)
-        return versionCount + 1;
+                .select(coalesce(
+                        field(select(FOLDER.VERSION).from(FOLDER).where(FOLDER.ID.eq(folderUuid))),
+                        field(select(max(FOLDER_HISTORY.VERSION).plus(1)).from(FOLDER_HISTORY).where(FOLDER_HISTORY.ID.eq(folderUuid))),
+                        inline(1)))
+                .fetchOne(0, Integer.class);
     }
 
 
@@ -947,9 +934,9 @@ public class FolderAccess extends DataAccess implements I_FolderAccess, Comparab
     }
 
     /**
-     * Evaluates the version for a folder at a given timestamp by counting all rows from folder history with root
-     * folder id and a sys_period timestamp before or at given timestamp value as also from the current folder entry
-     * if the sys_period provided is also newer than the sys_period of the current folder.
+     * Evaluates the version for a folder at a given timestamp: the version of the current folder entry if it has
+     * been committed before or at given timestamp, otherwise the last version of the folder history committed before
+     * or at given timestamp.
      *
      * @param domainAccess - Database access instance
      * @param rootFolderId - Root folder id
@@ -960,32 +947,38 @@ public class FolderAccess extends DataAccess implements I_FolderAccess, Comparab
 
         UUID folderUuid = FolderUtils.extractUuidFromObjectVersionId(rootFolderId);
 
-        // Check if the timestamp also includes the current folder
-        int folderCount = domainAccess
-                .getContext()
-                .fetchCount(FOLDER, FOLDER.ID.equal(folderUuid).and(FOLDER.SYS_TRANSACTION.lessOrEqual(sysTransaction)));
+        Integer version = getVersionNumberAtTime(domainAccess, folderUuid, sysTransaction);
+        if (version == null) {
+            throw new ObjectNotFoundException(
+                    "directory",
+                    "No folder found for " + rootFolderId + " at time " + sysTransaction.toLocalDateTime().toString()
+            );
+        }
+        return version;
+    }
 
-        // Count all history entries for the root folder
-        int folderHistoryCount = domainAccess
+    /**
+     * @return the version number current at given timestamp, null if the folder did not exist yet
+     */
+    static Integer getVersionNumberAtTime(I_DomainAccess domainAccess, UUID folderUuid, Timestamp sysTransaction) {
+        Integer version = domainAccess
                 .getContext()
-                .fetchCount(FOLDER_HISTORY, FOLDER_HISTORY.ID.equal(folderUuid).and(FOLDER_HISTORY.SYS_TRANSACTION.lessOrEqual(sysTransaction)));
-
-        if (folderHistoryCount <= 0) {
-            // No history entries found
-
-            if (folderCount <= 0) {
-                // Also no current entries
-                throw new ObjectNotFoundException(
-                        "directory",
-                        "No folder found for " + rootFolderId + " at time " + sysTransaction.toLocalDateTime().toString()
-                );
-            }
-
-            return folderCount;
+                .select(FOLDER.VERSION)
+                .from(FOLDER)
+                .where(FOLDER.ID.eq(folderUuid))
+                .and(FOLDER.SYS_TRANSACTION.lessOrEqual(sysTransaction))
+                .fetchOne(FOLDER.VERSION);
+        if (version != null) {
+            return version;
         }
 
-        // If we found entries in both tables return the sum. If there is no current entry the count will be 0
-        return folderHistoryCount + folderCount;
+        return domainAccess
+                .getContext()
+                .select(max(FOLDER_HISTORY.VERSION))
+                .from(FOLDER_HISTORY)
+                .where(FOLDER_HISTORY.ID.eq(folderUuid))
+                .and(FOLDER_HISTORY.SYS_TRANSACTION.lessOrEqual(sysTransaction))
+                .fetchOne(0, Integer.class);
     }
 
     public static Timestamp getTimestampForVersion(I_DomainAccess domainAccess, final ObjectVersionId rootFolderId, Integer version) {
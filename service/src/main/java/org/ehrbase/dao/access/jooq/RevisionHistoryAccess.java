@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.dao.access.jooq;
+
+import com.nedap.archie.rm.generic.AuditDetails;
+import com.nedap.archie.rm.generic.PartyProxy;
+import com.nedap.archie.rm.generic.RevisionHistory;
+import com.nedap.archie.rm.generic.RevisionHistoryItem;
+import com.nedap.archie.rm.support.identification.ObjectVersionId;
+import org.ehrbase.dao.access.interfaces.I_DomainAccess;
+import org.ehrbase.dao.access.jooq.party.PersistedPartyProxy;
+import org.ehrbase.jooq.pg.tables.records.AuditDetailsRecord;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record3;
+import org.jooq.Select;
+import org.jooq.Table;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.ehrbase.jooq.pg.Tables.ATTESTATION;
+import static org.ehrbase.jooq.pg.Tables.AUDIT_DETAILS;
+import static org.ehrbase.jooq.pg.Tables.COMPOSITION;
+import static org.ehrbase.jooq.pg.Tables.COMPOSITION_HISTORY;
+import static org.ehrbase.jooq.pg.Tables.STATUS;
+import static org.ehrbase.jooq.pg.Tables.STATUS_HISTORY;
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.name;
+import static org.jooq.impl.DSL.select;
+
+/**
+ * Revision history of a versioned object, read with a single query over its current and history rows joined with
+ * their audit and attestations (instead of retrieving every version one by one).
+ * <p>
+ * Committers are resolved once per distinct party.
+ */
+public final class RevisionHistoryAccess {
+
+    private static final String VERSIONS = "versions";
+    private static final org.ehrbase.jooq.pg.tables.AuditDetails ATTESTATION_AUDIT = AUDIT_DETAILS.as("attestation_audit");
+
+    private RevisionHistoryAccess() {
+    }
+
+    /**
+     * @return the revision history of the composition, without items if it does not exist
+     */
+    public static RevisionHistory retrieveOfComposition(I_DomainAccess domainAccess, UUID compositionId, String nodeName) {
+        return retrieve(domainAccess, compositionId, nodeName,
+                select(COMPOSITION.VERSION, COMPOSITION.HAS_AUDIT, COMPOSITION.ATTESTATION_REF)
+                        .from(COMPOSITION)
+                        .where(COMPOSITION.ID.eq(compositionId))
+                        .unionAll(select(COMPOSITION_HISTORY.VERSION, COMPOSITION_HISTORY.HAS_AUDIT, COMPOSITION_HISTORY.ATTESTATION_REF)
+                                .from(COMPOSITION_HISTORY)
+                                .where(COMPOSITION_HISTORY.ID.eq(compositionId))));
+    }
+
+    /**
+     * @return the revision history of the EHR_STATUS, without items if it does not exist
+     */
+    public static RevisionHistory retrieveOfStatus(I_DomainAccess domainAccess, UUID statusId, String nodeName) {
+        return retrieve(domainAccess, statusId, nodeName,
+                select(STATUS.VERSION, STATUS.HAS_AUDIT, STATUS.ATTESTATION_REF)
+                        .from(STATUS)
+                        .where(STATUS.ID.eq(statusId))
+                        .unionAll(select(STATUS_HISTORY.VERSION, STATUS_HISTORY.HAS_AUDIT, STATUS_HISTORY.ATTESTATION_REF)
+                                .from(STATUS_HISTORY)
+                                .where(STATUS_HISTORY.ID.eq(statusId))));
+    }
+
+    private static RevisionHistory retrieve(I_DomainAccess domainAccess, UUID objectId, String nodeName, Select<? extends Record3<Integer, UUID, UUID>> versionRows) {
+        Table<? extends Record3<Integer, UUID, UUID>> versions = versionRows.asTable(VERSIONS);
+        Field<Integer> version = field(name(VERSIONS, "version"), Integer.class);
+        Field<UUID> hasAudit = field(name(VERSIONS, "has_audit"), UUID.class);
+        Field<UUID> attestationRef = field(name(VERSIONS, "attestation_ref"), UUID.class);
+
+        // an audit per version, followed by the audits of its attestations
+        Map<Integer, List<AuditDetailsRecord>> auditsByVersion = new LinkedHashMap<>();
+        for (Record row : domainAccess.getContext()
+                .select(version)
+                .select(AUDIT_DETAILS.fields())
+                .select(ATTESTATION_AUDIT.fields())
+                .from(versions)
+                .join(AUDIT_DETAILS).on(AUDIT_DETAILS.ID.eq(hasAudit))
+                .leftJoin(ATTESTATION).on(ATTESTATION.REFERENCE.eq(attestationRef))
+                .leftJoin(ATTESTATION_AUDIT).on(ATTESTATION_AUDIT.ID.eq(ATTESTATION.HAS_AUDIT))
+                .orderBy(version, ATTESTATION_AUDIT.TIME_COMMITTED)
+                .fetch()) {
+            List<AuditDetailsRecord> audits = auditsByVersion.computeIfAbsent(row.get(version), v -> new ArrayList<>());
+            if (audits.isEmpty())
+                audits.add(row.into(AUDIT_DETAILS));
+            if (row.get(ATTESTATION_AUDIT.ID) != null)
+                audits.add(row.into(ATTESTATION_AUDIT));
+        }
+
+        Map<UUID, PartyProxy> committers = new HashMap<>();
+        PersistedPartyProxy persistedPartyProxy = new PersistedPartyProxy(domainAccess);
+
+        RevisionHistory revisionHistory = new RevisionHistory();
+        for (Map.Entry<Integer, List<AuditDetailsRecord>> entry : auditsByVersion.entrySet()) {
+            List<AuditDetails> auditDetailsList = new ArrayList<>();
+            for (AuditDetailsRecord audit : entry.getValue()) {
+                PartyProxy committer = committers.computeIfAbsent(audit.getCommitter(), persistedPartyProxy::retrieve);
+                auditDetailsList.add(AuditDetailsAccess.toAuditDetails(audit, committer));
+            }
+            revisionHistory.addItem(new RevisionHistoryItem(
+                    new ObjectVersionId(objectId + "::" + nodeName + "::" + entry.getKey()), auditDetailsList));
+        }
+        return revisionHistory;
+    }
+}
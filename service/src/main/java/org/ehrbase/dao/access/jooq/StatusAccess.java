@@ -49,6 +49,11 @@ import java.sql.Timestamp;
 import java.util.*;
 
 import static org.ehrbase.jooq.pg.Tables.*;
+import static org.jooq.impl.DSL.coalesce;
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.inline;
+import static org.jooq.impl.DSL.max;
+import static org.jooq.impl.DSL.select;
 
 /**
  * Created by Christian Chevalley on 4/20/2015.
@@ -313,7 +318,6 @@ public class StatusAccess extends DataAccess implements I_StatusAccess {
 
         // get whole "version map" of each matching status and do fine-grain check for matching contribution
         // precondition: each UUID in `statuses` set is unique, so for each the "version map" is only created once below
-        // (meta: can't do that as jooq query, because the specific version number isn't stored in DB)
         Map<ObjectVersionId, I_StatusAccess> resultMap = new HashMap<>();
         for (UUID statusId : statuses) {
             Map<Integer, I_StatusAccess> map = getVersionMapOfStatus(domainAccess, statusId);
@@ -330,34 +334,24 @@ public class StatusAccess extends DataAccess implements I_StatusAccess {
     public static Map<Integer, I_StatusAccess> getVersionMapOfStatus(I_DomainAccess domainAccess, UUID statusId) {
         Map<Integer, I_StatusAccess> versionMap = new HashMap<>();
 
-        // create counter with highest version, to keep track of version number and allow check in the end
-        Integer versionCounter = getLatestVersionNumber(domainAccess, statusId);
-
         // fetch matching entry
         StatusRecord record = domainAccess.getContext().fetchOne(STATUS, STATUS.ID.eq(statusId));
         if (record != null) {
             I_StatusAccess statusAccess = createStatusAccessForRetrieval(domainAccess, record, null);
-            versionMap.put(versionCounter, statusAccess);
-
-            versionCounter--;
+            versionMap.put(record.getVersion(), statusAccess);
         }
 
         // if composition was removed (i.e. from "COMPOSITION" table) *or* other versions are existing
         Result<StatusHistoryRecord> historyRecords = domainAccess.getContext()
                 .selectFrom(STATUS_HISTORY)
                 .where(STATUS_HISTORY.ID.eq(statusId))
-                .orderBy(STATUS_HISTORY.SYS_TRANSACTION.desc())
                 .fetch();
 
         for (StatusHistoryRecord historyRecord : historyRecords) {
             I_StatusAccess historyAccess = createStatusAccessForRetrieval(domainAccess, null, historyRecord);
-            versionMap.put(versionCounter, historyAccess);
-            versionCounter--;
+            versionMap.put(historyRecord.getVersion(), historyAccess);
         }
 
-        if (versionCounter != 0)
-            throw new InternalServerException("Version Map generation failed");
-
         return versionMap;
     }
 
@@ -421,7 +415,8 @@ public class StatusAccess extends DataAccess implements I_StatusAccess {
                 input.getAttestationRef(),
                 input.getInContribution(),
                 input.getArchetypeNodeId(),
-                input.getName()
+                input.getName(),
+                input.getVersion()
         );
     }
 
@@ -494,22 +489,21 @@ public class StatusAccess extends DataAccess implements I_StatusAccess {
                 statusHistoryRecord.getAttestationRef(),
                 statusHistoryRecord.getInContribution(),
                 statusHistoryRecord.getArchetypeNodeId(),
-                statusHistoryRecord.getName()
+                statusHistoryRecord.getName(),
+                statusHistoryRecord.getVersion()
         );
     }
 
+    /**
+     * @return the version of the current row, otherwise the one following the last version of the history
+     */
     public static Integer getLatestVersionNumber(I_DomainAccess domainAccess, UUID statusId) {
-
-        if (!hasPreviousVersionOfStatus(domainAccess, statusId))
-            return 1;
-
-        int versionCount = domainAccess.getContext().fetchCount(STATUS_HISTORY, STATUS_HISTORY.ID.eq(statusId));
-
-        return versionCount + 1;
-    }
-
-    private static boolean hasPreviousVersionOfStatus(I_DomainAccess domainAccess, UUID ehrStatusId) {
-        return domainAccess.getContext().fetchExists(STATUS_HISTORY, STATUS_HISTORY.ID.eq(ehrStatusId));
+        return domainAccess.getContext()
+                .select(coalesce(
+                        field(select(STATUS.VERSION).from(STATUS).where(STATUS.ID.eq(statusId))),
+                        field(select(max(STATUS_HISTORY.VERSION).plus(1)).from(STATUS_HISTORY).where(STATUS_HISTORY.ID.eq(statusId))),
+                        inline(1)))
+                .fetchOne(0, Integer.class);
     }
 
     public static boolean exists(I_DomainAccess domainAccess, UUID ehrStatusId) {
@@ -517,32 +511,24 @@ public class StatusAccess extends DataAccess implements I_StatusAccess {
     }
 
     @Override
-    @SuppressWarnings("rawtypes")   // `result` is raw so later iterating also gets the version number
     public int getEhrStatusVersionFromTimeStamp(Timestamp time) {
         UUID statusUid = this.statusRecord.getId();
         // retrieve current version from status tables
         I_StatusAccess retStatusAccess = I_StatusAccess.retrieveInstance(this.getDataAccess(), statusUid);
 
-        // retrieve all other versions from status_history and sort by time
-        Result result = getDataAccess().getContext().selectFrom(STATUS_HISTORY)
-                .where(STATUS_HISTORY.ID.eq(statusUid))
-                .orderBy(STATUS_HISTORY.SYS_TRANSACTION.desc())    // latest at top, i.e. [0]
-                .fetch();
-
         // see 'what version was the top version at moment T?'
         // first: is time T after current version? then current version is result
         if (time.after(retStatusAccess.getStatusRecord().getSysTransaction()))
-            return getLatestVersionNumber(getDataAccess(), statusUid);
-        // second: if not, which one of the historical versions matches?
-        for (int i = 0; i < result.size(); i++) {
-            if (result.get(i) instanceof StatusHistoryRecord) {
-                // is time T after this version? then return its version number
-                if (time.after(((StatusHistoryRecord) result.get(i)).getSysTransaction()))
-                    return result.size() - i;   // reverses iterator because order was reversed above and always get non zero
-            } else {
-                throw new InternalServerException("Problem comparing timestamps of EHR_STATUS versions");
-            }
-        }
+            return retStatusAccess.getStatusRecord().getVersion();
+        // second: if not, the last of the historical versions before T
+        Integer version = getDataAccess().getContext()
+                .select(max(STATUS_HISTORY.VERSION))
+                .from(STATUS_HISTORY)
+                .where(STATUS_HISTORY.ID.eq(statusUid))
+                .and(STATUS_HISTORY.SYS_TRANSACTION.lessThan(time))
+                .fetchOne(0, Integer.class);
+        if (version != null)
+            return version;
 
         throw new ObjectNotFoundException("EHR_STATUS", "Could not find EHR_STATUS version matching given timestamp");
     }
@@ -44,7 +44,9 @@ import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -166,6 +168,27 @@ public class TemplateStoreAccess extends DataAccess implements I_TemplateStoreAc
         return templateStoreAccess;
     }
 
+    /**
+     * @return the time the template was last stored, null if not found
+     */
+    public static Timestamp retrieveSysTransaction(I_DomainAccess domainAccess, String templateId) {
+        return domainAccess.getContext()
+                .select(TEMPLATE_STORE.SYS_TRANSACTION)
+                .from(TEMPLATE_STORE)
+                .where(TEMPLATE_STORE.TEMPLATE_ID.eq(templateId))
+                .fetchOne(TEMPLATE_STORE.SYS_TRANSACTION);
+    }
+
+    /**
+     * @return the time each template was last stored in ms (its revision) by template id, without reading the templates
+     */
+    public static Map<String, Long> fetchRevisions(I_DomainAccess domainAccess) {
+        Map<String, Long> revisions = new HashMap<>();
+        for (Record2<String, Timestamp> r : domainAccess.getContext().select(TEMPLATE_STORE.TEMPLATE_ID, TEMPLATE_STORE.SYS_TRANSACTION).from(TEMPLATE_STORE).fetch())
+            revisions.put(r.value1(), r.value2().getTime());
+        return revisions;
+    }
+
     public static List<TemplateMetaData> fetchAll(I_DomainAccess domainAccess) {
         Result<Record2<String, Timestamp>> records = domainAccess.getContext().select(TEMPLATE_STORE.CONTENT, TEMPLATE_STORE.SYS_TRANSACTION).from(TEMPLATE_STORE).fetch();
         return records.parallelStream()
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.dao.access.jooq;
+
+import org.ehrbase.api.exception.InternalServerException;
+import org.ehrbase.dao.access.interfaces.I_DomainAccess;
+import org.ehrbase.dao.access.util.TransactionTime;
+import org.ehrbase.ehr.knowledge.WebTemplateSnapshot;
+import org.ehrbase.jooq.pg.tables.records.WebTemplateSnapshotRecord;
+import org.ehrbase.webtemplate.model.WebTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.Timestamp;
+
+import static org.ehrbase.jooq.pg.Tables.WEB_TEMPLATE_SNAPSHOT;
+
+/**
+ * Persistence of the {@link WebTemplateSnapshot}s, one per template (see V67).
+ */
+public final class WebTemplateSnapshotAccess {
+
+    /**
+     * Must be incremented whenever the stored form changes in an incompatible way, f.e. with a new web template
+     * model; the existing snapshots are then ignored and rebuilt.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private WebTemplateSnapshotAccess() {
+    }
+
+    /**
+     * @return the snapshot built from the given revision of the template, null if there is none or it is outdated
+     */
+    public static WebTemplateSnapshot retrieve(I_DomainAccess domainAccess, String templateId, long templateRevision) {
+        WebTemplateSnapshotRecord snapshotRecord = domainAccess.getContext().fetchOne(WEB_TEMPLATE_SNAPSHOT,
+                WEB_TEMPLATE_SNAPSHOT.TEMPLATE_ID.eq(templateId)
+                        .and(WEB_TEMPLATE_SNAPSHOT.TEMPLATE_REVISION.eq(templateRevision))
+                        .and(WEB_TEMPLATE_SNAPSHOT.FORMAT_VERSION.eq(FORMAT_VERSION)));
+        if (snapshotRecord == null)
+            return null;
+
+        WebTemplate webTemplate = deserialize(snapshotRecord.getWebTemplate());
+        if (webTemplate == null)
+            return null;
+
+        return new WebTemplateSnapshot(templateId, snapshotRecord.getTemplateUid(), templateRevision, webTemplate);
+    }
+
+    /**
+     * Stores the snapshot, replacing the one of a previous revision of the template.
+     */
+    public static void store(I_DomainAccess domainAccess, WebTemplateSnapshot snapshot) {
+        byte[] webTemplate = serialize(snapshot.getWebTemplate());
+        Timestamp now = TransactionTime.millis();
+
+        domainAccess.getContext()
+                .insertInto(WEB_TEMPLATE_SNAPSHOT)
+                .set(WEB_TEMPLATE_SNAPSHOT.TEMPLATE_ID, snapshot.getTemplateId())
+                .set(WEB_TEMPLATE_SNAPSHOT.TEMPLATE_UID, snapshot.getTemplateUid())
+                .set(WEB_TEMPLATE_SNAPSHOT.TEMPLATE_REVISION, snapshot.getTemplateRevision())
+                .set(WEB_TEMPLATE_SNAPSHOT.FORMAT_VERSION, FORMAT_VERSION)
+                .set(WEB_TEMPLATE_SNAPSHOT.WEB_TEMPLATE, webTemplate)
+                .set(WEB_TEMPLATE_SNAPSHOT.SYS_TRANSACTION, now)
+                .onConflict(WEB_TEMPLATE_SNAPSHOT.TEMPLATE_ID)
+                .doUpdate()
+                .set(WEB_TEMPLATE_SNAPSHOT.TEMPLATE_UID, snapshot.getTemplateUid())
+                .set(WEB_TEMPLATE_SNAPSHOT.TEMPLATE_REVISION, snapshot.getTemplateRevision())
+                .set(WEB_TEMPLATE_SNAPSHOT.FORMAT_VERSION, FORMAT_VERSION)
+                .set(WEB_TEMPLATE_SNAPSHOT.WEB_TEMPLATE, webTemplate)
+                .set(WEB_TEMPLATE_SNAPSHOT.SYS_TRANSACTION, now)
+                .execute();
+    }
+
+    private static byte[] serialize(WebTemplate webTemplate) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(webTemplate);
+        } catch (IOException e) {
+            throw new InternalServerException("Could not serialize the web template " + webTemplate.getTemplateId(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // null when written by an incompatible release, the snapshot is then rebuilt
+    private static WebTemplate deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (WebTemplate) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.dao.access.jooq.party;
+
+import com.nedap.archie.rm.datavalues.DvIdentifier;
+import com.nedap.archie.rm.generic.PartyIdentified;
+import com.nedap.archie.rm.generic.PartyProxy;
+import com.nedap.archie.rm.generic.PartyRelated;
+import org.ehrbase.api.exception.InternalServerException;
+import org.ehrbase.util.PartyUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Canonical identity of a party, stored in <code>party_identified.identity_hash</code>:
+ * <ul>
+ *     <li>a party with an external ref is identified by it (namespace, scheme and value), whatever its type</li>
+ *     <li>otherwise by its type, name, relationship (PARTY_RELATED) and identifiers, in any order</li>
+ * </ul>
+ * The hash is the md5 of the canonical form; migration V64 computes the same form in SQL for the existing rows,
+ * both must be changed together.
+ */
+public final class PartyIdentityHash {
+
+    private static final char UNIT_SEPARATOR = '\u001f';
+    private static final char RECORD_SEPARATOR = '\u001e';
+
+    private PartyIdentityHash() {
+    }
+
+    /**
+     * @return the md5 hex of the canonical form of the party
+     */
+    public static String of(PartyProxy partyProxy) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : md5(canonical(partyProxy)))
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    /**
+     * Name based id, computed the same way as <code>md5(value)::uuid</code> in SQL.
+     */
+    public static UUID uuidOf(String value) {
+        ByteBuffer bytes = ByteBuffer.wrap(md5(value));
+        return new UUID(bytes.getLong(), bytes.getLong());
+    }
+
+    static String canonical(PartyProxy partyProxy) {
+        PartyRefValue partyRef = new PartyRefValue(partyProxy).attributes();
+        if (partyRef.getValue() != null)
+            return join("ref", partyRef.getNamespace(), partyRef.getScheme(), partyRef.getValue());
+
+        if (PartyUtils.isPartySelf(partyProxy))
+            return "self";
+        else if (PartyUtils.isPartyRelated(partyProxy)) {
+            PartyRelated partyRelated = (PartyRelated) partyProxy;
+            String relationship = partyRelated.getRelationship() == null ? null : partyRelated.getRelationship().getValue();
+            return join("related", partyRelated.getName(), relationship) + identifiers(partyRelated.getIdentifiers());
+        } else if (PartyUtils.isPartyIdentified(partyProxy)) {
+            PartyIdentified partyIdentified = (PartyIdentified) partyProxy;
+            return join("identified", partyIdentified.getName()) + identifiers(partyIdentified.getIdentifiers());
+        } else
+            throw new InternalServerException("Unhandled Party type detected:" + partyProxy.getClass().getSimpleName());
+    }
+
+    // identifiers without id are not stored (see PartyIdentifiers)
+    private static String identifiers(List<DvIdentifier> identifiers) {
+        if (identifiers == null)
+            return "";
+
+        List<String> canonicalIdentifiers = new ArrayList<>();
+        for (DvIdentifier identifier : identifiers) {
+            if (identifier.getId() != null)
+                canonicalIdentifiers.add(RECORD_SEPARATOR + join(identifier.getId(), identifier.getIssuer(), identifier.getAssigner(), identifier.getType()));
+        }
+        Collections.sort(canonicalIdentifiers);
+        return String.join("", canonicalIdentifiers);
+    }
+
+    private static String join(String... values) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                joined.append(UNIT_SEPARATOR);
+            joined.append(Objects.toString(values[i], ""));
+        }
+        return joined.toString();
+    }
+
+    private static byte[] md5(String value) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new InternalServerException(e);
+        }
+    }
+}
@@ -20,9 +20,14 @@ package org.ehrbase.dao.access.jooq.party;
 
 import com.nedap.archie.rm.generic.PartyProxy;
 import org.ehrbase.dao.access.interfaces.I_DomainAccess;
+import org.ehrbase.jooq.pg.tables.records.PartyIdentifiedRecord;
+import org.ehrbase.service.PartyIdentityCache;
+import org.jooq.impl.DSL;
 
 import java.util.UUID;
 
+import static org.ehrbase.jooq.pg.Tables.PARTY_IDENTIFIED;
+
 /**
  * Abstract class for PartyProxy DB operations
  */
@@ -34,19 +39,77 @@ public abstract class PersistedParty implements I_PersistedParty{
         this.domainAccess = domainAccess;
     }
 
+    /**
+     * @param partyProxy
+     * @return a new PARTY_IDENTIFIED record of the party, without id
+     */
+    abstract PartyIdentifiedRecord toRecord(PartyProxy partyProxy);
+
+    /**
+     * store what is attached to a newly stored party (f.e. identifiers)
+     * @param partyProxy
+     * @param partyIdentifiedUuid
+     */
+    void storeDetails(PartyProxy partyProxy, UUID partyIdentifiedUuid) {
+    }
+
     @Override
     public UUID findInDB(PartyProxy partyProxy){return null;}
 
     @Override
-    public UUID store(PartyProxy partyProxy){return null;}
+    public UUID store(PartyProxy partyProxy){
+        UUID partyIdentifiedUuid = domainAccess.getContext()
+                .insertInto(PARTY_IDENTIFIED)
+                .set(toRecord(partyProxy))
+                .returning(PARTY_IDENTIFIED.ID)
+                .fetchOne().getId();
+
+        storeDetails(partyProxy, partyIdentifiedUuid);
 
+        return partyIdentifiedUuid;
+    }
+
+    /**
+     * Resolves the party by its identity hash (see {@link PartyIdentityHash}): from the party identity cache if
+     * available, otherwise with an upsert on <code>identity_hash</code>, the party is only read back when it
+     * already existed. Resolving it from the database sets <code>resolved_at</code>, which keeps the purges from
+     * deleting the party while its id may be cached (see {@link PartyIdentityCache}).
+     * @param partyProxy
+     * @return
+     */
     @Override
     public UUID getOrCreate(PartyProxy partyProxy) {
+        String identityHash = PartyIdentityHash.of(partyProxy);
+        PartyIdentityCache partyIdentityCache = domainAccess.getPartyIdentityCache();
+
+        UUID uuid = partyIdentityCache == null ? null : partyIdentityCache.get(identityHash);
+        if (uuid != null)
+            return uuid;
+
+        PartyIdentifiedRecord inserted = domainAccess.getContext()
+                .insertInto(PARTY_IDENTIFIED)
+                .set(toRecord(partyProxy))
+                .set(PARTY_IDENTIFIED.IDENTITY_HASH, identityHash)
+                .onConflict(PARTY_IDENTIFIED.IDENTITY_HASH)
+                .doNothing()
+                .returning(PARTY_IDENTIFIED.ID)
+                .fetchOne();
 
-        UUID uuid = findInDB(partyProxy);
+        if (inserted != null) {
+            uuid = inserted.getId();
+            storeDetails(partyProxy, uuid);
+        } else {
+            uuid = domainAccess.getContext()
+                    .update(PARTY_IDENTIFIED)
+                    .set(PARTY_IDENTIFIED.RESOLVED_AT, DSL.currentTimestamp())
+                    .where(PARTY_IDENTIFIED.IDENTITY_HASH.eq(identityHash))
+                    .returning(PARTY_IDENTIFIED.ID)
+                    .fetchOne()
+                    .getId();
+        }
 
-        if (uuid == null)
-            uuid = store(partyProxy);
+        if (partyIdentityCache != null)
+            partyIdentityCache.putAfterCommit(identityHash, uuid);
 
         return uuid;
     }
@@ -65,34 +65,25 @@ class PersistedPartyRelated extends PersistedParty {
     }
 
     @Override
-    public UUID store(PartyProxy partyProxy) {
+    PartyIdentifiedRecord toRecord(PartyProxy partyProxy) {
         PartyRefValue partyRefValue = new PartyRefValue(partyProxy).attributes();
 
-        //store a new party identified
-        UUID partyIdentifiedUuid = domainAccess.getContext()
-                .insertInto(PARTY_IDENTIFIED,
-                        PARTY_IDENTIFIED.NAME,
-                        PARTY_IDENTIFIED.PARTY_REF_NAMESPACE,
-                        PARTY_IDENTIFIED.PARTY_REF_VALUE,
-                        PARTY_IDENTIFIED.PARTY_REF_SCHEME,
-                        PARTY_IDENTIFIED.PARTY_REF_TYPE,
-                        PARTY_IDENTIFIED.PARTY_TYPE,
-                        PARTY_IDENTIFIED.OBJECT_ID_TYPE,
-                        PARTY_IDENTIFIED.RELATIONSHIP)
-                .values(((PartyIdentified)partyProxy).getName(),
-                        partyRefValue.getNamespace(),
-                        partyRefValue.getValue(),
-                        partyRefValue.getScheme(),
-                        partyRefValue.getType(),
-                        PartyType.party_related,
-                        partyRefValue.getObjectIdType(),
-                        relationshipAsRecord(partyProxy))
-                .returning(PARTY_IDENTIFIED.ID)
-                .fetchOne().getId();
+        PartyIdentifiedRecord partyIdentifiedRecord = domainAccess.getContext().newRecord(PARTY_IDENTIFIED);
+        partyIdentifiedRecord.setName(((PartyIdentified)partyProxy).getName());
+        partyIdentifiedRecord.setPartyRefNamespace(partyRefValue.getNamespace());
+        partyIdentifiedRecord.setPartyRefValue(partyRefValue.getValue());
+        partyIdentifiedRecord.setPartyRefScheme(partyRefValue.getScheme());
+        partyIdentifiedRecord.setPartyRefType(partyRefValue.getType());
+        partyIdentifiedRecord.setPartyType(PartyType.party_related);
+        partyIdentifiedRecord.setObjectIdType(partyRefValue.getObjectIdType());
+        partyIdentifiedRecord.setRelationship(relationshipAsRecord(partyProxy));
+        return partyIdentifiedRecord;
+    }
+
+    @Override
+    void storeDetails(PartyProxy partyProxy, UUID partyIdentifiedUuid) {
         //store identifiers
         new PartyIdentifiers(domainAccess).store((PartyIdentified)partyProxy, partyIdentifiedUuid);
-
-        return partyIdentifiedUuid;
     }
 
     @Override
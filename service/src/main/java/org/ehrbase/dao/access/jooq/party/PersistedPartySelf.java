@@ -53,29 +53,17 @@ class PersistedPartySelf extends PersistedParty {
     }
 
     @Override
-    public UUID store(PartyProxy partyProxy){
-
+    PartyIdentifiedRecord toRecord(PartyProxy partyProxy) {
         PartyRefValue partyRefValue = new PartyRefValue(partyProxy).attributes();
 
-        UUID partyIdentifiedUuid = domainAccess.getContext()
-                .insertInto(PARTY_IDENTIFIED,
-                        PARTY_IDENTIFIED.PARTY_REF_NAMESPACE,
-                        PARTY_IDENTIFIED.PARTY_REF_VALUE,
-                        PARTY_IDENTIFIED.PARTY_REF_SCHEME,
-                        PARTY_IDENTIFIED.PARTY_REF_TYPE,
-                        PARTY_IDENTIFIED.PARTY_TYPE,
-                        PARTY_IDENTIFIED.OBJECT_ID_TYPE)
-                .values(
-                        partyRefValue.getNamespace(),
-                        partyRefValue.getValue(),
-                        partyRefValue.getScheme(),
-                        partyRefValue.getType(),
-                        PartyType.party_self,
-                        partyRefValue.getObjectIdType())
-                .returning(PARTY_IDENTIFIED.ID)
-                .fetchOne().getId();
-
-        return partyIdentifiedUuid;
+        PartyIdentifiedRecord partyIdentifiedRecord = domainAccess.getContext().newRecord(PARTY_IDENTIFIED);
+        partyIdentifiedRecord.setPartyRefNamespace(partyRefValue.getNamespace());
+        partyIdentifiedRecord.setPartyRefValue(partyRefValue.getValue());
+        partyIdentifiedRecord.setPartyRefScheme(partyRefValue.getScheme());
+        partyIdentifiedRecord.setPartyRefType(partyRefValue.getType());
+        partyIdentifiedRecord.setPartyType(PartyType.party_self);
+        partyIdentifiedRecord.setObjectIdType(partyRefValue.getObjectIdType());
+        return partyIdentifiedRecord;
     }
 
 
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.dao.access.support;
+
+import org.ehrbase.api.exception.InternalServerException;
+import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.jooq.TableRecord;
+import org.jooq.exception.DataAccessException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the inserts of a commit and sends them to the database as a single JDBC batch (one round trip) within
+ * the current transaction.
+ * <p>
+ * Since the statements differ, jOOQ inlines the bind values; row ids must therefore be assigned by the caller
+ * before the record is added, as nothing is returned from the batch.
+ */
+public class CommitBatch {
+
+    private final DSLContext context;
+    private final List<Query> queries = new ArrayList<>();
+    private final List<String> descriptions = new ArrayList<>();
+    private final List<TableRecord<?>> records = new ArrayList<>();
+
+    public CommitBatch(DSLContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Adds the insert of a new record, its changed flags are reset once the batch is executed.
+     *
+     * @param description name of the row, used in error messages
+     * @param record      the record to insert
+     */
+    public <R extends TableRecord<R>> void insert(String description, R record) {
+        add(description, context.insertInto(record.getTable()).set(record));
+        records.add(record);
+    }
+
+    /**
+     * @param description name of the row(s), used in error messages
+     * @param query       a statement which must affect at least one row
+     */
+    public void add(String description, Query query) {
+        queries.add(query);
+        descriptions.add(description);
+    }
+
+    public int size() {
+        return queries.size();
+    }
+
+    /**
+     * @throws InternalServerException when the batch failed or one of its statements did not affect any row
+     */
+    public void execute() {
+        if (queries.isEmpty())
+            return;
+
+        int[] counts;
+        try {
+            counts = context.batch(queries).execute();
+        } catch (DataAccessException e) {
+            throw new InternalServerException("Problem executing database operation", e);
+        }
+
+        // a driver may answer Statement.SUCCESS_NO_INFO (-2), only an explicit 0 is a failure
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0)
+                throw new InternalServerException("Couldn't store " + descriptions.get(i));
+        }
+
+        for (TableRecord<?> record : records)
+            record.changed(false);
+
+        queries.clear();
+        descriptions.clear();
+        records.clear();
+    }
+}
@@ -25,6 +25,8 @@ import org.ehrbase.api.definitions.ServerConfig;
 import org.ehrbase.dao.access.interfaces.I_DomainAccess;
 import org.ehrbase.ehr.knowledge.I_KnowledgeCache;
 import org.ehrbase.service.IntrospectService;
+import org.ehrbase.service.PartyIdentityCache;
+import org.ehrbase.service.ReferenceDataRegistry;
 import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
 
@@ -40,12 +42,24 @@ public abstract class DataAccess implements I_DomainAccess {
     private final IntrospectService introspectService;
 
     private final ServerConfig serverConfig;
+    private final ReferenceDataRegistry referenceData;
+    private final PartyIdentityCache partyIdentityCache;
 
     public DataAccess(DSLContext context, I_KnowledgeCache knowledgeManager, IntrospectService introspectService, ServerConfig serverConfig) {
+        this(context, knowledgeManager, introspectService, serverConfig, null);
+    }
+
+    public DataAccess(DSLContext context, I_KnowledgeCache knowledgeManager, IntrospectService introspectService, ServerConfig serverConfig, ReferenceDataRegistry referenceData) {
+        this(context, knowledgeManager, introspectService, serverConfig, referenceData, null);
+    }
+
+    public DataAccess(DSLContext context, I_KnowledgeCache knowledgeManager, IntrospectService introspectService, ServerConfig serverConfig, ReferenceDataRegistry referenceData, PartyIdentityCache partyIdentityCache) {
         this.context = context;
         this.knowledgeManager = knowledgeManager;
         this.introspectService = introspectService;
         this.serverConfig = serverConfig;
+        this.referenceData = referenceData;
+        this.partyIdentityCache = partyIdentityCache;
     }
 
     public DataAccess(I_DomainAccess domainAccess) {
@@ -53,6 +67,8 @@ public abstract class DataAccess implements I_DomainAccess {
         this.knowledgeManager = domainAccess.getKnowledgeManager();
         this.introspectService = domainAccess.getIntrospectService();
         this.serverConfig = domainAccess.getServerConfig();
+        this.referenceData = domainAccess.getReferenceData();
+        this.partyIdentityCache = domainAccess.getPartyIdentityCache();
     }
 
     @Override
@@ -91,4 +107,14 @@ public abstract class DataAccess implements I_DomainAccess {
         return this.serverConfig;
     }
 
+    @Override
+    public ReferenceDataRegistry getReferenceData() {
+        return referenceData;
+    }
+
+    @Override
+    public PartyIdentityCache getPartyIdentityCache() {
+        return partyIdentityCache;
+    }
+
 }
@@ -25,6 +25,8 @@ import org.ehrbase.api.definitions.ServerConfig;
 import org.ehrbase.dao.access.interfaces.I_DomainAccess;
 import org.ehrbase.ehr.knowledge.I_KnowledgeCache;
 import org.ehrbase.service.IntrospectService;
+import org.ehrbase.service.PartyIdentityCache;
+import org.ehrbase.service.ReferenceDataRegistry;
 import org.jooq.DSLContext;
 
 /**
@@ -39,6 +41,14 @@ public class ServiceDataAccess extends DataAccess {
         super(context, knowledgeManager, introspectService, serverConfig);
     }
 
+    public ServiceDataAccess(DSLContext context, I_KnowledgeCache knowledgeManager, IntrospectService introspectService, ServerConfig serverConfig, ReferenceDataRegistry referenceData) {
+        super(context, knowledgeManager, introspectService, serverConfig, referenceData);
+    }
+
+    public ServiceDataAccess(DSLContext context, I_KnowledgeCache knowledgeManager, IntrospectService introspectService, ServerConfig serverConfig, ReferenceDataRegistry referenceData, PartyIdentityCache partyIdentityCache) {
+        super(context, knowledgeManager, introspectService, serverConfig, referenceData, partyIdentityCache);
+    }
+
     public ServiceDataAccess(I_DomainAccess dataAccess) {
         super(dataAccess);
     }
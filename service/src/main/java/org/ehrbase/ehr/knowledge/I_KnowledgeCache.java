@@ -75,6 +75,21 @@ public interface I_KnowledgeCache {
      */
     Optional<OPERATIONALTEMPLATE> retrieveOperationalTemplate(UUID uuid);
 
+    /**
+     * retrieve an operational template without reading the template storage once it is cached on this node, as
+     * needed by the validation: changes made by other nodes are only seen after the next template sync
+     *
+     * @param key the name of the operational template
+     * @return an OPERATIONALTEMPLATE document instance or empty
+     */
+    Optional<OPERATIONALTEMPLATE> getCachedOperationalTemplate(String key);
+
+    /**
+     * @param uuid the unique id of the operational template
+     * @see #getCachedOperationalTemplate(String)
+     */
+    Optional<OPERATIONALTEMPLATE> getCachedOperationalTemplate(UUID uuid);
+
 
     /**
      * Deletes a given operational template physically from cache and from template storage and from cache. Should only
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.ehr.knowledge;
+
+import org.ehrbase.webtemplate.model.WebTemplate;
+
+import java.util.UUID;
+
+/**
+ * WebTemplate built from a given revision of an operational template (see
+ * {@link org.ehrbase.service.TemplateStorage#readRevision(String)}), stored to avoid parsing the template at startup.
+ */
+public class WebTemplateSnapshot {
+
+    private final String templateId;
+    private final UUID templateUid;
+    private final long templateRevision;
+    private final WebTemplate webTemplate;
+
+    public WebTemplateSnapshot(String templateId, UUID templateUid, long templateRevision, WebTemplate webTemplate) {
+        this.templateId = templateId;
+        this.templateUid = templateUid;
+        this.templateRevision = templateRevision;
+        this.webTemplate = webTemplate;
+    }
+
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    public UUID getTemplateUid() {
+        return templateUid;
+    }
+
+    public long getTemplateRevision() {
+        return templateRevision;
+    }
+
+    public WebTemplate getWebTemplate() {
+        return webTemplate;
+    }
+}
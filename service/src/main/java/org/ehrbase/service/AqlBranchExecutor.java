@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import org.ehrbase.api.definitions.ServerConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The pool of <code>server.aqlConfig.branchParallelism</code> daemon threads executing the template branches of AQL
+ * queries (see {@link org.ehrbase.aql.sql.QueryProcessor#executeBranches}) and transforming the JSON values of large
+ * results, shared by all queries and shut down with the application context. Nothing runs concurrently with a
+ * parallelism below 2.
+ */
+@Component
+public class AqlBranchExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public AqlBranchExecutor(ServerConfig serverConfig) {
+        this(serverConfig.getAqlBranchParallelism());
+    }
+
+    AqlBranchExecutor(Integer parallelism) {
+        if (parallelism == null || parallelism < 2) {
+            this.executor = null;
+            return;
+        }
+
+        AtomicInteger serial = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "aql-branch-" + serial.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the executor of the branches, null if branches are not executed concurrently
+     */
+    public ExecutorService getExecutorService() {
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null)
+            executor.shutdownNow();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import org.ehrbase.api.definitions.ServerConfig;
+import org.ehrbase.api.dto.AqlPathIndexDto;
+import org.ehrbase.api.exception.InternalServerException;
+import org.ehrbase.api.exception.ObjectNotFoundException;
+import org.ehrbase.api.service.AqlPathIndexService;
+import org.ehrbase.aql.sql.queryimpl.PathProjection;
+import org.ehrbase.jooq.pg.tables.records.AqlPathIndexRecord;
+import org.jooq.DSLContext;
+import org.jooq.exception.DataAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.ehrbase.jooq.pg.Tables.AQL_PATH_INDEX;
+
+/**
+ * Indexed AQL paths: each declared path is backed by a partial B-tree expression index on <code>ehr.entry</code>,
+ * see {@link PathProjection}, and registered in the {@link KnowledgeCacheService} for the WHERE clause resolution.
+ * <p>
+ * The indexes are built with <code>create index concurrently</code>, which cannot run inside a transaction. A path
+ * declared again with another expression gets a new index, the declaration is switched to it in a single statement
+ * and the previous index dropped afterwards.
+ */
+@Service
+public class AqlPathIndexServiceImp extends BaseServiceImp implements AqlPathIndexService {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final KnowledgeCacheService knowledgeCacheService;
+
+    @Autowired
+    public AqlPathIndexServiceImp(KnowledgeCacheService knowledgeCacheService, DSLContext context, ServerConfig serverConfig) {
+        super(knowledgeCacheService, context, serverConfig);
+        this.knowledgeCacheService = knowledgeCacheService;
+    }
+
+    @PostConstruct
+    public void init() {
+        for (AqlPathIndexRecord pathIndexRecord : getDataAccess().getContext().fetch(AQL_PATH_INDEX)) {
+            knowledgeCacheService.putPathProjection(toProjection(pathIndexRecord));
+        }
+    }
+
+    @Override
+    public List<AqlPathIndexDto> getPathIndexes(String templateId) {
+        return getDataAccess().getContext()
+                .fetch(AQL_PATH_INDEX, AQL_PATH_INDEX.TEMPLATE_ID.eq(templateId))
+                .stream()
+                .map(pathIndexRecord -> toDto(toProjection(pathIndexRecord), pathIndexRecord.getIndexName()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public AqlPathIndexDto createPathIndex(String templateId, String path) {
+        if (knowledgeCacheService.retrieveOperationalTemplate(templateId).isEmpty())
+            throw new ObjectNotFoundException("template", "Template with the specified id does not exist: " + templateId);
+
+        PathProjection projection = PathProjection.resolve(knowledgeCacheService, getDataAccess().getServerConfig(), templateId, path);
+        DSLContext context = getDataAccess().getContext();
+        AqlPathIndexRecord previous = context.fetchOne(AQL_PATH_INDEX, AQL_PATH_INDEX.TEMPLATE_ID.eq(templateId).and(AQL_PATH_INDEX.AQL_PATH.eq(path)));
+
+        try {
+            context.execute(projection.createIndexStatement(context));
+        } catch (DataAccessException e) {
+            //a failed concurrent build leaves an invalid index
+            context.execute(projection.dropIndexStatement());
+            throw new InternalServerException("Could not build the index of path " + path + ": " + e.getMessage(), e);
+        }
+
+        //the declaration is replaced atomically, the previous one stays in place if this fails
+        context.insertInto(AQL_PATH_INDEX)
+                .set(AQL_PATH_INDEX.TEMPLATE_ID, templateId)
+                .set(AQL_PATH_INDEX.AQL_PATH, path)
+                .set(AQL_PATH_INDEX.JSONB_PATH, projection.getJsonbPath())
+                .set(AQL_PATH_INDEX.CAST_TYPE, projection.getCastTypeName())
+                .set(AQL_PATH_INDEX.INDEX_NAME, projection.getIndexName())
+                .onConflict(AQL_PATH_INDEX.TEMPLATE_ID, AQL_PATH_INDEX.AQL_PATH)
+                .doUpdate()
+                .set(AQL_PATH_INDEX.JSONB_PATH, projection.getJsonbPath())
+                .set(AQL_PATH_INDEX.CAST_TYPE, projection.getCastTypeName())
+                .set(AQL_PATH_INDEX.INDEX_NAME, projection.getIndexName())
+                .execute();
+
+        if (previous != null)
+            knowledgeCacheService.removePathProjection(toProjection(previous));
+        knowledgeCacheService.putPathProjection(projection);
+        logger.info("Indexed AQL path {}", projection);
+
+        //the expression of the previous declaration is no longer used
+        if (previous != null && !previous.getIndexName().equals(projection.getIndexName()))
+            context.execute(PathProjection.dropIndexStatement(previous.getIndexName()));
+
+        return toDto(projection, projection.getIndexName());
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public boolean deletePathIndex(String templateId, String path) {
+        DSLContext context = getDataAccess().getContext();
+        AqlPathIndexRecord pathIndexRecord = context.fetchOne(AQL_PATH_INDEX, AQL_PATH_INDEX.TEMPLATE_ID.eq(templateId).and(AQL_PATH_INDEX.AQL_PATH.eq(path)));
+        if (pathIndexRecord == null)
+            return false;
+
+        PathProjection projection = toProjection(pathIndexRecord);
+        //stop using the expression before dropping its index
+        knowledgeCacheService.removePathProjection(projection);
+        context.execute(PathProjection.dropIndexStatement(pathIndexRecord.getIndexName()));
+        pathIndexRecord.delete();
+
+        return true;
+    }
+
+    private PathProjection toProjection(AqlPathIndexRecord pathIndexRecord) {
+        return PathProjection.of(pathIndexRecord.getTemplateId(), pathIndexRecord.getAqlPath(), pathIndexRecord.getJsonbPath(), pathIndexRecord.getCastType());
+    }
+
+    private AqlPathIndexDto toDto(PathProjection projection, String indexName) {
+        return new AqlPathIndexDto(projection.getTemplateId(), projection.getAqlPath(), projection.getCastTypeName(), indexName);
+    }
+}
@@ -28,6 +28,7 @@ import org.ehrbase.api.definitions.ServerConfig;
 import org.ehrbase.api.service.BaseService;
 import org.ehrbase.dao.access.interfaces.I_DomainAccess;
 import org.ehrbase.dao.access.interfaces.I_SystemAccess;
+import org.ehrbase.dao.access.jooq.party.PartyIdentityHash;
 import org.ehrbase.dao.access.jooq.party.PersistedPartyProxy;
 import org.ehrbase.dao.access.support.ServiceDataAccess;
 import org.jooq.DSLContext;
@@ -47,6 +48,12 @@ public class BaseServiceImp implements BaseService {
   @Autowired
   private IAuthenticationFacade authenticationFacade;
 
+  @Autowired
+  private ReferenceDataRegistry referenceDataRegistry;
+
+  @Autowired
+  private PartyIdentityCache partyIdentityCache;
+
   public BaseServiceImp(KnowledgeCacheService knowledgeCacheService, DSLContext context,
       ServerConfig serverConfig) {
     this.knowledgeCacheService = knowledgeCacheService;
@@ -56,7 +63,7 @@ public class BaseServiceImp implements BaseService {
 
   protected I_DomainAccess getDataAccess() {
     return new ServiceDataAccess(context, knowledgeCacheService, knowledgeCacheService,
-        this.serverConfig);
+        this.serverConfig, referenceDataRegistry, partyIdentityCache);
   }
 
   /**
@@ -83,10 +90,11 @@ public class BaseServiceImp implements BaseService {
     identifier.setAssigner("EHRbase");
     identifier.setType("EHRbase Security Authentication User");
     identifiers.add(identifier);
-    // Following getOrCreate will check for matching party with given UUID, but as it is random, it also checks
-    // for matching name + identifiers. So it will find already created parties for existing users.
+    // The party ref is derived from the name, so the party of an existing user has the same identity hash and is
+    // found again by the following getOrCreate.
+    var partyName = "EHRbase Internal " + name;
     return new PersistedPartyProxy(getDataAccess())
-        .getOrCreate("EHRbase Internal " + name, UUID.randomUUID().toString(), DEMOGRAPHIC, "User",
+        .getOrCreate(partyName, PartyIdentityHash.uuidOf(partyName).toString(), DEMOGRAPHIC, "User",
             PARTY, identifiers);
   }
 
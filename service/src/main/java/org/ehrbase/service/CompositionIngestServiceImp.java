@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.nedap.archie.json.JacksonUtil;
+import com.nedap.archie.rm.composition.Composition;
+import org.ehrbase.api.definitions.ServerConfig;
+import com.nedap.archie.rm.support.identification.ObjectVersionId;
+import org.ehrbase.api.dto.IngestResultDto;
+import org.ehrbase.api.exception.InternalServerException;
+import org.ehrbase.api.service.CompositionIngestService;
+import org.ehrbase.api.service.ValidationService;
+import org.ehrbase.configuration.IngestConfiguration;
+import org.ehrbase.dao.access.interfaces.I_CompositionAccess;
+import org.ehrbase.dao.access.interfaces.I_DomainAccess;
+import org.ehrbase.dao.access.interfaces.I_EntryAccess;
+import org.ehrbase.dao.access.support.CommitBatch;
+import org.ehrbase.serialisation.jsonencoding.CanonicalJson;
+import org.jooq.DSLContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.ehrbase.jooq.pg.Tables.EHR_;
+
+/**
+ * Bulk composition ingest: the NDJSON records are read in batches of <code>ingest.batch-size</code>, parsed and
+ * validated by the shared {@link IngestExecutor}, then all compositions of a batch are written in a single
+ * transaction and JDBC batch ({@link CommitBatch}).
+ * <p>
+ * If the write of a batch fails, its records are written again one by one so the failing ones can be reported. The
+ * results of a batch ({@link IngestResultDto}) are passed on once it is written, nothing is kept across batches.
+ */
+@Service
+public class CompositionIngestServiceImp extends BaseServiceImp implements CompositionIngestService {
+
+    private static final String EHR_ID = "ehr_id";
+    private static final String COMPOSITION = "composition";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ValidationService validationService;
+    private final IngestConfiguration settings;
+    private final StoredQueryResultCache storedQueryResultCache;
+    private final IngestExecutor ingestExecutor;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * A record of the stream, once parsed and validated
+     */
+    static class Item {
+        final long line;
+        UUID ehrId;
+        Composition composition;
+        String templateId;
+        UUID compositionId;
+        String error;
+
+        Item(long line) {
+            this.line = line;
+        }
+    }
+
+    @Autowired
+    public CompositionIngestServiceImp(KnowledgeCacheService knowledgeCacheService, ValidationService validationService, DSLContext context, ServerConfig serverConfig, IngestConfiguration settings, StoredQueryResultCache storedQueryResultCache, IngestExecutor ingestExecutor, PlatformTransactionManager transactionManager) {
+        super(knowledgeCacheService, context, serverConfig);
+        this.validationService = validationService;
+        this.settings = settings;
+        this.storedQueryResultCache = storedQueryResultCache;
+        this.ingestExecutor = ingestExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    @PreAuthorize("hasRole('ADMIN')")
+    public void ingest(InputStream ndjson, String description, Consumer<List<IngestResultDto>> results) {
+        ingest(ndjson, getSystemUuid(), getUserUuid(), description, results);
+    }
+
+    void ingest(InputStream ndjson, UUID systemId, UUID committerId, String description, Consumer<List<IngestResultDto>> results) {
+        long records = 0;
+        long created = 0;
+        ExecutorService executor = ingestExecutor.getExecutorService();
+        List<Future<Item>> pending = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(ndjson, StandardCharsets.UTF_8))) {
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank())
+                    continue;
+
+                final long number = lineNumber;
+                final String content = line;
+                pending.add(executor.submit(() -> parse(number, content)));
+                records++;
+
+                if (pending.size() >= settings.getBatchSize()) {
+                    created += write(await(pending), systemId, committerId, description, results);
+                    pending.clear();
+                }
+            }
+            if (!pending.isEmpty())
+                created += write(await(pending), systemId, committerId, description, results);
+        } catch (IOException e) {
+            throw new InternalServerException("Could not read the ingest stream", e);
+        } finally {
+            //the pool is shared: only the records of this ingest are cancelled
+            pending.forEach(future -> future.cancel(true));
+        }
+
+        logger.info("Ingest finished: {} compositions created, {} records failed", created, records - created);
+    }
+
+    private Item parse(long line, String content) {
+        Item item = new Item(line);
+        try {
+            JsonNode node = JacksonUtil.getObjectMapper().readTree(content);
+            if (!node.hasNonNull(EHR_ID) || !node.hasNonNull(COMPOSITION))
+                throw new IllegalArgumentException("A record requires the fields " + EHR_ID + " and " + COMPOSITION);
+            item.ehrId = UUID.fromString(node.get(EHR_ID).asText());
+
+            Composition composition = new CanonicalJson().unmarshal(node.get(COMPOSITION).toString(), Composition.class);
+            if (composition.getArchetypeDetails() == null || composition.getArchetypeDetails().getTemplateId() == null)
+                throw new IllegalArgumentException("The composition has no template id");
+            validationService.check(composition);
+
+            item.composition = composition;
+            item.templateId = composition.getArchetypeDetails().getTemplateId().getValue();
+        } catch (Exception e) {
+            item.error = message(e);
+        }
+        return item;
+    }
+
+    private List<Item> await(List<Future<Item>> pending) {
+        List<Item> items = new ArrayList<>(pending.size());
+        for (Future<Item> future : pending) {
+            try {
+                items.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InternalServerException("Ingest interrupted", e);
+            } catch (ExecutionException e) {
+                throw new InternalServerException(e.getCause());
+            }
+        }
+        return items;
+    }
+
+    /**
+     * @return the number of created compositions
+     */
+    private long write(List<Item> items, UUID systemId, UUID committerId, String description, Consumer<List<IngestResultDto>> results) {
+        List<UUID> ehrIds = items.stream().filter(i -> i.error == null).map(i -> i.ehrId).distinct().collect(Collectors.toList());
+        Set<UUID> existing = existingEhrs(ehrIds);
+
+        List<Item> valid = new ArrayList<>();
+        for (Item item : items) {
+            if (item.error == null && !existing.contains(item.ehrId))
+                item.error = "No EHR found with given ID: " + item.ehrId;
+            if (item.error == null)
+                valid.add(item);
+        }
+
+        if (!valid.isEmpty()) {
+            try {
+                commit(valid, systemId, committerId, description);
+            } catch (RuntimeException e) {
+                logger.warn("Ingest batch failed, writing its {} records one by one: {}", valid.size(), e.getMessage());
+                for (Item item : valid) {
+                    try {
+                        commit(List.of(item), systemId, committerId, description);
+                    } catch (RuntimeException recordException) {
+                        item.error = message(recordException);
+                    }
+                }
+            }
+        }
+
+        long created = 0;
+        List<IngestResultDto> batchResults = new ArrayList<>(items.size());
+        for (Item item : items) {
+            String uid = null;
+            if (item.error == null) {
+                created++;
+                uid = new ObjectVersionId(item.compositionId.toString(), getServerConfig().getNodename(), "1").getValue();
+            }
+            batchResults.add(new IngestResultDto(item.line, item.ehrId != null ? item.ehrId.toString() : null, uid, item.error));
+        }
+        results.accept(batchResults);
+        return created;
+    }
+
+    Set<UUID> existingEhrs(List<UUID> ehrIds) {
+        return getDataAccess().getContext().select(EHR_.ID).from(EHR_).where(EHR_.ID.in(ehrIds)).fetchSet(EHR_.ID);
+    }
+
+    /**
+     * write the compositions of the items in one transaction and JDBC batch
+     */
+    void commit(List<Item> items, UUID systemId, UUID committerId, String description) {
+        transactionTemplate.executeWithoutResult(status -> {
+            I_DomainAccess dataAccess = getDataAccess();
+            CommitBatch batch = new CommitBatch(dataAccess.getContext());
+            LocalDateTime now = LocalDateTime.now();
+
+            for (Item item : items) {
+                var compositionAccess = I_CompositionAccess.getNewInstance(dataAccess, item.composition, item.ehrId);
+                compositionAccess.addContent(I_EntryAccess.getNewInstance(dataAccess, item.templateId, 0, compositionAccess.getId(), item.composition));
+                item.compositionId = compositionAccess.commit(batch, now, committerId, systemId, description);
+            }
+            batch.execute();
+
+            for (Item item : items)
+                storedQueryResultCache.invalidateAfterCommit(item.ehrId, List.of(item.templateId));
+        });
+    }
+
+    private static String message(Exception e) {
+        Throwable cause = e.getCause() != null && e.getMessage() == null ? e.getCause() : e;
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+}
@@ -30,12 +30,12 @@ import com.nedap.archie.rm.ehr.VersionedComposition;
 import com.nedap.archie.rm.generic.Attestation;
 import com.nedap.archie.rm.generic.AuditDetails;
 import com.nedap.archie.rm.generic.RevisionHistory;
-import com.nedap.archie.rm.generic.RevisionHistoryItem;
 import com.nedap.archie.rm.support.identification.HierObjectId;
 import com.nedap.archie.rm.support.identification.ObjectRef;
 import com.nedap.archie.rm.support.identification.ObjectVersionId;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Map;
 import org.ehrbase.api.definitions.ServerConfig;
 import org.ehrbase.api.exception.InternalServerException;
@@ -54,6 +54,7 @@ import org.ehrbase.dao.access.interfaces.I_ConceptAccess.ContributionChangeType;
 import org.ehrbase.dao.access.interfaces.I_EntryAccess;
 import org.ehrbase.dao.access.jooq.AttestationAccess;
 import org.ehrbase.dao.access.jooq.CompoXRefAccess;
+import org.ehrbase.dao.access.jooq.RevisionHistoryAccess;
 import org.ehrbase.response.ehrscape.CompositionDto;
 import org.ehrbase.response.ehrscape.CompositionFormat;
 import org.ehrbase.response.ehrscape.StructuredString;
@@ -71,6 +72,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Timestamp;
@@ -79,6 +81,8 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional()
@@ -89,15 +93,17 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
     private final ValidationService validationService;
     private final KnowledgeCacheService knowledgeCacheService;
     private final EhrService ehrService;
+    private final StoredQueryResultCache storedQueryResultCache;
     private boolean supportCompositionXRef = false;
 
     @Autowired
-    public CompositionServiceImp(KnowledgeCacheService knowledgeCacheService, ValidationService validationService, EhrService ehrService, DSLContext context, ServerConfig serverConfig) {
+    public CompositionServiceImp(KnowledgeCacheService knowledgeCacheService, ValidationService validationService, EhrService ehrService, DSLContext context, ServerConfig serverConfig, StoredQueryResultCache storedQueryResultCache) {
 
         super(knowledgeCacheService, context, serverConfig);
         this.validationService = validationService;
         this.ehrService = ehrService;
         this.knowledgeCacheService = knowledgeCacheService;
+        this.storedQueryResultCache = storedQueryResultCache;
 
     }
 
@@ -105,14 +111,20 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
     public Optional<CompositionDto> create(UUID ehrId, Composition objData, UUID systemId,
         UUID committerId, String description) {
 
-        UUID compositionId = internalCreate(ehrId, objData, systemId, committerId, description, null);
-        return getCompositionDto(I_CompositionAccess.retrieveInstance(getDataAccess(), compositionId));
+        UUID compositionId = internalCreate(ehrId, objData, systemId, committerId, description, null, true);
+        return Optional.of(writtenCompositionDto(ehrId, objData, new ObjectVersionId(compositionId.toString(), getServerConfig().getNodename(), "1")));
     }
 
     @Override
     public Optional<CompositionDto> create(UUID ehrId, Composition objData, UUID contribution) {
-        UUID compositionId = internalCreate(ehrId, objData, null, null, null, contribution);
-        return getCompositionDto(I_CompositionAccess.retrieveInstance(getDataAccess(), compositionId));
+        UUID compositionId = internalCreate(ehrId, objData, null, null, null, contribution, true);
+        return Optional.of(writtenCompositionDto(ehrId, objData, new ObjectVersionId(compositionId.toString(), getServerConfig().getNodename(), "1")));
+    }
+
+    @Override
+    public Optional<CompositionDto> createValidated(UUID ehrId, Composition objData, UUID contribution) {
+        UUID compositionId = internalCreate(ehrId, objData, null, null, null, contribution, false);
+        return Optional.of(writtenCompositionDto(ehrId, objData, new ObjectVersionId(compositionId.toString(), getServerConfig().getNodename(), "1")));
     }
 
     @Override
@@ -129,25 +141,15 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
      * @param committerId Audit committer; or NULL if contribution is given
      * @param description (Optional) Audit description; or NULL if contribution is given
      * @param contributionId NULL if is not needed, or ID of given custom contribution
+     * @param validate false if the composition was already validated by the caller
      * @return ID of created composition
      * @throws InternalServerException when creation failed
      */
     private UUID internalCreate(UUID ehrId, Composition composition, UUID systemId,
-        UUID committerId, String description, UUID contributionId) {
+        UUID committerId, String description, UUID contributionId, boolean validate) {
         //pre-step: validate
-        try {
-            validationService.check(composition);
-        } catch (Exception e) {
-            // rethrow if this class, but wrap all others in InternalServerException
-            if (e.getClass().equals(UnprocessableEntityException.class))
-                throw (UnprocessableEntityException) e;
-            if (e.getClass().equals(IllegalArgumentException.class))
-                throw new ValidationException(e);
-            else if (e.getClass().equals(org.ehrbase.validation.constraints.wrappers.ValidationException.class))
-                throw new ValidationException(e);
-            else
-                throw new InternalServerException(e);
-        }
+        if (validate)
+            validate(composition);
 
         //pre-step: check for valid ehrId
         if (ehrService.hasEhr(ehrId).equals(Boolean.FALSE)) {
@@ -156,9 +158,10 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
 
         // actual creation
         final UUID compositionId;
+        final String templateId = Objects.requireNonNull(composition.getArchetypeDetails().getTemplateId()).getValue();
         try {
             var compositionAccess = I_CompositionAccess.getNewInstance(getDataAccess(), composition, ehrId);
-            var entryAccess = I_EntryAccess.getNewInstance(getDataAccess(), Objects.requireNonNull(composition.getArchetypeDetails().getTemplateId()).getValue(), 0, compositionAccess.getId(), composition);
+            var entryAccess = I_EntryAccess.getNewInstance(getDataAccess(), templateId, 0, compositionAccess.getId(), composition);
             compositionAccess.addContent(entryAccess);
             if (contributionId != null) {   // in case of custom contribution, set it and invoke commit that allows custom contributions
                 compositionAccess.setContributionId(contributionId);
@@ -175,17 +178,57 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
             else
                 throw new InternalServerException(e);
         }
+        storedQueryResultCache.invalidateAfterCommit(ehrId, List.of(templateId));
         return compositionId;
     }
 
+    @Override
+    // no own transaction, contributions validate their compositions on worker threads
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void validate(Composition composition) {
+        try {
+            validationService.check(composition);
+        } catch (Exception e) {
+            throw validationFailure(e);
+        }
+    }
+
+    @Override
+    public Consumer<Composition> prepareValidation(Collection<String> templateIds) {
+        ValidationService.PreparedCheck check;
+        try {
+            check = validationService.prepare(templateIds);
+        } catch (Exception e) {
+            throw validationFailure(e);
+        }
+        return composition -> {
+            try {
+                check.check(composition);
+            } catch (Exception e) {
+                throw validationFailure(e);
+            }
+        };
+    }
+
+    private static RuntimeException validationFailure(Exception e) {
+        // rethrow if this class, but wrap all others in InternalServerException
+        if (e.getClass().equals(UnprocessableEntityException.class))
+            return (UnprocessableEntityException) e;
+        if (e.getClass().equals(IllegalArgumentException.class))
+            return new ValidationException(e);
+        else if (e.getClass().equals(org.ehrbase.validation.constraints.wrappers.ValidationException.class))
+            return new ValidationException(e);
+        else
+            return new InternalServerException(e);
+    }
+
     @Override
     public Optional<CompositionDto> update(UUID ehrId, ObjectVersionId targetObjId,
         Composition objData, UUID systemId, UUID committerId, String description) {
 
         var compoId = internalUpdate(UUID.fromString(targetObjId.getObjectId().getValue()),
-            objData, systemId, committerId, description, null);
-        return getCompositionDto(I_CompositionAccess.retrieveInstance(getDataAccess(),
-            UUID.fromString(compoId.getObjectId().getValue())));
+            objData, systemId, committerId, description, null, true);
+        return Optional.of(writtenCompositionDto(ehrId, objData, compoId));
     }
 
     @Override
@@ -193,9 +236,17 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
         Composition objData, UUID contribution) {
 
         var compoId = internalUpdate(UUID.fromString(targetObjId.getObjectId().getValue()),
-            objData, null, null, null, contribution);
-        return getCompositionDto(I_CompositionAccess.retrieveInstance(getDataAccess(),
-            UUID.fromString(compoId.getObjectId().getValue())));
+            objData, null, null, null, contribution, true);
+        return Optional.of(writtenCompositionDto(ehrId, objData, compoId));
+    }
+
+    @Override
+    public Optional<CompositionDto> updateValidated(UUID ehrId, ObjectVersionId targetObjId,
+        Composition objData, UUID contribution) {
+
+        var compoId = internalUpdate(UUID.fromString(targetObjId.getObjectId().getValue()),
+            objData, null, null, null, contribution, false);
+        return Optional.of(writtenCompositionDto(ehrId, objData, compoId));
     }
 
     @Override
@@ -213,11 +264,14 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
      * @param committerId Audit committer; or NULL if contribution is given
      * @param description (Optional) Audit description; or NULL if contribution is given
      * @param contributionId NULL if new one should be created; or ID of given custom contribution
+     * @param validate false if the composition was already validated by the caller
      * @return Version UID pointing to updated composition
      */
     private ObjectVersionId internalUpdate(UUID compositionId, Composition composition,
-        UUID systemId, UUID committerId, String description, UUID contributionId) {
+        UUID systemId, UUID committerId, String description, UUID contributionId, boolean validate) {
         boolean result;
+        UUID ehrId;
+        List<String> templateIds;
         try {
             var compositionAccess = I_CompositionAccess.retrieveInstance(getDataAccess(), compositionId);
             if (compositionAccess == null) {
@@ -225,7 +279,8 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
             }
 
             //validate RM composition
-            validationService.check(composition);
+            if (validate)
+                validationService.check(composition);
 
             // Check if template ID is not the same in existing and given data -> error
             String existingTemplateId = compositionAccess.getContent().get(0).getTemplateId();
@@ -241,6 +296,8 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
                     throw new InvalidApiParameterException("Can't update composition with wrong template version bump.");
                 }
             }
+            ehrId = compositionAccess.getEhrid();
+            templateIds = List.of(existingTemplateId, inputTemplateId);
 
             // to keep reference to entry to update: pull entry out of composition access and replace composition content with input, then write back to the original access
             List<I_EntryAccess> contentList = compositionAccess.getContent();
@@ -267,6 +324,7 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
         if (!result) {
             throw new InternalServerException("Update failed on composition:" + compositionId);
         }
+        storedQueryResultCache.invalidateAfterCommit(ehrId, templateIds);
         return new ObjectVersionId(compositionId.toString(), this.getServerConfig().getNodename(), getLastVersionNumber(compositionId).toString());
     }
 
@@ -309,6 +367,7 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
             throw new ObjectNotFoundException(I_CompositionAccess.class.getName(), "Could not find composition:" + compositionId);
         }
 
+        List<String> templateIds = templateIdsOf(compositionAccess);
         int result;
         if (contributionId != null) {   // if custom contribution should be set
             compositionAccess.setContributionId(contributionId);
@@ -331,6 +390,7 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
             throw new InternalServerException(
                 "Delete failed on composition:" + compositionAccess.getId());
         } else {
+            storedQueryResultCache.invalidateAfterCommit(compositionAccess.getEhrid(), templateIds);
             return true;
         }
     }
@@ -361,6 +421,36 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
         return getCompositionDto(compositionAccess);
     }
 
+    /**
+     * Builds the DTO of a composition which has just been written from the in-memory composition, instead of reading
+     * it back: the uid of the composition is set to the version uid of the written version.
+     */
+    private static CompositionDto writtenCompositionDto(UUID ehrId, Composition composition, ObjectVersionId versionUid) {
+        String templateId = composition.getArchetypeDetails().getTemplateId().getValue();
+        return new CompositionDto(withUid(composition, versionUid), templateId, UUID.fromString(versionUid.getObjectId().getValue()), ehrId);
+    }
+
+    /**
+     * Shallow copy of a composition with the uid of its written version. The composition passed by the caller is left
+     * untouched, as it may be written again (f.e. the versions of a contribution, or a retried ingest).
+     */
+    static Composition withUid(Composition composition, ObjectVersionId versionUid) {
+        Composition copy = new Composition();
+        copy.setUid(versionUid);
+        copy.setArchetypeNodeId(composition.getArchetypeNodeId());
+        copy.setName(composition.getName());
+        copy.setArchetypeDetails(composition.getArchetypeDetails());
+        copy.setFeederAudit(composition.getFeederAudit());
+        copy.setLinks(composition.getLinks());
+        copy.setLanguage(composition.getLanguage());
+        copy.setTerritory(composition.getTerritory());
+        copy.setCategory(composition.getCategory());
+        copy.setComposer(composition.getComposer());
+        copy.setContext(composition.getContext());
+        copy.setContent(composition.getContent());
+        return copy;
+    }
+
     // Helper function to create returnable DTO
     private Optional<CompositionDto> getCompositionDto(I_CompositionAccess compositionAccess) {
         if (compositionAccess == null) {
@@ -519,7 +609,13 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
     @Override
     public void adminDelete(UUID compositionId) {
         I_CompositionAccess compositionAccess = I_CompositionAccess.retrieveInstance(getDataAccess(), compositionId);
+        List<String> templateIds = templateIdsOf(compositionAccess);
         compositionAccess.adminDelete();
+        storedQueryResultCache.invalidateAfterCommit(compositionAccess.getEhrid(), templateIds);
+    }
+
+    private static List<String> templateIdsOf(I_CompositionAccess compositionAccess) {
+        return compositionAccess.getContent().stream().map(I_EntryAccess::getTemplateId).collect(Collectors.toList());
     }
 
     @Override
@@ -544,15 +640,8 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
 
     @Override
     public RevisionHistory getRevisionHistoryOfVersionedComposition(UUID composition) {
-        // get number of versions
-        int versions = getLastVersionNumber(composition);
-        // fetch each version and add to revision history
-        RevisionHistory revisionHistory = new RevisionHistory();
-        for (int i = 1; i <= versions; i++) {
-            Optional<OriginalVersion<Composition>> compoVersion = getOriginalVersionComposition(composition, i);
-            compoVersion.ifPresent(compositionOriginalVersion -> revisionHistory
-                .addItem(revisionHistoryItemFromComposition(compositionOriginalVersion)));
-        }
+        // all versions with their audits and attestations at once
+        RevisionHistory revisionHistory = RevisionHistoryAccess.retrieveOfComposition(getDataAccess(), composition, getServerConfig().getNodename());
 
         if (revisionHistory.getItems().isEmpty()) {
             throw new InternalServerException("Problem creating RevisionHistory"); // never should be empty; not valid
@@ -560,26 +649,6 @@ public class CompositionServiceImp extends BaseServiceImp implements Composition
         return revisionHistory;
     }
 
-    private RevisionHistoryItem revisionHistoryItemFromComposition(OriginalVersion<Composition> composition) {
-
-        ObjectVersionId objectVersionId = composition.getUid();
-
-        // Note: is List but only has more than one item when there are contributions regarding this object of change type attestation
-        List<AuditDetails> auditDetailsList = new ArrayList<>();
-        // retrieving the audits
-        auditDetailsList.add(composition.getCommitAudit());
-
-        // add retrieval of attestations, if there are any
-        if (composition.getAttestations() != null) {
-            for (Attestation a : composition.getAttestations()) {
-                AuditDetails newAudit = new AuditDetails(a.getSystemId(), a.getCommitter(), a.getTimeCommitted(), a.getChangeType(), a.getDescription());
-                auditDetailsList.add(newAudit);
-            }
-        }
-
-        return new RevisionHistoryItem(objectVersionId, auditDetailsList);
-    }
-
     @Override
     public Optional<OriginalVersion<Composition>> getOriginalVersionComposition(UUID versionedObjectUid, int version) {
         // check for valid version parameter
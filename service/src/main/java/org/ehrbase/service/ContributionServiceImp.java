@@ -48,13 +48,22 @@ import org.jooq.DSLContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional
@@ -70,10 +79,29 @@ public class ContributionServiceImp extends BaseServiceImp implements Contributi
     private final EhrService ehrService;
     private final FolderService folderService;
 
+    // threads unmarshalling and validating the versions of a contribution, 0 for the number of processors
+    @Value("${system.contribution-validation-parallelism:0}")
+    private int validationParallelism;
+    private ForkJoinPool validationPool;
+
     enum SupportedClasses {
         COMPOSITION, EHRSTATUS, FOLDER
     }
 
+    /**
+     * A version of the contribution with its unmarshalled payload, prepared before anything is written
+     */
+    private static class PreparedVersion {
+        private final Version version;
+        private RMObject data;
+        private SupportedClasses type;
+        private RuntimeException failure;
+
+        private PreparedVersion(Version version) {
+            this.version = version;
+        }
+    }
+
     @Autowired
     public ContributionServiceImp(KnowledgeCacheService knowledgeCacheService, CompositionService compositionService, EhrService ehrService, FolderService folderService, DSLContext context, ServerConfig serverConfig) {
         super(knowledgeCacheService, context, serverConfig);
@@ -82,6 +110,16 @@ public class ContributionServiceImp extends BaseServiceImp implements Contributi
         this.folderService = folderService;
     }
 
+    @PostConstruct
+    public void init() {
+        validationPool = new ForkJoinPool(validationParallelism > 0 ? validationParallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        validationPool.shutdownNow();
+    }
+
     @Override
     public boolean hasContribution(UUID ehrId, UUID contributionId) {
         //pre-step: check for valid ehrId
@@ -135,38 +173,26 @@ public class ContributionServiceImp extends BaseServiceImp implements Contributi
         if (versions.isEmpty())
             throw new InvalidApiParameterException("Invalid Contribution, must have at least one Version object.");
 
-        // go through those RM objects and execute the action of it (as listed in its audit) and connect it to new contribution
-        for (Version version : versions) {
-
-            Object versionData = version.getData();
+        // first unmarshal and validate all versions, so nothing is written for an invalid contribution
+        List<PreparedVersion> preparedVersions = prepareVersions(versions, format);
 
-            if (versionData != null) {  // the version contains the optional "data" attribute (i.e. payload), therefore has specific object type (composition, folder,...)
-                RMObject versionRmObject;
-                if (versionData instanceof LinkedHashMap) {
-                    versionRmObject = ContributionServiceHelper.unmarshalMapContentToRmObject((LinkedHashMap) versionData, format);
-                } else {
-                    throw new IllegalArgumentException("Contribution input can't be processed");
-                }
+        // then go through those RM objects and execute the action of it (as listed in its audit) and connect it to new contribution
+        for (PreparedVersion prepared : preparedVersions) {
+            Version version = prepared.version;
 
-                // switch to allow acting depending on exact type
-                SupportedClasses versionClass;
-                try {
-                    versionClass = SupportedClasses.valueOf(versionRmObject.getClass().getSimpleName().toUpperCase());
-                } catch (Exception e) {
-                    throw new InvalidApiParameterException("Invalid version object in contribution. " + versionRmObject.getClass().getSimpleName().toUpperCase() + " not supported.");
-                }
-                switch (versionClass) {
+            if (prepared.data != null) {  // the version contains the optional "data" attribute (i.e. payload), therefore has specific object type (composition, folder,...)
+                switch (prepared.type) {
                     case COMPOSITION:
-                        processCompositionVersion(ehrId, contributionId, version, (Composition) versionRmObject);
+                        processCompositionVersion(ehrId, contributionId, version, (Composition) prepared.data);
                         break;
                     case EHRSTATUS:
-                        processEhrStatusVersion(ehrId, contributionId, version, (EhrStatus) versionRmObject);
+                        processEhrStatusVersion(ehrId, contributionId, version, (EhrStatus) prepared.data);
                         break;
                     case FOLDER:
-                        processFolderVersion(ehrId, contributionId, version, (Folder) versionRmObject);
+                        processFolderVersion(ehrId, contributionId, version, (Folder) prepared.data);
                         break;
                     default:
-                        throw new UnexpectedSwitchCaseException(versionClass);
+                        throw new UnexpectedSwitchCaseException(prepared.type);
 
                 }
             } else {    // version doesn't contain "data", so it is only a metadata one to, for instance, delete a specific object via ID regardless of type
@@ -178,7 +204,111 @@ public class ContributionServiceImp extends BaseServiceImp implements Contributi
     }
 
     /**
-     * Helper function to process a version of composition type
+     * Unmarshals the payload of all versions and validates the compositions, in parallel on the validation pool.
+     * The templates of the compositions are resolved in between on the calling thread, so the workers only do CPU
+     * work and never take a database connection besides the one of the request transaction.
+     * Once a version failed the remaining ones are skipped, the failure of the first failed version in contribution
+     * order is thrown.
+     * @param versions Versions of the contribution
+     * @param format Format of the contribution
+     * @return The prepared versions, in contribution order
+     */
+    private List<PreparedVersion> prepareVersions(List<Version> versions, CompositionFormat format) {
+        AtomicBoolean failed = new AtomicBoolean(false);
+        List<PreparedVersion> preparedVersions = inParallel(versions, version -> prepareVersion(version, format, failed));
+        throwFirstFailure(preparedVersions);
+
+        // a deleted composition is not validated, its payload isn't stored
+        List<PreparedVersion> toValidate = preparedVersions.stream()
+            .filter(prepared -> prepared.type == SupportedClasses.COMPOSITION && !isDeletion(prepared.version))
+            .collect(Collectors.toList());
+        if (toValidate.isEmpty())
+            return preparedVersions;
+
+        // the structural check of the validation reports a missing template id
+        Set<String> templateIds = toValidate.stream()
+            .map(prepared -> ((Composition) prepared.data).getArchetypeDetails())
+            .filter(details -> details != null && details.getTemplateId() != null)
+            .map(details -> details.getTemplateId().getValue())
+            .collect(Collectors.toSet());
+        Consumer<Composition> validation = compositionService.prepareValidation(templateIds);
+
+        throwFirstFailure(inParallel(toValidate, prepared -> validateVersion(prepared, validation, failed)));
+        return preparedVersions;
+    }
+
+    /**
+     * Maps the items on the validation pool, a single item is mapped on the calling thread.
+     */
+    private <T> List<PreparedVersion> inParallel(List<T> items, Function<T, PreparedVersion> mapper) {
+        if (items.size() == 1)
+            return List.of(mapper.apply(items.get(0)));
+        try {
+            return validationPool.submit(() -> items.parallelStream()
+                .map(mapper)
+                .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerException("Validation of contribution interrupted", e);
+        } catch (ExecutionException e) {
+            throw new InternalServerException(e.getCause());
+        }
+    }
+
+    private static void throwFirstFailure(List<PreparedVersion> preparedVersions) {
+        for (PreparedVersion prepared : preparedVersions) {
+            if (prepared.failure != null)
+                throw prepared.failure;
+        }
+    }
+
+    private static PreparedVersion validateVersion(PreparedVersion prepared, Consumer<Composition> validation, AtomicBoolean failed) {
+        // fail fast, the contribution is rejected anyway
+        if (failed.get())
+            return prepared;
+        try {
+            validation.accept((Composition) prepared.data);
+        } catch (RuntimeException e) {
+            prepared.failure = e;
+            failed.set(true);
+        }
+        return prepared;
+    }
+
+    private PreparedVersion prepareVersion(Version version, CompositionFormat format, AtomicBoolean failed) {
+        PreparedVersion prepared = new PreparedVersion(version);
+        Object versionData = version.getData();
+        // fail fast, the contribution is rejected anyway
+        if (versionData == null || failed.get())
+            return prepared;
+
+        try {
+            if (versionData instanceof LinkedHashMap) {
+                prepared.data = ContributionServiceHelper.unmarshalMapContentToRmObject((LinkedHashMap) versionData, format);
+            } else {
+                throw new IllegalArgumentException("Contribution input can't be processed");
+            }
+
+            // switch to allow acting depending on exact type
+            try {
+                prepared.type = SupportedClasses.valueOf(prepared.data.getClass().getSimpleName().toUpperCase());
+            } catch (Exception e) {
+                throw new InvalidApiParameterException("Invalid version object in contribution. " + prepared.data.getClass().getSimpleName().toUpperCase() + " not supported.");
+            }
+        } catch (RuntimeException e) {
+            prepared.failure = e;
+            failed.set(true);
+        }
+        return prepared;
+    }
+
+    private static boolean isDeletion(Version version) {
+        return version.getCommitAudit() != null && version.getCommitAudit().getChangeType() != null
+            && I_ConceptAccess.ContributionChangeType.DELETED.name().equalsIgnoreCase(version.getCommitAudit().getChangeType().getValue());
+    }
+
+    /**
+     * Helper function to process a version of composition type, already validated by {@link #prepareVersions(List, CompositionFormat)}
      * @param ehrId ID of given EHR scope
      * @param contributionId Top level contribution this version is part of
      * @param version The version wrapper object
@@ -194,13 +324,13 @@ public class ContributionServiceImp extends BaseServiceImp implements Contributi
         switch (changeType) {
             case CREATION:
                 // call creation of a new composition with given input
-                compositionService.create(ehrId, versionRmObject, contributionId);
+                compositionService.createValidated(ehrId, versionRmObject, contributionId);
                 break;
             case AMENDMENT: // triggers the same processing as modification // TODO-396: so far so good, but should use the type "AMENDMENT" for audit in access layer
             case MODIFICATION:
                 String actualPreceding = getAndCheckActualPreceding(version);
                 // call modification of the given composition
-                compositionService.update(ehrId, new ObjectVersionId(actualPreceding), versionRmObject, contributionId);
+                compositionService.updateValidated(ehrId, new ObjectVersionId(actualPreceding), versionRmObject, contributionId);
                 break;
             case DELETED:   // case of deletion change type, but request also has payload (TODO: should that be even allowed? specification-wise it's not forbidden)
                 String actualPreceding2 = getAndCheckActualPreceding(version);
@@ -35,6 +35,7 @@ import org.ehrbase.api.service.EhrService;
 import org.ehrbase.api.service.ValidationService;
 import org.ehrbase.dao.access.interfaces.*;
 import org.ehrbase.dao.access.jooq.AttestationAccess;
+import org.ehrbase.dao.access.jooq.RevisionHistoryAccess;
 import org.ehrbase.dao.access.jooq.party.PersistedPartyProxy;
 import org.ehrbase.dao.access.jooq.party.PersistedPartyRef;
 import org.ehrbase.jooq.pg.Routines;
@@ -45,6 +46,8 @@ import org.ehrbase.response.ehrscape.StructuredStringFormat;
 import org.ehrbase.serialisation.jsonencoding.CanonicalJson;
 import org.ehrbase.util.PartyUtils;
 import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.jooq.types.DayToSecond;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -52,18 +55,21 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.annotation.PostConstruct;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.ehrbase.jooq.pg.Routines.partyUsage;
 import static org.ehrbase.jooq.pg.Tables.PARTY_IDENTIFIED;
+import static org.ehrbase.jooq.pg.Tables.STATUS;
 
 @Service(value = "ehrService")
 @Transactional()
@@ -71,17 +77,13 @@ public class EhrServiceImp extends BaseServiceImp implements EhrService {
     public static final String DESCRIPTION = "description";
     private Logger logger = LoggerFactory.getLogger(getClass());
     private final ValidationService validationService;
-    private UUID emptyParty;
+    private final StoredQueryResultCache storedQueryResultCache;
 
     @Autowired
-    public EhrServiceImp(KnowledgeCacheService knowledgeCacheService, ValidationService validationService, DSLContext context, ServerConfig serverConfig) {
+    public EhrServiceImp(KnowledgeCacheService knowledgeCacheService, ValidationService validationService, DSLContext context, ServerConfig serverConfig, StoredQueryResultCache storedQueryResultCache) {
         super(knowledgeCacheService, context, serverConfig);
         this.validationService = validationService;
-    }
-
-    @PostConstruct
-    public void init() {
-        emptyParty = new PersistedPartyProxy(getDataAccess()).getOrCreate(new PartySelf());
+        this.storedQueryResultCache = storedQueryResultCache;
     }
 
     @Override
@@ -113,7 +115,8 @@ public class EhrServiceImp extends BaseServiceImp implements EhrService {
 
         UUID subjectUuid;
         if (PartyUtils.isEmpty(status.getSubject())) {
-            subjectUuid = emptyParty;
+            // resolved on each use (from the party identity cache), an id kept from startup may have been purged
+            subjectUuid = new PersistedPartyProxy(getDataAccess()).getOrCreate(new PartySelf());
         } else {
             subjectUuid = new PersistedPartyProxy(getDataAccess()).getOrCreate(status.getSubject());
 
@@ -128,7 +131,9 @@ public class EhrServiceImp extends BaseServiceImp implements EhrService {
         try {   // this try block sums up a bunch of operations that can throw errors in the following
             I_EhrAccess ehrAccess = I_EhrAccess.getInstance(getDataAccess(), subjectUuid, systemId, null, null, ehrId);
             ehrAccess.setStatus(status);
-            return ehrAccess.commit(committerId, systemId, DESCRIPTION);
+            UUID createdEhrId = ehrAccess.commit(committerId, systemId, DESCRIPTION);
+            storedQueryResultCache.invalidateAfterCommit(createdEhrId, StoredQueryResultCache.NO_COMPOSITION);
+            return createdEhrId;
         } catch (Exception e) {
             throw new InternalServerException("Could not create an EHR with given parameters.", e);
         }
@@ -260,6 +265,7 @@ public class EhrServiceImp extends BaseServiceImp implements EhrService {
         // execute actual update and check for success
         if (ehrAccess.update(getUserUuid(), getSystemUuid(), contributionId, null, I_ConceptAccess.ContributionChangeType.MODIFICATION, DESCRIPTION).equals(false))
             throw new InternalServerException("Problem updating EHR_STATUS"); //unexpected problem. expected ones are thrown inside of update()
+        storedQueryResultCache.invalidateAfterCommit(ehrId, null);
 
         return getEhrStatus(ehrId);
     }
@@ -363,18 +369,8 @@ public class EhrServiceImp extends BaseServiceImp implements EhrService {
     public RevisionHistory getRevisionHistoryOfVersionedEhrStatus(UUID ehrUid) {
         I_EhrAccess ehrAccess = I_EhrAccess.retrieveInstance(getDataAccess(), ehrUid);
 
-        // get number of versions
-        int versions = I_StatusAccess.getLatestVersionNumber(getDataAccess(), ehrAccess.getStatusId());
-        // fetch each version
-        UUID versionedObjectUid = getEhrStatusVersionedObjectUidByEhr(ehrUid);
-        RevisionHistory revisionHistory = new RevisionHistory();
-        for (int i = 1; i <= versions; i++) {
-            Optional<OriginalVersion<EhrStatus>> ehrStatus = getEhrStatusAtVersion(ehrUid, versionedObjectUid, i);
-
-            // create RevisionHistoryItem for each version and append it to RevisionHistory
-            if (ehrStatus.isPresent())
-                revisionHistory.addItem(revisionHistoryItemFromEhrStatus(ehrStatus.get(), i));
-        }
+        // all versions with their audits and attestations at once
+        RevisionHistory revisionHistory = RevisionHistoryAccess.retrieveOfStatus(getDataAccess(), ehrAccess.getStatusId(), getServerConfig().getNodename());
 
         if (revisionHistory.getItems().isEmpty()) {
             throw new InternalServerException("Problem creating RevisionHistory"); // never should be empty; not valid
@@ -382,27 +378,6 @@ public class EhrServiceImp extends BaseServiceImp implements EhrService {
         return revisionHistory;
     }
 
-    private RevisionHistoryItem revisionHistoryItemFromEhrStatus(OriginalVersion<EhrStatus> ehrStatus, int version) {
-
-        String statusId = ehrStatus.getUid().getValue().split("::")[0];
-        ObjectVersionId objectVersionId = new ObjectVersionId( statusId + "::" + getServerConfig().getNodename() + "::" + version);
-
-        // Note: is List but only has more than one item when there are contributions regarding this object of change type attestation
-        List<AuditDetails> auditDetailsList = new ArrayList<>();
-        // retrieving the audits
-        auditDetailsList.add(ehrStatus.getCommitAudit());
-
-        // add retrieval of attestations, if there are any
-        if (ehrStatus.getAttestations() != null) {
-            for (Attestation a : ehrStatus.getAttestations()) {
-                AuditDetails newAudit = new AuditDetails(a.getSystemId(), a.getCommitter(), a.getTimeCommitted(), a.getChangeType(), a.getDescription());
-                auditDetailsList.add(newAudit);
-            }
-        }
-
-        return new RevisionHistoryItem(objectVersionId, auditDetailsList);
-    }
-
     /**
      * {@inheritDoc}
      */
@@ -441,18 +416,38 @@ public class EhrServiceImp extends BaseServiceImp implements EhrService {
     public void adminDeleteEhr(UUID ehrId) {
         I_EhrAccess ehrAccess = I_EhrAccess.retrieveInstance(getDataAccess(), ehrId);
         ehrAccess.adminDeleteEhr();
+        storedQueryResultCache.invalidateAfterCommit(ehrId, null);
     }
 
     @PreAuthorize("hasRole('ADMIN')")
     @Override
     public void adminPurgePartyIdentified() {
-        getDataAccess().getContext().deleteFrom(PARTY_IDENTIFIED).where(partyUsage(PARTY_IDENTIFIED.ID).eq(0L)).execute();
+        purgeUnusedParties(getDataAccess());
     }
 
     @PreAuthorize("hasRole('ADMIN')")
     @Override
     public void adminDeleteOrphanHistory() {
-        Routines.deleteOrphanHistory(getDataAccess().getContext().configuration());
+        I_DomainAccess dataAccess = getDataAccess();
+        Routines.deleteOrphanHistory(dataAccess.getContext().configuration());
+        // unused parties are deleted as well
+        purgeUnusedParties(dataAccess);
+    }
+
+    /**
+     * Deletes the unused parties which were not resolved within the purge grace of the party identity cache, their
+     * ids may still be cached by any node otherwise.
+     */
+    private void purgeUnusedParties(I_DomainAccess dataAccess) {
+        PartyIdentityCache partyIdentityCache = dataAccess.getPartyIdentityCache();
+        // database time, as resolved_at is set by the database
+        DayToSecond grace = DayToSecond.valueOf(partyIdentityCache.getPurgeGrace().toMillis());
+        dataAccess.getContext()
+                .deleteFrom(PARTY_IDENTIFIED)
+                .where(PARTY_IDENTIFIED.RESOLVED_AT.lt(DSL.currentTimestamp().minus(grace)))
+                .and(partyUsage(PARTY_IDENTIFIED.ID).eq(0L))
+                .execute();
+        partyIdentityCache.clearAfterCommit();
     }
 
 
@@ -468,4 +463,18 @@ public class EhrServiceImp extends BaseServiceImp implements EhrService {
         return Optional.ofNullable(new PersistedPartyProxy(getDataAccess()).retrieve(getSubjectUuid(ehrId)).getExternalRef())
             .map(p -> p.getId().getValue()).orElse(null);
     }
+
+    @Override
+    public Map<UUID, String> getSubjectExtRefs(Collection<UUID> ehrIds) {
+        if (ehrIds.isEmpty())
+            return Collections.emptyMap();
+
+        return getDataAccess().getContext()
+                .select(STATUS.EHR_ID, PARTY_IDENTIFIED.PARTY_REF_VALUE)
+                .from(STATUS)
+                .join(PARTY_IDENTIFIED).on(PARTY_IDENTIFIED.ID.eq(STATUS.PARTY))
+                .where(STATUS.EHR_ID.in(ehrIds))
+                .and(PARTY_IDENTIFIED.PARTY_REF_VALUE.isNotNull())
+                .fetchMap(STATUS.EHR_ID, PARTY_IDENTIFIED.PARTY_REF_VALUE);
+    }
 }
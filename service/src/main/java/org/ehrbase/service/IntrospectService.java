@@ -18,7 +18,10 @@
 
 package org.ehrbase.service;
 
+import org.ehrbase.api.definitions.ServerConfig;
 import org.ehrbase.aql.sql.queryimpl.ItemInfo;
+import org.ehrbase.aql.sql.queryimpl.IterativeNodeMetaData;
+import org.ehrbase.aql.sql.queryimpl.PathProjection;
 import org.ehrbase.ehr.knowledge.I_KnowledgeCache;
 import org.ehrbase.webtemplate.model.WebTemplate;
 
@@ -32,6 +35,20 @@ public interface IntrospectService {
 
     List<String> multiValued(String templateId);
 
+    /**
+     * @param templateId   the template id
+     * @param serverConfig the configuration holding the AQL iteration settings, used on first access only
+     * @return the array resolution data of the template, computed once per template
+     */
+    IterativeNodeMetaData iterativeNodeMetaData(String templateId, ServerConfig serverConfig);
+
+    /**
+     * @param templateId the template id
+     * @param jsonbPath  the comma separated JSONB path of a node in the entry
+     * @return the indexed projection declared for this path, null if none
+     */
+    PathProjection findPathProjection(String templateId, String jsonbPath);
+
     I_KnowledgeCache getKnowledge();
 
     ItemInfo getInfo(String templateId, String aql);
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import org.ehcache.core.spi.service.StatisticsService;
+import org.ehcache.core.statistics.TierStatistics;
+import org.ehrbase.aql.containment.JsonPathQueryResult;
+import org.ehrbase.aql.containment.TemplateIdAqlTuple;
+import org.ehrbase.aql.containment.TemplateIdQueryTuple;
+import org.ehrbase.aql.sql.AqlQueryPlan;
+import org.ehrbase.aql.sql.queryimpl.ItemInfo;
+import org.ehrbase.validation.Validator;
+import org.ehrbase.webtemplate.model.WebTemplate;
+import org.openehr.schemas.v1.OPERATIONALTEMPLATE;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.cache.CacheManager;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.ehrbase.configuration.CacheConfiguration.FIELDS_CACHE;
+import static org.ehrbase.configuration.CacheConfiguration.INTROSPECT_CACHE;
+import static org.ehrbase.configuration.CacheConfiguration.MULTI_VALUE_CACHE;
+import static org.ehrbase.configuration.CacheConfiguration.OPERATIONAL_TEMPLATE_CACHE;
+import static org.ehrbase.configuration.CacheConfiguration.QUERY_CACHE;
+import static org.ehrbase.configuration.CacheConfiguration.QUERY_PLAN_CACHE;
+import static org.ehrbase.configuration.CacheConfiguration.VALIDATOR_CACHE;
+
+/**
+ * Metrics of the knowledge caches:
+ * <ul>
+ *     <li>the JSR-107 statistics of every cache built in
+ *     {@link org.ehrbase.configuration.CacheConfiguration#cacheManagerCustomizer}, as <code>cache.gets</code> (hit and
+ *     miss), <code>cache.puts</code>, <code>cache.removals</code> and <code>cache.evictions</code> tagged by cache</li>
+ *     <li>the Ehcache tier statistics of the same caches, as <code>ehrbase.knowledge.cache.entries</code> and
+ *     <code>ehrbase.knowledge.cache.size</code> (occupied bytes, NaN for a tier sized by entries) tagged by cache and
+ *     tier (<code>OnHeap</code>, <code>OffHeap</code>, <code>Disk</code>)</li>
+ *     <li>the time spent building the cached data of a template on a miss, as <code>ehrbase.knowledge.load</code>
+ *     (by loader)</li>
+ * </ul>
+ * Nothing is recorded without a meter registry.
+ */
+@Component
+public class KnowledgeCacheMetrics {
+
+    public enum Loader {
+        WEB_TEMPLATE("web-template"), VALIDATOR("validator"), QUERY_PATHS("query-paths");
+
+        private final String tag;
+
+        Loader(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final List<String> CACHES = List.of(INTROSPECT_CACHE, OPERATIONAL_TEMPLATE_CACHE, VALIDATOR_CACHE,
+            QUERY_CACHE, FIELDS_CACHE, MULTI_VALUE_CACHE, QUERY_PLAN_CACHE);
+
+    private final Map<Loader, Timer> durations = new EnumMap<>(Loader.class);
+
+    @Autowired
+    public KnowledgeCacheMetrics(CacheManager cacheManager, StatisticsService cacheStatisticsService, ObjectProvider<MeterRegistry> meterRegistries) {
+        this(cacheManager, cacheStatisticsService, meterRegistries.getIfAvailable());
+    }
+
+    KnowledgeCacheMetrics(CacheManager cacheManager, StatisticsService cacheStatisticsService, MeterRegistry meterRegistry) {
+        if (meterRegistry == null)
+            return;
+
+        JCacheMetrics.monitor(meterRegistry, cacheManager.getCache(INTROSPECT_CACHE, UUID.class, WebTemplate.class));
+        JCacheMetrics.monitor(meterRegistry, cacheManager.getCache(OPERATIONAL_TEMPLATE_CACHE, String.class, OPERATIONALTEMPLATE.class));
+        JCacheMetrics.monitor(meterRegistry, cacheManager.getCache(VALIDATOR_CACHE, UUID.class, Validator.class));
+        JCacheMetrics.monitor(meterRegistry, cacheManager.getCache(QUERY_CACHE, TemplateIdQueryTuple.class, JsonPathQueryResult.class));
+        JCacheMetrics.monitor(meterRegistry, cacheManager.getCache(FIELDS_CACHE, TemplateIdAqlTuple.class, ItemInfo.class));
+        JCacheMetrics.monitor(meterRegistry, cacheManager.getCache(MULTI_VALUE_CACHE, String.class, List.class));
+        JCacheMetrics.monitor(meterRegistry, cacheManager.getCache(QUERY_PLAN_CACHE, String.class, AqlQueryPlan.class));
+
+        for (String cache : CACHES)
+            cacheStatisticsService.getCacheStatistics(cache).getTierStatistics().forEach((tier, statistics) -> {
+                Gauge.builder("ehrbase.knowledge.cache.entries", statistics, TierStatistics::getMappings)
+                        .description("Number of entries held in the tier of the cache")
+                        .tag("cache", cache)
+                        .tag("tier", tier)
+                        .register(meterRegistry);
+                Gauge.builder("ehrbase.knowledge.cache.size", statistics, KnowledgeCacheMetrics::occupiedBytes)
+                        .description("Bytes occupied by the tier of the cache")
+                        .baseUnit("bytes")
+                        .tag("cache", cache)
+                        .tag("tier", tier)
+                        .register(meterRegistry);
+            });
+
+        for (Loader loader : Loader.values())
+            durations.put(loader, Timer.builder("ehrbase.knowledge.load")
+                    .description("Duration of building the cached data of a template on a cache miss")
+                    .tag("loader", loader.tag)
+                    .register(meterRegistry));
+    }
+
+    private static double occupiedBytes(TierStatistics statistics) {
+        long bytes = statistics.getOccupiedByteSize();
+        // a tier sized by entries does not measure its bytes
+        return bytes < 0 ? Double.NaN : bytes;
+    }
+
+    /**
+     * Records the time since <code>startNanos</code> (from {@link System#nanoTime()}).
+     */
+    public void record(Loader loader, long startNanos) {
+        Timer duration = durations.get(loader);
+        if (duration != null)
+            duration.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -23,20 +23,26 @@
 package org.ehrbase.service;
 
 import org.apache.xmlbeans.XmlException;
+import org.ehrbase.api.definitions.ServerConfig;
 import org.ehrbase.api.exception.InvalidApiParameterException;
 import org.ehrbase.api.exception.StateConflictException;
+import org.ehrbase.aql.containment.ContainmentIndex;
 import org.ehrbase.aql.containment.JsonPathQueryResult;
 import org.ehrbase.aql.containment.TemplateIdAqlTuple;
 import org.ehrbase.aql.containment.TemplateIdQueryTuple;
+import org.ehrbase.aql.sql.AqlQueryPlan;
 import org.ehrbase.aql.sql.queryimpl.ItemInfo;
+import org.ehrbase.aql.sql.queryimpl.IterativeNodeMetaData;
+import org.ehrbase.aql.sql.queryimpl.PathProjection;
 import org.ehrbase.configuration.CacheConfiguration;
 import org.ehrbase.ehr.knowledge.I_KnowledgeCache;
 import org.ehrbase.ehr.knowledge.TemplateMetaData;
+import org.ehrbase.ehr.knowledge.WebTemplateSnapshot;
+import org.ehrbase.validation.Validator;
 import org.ehrbase.webtemplate.model.WebTemplate;
 import org.ehrbase.webtemplate.model.WebTemplateNode;
 import org.ehrbase.webtemplate.parser.NodeId;
 import org.ehrbase.webtemplate.parser.OPTParser;
-import org.openehr.schemas.v1.OBJECTID;
 import org.openehr.schemas.v1.OPERATIONALTEMPLATE;
 import org.openehr.schemas.v1.TEMPLATEID;
 import org.openehr.schemas.v1.TemplateDocument;
@@ -56,9 +62,12 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static org.ehrbase.configuration.CacheConfiguration.*;
@@ -96,55 +105,70 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
 
     private final Cache<String, OPERATIONALTEMPLATE> atOptCache;
     private final Cache<UUID, WebTemplate> webTemplateCache;
+    private final Cache<UUID, Validator> validatorCache;
     private final Cache<TemplateIdAqlTuple, ItemInfo> fieldCache;
     private final Cache<String, List> multivaluedCache;
+    private final Cache<String, AqlQueryPlan> queryPlanCache;
+
+    //incremented whenever the set of templates changes, part of the query plan cache key
+    private final AtomicLong templateRevision = new AtomicLong();
+    private final AtomicLong queryPlanCacheHits = new AtomicLong();
+    private final AtomicLong queryPlanCacheMisses = new AtomicLong();
 
     //index uuid to templateId
     private Map<UUID, String> idxCacheUuidToTemplateId = new ConcurrentHashMap<>();
     //index templateId to uuid
     private Map<String, UUID> idxCacheTemplateIdToUuid = new ConcurrentHashMap<>();
 
-    private Set<String> allTemplateId = new HashSet<>();
+    private final Set<String> allTemplateId = ConcurrentHashMap.newKeySet();
+
+    //templates to load at startup and loaded so far, see isWarmedUp()
+    private final AtomicInteger warmUpTotal = new AtomicInteger();
+    private final AtomicInteger warmUpLoaded = new AtomicInteger();
+    private volatile boolean warmedUp;
+
+    //archetype node id -> templates and paths containing it
+    private final ContainmentIndex containmentIndex = new ContainmentIndex();
+    //templateId -> array resolution data, derived from the multi-valued paths
+    private final Map<String, IterativeNodeMetaData> iterativeNodeCache = new ConcurrentHashMap<>();
+    //templateId -> jsonb path -> declared indexed projection
+    private final Map<String, Map<String, PathProjection>> pathProjections = new ConcurrentHashMap<>();
+    //templateId -> storage revision of the entry in atOptCache, an entry without revision is reloaded
+    private final Map<String, Long> atOptRevisions = new ConcurrentHashMap<>();
+    //templateId -> storage revision the derived data (web template, containment index, query paths...) was built from
+    private final Map<String, Long> loadedRevisions = new ConcurrentHashMap<>();
 
 
     private final CacheManager cacheManager;
     private final CacheConfiguration cacheConfiguration;
+    private final TemplateWarmUpScheduler warmUpScheduler;
+    private final KnowledgeCacheMetrics knowledgeCacheMetrics;
 
     @Value("${system.allow-template-overwrite:false}")
     private boolean allowTemplateOverwrite;
 
     @Autowired
-    public KnowledgeCacheService(@Qualifier("templateDBStorageService") TemplateStorage templateStorage, CacheManager cacheManager, CacheConfiguration cacheConfiguration) {
+    public KnowledgeCacheService(@Qualifier("templateDBStorageService") TemplateStorage templateStorage, CacheManager cacheManager, CacheConfiguration cacheConfiguration, TemplateWarmUpScheduler warmUpScheduler, KnowledgeCacheMetrics knowledgeCacheMetrics) {
         this.templateStorage = templateStorage;
         this.cacheManager = cacheManager;
+        this.warmUpScheduler = warmUpScheduler;
+        this.knowledgeCacheMetrics = knowledgeCacheMetrics;
 
         atOptCache = cacheManager.getCache(OPERATIONAL_TEMPLATE_CACHE, String.class, OPERATIONALTEMPLATE.class);
         webTemplateCache = cacheManager.getCache(CacheConfiguration.INTROSPECT_CACHE, UUID.class, WebTemplate.class);
+        validatorCache = cacheManager.getCache(VALIDATOR_CACHE, UUID.class, Validator.class);
         jsonPathQueryResultCache = cacheManager.getCache(QUERY_CACHE, TemplateIdQueryTuple.class, JsonPathQueryResult.class);
         fieldCache = cacheManager.getCache(FIELDS_CACHE, TemplateIdAqlTuple.class, ItemInfo.class);
         multivaluedCache = cacheManager.getCache(MULTI_VALUE_CACHE, String.class, List.class);
+        queryPlanCache = cacheManager.getCache(QUERY_PLAN_CACHE, String.class, AqlQueryPlan.class);
         this.cacheConfiguration = cacheConfiguration;
     }
 
     @PostConstruct
     public void init() {
-        allTemplateId = new HashSet<>();
-
-
-        for (TemplateMetaData metaData : listAllOperationalTemplates()) {
-            OPERATIONALTEMPLATE operationaltemplate = metaData.getOperationaltemplate();
-
-
-            String value = "";
-            try {
-                value = Optional.ofNullable(operationaltemplate).map(OPERATIONALTEMPLATE::getTemplateId).map(OBJECTID::getValue).orElseThrow();
-                putIntoCache(operationaltemplate);
-                allTemplateId.add(value);
-
-            } catch (RuntimeException e) {
-                log.error("Invalidate template : {}", value);
-            }
-        }
+        // only the ids are read here, the templates are loaded in the background (see isWarmedUp)
+        Map<String, Long> revisions = templateStorage.listRevisions();
+        allTemplateId.addAll(revisions.keySet());
 
 
         // If the template was manually removed from db invalidate the cache.
@@ -166,25 +190,76 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
             webTemplateCache.clear();
             jsonPathQueryResultCache.clear();
             atOptCache.clear();
+            atOptRevisions.clear();
             fieldCache.clear();
             multivaluedCache.clear();
+            iterativeNodeCache.clear();
+            queryPlanCache.clear();
         }
 
-        if (cacheConfiguration.isPreBuildQueries()) {
-            ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(1);
+        warmUp(revisions);
+    }
 
-            executor.submit(() -> {
+    /**
+     * Loads the templates on the warm-up scheduler, from their WebTemplate snapshot when there is an up to date one,
+     * else by parsing them (and storing the snapshot for the next start).
+     */
+    private void warmUp(Map<String, Long> revisions) {
+        long start = System.currentTimeMillis();
+        warmUpTotal.set(revisions.size());
+
+        CompletableFuture<?>[] loads = revisions.entrySet().stream()
+                .map(e -> warmUpScheduler.schedule(e.getKey(), TemplateWarmUpScheduler.Kind.LOAD, cancelled -> warmUp(e.getKey(), e.getValue()))
+                        .thenRun(warmUpLoaded::incrementAndGet))
+                .toArray(CompletableFuture[]::new);
+
+        CompletableFuture.allOf(loads).whenComplete((done, e) -> {
+            warmedUp = true;
+            long duration = System.currentTimeMillis() - start;
+            warmUpScheduler.recordStartup(duration);
+            log.info("{} templates loaded in {} ms", allTemplateId.size(), duration);
+
+            if (cacheConfiguration.isPreBuildQueries())
+                allTemplateId.forEach(this::schedulePreBuild);
+
+            java.time.Duration syncInterval = cacheConfiguration.getTemplateSyncInterval();
+            if (syncInterval != null && !syncInterval.isZero() && !syncInterval.isNegative())
+                warmUpScheduler.scheduleWithFixedDelay(this::syncTemplates, syncInterval);
+        });
+    }
 
-                for (String s : allTemplateId) {
-                    try {
-                        precalculateQuerys(s);
-                    } catch (RuntimeException e) {
-                        log.error("Invalidate template : {}", s);
-                    }
-                }
-            });
+    private void warmUp(String templateId, long revision) {
+        // also for an invalid template, which is only loaded again once replaced
+        loadedRevisions.put(templateId, revision);
+        try {
+            Optional<WebTemplateSnapshot> snapshot = templateStorage.readWebTemplateSnapshot(templateId, revision);
+            if (snapshot.isPresent()) {
+                putIntoCache(snapshot.get());
+            } else {
+                OPERATIONALTEMPLATE template = retrieveOperationalTemplate(templateId).orElseThrow();
+                putIntoCache(template);
+                storeWebTemplateSnapshot(template, revision);
+            }
+        } catch (RuntimeException e) {
+            allTemplateId.remove(templateId);
+            log.error("Invalidate template : {}", templateId);
         }
+    }
+
+    /**
+     * @return true once all templates found at startup are loaded: AQL queries resolve their containments against
+     * the loaded templates only, so the service must not be ready before.
+     */
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+
+    public int getWarmUpTotal() {
+        return warmUpTotal.get();
+    }
 
+    public int getWarmUpLoaded() {
+        return warmUpLoaded.get();
     }
 
     @PreDestroy
@@ -255,17 +330,13 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
 
 
         putIntoCache(template);
+        templateStorage.readRevision(templateId).ifPresent(revision -> {
+            loadedRevisions.put(templateId, revision);
+            storeWebTemplateSnapshot(template, revision);
+        });
 
-        if (cacheConfiguration.isPreBuildQueries()) {
-            ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(1);
-            executor.submit(() -> {
-                try {
-                    precalculateQuerys(templateId);
-                } catch (RuntimeException e) {
-                    //NOP
-                }
-            });
-        }
+        if (cacheConfiguration.isPreBuildQueries())
+            schedulePreBuild(templateId);
 
         //retrieve the template Id for this new entry
         return template.getTemplateId().getValue();
@@ -281,7 +352,7 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
             idxCacheTemplateIdToUuid.put(templateId, UUID.fromString(template.getUid().getValue()));
             allTemplateId.add(templateId);
 
-            getQueryOptMetaData(templateId);
+            containmentIndex.add(templateId, getQueryOptMetaData(templateId).getTree());
         } catch (RuntimeException e) {
             invalidateCache(template);
             log.error("Invalid template {}", template.getTemplateId().getValue());
@@ -289,12 +360,39 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
         }
     }
 
-    private void precalculateQuerys(String templateId) {
+    // the OPT itself is parsed on first use only
+    private void putIntoCache(WebTemplateSnapshot snapshot) {
+        String templateId = snapshot.getTemplateId();
+        UUID uuid = snapshot.getTemplateUid();
+        webTemplateCache.put(uuid, snapshot.getWebTemplate());
+        idxCacheUuidToTemplateId.put(uuid, templateId);
+        idxCacheTemplateIdToUuid.put(templateId, uuid);
+        allTemplateId.add(templateId);
+
+        containmentIndex.add(templateId, snapshot.getWebTemplate().getTree());
+    }
+
+    private void storeWebTemplateSnapshot(OPERATIONALTEMPLATE template, long revision) {
+        String templateId = template.getTemplateId().getValue();
+        try {
+            templateStorage.storeWebTemplateSnapshot(new WebTemplateSnapshot(templateId, UUID.fromString(template.getUid().getValue()), revision, getQueryOptMetaData(templateId)));
+        } catch (RuntimeException e) {
+            log.warn("Could not store the web template of {}: {}", templateId, e.getMessage());
+        }
+    }
+
+    private void schedulePreBuild(String templateId) {
+        warmUpScheduler.schedule(templateId, TemplateWarmUpScheduler.Kind.PRE_BUILD, cancelled -> precalculateQuerys(templateId, cancelled));
+    }
+
+    // stops once the template is cancelled on the scheduler (f.e. uploaded again)
+    private void precalculateQuerys(String templateId, BooleanSupplier cancelled) {
 
         getQueryOptMetaData(templateId).findAllContainmentCombinations()
                 .stream()
                 .filter(s -> !s.isEmpty())
                 .filter(s -> s.size() <= cacheConfiguration.getPreBuildQueriesDepth())
+                .takeWhile(s -> !cancelled.getAsBoolean())
                 .forEach(s -> resolveForTemplate(templateId, s));
 
 
@@ -307,15 +405,76 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
 
     // invalidates some derived caches like the queryOptMetaDataCache which depend on the template
     private void invalidateCache(OPERATIONALTEMPLATE template) {
+        String templateId = template.getTemplateId().getValue();
+        // the cached version of a replaced template is keyed by its own uid, not the one of the replacement
+        UUID cachedUid = idxCacheTemplateIdToUuid.get(templateId);
+        invalidateCache(templateId, cachedUid != null ? cachedUid : UUID.fromString(template.getUid().getValue()));
+    }
+
+    private void invalidateCache(String templateId, UUID templateUid) {
 
         //invalidate the cache for this template
-        allTemplateId.remove(template.getTemplateId().getValue());
-        webTemplateCache.remove(UUID.fromString(template.getUid().getValue()));
-        atOptCache.remove(template.getTemplateId().getValue());
+        warmUpScheduler.cancel(templateId);
+        allTemplateId.remove(templateId);
+        containmentIndex.remove(templateId);
+        if (templateUid != null) {
+            webTemplateCache.remove(templateUid);
+            validatorCache.remove(templateUid);
+            idxCacheUuidToTemplateId.remove(templateUid);
+        }
+        idxCacheTemplateIdToUuid.remove(templateId);
+        atOptCache.remove(templateId);
+        atOptRevisions.remove(templateId);
+        loadedRevisions.remove(templateId);
+
+        //entries of the other templates are kept, the caches are only scanned on a template change
+        jsonPathQueryResultCache.removeAll(keysOf(jsonPathQueryResultCache, key -> templateId.equals(key.getTemplateId())));
+        fieldCache.removeAll(keysOf(fieldCache, key -> templateId.equals(key.getTemplateId())));
+        multivaluedCache.remove(templateId);
+        iterativeNodeCache.remove(templateId);
+
+        //compiled plans depend on the containment resolution for the whole template set
+        templateRevision.incrementAndGet();
+        queryPlanCache.clear();
+    }
 
-        jsonPathQueryResultCache.clear();
-        fieldCache.clear();
-        multivaluedCache.clear();
+    private static <K> Set<K> keysOf(Cache<K, ?> cache, Predicate<K> filter) {
+        Set<K> keys = new HashSet<>();
+        for (Cache.Entry<K, ?> entry : cache) {
+            if (entry != null && filter.test(entry.getKey())) {
+                keys.add(entry.getKey());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Brings the templates of this node in line with the template storage, which other nodes may have changed: the
+     * derived data of templates deleted or replaced there is evicted, replaced and added templates are loaded again on
+     * the warm-up scheduler. Runs every <code>cache.template-sync-interval</code> once the templates are warmed up, so
+     * a change made by another node is seen after that interval at most, without any work on the request threads.
+     *
+     * @return completed once the changed templates are loaded
+     */
+    public CompletableFuture<Void> syncTemplates() {
+        Map<String, Long> revisions = templateStorage.listRevisions();
+        for (String templateId : new ArrayList<>(loadedRevisions.keySet())) {
+            if (!revisions.containsKey(templateId)) {
+                invalidateCache(templateId, idxCacheTemplateIdToUuid.get(templateId));
+            }
+        }
+
+        List<CompletableFuture<Void>> loads = new ArrayList<>();
+        revisions.forEach((templateId, revision) -> {
+            if (!revision.equals(loadedRevisions.get(templateId))) {
+                log.info("Template {} was changed by another node, loading it again", templateId);
+                invalidateCache(templateId, idxCacheTemplateIdToUuid.get(templateId));
+                // not compared again by the next sync while the load is pending
+                loadedRevisions.put(templateId, revision);
+                loads.add(warmUpScheduler.schedule(templateId, TemplateWarmUpScheduler.Kind.LOAD, cancelled -> warmUp(templateId, revision)));
+            }
+        });
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture[0]));
     }
 
 
@@ -328,12 +487,21 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
     @Override
     public Optional<OPERATIONALTEMPLATE> retrieveOperationalTemplate(String key) {
         log.debug("retrieveOperationalTemplate({})", key);
-        //CCH, 29.3.21: systematically retrieve the operational template from the DB.
-//        OPERATIONALTEMPLATE template = getFromCache(key, atOptCache);
-        OPERATIONALTEMPLATE template = null;
+        warmUpScheduler.touch(key);
+        // the template may have been replaced or deleted by another node: only the revision is read on every call
+        Long revision = templateStorage.readRevision(key).orElse(null);
+        if (revision == null) {
+            if (allTemplateId.contains(key) || atOptRevisions.containsKey(key)) {
+                //deleted by another node: drop what was derived from it here as well
+                invalidateCache(key, idxCacheTemplateIdToUuid.get(key));
+            }
+            return Optional.empty();
+        }
+
+        OPERATIONALTEMPLATE template = revision.equals(atOptRevisions.get(key)) ? getFromCache(key, atOptCache) : null;
 
-        if (template == null) {     // null if not in cache already, which triggers the following retrieval and putting into cache
-            template = getOperationaltemplateFromFileStorage(key);
+        if (template == null) {     // null if not in cache already or stale, which triggers the following retrieval and putting into cache
+            template = getOperationaltemplateFromFileStorage(key, revision);
         }
         return Optional.ofNullable(template);
     }
@@ -348,6 +516,27 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
         return retrieveOperationalTemplate(key);
     }
 
+    @Override
+    public Optional<OPERATIONALTEMPLATE> getCachedOperationalTemplate(String key) {
+        warmUpScheduler.touch(key);
+        // cached entries are evicted by invalidateCache, on a local change or by syncTemplates
+        OPERATIONALTEMPLATE template = atOptRevisions.containsKey(key) ? getFromCache(key, atOptCache) : null;
+        if (template == null) {
+            return retrieveOperationalTemplate(key);
+        }
+        return Optional.of(template);
+    }
+
+    @Override
+    public Optional<OPERATIONALTEMPLATE> getCachedOperationalTemplate(UUID uuid) {
+        String key = findTemplateIdByUuid(uuid);
+        if (key == null) {
+            return Optional.empty();
+        }
+
+        return getCachedOperationalTemplate(key);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -375,7 +564,8 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
                     .map(t -> t.getOperationaltemplate().getTemplateId().getValue())
                     .findFirst()
                     .orElse(null);
-            idxCacheUuidToTemplateId.put(uuid, templateId);
+            if (templateId != null)
+                idxCacheUuidToTemplateId.put(uuid, templateId);
         }
 
         return templateId;
@@ -432,10 +622,13 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
     private WebTemplate buildAndCacheQueryOptMetaData(OPERATIONALTEMPLATE operationaltemplate) {
         log.info("Updating WebTemplate cache for template: {}", operationaltemplate.getTemplateId().getValue());
         final WebTemplate visitor;
+        long start = System.nanoTime();
         try {
             visitor = new OPTParser(operationaltemplate).parse();
         } catch (Exception e) {
             throw new IllegalArgumentException(String.format("Invalid template: %s", e.getMessage()));
+        } finally {
+            knowledgeCacheMetrics.record(KnowledgeCacheMetrics.Loader.WEB_TEMPLATE, start);
         }
 
         webTemplateCache.put(UUID.fromString(operationaltemplate.getUid().getValue()), visitor);
@@ -447,13 +640,24 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
      * to handle first time access to an operational template before it was written to cache already.
      *
      * @param filename of the OPT file in storage
+     * @param revision of the template in storage, read before its content
      * @return The operational template or null.
      */
-    private OPERATIONALTEMPLATE getOperationaltemplateFromFileStorage(String filename) {
+    private OPERATIONALTEMPLATE getOperationaltemplateFromFileStorage(String filename, Long revision) {
         OPERATIONALTEMPLATE operationaltemplate = templateStorage.readOperationaltemplate(filename).orElse(null);
         if (operationaltemplate != null) {
-            atOptCache.put(filename, operationaltemplate);      // manual putting into cache (actual opt cache and then id cache)
-            idxCacheUuidToTemplateId.put(UUID.fromString(operationaltemplate.getUid().getValue()), filename);
+            Long cachedRevision = atOptRevisions.get(filename);
+            if (cachedRevision != null && !cachedRevision.equals(revision)) {
+                // replaced in storage since it was cached: the derived data is stale as well
+                invalidateCache(operationaltemplate);
+                atOptRevisions.put(filename, revision);
+                loadedRevisions.put(filename, revision);
+                putIntoCache(operationaltemplate);
+            } else {
+                atOptCache.put(filename, operationaltemplate);      // manual putting into cache (actual opt cache and then id cache)
+                atOptRevisions.put(filename, revision);
+                idxCacheUuidToTemplateId.put(UUID.fromString(operationaltemplate.getUid().getValue()), filename);
+            }
         }
         return operationaltemplate;
     }
@@ -479,35 +683,20 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
 
     @Override
     public JsonPathQueryResult resolveForTemplate(String templateId, Collection<NodeId> nodeIds) {
+        warmUpScheduler.touch(templateId);
         TemplateIdQueryTuple key = new TemplateIdQueryTuple(templateId, nodeIds);
 
         JsonPathQueryResult jsonPathQueryResult = getFromCache(key, jsonPathQueryResultCache);
         if (jsonPathQueryResult == null) {
+            long start = System.nanoTime();
 
-
-            WebTemplate webTemplate = getQueryOptMetaData(templateId);
-            List<WebTemplateNode> webTemplateNodeList = new ArrayList<>();
-            webTemplateNodeList.add(webTemplate.getTree());
-            for (NodeId nodeId : nodeIds) {
-                webTemplateNodeList = webTemplateNodeList.stream()
-                        .map(n -> n.findMatching(f -> {
-                            if (f.getNodeId() == null) {
-                                return false;
-                            }
-                            // compere only classname
-                            else if (nodeId.getNodeId() == null) {
-                                return nodeId.getClassName().equals(new NodeId(f.getNodeId()).getClassName());
-                            } else {
-                                return nodeId.equals(new NodeId(f.getNodeId()));
-                            }
-                        }))
-                        .flatMap(List::stream)
-                        .collect(Collectors.toList());
-            }
-
-//            final String aql;
             Set<String> uniquePaths = new TreeSet<>();
-            webTemplateNodeList.stream().map(n -> n.getAqlPath(false)).forEach(uniquePaths::add);
+            if (nodeIds.size() == 1 && containmentIndex.contains(templateId)) {
+                //a single node matches anywhere in the tree: this is exactly the indexed paths
+                uniquePaths.addAll(containmentIndex.paths(templateId, nodeIds.iterator().next()));
+            } else {
+                matchingNodes(templateId, nodeIds).stream().map(n -> n.getAqlPath(false)).forEach(uniquePaths::add);
+            }
 
             if (!uniquePaths.isEmpty()) {
                 jsonPathQueryResult = new JsonPathQueryResult(templateId, uniquePaths);
@@ -516,6 +705,7 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
                 jsonPathQueryResult = new JsonPathQueryResult(null, Collections.emptyMap());
             }
             jsonPathQueryResultCache.put(key, jsonPathQueryResult);
+            knowledgeCacheMetrics.record(KnowledgeCacheMetrics.Loader.QUERY_PATHS, start);
         }
 
         if (jsonPathQueryResult.getTemplateId() != null) {
@@ -528,6 +718,39 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
         }
     }
 
+    private List<WebTemplateNode> matchingNodes(String templateId, Collection<NodeId> nodeIds) {
+        WebTemplate webTemplate = getQueryOptMetaData(templateId);
+        List<WebTemplateNode> webTemplateNodeList = new ArrayList<>();
+        webTemplateNodeList.add(webTemplate.getTree());
+        for (NodeId nodeId : nodeIds) {
+            webTemplateNodeList = webTemplateNodeList.stream()
+                    .map(n -> n.findMatching(f -> {
+                        if (f.getNodeId() == null) {
+                            return false;
+                        }
+                        // compere only classname
+                        else if (nodeId.getNodeId() == null) {
+                            return nodeId.getClassName().equals(new NodeId(f.getNodeId()).getClassName());
+                        } else {
+                            return nodeId.equals(new NodeId(f.getNodeId()));
+                        }
+                    }))
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+        }
+        return webTemplateNodeList;
+    }
+
+    /**
+     * the templates which may satisfy a containment expression, i.e. containing all of its nodes
+     *
+     * @param nodeIds the containment expression
+     * @return the candidate template ids
+     */
+    public Set<String> findCandidateTemplates(Collection<NodeId> nodeIds) {
+        return containmentIndex.candidates(nodeIds);
+    }
+
     @Override
     public ItemInfo getInfo(String templateId, String aql) {
         TemplateIdAqlTuple key = new TemplateIdAqlTuple(templateId, aql);
@@ -572,6 +795,89 @@ public class KnowledgeCacheService implements I_KnowledgeCache, IntrospectServic
         return list;
     }
 
+    @Override
+    public IterativeNodeMetaData iterativeNodeMetaData(String templateId, ServerConfig serverConfig) {
+        return iterativeNodeCache.computeIfAbsent(templateId, id -> new IterativeNodeMetaData(multiValued(id), IterativeNodeMetaData.Settings.of(serverConfig)));
+    }
+
+    @Override
+    public PathProjection findPathProjection(String templateId, String jsonbPath) {
+        Map<String, PathProjection> projections = pathProjections.get(templateId);
+        return projections == null ? null : projections.get(jsonbPath);
+    }
+
+    /**
+     * register a declared projection, used by the AQL WHERE clause from now on
+     */
+    public void putPathProjection(PathProjection projection) {
+        pathProjections.computeIfAbsent(projection.getTemplateId(), k -> new ConcurrentHashMap<>()).put(projection.getJsonbPath(), projection);
+        projectionChanged();
+    }
+
+    public void removePathProjection(PathProjection projection) {
+        Map<String, PathProjection> projections = pathProjections.get(projection.getTemplateId());
+        if (projections != null)
+            projections.remove(projection.getJsonbPath());
+        projectionChanged();
+    }
+
+    /**
+     * compiled plans may use the previous expression: a new revision also retires the cached query results, which are
+     * keyed by revision
+     */
+    private void projectionChanged() {
+        templateRevision.incrementAndGet();
+        queryPlanCache.clear();
+    }
+
+    /**
+     * Build the key of a compiled query plan. The key includes the current template revision, hence a plan compiled
+     * before a template change is never returned afterwards.
+     *
+     * @param normalizedAql the normalized AQL expression
+     * @return the key to use with {@link #getQueryPlan(String)} and {@link #putQueryPlan(String, AqlQueryPlan)}
+     */
+    public String queryPlanKey(String normalizedAql) {
+        return queryPlanKey(normalizedAql, false);
+    }
+
+    /**
+     * @param partitionBranches true if the plan is compiled with a plan per template branch, such plans are cached
+     *                          apart from the plans of the queries executed as a whole
+     * @see #queryPlanKey(String)
+     */
+    public String queryPlanKey(String normalizedAql, boolean partitionBranches) {
+        return templateRevision.get() + (partitionBranches ? ":partitioned:" : ":") + normalizedAql;
+    }
+
+    /**
+     * @return the revision of the template set, incremented whenever a template is added, updated or removed
+     */
+    public long getTemplateRevision() {
+        return templateRevision.get();
+    }
+
+    public AqlQueryPlan getQueryPlan(String key) {
+        AqlQueryPlan queryPlan = getFromCache(key, queryPlanCache);
+        if (queryPlan == null)
+            queryPlanCacheMisses.incrementAndGet();
+        else
+            queryPlanCacheHits.incrementAndGet();
+        return queryPlan;
+    }
+
+    public void putQueryPlan(String key, AqlQueryPlan queryPlan) {
+        queryPlanCache.put(key, queryPlan);
+    }
+
+    public long getQueryPlanCacheHits() {
+        return queryPlanCacheHits.get();
+    }
+
+    public long getQueryPlanCacheMisses() {
+        return queryPlanCacheMisses.get();
+    }
+
     @Override
     public I_KnowledgeCache getKnowledge() {
         return this;
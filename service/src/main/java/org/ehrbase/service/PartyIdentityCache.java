@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import org.ehrbase.configuration.CacheConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded LRU cache of <code>ehr.party_identified</code> ids by identity hash (see
+ * {@link org.ehrbase.dao.access.jooq.party.PartyIdentityHash}), so the composers, committers and participations seen
+ * before are resolved without any SQL.
+ * <p>
+ * Ids are only added once the transaction which stored or read them committed, a rolled back party is never cached,
+ * and are dropped after the TTL. Unused parties are only deleted by the purges of {@link EhrServiceImp}, which skip the
+ * parties resolved (<code>party_identified.resolved_at</code>) within {@link #getPurgeGrace()}, so an id cached by any
+ * node of a cluster is never purged.
+ */
+@Component
+public class PartyIdentityCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Duration maxTransactionTime;
+    private final LongSupplier nanoTime;
+    private final Map<String, CachedId> ids;
+
+    @Autowired
+    public PartyIdentityCache(CacheConfiguration cacheConfiguration) {
+        this(cacheConfiguration.getPartyIdentity().getMaxEntries(), cacheConfiguration.getPartyIdentity().getTtl(),
+                cacheConfiguration.getPartyIdentity().getMaxTransactionTime(), System::nanoTime);
+    }
+
+    PartyIdentityCache(int maxEntries, Duration ttl, Duration maxTransactionTime, LongSupplier nanoTime) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.maxTransactionTime = maxTransactionTime;
+        this.nanoTime = nanoTime;
+        this.ids = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedId> eldest) {
+                return size() > PartyIdentityCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the party id, null if not cached or expired
+     */
+    public UUID get(String identityHash) {
+        if (maxEntries <= 0)
+            return null;
+        synchronized (ids) {
+            CachedId cached = ids.get(identityHash);
+            if (cached == null)
+                return null;
+            if (nanoTime.getAsLong() - cached.cachedAt >= ttlNanos) {
+                ids.remove(identityHash);
+                return null;
+            }
+            return cached.id;
+        }
+    }
+
+    /**
+     * The time a party must not have been resolved for before it is purged: the TTL plus the longest time a transaction
+     * may run. <code>resolved_at</code> is the start time of the transaction which resolved the party, its references
+     * are only visible once it committed, and the id is then cached for the TTL.
+     */
+    public Duration getPurgeGrace() {
+        return Duration.ofNanos(ttlNanos).plus(maxTransactionTime);
+    }
+
+    /**
+     * Adds the party id once the current transaction committed, right away without transaction.
+     */
+    public void putAfterCommit(String identityHash, UUID partyId) {
+        if (maxEntries <= 0)
+            return;
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    put(identityHash, partyId);
+                }
+            });
+        } else
+            put(identityHash, partyId);
+    }
+
+    /**
+     * Clears the cache once the current transaction committed (f.e. after parties were deleted), right away
+     * without transaction.
+     */
+    public void clearAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    clear();
+                }
+            });
+        } else
+            clear();
+    }
+
+    public void clear() {
+        synchronized (ids) {
+            ids.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (ids) {
+            return ids.size();
+        }
+    }
+
+    private void put(String identityHash, UUID partyId) {
+        synchronized (ids) {
+            ids.put(identityHash, new CachedId(partyId, nanoTime.getAsLong()));
+        }
+    }
+
+    private static class CachedId {
+        private final UUID id;
+        private final long cachedAt;
+
+        private CachedId(UUID id, long cachedAt) {
+            this.id = id;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
@@ -21,11 +21,13 @@ package org.ehrbase.service;
 import com.google.gson.JsonElement;
 import org.ehrbase.api.definitions.QueryMode;
 import org.ehrbase.api.definitions.ServerConfig;
+import org.ehrbase.api.dto.QueryPageDto;
 import org.ehrbase.api.exception.BadGatewayException;
 import org.ehrbase.api.exception.GeneralRequestProcessingException;
 import org.ehrbase.api.exception.InternalServerException;
 import org.ehrbase.api.service.QueryService;
 import org.ehrbase.aql.compiler.AqlExpression;
+import org.ehrbase.aql.sql.AqlQueryPlan;
 import org.ehrbase.aql.sql.AqlResult;
 import org.ehrbase.dao.access.interfaces.I_EntryAccess;
 import org.ehrbase.dao.access.interfaces.I_StoredQueryAccess;
@@ -44,6 +46,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.client.RestClientException;
 
 import java.sql.Timestamp;
@@ -53,6 +56,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 @Service
 @SuppressWarnings("unchecked")
@@ -60,14 +64,22 @@ public class QueryServiceImp extends BaseServiceImp implements QueryService {
     private Logger logger = LoggerFactory.getLogger(getClass());
 
     private final FhirTerminologyServerR4AdaptorImpl tsAdapter;
+    private final KnowledgeCacheService knowledgeCacheService;
+    private final StoredQueryResultCache resultCache;
 
     private Map<String, Set<Object>> auditResultMap;
 
+    //executes the template branches of AQL queries, null if branches are not executed concurrently
+    private final ExecutorService branchExecutor;
+
     @Autowired
-    public QueryServiceImp(KnowledgeCacheService knowledgeCacheService, DSLContext context, ServerConfig serverConfig, FhirTerminologyServerR4AdaptorImpl tsAdapter) {
+    public QueryServiceImp(KnowledgeCacheService knowledgeCacheService, DSLContext context, ServerConfig serverConfig, FhirTerminologyServerR4AdaptorImpl tsAdapter, StoredQueryResultCache resultCache, AqlBranchExecutor aqlBranchExecutor) {
 
         super(knowledgeCacheService, context, serverConfig);
         this.tsAdapter = tsAdapter;
+        this.knowledgeCacheService = knowledgeCacheService;
+        this.resultCache = resultCache;
+        this.branchExecutor = aqlBranchExecutor.getExecutorService();
     }
 
     @Override
@@ -112,10 +124,7 @@ public class QueryServiceImp extends BaseServiceImp implements QueryService {
                 //process non-hidden variables
                 if (aqlResult.variablesContains(field.getName())) {
                     //check whether to use field name or alias
-                    if (record.getValue(field) instanceof JsonElement) {
-                        fieldMap.putResult(field.getName(), new StructuredString((record.getValue(field)).toString(), StructuredStringFormat.JSON));
-                    } else
-                        fieldMap.putResult(field.getName(), record.getValue(field));
+                    fieldMap.putResult(field.getName(), formatValue(record.getValue(field)));
                 }
             }
 
@@ -130,11 +139,64 @@ public class QueryServiceImp extends BaseServiceImp implements QueryService {
         return dto;
     }
 
-    private QueryResultDto queryAql(String queryString, boolean explain) {
+    private Object formatValue(Object value) {
+        if (value instanceof JsonElement)
+            return new StructuredString(value.toString(), StructuredStringFormat.JSON);
+        return value;
+    }
+
+    @Override
+    public QueryPageDto queryPage(String queryString, Map<String, Object> parameters, String continuationToken) {
         try {
+            AqlQueryHandler queryHandler = new AqlQueryHandler(getDataAccess(), tsAdapter, branchExecutor);
+            AqlResult aqlResult = queryHandler.processPage(queryString, parameters, continuationToken);
+            auditResultMap = aqlResult.getAuditResultMap();
+            return new QueryPageDto(formatResult(aqlResult, queryString, false), aqlResult.getContinuationToken());
+        } catch(RestClientException rce) {
+            throw new BadGatewayException("Bad gateway exception: "+rce.getCause().getMessage());
+        } catch (DataAccessException dae){
+            throw new GeneralRequestProcessingException("Data Access Error: "+dae.getCause().getMessage());
+        } catch (IllegalArgumentException iae){
+            throw new IllegalArgumentException(iae.getMessage());
+        } catch (Exception e){
+            throw new IllegalArgumentException("Could not process query, reason:" + e);
+        }
+    }
 
+    @Override
+    @Transactional(readOnly = true)
+    public void queryStreaming(String queryString, Map<String, Object> parameters, ResultRowHandler handler) {
+        try {
             AqlQueryHandler queryHandler = new AqlQueryHandler(getDataAccess(), tsAdapter);
-            AqlResult aqlResult = queryHandler.process(queryString);
+            AqlQueryPlan queryPlan = queryHandler.prepare(queryString, parameters);
+
+            Map<String, String> variables = queryHandler.variables(queryPlan);
+            handler.columns(variables);
+
+            queryHandler.stream(queryPlan, getServerConfig().getAqlStreamFetchSize(), record -> {
+                List<Object> row = new ArrayList<>();
+                for (Field field : record.fields()) {
+                    //process non-hidden variables
+                    if (AqlResult.variablesContains(variables, field.getName()))
+                        row.add(formatValue(record.getValue(field)));
+                }
+                handler.row(row);
+            });
+            auditResultMap = queryHandler.getAuditResultMap();
+        } catch(RestClientException rce) {
+            throw new BadGatewayException("Bad gateway exception: "+rce.getCause().getMessage());
+        } catch (DataAccessException dae){
+            throw new GeneralRequestProcessingException("Data Access Error: "+dae.getCause().getMessage());
+        } catch (IllegalArgumentException iae){
+            throw new IllegalArgumentException(iae.getMessage());
+        }
+    }
+
+    private QueryResultDto queryAql(String queryString, boolean explain) {
+        try {
+
+            AqlQueryHandler queryHandler = new AqlQueryHandler(getDataAccess(), tsAdapter, branchExecutor);
+            AqlResult aqlResult = explain ? queryHandler.processWithDiagnostics(queryString, null) : queryHandler.process(queryString);
             auditResultMap = aqlResult.getAuditResultMap();
             return formatResult(aqlResult, queryString, explain);
         } catch (DataAccessException dae){
@@ -147,11 +209,15 @@ public class QueryServiceImp extends BaseServiceImp implements QueryService {
     }
 
     private QueryResultDto queryAql(String queryString, Map<String, Object> parameters, boolean explain) {
+        return formatResult(processAql(queryString, parameters, explain), queryString, explain);
+    }
+
+    private AqlResult processAql(String queryString, Map<String, Object> parameters, boolean explain) {
         try {
-            AqlQueryHandler queryHandler = new AqlQueryHandler(getDataAccess(), tsAdapter);
-            AqlResult aqlResult = queryHandler.process(queryString, parameters);
+            AqlQueryHandler queryHandler = new AqlQueryHandler(getDataAccess(), tsAdapter, branchExecutor);
+            AqlResult aqlResult = explain ? queryHandler.processWithDiagnostics(queryString, parameters) : queryHandler.process(queryString, parameters);
             auditResultMap = aqlResult.getAuditResultMap();
-            return formatResult(aqlResult, queryString, explain);
+            return aqlResult;
         } catch(RestClientException rce) {
         	throw new BadGatewayException("Bad gateway exception: "+rce.getCause().getMessage());
         } catch (DataAccessException dae){
@@ -163,6 +229,27 @@ public class QueryServiceImp extends BaseServiceImp implements QueryService {
         }
     }
 
+    @Override
+    public QueryResultDto queryStored(String qualifiedName, String version, String queryString, Map<String, Object> parameters) {
+        if (!resultCache.isCached(qualifiedName))
+            return queryAql(queryString, parameters, false);
+
+        StoredQueryResultCache.Key key = resultCache.key(qualifiedName, version, queryString, parameters);
+        long templateRevision = knowledgeCacheService.getTemplateRevision();
+
+        StoredQueryResultCache.Entry entry = resultCache.get(key, templateRevision);
+        if (entry != null) {
+            auditResultMap = entry.getAuditResultMap();
+            return entry.getResult();
+        }
+
+        long sequence = resultCache.sequence();
+        AqlResult aqlResult = processAql(queryString, parameters, false);
+        QueryResultDto result = formatResult(aqlResult, queryString, false);
+        resultCache.put(key, result, auditResultMap, aqlResult.getTemplateIds(), aqlResult.getEhrIds(), templateRevision, sequence);
+        return result;
+    }
+
     private QueryResultDto querySql(String queryString) {
         Map<String, Object> result;
         try {
@@ -260,6 +347,7 @@ public class QueryServiceImp extends BaseServiceImp implements QueryService {
             storedQueryAccess.setQueryText(queryString);
 
             storedQueryAccess.update(Timestamp.from(Instant.now()));
+            resultCache.invalidateQuery(qualifiedName);
             return mapToQueryDefinitionDto(storedQueryAccess);
         } catch (DataAccessException dae){
             throw new GeneralRequestProcessingException("Data Access Error:"+dae.getCause().getMessage());
@@ -277,6 +365,7 @@ public class QueryServiceImp extends BaseServiceImp implements QueryService {
             I_StoredQueryAccess storedQueryAccess = StoredQueryAccess.retrieveQualified(getDataAccess(), qualifiedName + ((version != null && !version.isEmpty()) ? "/" + version : ""));
 
             storedQueryAccess.delete();
+            resultCache.invalidateQuery(qualifiedName);
             return mapToQueryDefinitionDto(storedQueryAccess);
         } catch (DataAccessException dae){
             throw new GeneralRequestProcessingException("Data Access Error:"+dae.getCause().getMessage());
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import org.ehrbase.api.service.ReferenceDataService;
+import org.ehrbase.jooq.pg.tables.records.ConceptRecord;
+import org.ehrbase.jooq.pg.tables.records.LanguageRecord;
+import org.ehrbase.jooq.pg.tables.records.TerritoryRecord;
+import org.jooq.DSLContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.ehrbase.jooq.pg.Tables.CONCEPT;
+import static org.ehrbase.jooq.pg.Tables.LANGUAGE;
+import static org.ehrbase.jooq.pg.Tables.TERRITORY;
+
+/**
+ * In-memory copy of <code>ehr.concept</code>, <code>ehr.territory</code> and <code>ehr.language</code>, loaded at
+ * startup into immutable maps and replaced as a whole on {@link #reload()}.
+ * <p>
+ * The registry is passed to the data access layer through {@link org.ehrbase.dao.access.interfaces.I_DomainAccess#getReferenceData()};
+ * lookups return null for unknown codes, the callers then fall back to the database.
+ */
+@Service
+public class ReferenceDataRegistry implements ReferenceDataService {
+
+    /**
+     * An entry of <code>ehr.concept</code>
+     */
+    public static class Concept {
+        private final UUID id;
+        private final int conceptId;
+        private final String language;
+        private final String description;
+
+        Concept(UUID id, int conceptId, String language, String description) {
+            this.id = id;
+            this.conceptId = conceptId;
+            this.language = language;
+            this.description = description;
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        public int getConceptId() {
+            return conceptId;
+        }
+
+        public String getLanguage() {
+            return language;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private static class Snapshot {
+        private final Map<UUID, Concept> conceptsById;
+        private final Map<String, Concept> conceptsByCode;
+        private final Map<String, Integer> territoriesByTwoLetter;
+        private final Map<Integer, String> twoLettersByTerritory;
+        private final Set<String> languages;
+
+        private Snapshot(Map<UUID, Concept> conceptsById, Map<String, Concept> conceptsByCode, Map<String, Integer> territoriesByTwoLetter, Map<Integer, String> twoLettersByTerritory, Set<String> languages) {
+            this.conceptsById = Map.copyOf(conceptsById);
+            this.conceptsByCode = Map.copyOf(conceptsByCode);
+            this.territoriesByTwoLetter = Map.copyOf(territoriesByTwoLetter);
+            this.twoLettersByTerritory = Map.copyOf(twoLettersByTerritory);
+            this.languages = Set.copyOf(languages);
+        }
+    }
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final DSLContext context;
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), Map.of(), Map.of(), Map.of(), Set.of());
+
+    @Autowired
+    public ReferenceDataRegistry(DSLContext context) {
+        this.context = context;
+    }
+
+    @PostConstruct
+    public void init() {
+        reload();
+    }
+
+    @Override
+    @PreAuthorize("hasRole('ADMIN')")
+    public void reload() {
+        load(context.fetch(CONCEPT), context.fetch(TERRITORY), context.fetch(LANGUAGE));
+    }
+
+    void load(Iterable<ConceptRecord> concepts, Iterable<TerritoryRecord> territories, Iterable<LanguageRecord> languages) {
+        Map<UUID, Concept> conceptsById = new HashMap<>();
+        Map<String, Concept> conceptsByCode = new HashMap<>();
+        for (ConceptRecord conceptRecord : concepts) {
+            if (conceptRecord.getConceptid() == null || conceptRecord.getLanguage() == null)
+                continue;
+            Concept concept = new Concept(conceptRecord.getId(), conceptRecord.getConceptid(), conceptRecord.getLanguage(), conceptRecord.getDescription());
+            conceptsById.put(concept.getId(), concept);
+            //the first concept of a code and language is kept, as fetchAny() would return any of them
+            conceptsByCode.putIfAbsent(conceptKey(concept.getConceptId(), concept.getLanguage()), concept);
+        }
+
+        Map<String, Integer> territoriesByTwoLetter = new HashMap<>();
+        Map<Integer, String> twoLettersByTerritory = new HashMap<>();
+        for (TerritoryRecord territoryRecord : territories) {
+            if (territoryRecord.getTwoletter() == null)
+                continue;
+            territoriesByTwoLetter.putIfAbsent(territoryRecord.getTwoletter(), territoryRecord.getCode());
+            twoLettersByTerritory.put(territoryRecord.getCode(), territoryRecord.getTwoletter());
+        }
+
+        Set<String> languageCodes = new HashSet<>();
+        for (LanguageRecord languageRecord : languages) {
+            languageCodes.add(languageRecord.getCode());
+        }
+
+        snapshot = new Snapshot(conceptsById, conceptsByCode, territoriesByTwoLetter, twoLettersByTerritory, languageCodes);
+        log.info("Reference data loaded: {} concepts, {} territories, {} languages", conceptsById.size(), twoLettersByTerritory.size(), languageCodes.size());
+    }
+
+    /**
+     * @return the concept, null if unknown
+     */
+    public Concept getConcept(UUID id) {
+        return snapshot.conceptsById.get(id);
+    }
+
+    /**
+     * @param conceptId the openEHR code of the concept
+     * @param language  the language code ('en', 'fr' etc.)
+     * @return the concept, null if unknown
+     */
+    public Concept getConcept(int conceptId, String language) {
+        return snapshot.conceptsByCode.get(conceptKey(conceptId, language));
+    }
+
+    /**
+     * @param twoLetter the ISO 3166-1 alpha-2 code
+     * @return the numeric code of the territory, null if unknown
+     */
+    public Integer getTerritoryCode(String twoLetter) {
+        return snapshot.territoriesByTwoLetter.get(twoLetter);
+    }
+
+    /**
+     * @param territoryCode the numeric code of the territory
+     * @return the ISO 3166-1 alpha-2 code, null if unknown
+     */
+    public String getTerritoryTwoLetter(Integer territoryCode) {
+        return territoryCode == null ? null : snapshot.twoLettersByTerritory.get(territoryCode);
+    }
+
+    /**
+     * @param languageCode the ISO 639-1 code
+     * @return true if the language is known
+     */
+    public boolean isLanguage(String languageCode) {
+        return languageCode != null && snapshot.languages.contains(languageCode);
+    }
+
+    private static String conceptKey(int conceptId, String language) {
+        return conceptId + "|" + language;
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.ehrbase.aql.sql.QueryProcessor;
+import org.ehrbase.configuration.CacheConfiguration;
+import org.ehrbase.response.ehrscape.QueryResultDto;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Result cache of stored queries, keyed by qualified name, version, query text and parameters.
+ * <p>
+ * An entry is invalidated when a composition of one of the templates the CONTAINS clause of the query resolved to is
+ * committed, restricted to the EHRs the query is pinned to if any, as resolved by the AQL compiler (see
+ * {@link org.ehrbase.aql.sql.AqlQueryPlan#getEhrIds()}). Commits are notified after the transaction completes, see
+ * {@link #invalidateAfterCommit(UUID, Collection)}; a result computed while a matching commit took place is not
+ * stored. Entries are also dropped on template changes, and expire after the TTL of the query.
+ * <p>
+ * A result is copied when stored and each {@link Entry#getResult()} returns its own copy with unmodifiable
+ * collections; the rows themselves are shared by the requests hitting the entry and must not be modified.
+ * <p>
+ * Each stored query has its own LRU region sized by {@link CacheConfiguration.StoredQuery}. Hits and misses are
+ * counted per query with Micrometer if a registry is available.
+ * <p>
+ * NB. The cache and its invalidation are local to the JVM: a commit made through another node does not invalidate
+ * the entries of this one. Enable the cache on single node deployments only, or restrict it to queries which can
+ * tolerate results up to their TTL old.
+ */
+@Component
+public class StoredQueryResultCache {
+
+    public static final String METRIC_NAME = "ehrbase.stored_query.cache";
+
+    //templates of a commit without composition (f.e. a new EHR): only queries not restricted to templates depend on it
+    public static final Collection<String> NO_COMPOSITION = Collections.singletonList(QueryProcessor.NIL_TEMPLATE);
+
+    //number of invalidations kept to check results computed concurrently
+    static final int INVALIDATION_LOG_SIZE = 1024;
+
+    /**
+     * A cached result with what it depends on
+     */
+    public static class Entry {
+        private final QueryResultDto result;
+        private final Map<String, Set<Object>> auditResultMap;
+        private final Set<String> templateIds;
+        private final Set<UUID> ehrIds;
+        private final long templateRevision;
+        private final long expiresAt;
+
+        Entry(QueryResultDto result, Map<String, Set<Object>> auditResultMap, Set<String> templateIds, Set<UUID> ehrIds, long templateRevision, long expiresAt) {
+            this.result = result;
+            this.auditResultMap = auditResultMap;
+            this.templateIds = templateIds;
+            this.ehrIds = ehrIds;
+            this.templateRevision = templateRevision;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @return a copy of the result, the rows are shared
+         */
+        public QueryResultDto getResult() {
+            return copyOf(result);
+        }
+
+        public Map<String, Set<Object>> getAuditResultMap() {
+            return auditResultMap;
+        }
+
+        /**
+         * @param ehrId       the EHR of the commit, null if unknown
+         * @param templateIds the templates of the committed compositions, null if the commit is not restricted to
+         *                    compositions
+         */
+        boolean dependsOn(UUID ehrId, Collection<String> templateIds) {
+            boolean ehrMatches = ehrId == null || ehrIds.isEmpty() || ehrIds.contains(ehrId);
+            boolean templateMatches = templateIds == null
+                    || this.templateIds.isEmpty()
+                    || this.templateIds.contains(QueryProcessor.NIL_TEMPLATE)
+                    || !Collections.disjoint(this.templateIds, templateIds);
+            return ehrMatches && templateMatches;
+        }
+    }
+
+    /**
+     * Identifies a result: the stored query and its bound parameters
+     */
+    public static class Key {
+        private final String qualifiedName;
+        private final String version;
+        private final String query;
+        private final Map<String, Object> parameters;
+
+        Key(String qualifiedName, String version, String query, Map<String, Object> parameters) {
+            this.qualifiedName = qualifiedName;
+            this.version = version;
+            this.query = query;
+            this.parameters = parameters == null ? Collections.emptyMap() : new TreeMap<>(parameters);
+        }
+
+        public String getQualifiedName() {
+            return qualifiedName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return qualifiedName.equals(key.qualifiedName) && Objects.equals(version, key.version) && query.equals(key.query) && parameters.equals(key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(qualifiedName, version, query, parameters);
+        }
+    }
+
+    private static class Invalidation {
+        private final long sequence;
+        private final UUID ehrId;
+        private final Collection<String> templateIds;
+
+        private Invalidation(long sequence, UUID ehrId, Collection<String> templateIds) {
+            this.sequence = sequence;
+            this.ehrId = ehrId;
+            this.templateIds = templateIds;
+        }
+    }
+
+    private static class Region extends LinkedHashMap<Key, Entry> {
+        private final int maxEntries;
+
+        private Region(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    private final CacheConfiguration.StoredQuery settings;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+
+    private final Map<String, Region> regions = new ConcurrentHashMap<>();
+    private final Deque<Invalidation> invalidations = new ArrayDeque<>();
+    private long sequence = 0;
+
+    @Autowired
+    public StoredQueryResultCache(CacheConfiguration cacheConfiguration, ObjectProvider<MeterRegistry> meterRegistry) {
+        this(cacheConfiguration.getStoredQuery(), meterRegistry.getIfAvailable(), Clock.systemUTC());
+    }
+
+    StoredQueryResultCache(CacheConfiguration.StoredQuery settings, MeterRegistry meterRegistry, Clock clock) {
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    /**
+     * @param qualifiedName the qualified name of a stored query
+     * @return true if the results of the query are cached
+     */
+    public boolean isCached(String qualifiedName) {
+        if (!settings.isEnabled())
+            return false;
+        CacheConfiguration.Limits limits = settings.limitsOf(qualifiedName);
+        return !limits.getTtl().isZero() && !limits.getTtl().isNegative() && limits.getMaxEntries() > 0;
+    }
+
+    public Key key(String qualifiedName, String version, String query, Map<String, Object> parameters) {
+        return new Key(qualifiedName, version, query, parameters);
+    }
+
+    /**
+     * @return the current invalidation sequence, to pass to {@link #put(Key, QueryResultDto, Map, Set, Set, long, long)}
+     */
+    public synchronized long sequence() {
+        return sequence;
+    }
+
+    /**
+     * @param key              the result key
+     * @param templateRevision the current revision of the template set
+     * @return the cached entry, null on a miss
+     */
+    public Entry get(Key key, long templateRevision) {
+        Region region = regions.get(key.qualifiedName);
+        Entry entry = null;
+        if (region != null) {
+            synchronized (region) {
+                entry = region.get(key);
+                if (entry != null && (entry.templateRevision != templateRevision || entry.expiresAt <= clock.millis())) {
+                    region.remove(key);
+                    entry = null;
+                }
+            }
+        }
+
+        count(key.qualifiedName, entry != null ? "hit" : "miss");
+        return entry;
+    }
+
+    /**
+     * store a result unless a commit it depends on took place since its computation started
+     *
+     * @param key              the result key
+     * @param result           the formatted result
+     * @param auditResultMap   the audit values of the result
+     * @param templateIds      the templates the query resolved to
+     * @param ehrIds           the EHRs the query is restricted to, empty if not restricted
+     * @param templateRevision the revision of the template set the query was compiled with
+     * @param startSequence    the invalidation sequence read before executing the query
+     */
+    public void put(Key key, QueryResultDto result, Map<String, Set<Object>> auditResultMap, Set<String> templateIds, Set<UUID> ehrIds, long templateRevision, long startSequence) {
+        CacheConfiguration.Limits limits = settings.limitsOf(key.qualifiedName);
+        Entry entry = new Entry(copyOf(result),
+                Collections.unmodifiableMap(new HashMap<>(auditResultMap)),
+                new HashSet<>(templateIds),
+                new HashSet<>(ehrIds),
+                templateRevision,
+                clock.millis() + limits.getTtl().toMillis());
+
+        if (isInvalidatedSince(entry, startSequence))
+            return;
+
+        Region region = regions.computeIfAbsent(key.qualifiedName, k -> new Region(limits.getMaxEntries()));
+        synchronized (region) {
+            region.put(key, entry);
+        }
+
+        //an invalidation counted after the check may have swept the region before the entry was put
+        if (isInvalidatedSince(entry, startSequence)) {
+            synchronized (region) {
+                region.remove(key, entry);
+            }
+        }
+    }
+
+    /**
+     * invalidate the dependent results once the current transaction is committed, or immediately if there is no
+     * transaction
+     *
+     * @param ehrId       the EHR of the commit, null if unknown
+     * @param templateIds the templates of the committed compositions, null if not restricted to compositions
+     */
+    public void invalidateAfterCommit(UUID ehrId, Collection<String> templateIds) {
+        if (!settings.isEnabled())
+            return;
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(ehrId, templateIds);
+                }
+            });
+        } else
+            invalidate(ehrId, templateIds);
+    }
+
+    public void invalidate(UUID ehrId, Collection<String> templateIds) {
+        synchronized (this) {
+            sequence++;
+            invalidations.addLast(new Invalidation(sequence, ehrId, templateIds));
+            if (invalidations.size() > INVALIDATION_LOG_SIZE)
+                invalidations.removeFirst();
+        }
+
+        for (Map.Entry<String, Region> region : regions.entrySet()) {
+            int removed = 0;
+            synchronized (region.getValue()) {
+                var iterator = region.getValue().values().iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().dependsOn(ehrId, templateIds)) {
+                        iterator.remove();
+                        removed++;
+                    }
+                }
+            }
+            if (removed > 0 && meterRegistry != null)
+                meterRegistry.counter(METRIC_NAME + ".invalidations", "query", region.getKey()).increment(removed);
+        }
+    }
+
+    /**
+     * drop the results of a stored query, f.e. when its definition changes
+     */
+    public void invalidateQuery(String qualifiedName) {
+        regions.remove(qualifiedName);
+    }
+
+    private synchronized boolean isInvalidatedSince(Entry entry, long startSequence) {
+        if (startSequence == sequence)
+            return false;
+
+        //the log does not go back to the start of the computation
+        if (invalidations.isEmpty() || invalidations.getFirst().sequence > startSequence + 1)
+            return true;
+
+        for (Invalidation invalidation : invalidations) {
+            if (invalidation.sequence > startSequence && entry.dependsOn(invalidation.ehrId, invalidation.templateIds))
+                return true;
+        }
+        return false;
+    }
+
+    private static QueryResultDto copyOf(QueryResultDto result) {
+        QueryResultDto copy = new QueryResultDto();
+        copy.setExecutedAQL(result.getExecutedAQL());
+        if (result.getVariables() != null)
+            copy.setVariables(Collections.unmodifiableMap(new LinkedHashMap<>(result.getVariables())));
+        if (result.getResultSet() != null)
+            copy.setResultSet(Collections.unmodifiableList(new ArrayList<>(result.getResultSet())));
+        if (result.getExplain() != null) {
+            List<List<String>> explain = new ArrayList<>();
+            for (List<String> line : result.getExplain())
+                explain.add(line == null ? null : Collections.unmodifiableList(new ArrayList<>(line)));
+            copy.setExplain(Collections.unmodifiableList(explain));
+        }
+        return copy;
+    }
+
+    private void count(String qualifiedName, String result) {
+        if (meterRegistry != null)
+            meterRegistry.counter(METRIC_NAME, "query", qualifiedName, "result", result).increment();
+    }
+}
@@ -23,15 +23,19 @@ package org.ehrbase.service;
 import org.ehrbase.api.definitions.ServerConfig;
 import org.ehrbase.dao.access.interfaces.I_DomainAccess;
 import org.ehrbase.dao.access.interfaces.I_TemplateStoreAccess;
+import org.ehrbase.dao.access.jooq.WebTemplateSnapshotAccess;
 import org.ehrbase.dao.access.support.ServiceDataAccess;
 import org.ehrbase.ehr.knowledge.TemplateMetaData;
+import org.ehrbase.ehr.knowledge.WebTemplateSnapshot;
 import org.jooq.DSLContext;
 import org.openehr.schemas.v1.OPERATIONALTEMPLATE;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -53,6 +57,11 @@ public class TemplateDBStorageService implements TemplateStorage {
     }
 
 
+    @Override
+    public Map<String, Long> listRevisions() {
+        return I_TemplateStoreAccess.fetchRevisions(getDataAccess());
+    }
+
     @Override
     public void storeTemplate(OPERATIONALTEMPLATE template) {
 
@@ -68,6 +77,21 @@ public class TemplateDBStorageService implements TemplateStorage {
         return Optional.ofNullable(I_TemplateStoreAccess.retrieveInstanceByTemplateId(getDataAccess(), templateId).getTemplate());
     }
 
+    @Override
+    public Optional<Long> readRevision(String templateId) {
+        return Optional.ofNullable(I_TemplateStoreAccess.retrieveSysTransaction(getDataAccess(), templateId)).map(Timestamp::getTime);
+    }
+
+    @Override
+    public Optional<WebTemplateSnapshot> readWebTemplateSnapshot(String templateId, long revision) {
+        return Optional.ofNullable(WebTemplateSnapshotAccess.retrieve(getDataAccess(), templateId, revision));
+    }
+
+    @Override
+    public void storeWebTemplateSnapshot(WebTemplateSnapshot snapshot) {
+        WebTemplateSnapshotAccess.store(getDataAccess(), snapshot);
+    }
+
     /**
      * {@inheritDoc}
      */
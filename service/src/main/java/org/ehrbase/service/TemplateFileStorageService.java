@@ -23,6 +23,7 @@ import org.apache.xmlbeans.XmlOptions;
 import org.ehrbase.api.exception.InternalServerException;
 import org.ehrbase.api.exception.ObjectNotFoundException;
 import org.ehrbase.ehr.knowledge.TemplateMetaData;
+import org.ehrbase.ehr.knowledge.WebTemplateSnapshot;
 import org.openehr.schemas.v1.OPERATIONALTEMPLATE;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -38,6 +39,7 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -119,6 +121,13 @@ public class TemplateFileStorageService implements TemplateStorage {
         return templateMetaDataList;
     }
 
+    @Override
+    public Map<String, Long> listRevisions() {
+        Map<String, Long> revisions = new HashMap<>();
+        optFileMap.forEach((templateId, file) -> revisions.put(templateId, file.lastModified()));
+        return revisions;
+    }
+
     @Override
     public void storeTemplate(OPERATIONALTEMPLATE template) {
         XmlOptions opts = new XmlOptions();
@@ -145,6 +154,24 @@ public class TemplateFileStorageService implements TemplateStorage {
         return Optional.ofNullable(operationaltemplate);
     }
 
+    @Override
+    public Optional<Long> readRevision(String templateId) {
+        File file = optFileMap.get(templateId);
+        return file != null && file.exists() ? Optional.of(file.lastModified()) : Optional.empty();
+    }
+
+    // the file storage is meant for tests and development, it does not keep snapshots
+
+    @Override
+    public Optional<WebTemplateSnapshot> readWebTemplateSnapshot(String templateId, long revision) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void storeWebTemplateSnapshot(WebTemplateSnapshot snapshot) {
+        // NOP
+    }
+
     /**
      * {@inheritDoc}
      */
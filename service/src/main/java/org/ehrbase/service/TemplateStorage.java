@@ -21,9 +21,11 @@
 package org.ehrbase.service;
 
 import org.ehrbase.ehr.knowledge.TemplateMetaData;
+import org.ehrbase.ehr.knowledge.WebTemplateSnapshot;
 import org.openehr.schemas.v1.OPERATIONALTEMPLATE;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface TemplateStorage {
@@ -35,6 +37,13 @@ public interface TemplateStorage {
      */
     List<TemplateMetaData> listAllOperationalTemplates();
 
+    /**
+     * List the ids of all templates with their revision (see {@link #readRevision(String)}), without reading them.
+     *
+     * @return the revisions by template id
+     */
+    Map<String, Long> listRevisions();
+
     /**
      * Save a template in the store
      * @param template @see {@link OPERATIONALTEMPLATE}
@@ -49,6 +58,26 @@ public interface TemplateStorage {
      */
     Optional<OPERATIONALTEMPLATE> readOperationaltemplate(String templateId);
 
+    /**
+     * Cheap check of the stored content of a template, without reading it.
+     * @param templateId
+     * @return a revision which changes whenever the template is stored again, or {@link Optional#empty()} if not found.
+     */
+    Optional<Long> readRevision(String templateId);
+
+    /**
+     * @param templateId
+     * @param revision current revision of the template
+     * @return the stored WebTemplate built from this revision of the template, or {@link Optional#empty()} if there is none.
+     */
+    Optional<WebTemplateSnapshot> readWebTemplateSnapshot(String templateId, long revision);
+
+    /**
+     * Stores the WebTemplate of a template, replacing the previous one. A store without snapshots ignores it.
+     * @param snapshot @see {@link WebTemplateSnapshot}
+     */
+    void storeWebTemplateSnapshot(WebTemplateSnapshot snapshot);
+
     /**
      * Replaces the content of an existing template with the same id as in the provided template with the new
      * content from provided one. Check that the old template is no longer referenced to avoid data inconsistencies
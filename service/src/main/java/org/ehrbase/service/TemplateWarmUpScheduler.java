@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.ehrbase.configuration.CacheConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Runs the background work on templates (loading at startup, pre-building of the AQL queries) on a single pool of
+ * <code>cache.warm-up.parallelism</code> daemon threads:
+ * <ul>
+ *     <li>loads run before pre-builds, then the most recently used templates (see {@link #touch(String)}) come first</li>
+ *     <li>the work on a template is dropped, or stopped at its next check, when the template is cancelled
+ *     (f.e. uploaded again)</li>
+ * </ul>
+ * Periodic work (the template sync) runs on a separate daemon thread, see
+ * {@link #scheduleWithFixedDelay(Runnable, Duration)}.
+ * Published as <code>ehrbase.template.warmup.pending</code>, <code>.running</code>, <code>.tasks</code> (by kind and
+ * outcome), <code>.duration</code> (by kind) and <code>.startup</code>.
+ */
+@Component
+public class TemplateWarmUpScheduler {
+
+    public enum Kind {
+        LOAD("load"), PRE_BUILD("pre-build");
+
+        private final String tag;
+
+        Kind(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final String DONE = "done";
+    private static final String FAILED = "failed";
+    private static final String CANCELLED = "cancelled";
+
+    // set on the pool threads: the warm-up itself does not count as a use of the templates
+    private static final ThreadLocal<Boolean> WORKER = ThreadLocal.withInitial(() -> false);
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final ThreadPoolExecutor executor;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Set<Task>> tasksByTemplate = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Map<Kind, Timer> durations = new EnumMap<>(Kind.class);
+    private ScheduledExecutorService timer;
+
+    private class Task implements Runnable, Comparable<Task> {
+        private final String templateId;
+        private final Kind kind;
+        private final long order = sequence.incrementAndGet();
+        private final Consumer<BooleanSupplier> work;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile long priority;
+        private volatile boolean cancelled;
+
+        private Task(String templateId, Kind kind, Consumer<BooleanSupplier> work) {
+            this.templateId = templateId;
+            this.kind = kind;
+            this.work = work;
+            this.priority = lastUsed.getOrDefault(templateId, 0L);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                finish(CANCELLED);
+                return;
+            }
+
+            running.incrementAndGet();
+            long start = System.nanoTime();
+            String outcome = DONE;
+            WORKER.set(true);
+            try {
+                work.accept(() -> cancelled || Thread.currentThread().isInterrupted());
+                if (cancelled)
+                    outcome = CANCELLED;
+            } catch (RuntimeException e) {
+                outcome = FAILED;
+                log.warn("Warm-up ({}) of template {} failed: {}", kind.tag, templateId, e.getMessage());
+            } finally {
+                WORKER.set(false);
+                running.decrementAndGet();
+                Timer duration = durations.get(kind);
+                if (duration != null)
+                    duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                finish(outcome);
+            }
+        }
+
+        private void finish(String outcome) {
+            if (!finished.compareAndSet(false, true))
+                return;
+            tasksByTemplate.computeIfPresent(templateId, (id, tasks) -> {
+                tasks.remove(this);
+                return tasks.isEmpty() ? null : tasks;
+            });
+            if (meterRegistry != null)
+                Counter.builder("ehrbase.template.warmup.tasks")
+                        .tag("kind", kind.tag)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry)
+                        .increment();
+            future.complete(null);
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (kind != other.kind)
+                return kind.compareTo(other.kind);
+            if (priority != other.priority)
+                return Long.compare(other.priority, priority);
+            return Long.compare(order, other.order);
+        }
+    }
+
+    @Autowired
+    public TemplateWarmUpScheduler(CacheConfiguration cacheConfiguration, ObjectProvider<MeterRegistry> meterRegistries) {
+        this(cacheConfiguration.getWarmUp().getParallelism(), meterRegistries.getIfAvailable());
+    }
+
+    TemplateWarmUpScheduler(int parallelism, MeterRegistry meterRegistry) {
+        int threads = Math.max(1, parallelism);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "template-warm-up-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // all tasks go through the queue, so that they are taken by priority
+        this.executor.prestartAllCoreThreads();
+
+        this.meterRegistry = meterRegistry;
+        if (meterRegistry != null) {
+            Gauge.builder("ehrbase.template.warmup.pending", executor, e -> e.getQueue().size())
+                    .description("Template warm-up tasks waiting for a thread")
+                    .register(meterRegistry);
+            Gauge.builder("ehrbase.template.warmup.running", running, AtomicInteger::get)
+                    .description("Template warm-up tasks running")
+                    .register(meterRegistry);
+            for (Kind kind : Kind.values())
+                durations.put(kind, Timer.builder("ehrbase.template.warmup.duration")
+                        .description("Duration of the warm-up tasks of a template")
+                        .tag("kind", kind.tag)
+                        .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Schedules work on a template.
+     *
+     * @param work the work, it should stop when the given supplier returns true (the template was cancelled)
+     * @return completed once the work ran, failed or was cancelled
+     */
+    public CompletableFuture<Void> schedule(String templateId, Kind kind, Consumer<BooleanSupplier> work) {
+        Task task = new Task(templateId, kind, work);
+        // added under the lock of the entry, a finishing task could otherwise drop the set before the add
+        tasksByTemplate.compute(templateId, (id, tasks) -> {
+            Set<Task> updated = tasks == null ? ConcurrentHashMap.newKeySet() : tasks;
+            updated.add(task);
+            return updated;
+        });
+        executor.execute(task);
+        return task.future;
+    }
+
+    /**
+     * Runs the work periodically on the timer thread of the scheduler, until its shutdown. A failed run is logged, the
+     * next one still takes place.
+     *
+     * @param work  the work, it should schedule its heavy parts with {@link #schedule(String, Kind, Consumer)}
+     * @param delay the delay between the end of a run and the start of the next one
+     */
+    public synchronized void scheduleWithFixedDelay(Runnable work, Duration delay) {
+        if (timer == null)
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "template-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                work.run();
+            } catch (RuntimeException e) {
+                log.warn("Periodic template work failed: {}", e.getMessage());
+            }
+        }, delay.toMillis(), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records a use of the template, its pending work moves ahead of the one of templates used less recently.
+     */
+    public void touch(String templateId) {
+        if (WORKER.get())
+            return;
+
+        long now = System.currentTimeMillis();
+        lastUsed.put(templateId, now);
+        for (Task task : tasks(templateId)) {
+            if (executor.getQueue().remove(task)) {
+                task.priority = now;
+                executor.execute(task);
+            }
+        }
+    }
+
+    /**
+     * Drops the pending work on the template and asks the running one to stop.
+     */
+    public void cancel(String templateId) {
+        for (Task task : tasks(templateId)) {
+            task.cancelled = true;
+            if (executor.getQueue().remove(task))
+                task.finish(CANCELLED);
+        }
+    }
+
+    /**
+     * Records the time it took to load all templates at startup.
+     */
+    public void recordStartup(long millis) {
+        if (meterRegistry != null)
+            Timer.builder("ehrbase.template.warmup.startup")
+                    .description("Time to load all templates at startup")
+                    .register(meterRegistry)
+                    .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    public int getPending() {
+        return executor.getQueue().size();
+    }
+
+    public int getRunning() {
+        return running.get();
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        executor.shutdownNow();
+        if (timer != null)
+            timer.shutdownNow();
+    }
+
+    private Set<Task> tasks(String templateId) {
+        return tasksByTemplate.getOrDefault(templateId, Collections.emptySet());
+    }
+}
@@ -40,7 +40,10 @@ import org.springframework.stereotype.Service;
 
 import javax.cache.Cache;
 import javax.cache.CacheManager;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.regex.Pattern;
@@ -62,11 +65,14 @@ public class ValidationServiceImp implements ValidationService {
 
     private final Cache<UUID, Validator> validatorCache;
 
+    private final KnowledgeCacheMetrics knowledgeCacheMetrics;
+
     private ExternalTerminologyValidationSupport externalTerminologyValidator;
 
     @Autowired
-    public ValidationServiceImp(CacheManager cacheManager, I_KnowledgeCache knowledgeCache, TerminologyService terminologyService, ServerConfig serverConfig) {
+    public ValidationServiceImp(CacheManager cacheManager, I_KnowledgeCache knowledgeCache, TerminologyService terminologyService, ServerConfig serverConfig, KnowledgeCacheMetrics knowledgeCacheMetrics) {
         this.validatorCache = cacheManager.getCache(VALIDATOR_CACHE, UUID.class, Validator.class);
+        this.knowledgeCacheMetrics = knowledgeCacheMetrics;
         this.knowledgeCache = knowledgeCache;
         this.terminologyService = terminologyService;
 
@@ -78,20 +84,30 @@ public class ValidationServiceImp implements ValidationService {
 
     @Override
     public void check(UUID templateUUID, Composition composition) throws Exception {
+        check(validator(templateUUID), composition);
+    }
+
+    private Validator validator(UUID templateUUID) throws Exception {
 
         //check if a validator is already in the cache
         Validator validator = validatorCache.get(templateUUID);
 
         if (validator == null) {
             //create a new one for template
-            Optional<OPERATIONALTEMPLATE> operationaltemplate = knowledgeCache.retrieveOperationalTemplate(templateUUID);
+            Optional<OPERATIONALTEMPLATE> operationaltemplate = knowledgeCache.getCachedOperationalTemplate(templateUUID);
             if (operationaltemplate.isEmpty()) {
                 throw new IllegalArgumentException("Not found template uuid:" + templateUUID);
             }
+            long start = System.nanoTime();
             validator = new Validator(operationaltemplate.get());
+            knowledgeCacheMetrics.record(KnowledgeCacheMetrics.Loader.VALIDATOR, start);
             //add to cache
             validatorCache.put(templateUUID, validator);
         }
+        return validator;
+    }
+
+    private void check(Validator validator, Composition composition) throws Exception {
         // Set the external terminology validator
         validator.setExternalTerminologyValidator(externalTerminologyValidator);
 
@@ -106,7 +122,8 @@ public class ValidationServiceImp implements ValidationService {
     @Override
     public void check(String templateID, Composition composition) throws Exception {
 
-        Optional<OPERATIONALTEMPLATE> operationaltemplate = knowledgeCache.retrieveOperationalTemplate(templateID);
+        // served from the template cache without reading the storage, changes of other nodes come with the template sync
+        Optional<OPERATIONALTEMPLATE> operationaltemplate = knowledgeCache.getCachedOperationalTemplate(templateID);
 
         if (operationaltemplate.isEmpty())
             throw new UnprocessableEntityException("Not found template id: " + templateID);
@@ -116,6 +133,31 @@ public class ValidationServiceImp implements ValidationService {
 
     @Override
     public void check(Composition composition) throws Exception {
+        checkStructure(composition);
+        check(composition.getArchetypeDetails().getTemplateId().getValue(), composition);
+    }
+
+    @Override
+    public PreparedCheck prepare(Collection<String> templateIDs) throws Exception {
+        Map<String, Validator> validators = new HashMap<>();
+        for (String templateID : templateIDs) {
+            Optional<OPERATIONALTEMPLATE> operationaltemplate = knowledgeCache.getCachedOperationalTemplate(templateID);
+            // unknown templates fail with the check of their composition
+            if (operationaltemplate.isPresent())
+                validators.put(templateID, validator(UUID.fromString(operationaltemplate.get().getUid().getValue())));
+        }
+
+        return composition -> {
+            checkStructure(composition);
+            String templateID = composition.getArchetypeDetails().getTemplateId().getValue();
+            Validator validator = validators.get(templateID);
+            if (validator == null)
+                throw new UnprocessableEntityException("Not found template id: " + templateID);
+            check(validator, composition);
+        };
+    }
+
+    private void checkStructure(Composition composition) {
         //check if this composition is valid for processing
         if (composition.getName() == null)
             throw new IllegalArgumentException("Composition missing mandatory attribute: name");
@@ -143,8 +185,6 @@ public class ValidationServiceImp implements ValidationService {
             }
             throw new IllegalArgumentException(stringBuilder.toString());
         }
-
-        check(composition.getArchetypeDetails().getTemplateId().getValue(), composition);
     }
 
     @Override
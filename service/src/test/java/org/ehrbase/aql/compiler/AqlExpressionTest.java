@@ -27,6 +27,10 @@ import org.ehrbase.service.FhirTerminologyServerR4AdaptorImpl;
 import org.jooq.DSLContext;
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.Mockito.mock;
@@ -89,6 +93,29 @@ public class AqlExpressionTest extends TestAqlBase {
 
     }
 
+    @Test
+    public void testPinnedEhrIds() {
+        UUID ehrId = UUID.fromString("2a3b673f-d1b1-44c5-9e38-dcadf67ff2fc");
+        String query = "select c from EHR e contains COMPOSITION c where e/ehr_id/value = $ehr_id";
+
+        assertThat(pinnedEhrIds(new AqlExpressionWithParameters().substitute(query, Collections.singletonMap("ehr_id", ehrId.toString()))))
+                .containsExactly(ehrId);
+        assertThat(pinnedEhrIds("select c from EHR e[ehr_id/value='" + ehrId + "'] contains COMPOSITION c")).containsExactly(ehrId);
+        assertThat(pinnedEhrIds("select c from EHR e contains COMPOSITION c where e/ehr_id/value = '" + ehrId + "' or e/ehr_id/value = '" + UUID.randomUUID() + "'"))
+                .isEmpty();
+        //a literal is not a condition
+        assertThat(pinnedEhrIds("select c from EHR e contains COMPOSITION c where c/name/value = \"e/ehr_id/value = '" + ehrId + "'\"")).isEmpty();
+        assertThat(pinnedEhrIds("select c from EHR e contains COMPOSITION c where e/ehr_id/value = 'not a uuid'")).isEmpty();
+        assertThat(pinnedEhrIds("select c from EHR e contains COMPOSITION c")).isEmpty();
+    }
+
+    private Set<UUID> pinnedEhrIds(String query) {
+        AqlExpression cut = new AqlExpression().parse(query);
+        return new Statements(cut.getParseTree(), new Contains(cut.getParseTree(), knowledge).process().getIdentifierMapper(), mock(FhirTerminologyServerR4AdaptorImpl.class))
+                .process()
+                .getPinnedEhrIds();
+    }
+
     @Test
     public void testRejectDuplicateAliases() {
 
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.aql.sql;
+
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.JSONB;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BranchMergeTest {
+
+    private static final DSLContext context = DSL.using(SQLDialect.POSTGRES);
+    private static final Field<Integer> RANK = DSL.field("rank", Integer.class);
+    private static final Field<String> NAME = DSL.field("name", String.class);
+
+    @Test
+    public void mergeOrdered() {
+        BranchMerge cut = new BranchMerge(Collections.singletonList(new BranchMerge.SortKey("rank", false)), null, null);
+
+        List<Record> merged = cut.merge(Arrays.asList(
+                records(1, "a", 4, "d", null, "x"),
+                records(2, "b", 3, "c")));
+
+        assertThat(names(merged)).containsExactly("a", "b", "c", "d", "x");
+    }
+
+    @Test
+    public void mergeDescendingWithOffsetAndLimit() {
+        BranchMerge cut = new BranchMerge(Collections.singletonList(new BranchMerge.SortKey("rank", true)), 1, 2);
+
+        List<Record> merged = cut.merge(Arrays.asList(
+                records(null, "x", 4, "d", 1, "a"),
+                records(3, "c", 2, "b")));
+
+        assertThat(cut.branchRowCount()).isEqualTo(3);
+        assertThat(names(merged)).containsExactly("d", "c");
+    }
+
+    @Test
+    public void mergeRemovesDuplicates() {
+        BranchMerge cut = new BranchMerge(Collections.emptyList(), null, 2);
+
+        List<Record> merged = cut.merge(Arrays.asList(
+                records(1, "a"),
+                records(1, "a", 2, "b")));
+
+        assertThat(names(merged)).containsExactly("a", "b");
+    }
+
+    @Test
+    public void comparableTypes() {
+        assertThat(BranchMerge.isComparableType(Integer.class)).isTrue();
+        assertThat(BranchMerge.isComparableType(BigDecimal.class)).isTrue();
+        assertThat(BranchMerge.isComparableType(Timestamp.class)).isTrue();
+        assertThat(BranchMerge.isComparableType(OffsetDateTime.class)).isTrue();
+        //text ordering depends on the database collation
+        assertThat(BranchMerge.isComparableType(String.class)).isFalse();
+        assertThat(BranchMerge.isComparableType(Object.class)).isFalse();
+        assertThat(BranchMerge.isComparableType(JSONB.class)).isFalse();
+    }
+
+    @Test
+    public void compareValues() {
+        assertThat(BranchMerge.compareValues(1, 2L)).isNegative();
+        assertThat(BranchMerge.compareValues(2.5d, 2)).isPositive();
+        assertThat(BranchMerge.compareValues(null, 2)).isPositive();
+        assertThat(BranchMerge.compareValues(null, null)).isZero();
+    }
+
+    private static List<Record> records(Object... values) {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < values.length; i += 2) {
+            records.add(context.newRecord(RANK, NAME).values((Integer) values[i], (String) values[i + 1]));
+        }
+        return records;
+    }
+
+    private static List<String> names(List<Record> records) {
+        List<String> names = new ArrayList<>();
+        for (Record record : records) {
+            names.add(record.get(NAME));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.aql.sql;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ContinuationTokenTest {
+
+    private static final String QUERY = "select c/uid/value from EHR e contains COMPOSITION c order by c/uid/value limit 10";
+
+    @Test
+    public void roundTrip() {
+        List<Object> keysetValues = Arrays.asList(new BigDecimal("12345678901234567890.5"), null, "8a9b::local.ehrbase.org::1", true);
+
+        String token = ContinuationToken.encode(QUERY, keysetValues);
+
+        assertThat(token).doesNotContain("=", "+", "/");
+        assertThat(ContinuationToken.decode(token, QUERY)).containsExactlyElementsOf(keysetValues);
+    }
+
+    @Test
+    public void typedValues() {
+        Timestamp timestamp = Timestamp.from(OffsetDateTime.parse("2021-03-01T10:00:00.123456+02:00").toInstant());
+
+        List<Object> decoded = ContinuationToken.decode(ContinuationToken.encode(QUERY, Arrays.asList(timestamp, 42)), QUERY);
+
+        //the timestamp keeps its instant and offset, the number stays a number
+        assertThat(OffsetDateTime.parse((String) decoded.get(0)).toInstant()).isEqualTo(timestamp.toInstant());
+        assertThat(decoded.get(1)).isEqualTo(new BigDecimal(42));
+    }
+
+    @Test
+    public void otherQuery() {
+        String token = ContinuationToken.encode(QUERY, Arrays.<Object>asList("a"));
+
+        assertThatThrownBy(() -> ContinuationToken.decode(token, QUERY + " offset 1"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void malformed() {
+        assertThatThrownBy(() -> ContinuationToken.decode("not a token!", QUERY))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.aql.sql;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class QueryDiagnosticsTest {
+
+    @Test
+    public void disabledDoesNotRecord() {
+        QueryDiagnostics cut = QueryDiagnostics.disabled();
+
+        assertThat(cut.time(QueryDiagnostics.PARSE, () -> "parsed")).isEqualTo("parsed");
+        assertThat(cut.getTimings()).isEmpty();
+        assertThat(cut.toExplain()).isNull();
+    }
+
+    @Test
+    public void stagesAreAccumulated() {
+        QueryDiagnostics cut = QueryDiagnostics.enabled();
+
+        cut.time(QueryDiagnostics.PARSE, () -> 1);
+        cut.time(QueryDiagnostics.CONTAINMENT, () -> 2);
+        cut.time(QueryDiagnostics.PARSE, () -> 3);
+        cut.time(QueryDiagnostics.COMPILE, () -> 4);
+        cut.run(QueryDiagnostics.JSON_TRANSFORM, () -> { });
+
+        assertThat(cut.getTimings().keySet()).containsExactly(QueryDiagnostics.PARSE, QueryDiagnostics.CONTAINMENT, QueryDiagnostics.COMPILE, QueryDiagnostics.JSON_TRANSFORM);
+    }
+
+    @Test
+    public void toExplain() {
+        QueryDiagnostics cut = QueryDiagnostics.enabled();
+        cut.setSql("select 1 limit ?", Collections.singletonList("10"));
+        cut.setExecutionPlan(Arrays.asList("Limit  (cost=0.00..0.01 rows=1 width=4)", "Execution Time: 0.020 ms"));
+        cut.time(QueryDiagnostics.EXECUTION, () -> null);
+        cut.time(QueryDiagnostics.EXPLAIN_ANALYZE, () -> null);
+
+        List<List<String>> explain = cut.toExplain();
+
+        assertThat(explain).hasSize(3);
+        assertThat(explain.get(0)).containsExactly("select 1 limit ?", "10");
+        assertThat(explain.get(1)).hasSize(2);
+        assertThat(explain.get(2)).hasSize(2);
+        assertThat(explain.get(2).get(0)).startsWith("execution: ").endsWith(" ms");
+        assertThat(explain.get(2).get(1)).startsWith("EXPLAIN ANALYZE (second execution): ");
+    }
+}
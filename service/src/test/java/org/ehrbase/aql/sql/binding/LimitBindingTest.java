@@ -19,11 +19,25 @@
 package org.ehrbase.aql.sql.binding;
 
 import org.ehrbase.dao.jooq.impl.DSLContextHelper;
+import org.jooq.Condition;
 import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Param;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
 import org.jooq.SelectQuery;
+import org.jooq.SortField;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
 import org.junit.Test;
 
-import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 public class LimitBindingTest {
 
@@ -64,4 +78,44 @@ public class LimitBindingTest {
                     "offset 1");
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBindKeyset() {
+        DSLContext context = DSLContextHelper.buildContext();
+        List<SortField<Object>> orderFields = Arrays.asList(DSL.field("\"time\"").desc(), DSL.field("\"uid\"").asc());
+        List<Field<?>> keyFields = Arrays.asList(DSL.field(DSL.name("time"), SQLDataType.TIMESTAMP), DSL.field(DSL.name("uid"), SQLDataType.VARCHAR));
+
+        Condition condition = LimitBinding.keysetCondition(orderFields, keyFields, Arrays.asList("2021-01-01T10:00:00.5+02:00", "8a9b::local::1"));
+        SelectQuery<Record> selectQuery = new LimitBinding(10, null, context.selectQuery(), condition).bind();
+        String actual = selectQuery.getSQL();
+
+        //the values are bound, not inlined
+        assertThat(actual).contains("\"time\" <").contains("\"uid\" >").doesNotContain("8a9b::local::1");
+        assertThat(selectQuery.getParams().values()).extracting(Param::getValue)
+                .contains(Timestamp.from(OffsetDateTime.parse("2021-01-01T10:00:00.5+02:00").toInstant()), "8a9b::local::1");
+    }
+
+    @Test
+    public void testBindKeysetRowKey() {
+        Field<String> rowKey = LimitBinding.rowKey(Arrays.asList(DSL.field(DSL.name("a")), DSL.field(DSL.name("b"))));
+
+        Condition condition = LimitBinding.keysetCondition(Collections.singletonList(rowKey.asc()), Collections.singletonList(rowKey), Collections.singletonList("0cc175b9c0f1b6a831c399e269772661"));
+
+        assertThat(DSL.using(SQLDialect.POSTGRES).renderInlined(condition))
+                .contains("md5(cast(row(\"a\", \"b\") as text)) collate \"C\" > '0cc175b9c0f1b6a831c399e269772661'");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBindKeysetMismatch() {
+        Field<Object> uid = DSL.field(DSL.name("uid"));
+
+        LimitBinding.keysetCondition(Collections.singletonList(uid.asc()), Collections.singletonList(uid), Arrays.asList("a", "b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBindKeysetInvalidValue() {
+        Field<Timestamp> time = DSL.field(DSL.name("time"), SQLDataType.TIMESTAMP);
+
+        LimitBinding.keysetCondition(Collections.singletonList(time.asc()), Collections.singletonList(time), Collections.singletonList("yesterday"));
+    }
+}
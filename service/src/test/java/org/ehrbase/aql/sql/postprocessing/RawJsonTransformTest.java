@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.aql.sql.postprocessing;
+
+import com.google.gson.JsonElement;
+import org.jooq.Field;
+import org.jooq.JSONB;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RawJsonTransformTest {
+
+    @Test
+    public void columnTypes() {
+        assertThat(RawJsonTransform.columnTypes(Arrays.asList(
+                DSL.field("a", JSONB.class),
+                DSL.field("b", String.class),
+                DSL.field("c"),
+                DSL.field("d", BigDecimal.class))))
+                .containsExactly(RawJsonTransform.ColumnType.JSON, RawJsonTransform.ColumnType.TEXT, RawJsonTransform.ColumnType.TEXT, RawJsonTransform.ColumnType.SCALAR);
+    }
+
+    @Test
+    public void isJson() {
+        assertThat(RawJsonTransform.isJson("{\"value\":\"a\"}")).isTrue();
+        assertThat(RawJsonTransform.isJson("[1, {\"a\": [true, null]}]")).isTrue();
+        assertThat(RawJsonTransform.isJson("[see note]")).isFalse();
+        assertThat(RawJsonTransform.isJson("{draft}")).isFalse();
+        assertThat(RawJsonTransform.isJson("{\"a\":1} {\"b\":2}")).isFalse();
+        assertThat(RawJsonTransform.isJson("plain text")).isFalse();
+        assertThat(RawJsonTransform.isJson(" \n{\"value\":\"a\"} ")).isTrue();
+    }
+
+    @Test
+    public void textColumnNotJson() {
+        Record record = DSL.using(SQLDialect.POSTGRES).newRecord(DSL.field("b", String.class)).values("[see note]");
+
+        RawJsonTransform.toRawJson(record, Arrays.asList(RawJsonTransform.ColumnType.TEXT));
+
+        assertThat(record.get(0)).isEqualTo("[see note]");
+    }
+
+    @Test
+    public void largeResultTransformedOnExecutor() {
+        Field<String> field = DSL.field("b", String.class);
+        Result<Record> result = DSL.using(SQLDialect.POSTGRES).newResult(field);
+        for (int i = 0; i < RawJsonTransform.PARALLEL_THRESHOLD * 2 + 1; i++) {
+            result.add(DSL.using(SQLDialect.POSTGRES).newRecord(field).values(i % 2 == 0 ? "{\"value\":" + i + "}" : "[see note]"));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            RawJsonTransform.toRawJson(result, Arrays.asList(RawJsonTransform.ColumnType.TEXT), executor);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < result.size(); i++) {
+            if (i % 2 == 0)
+                assertThat(result.get(i).get(0)).isInstanceOf(JsonElement.class);
+            else
+                assertThat(result.get(i).get(0)).isEqualTo("[see note]");
+        }
+    }
+}
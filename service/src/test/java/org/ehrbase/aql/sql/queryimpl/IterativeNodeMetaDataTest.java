@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.aql.sql.queryimpl;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IterativeNodeMetaDataTest {
+
+    private static final String EVENTS = "/content[openEHR-EHR-OBSERVATION.sample.v1]/data[at0001]/events[at0002]";
+
+    private static final List<String> JSONB_PATH = Arrays.asList(
+            "/composition[openEHR-EHR-COMPOSITION.sample.v1]",
+            "/content[openEHR-EHR-OBSERVATION.sample.v1]",
+            "0",
+            "/data[at0001]",
+            "/events",
+            "/events[at0002]",
+            "0",
+            "/data[at0003]");
+
+    private static final IterativeNodeMetaData.Settings SETTINGS = new IterativeNodeMetaData.Settings(Arrays.asList("^/content.*", "^/events.*"), 1);
+
+    @Test
+    public void notIterative() {
+        IterativeNodeMetaData cut = new IterativeNodeMetaData(Collections.emptyList(), SETTINGS);
+
+        assertThat(cut.iterativeAt(JSONB_PATH)).containsExactly(-1);
+    }
+
+    @Test
+    public void iterativeAt() {
+        IterativeNodeMetaData cut = new IterativeNodeMetaData(Collections.singletonList(EVENTS), SETTINGS);
+
+        Integer[] positions = cut.iterativeAt(JSONB_PATH);
+        assertThat(positions).containsExactly(6);
+
+        //memoized result is not exposed
+        positions[0] = 0;
+        assertThat(cut.iterativeAt(JSONB_PATH)).containsExactly(6);
+    }
+
+    @Test
+    public void skipListAndValuePaths() {
+        IterativeNodeMetaData skipEvents = new IterativeNodeMetaData(Collections.singletonList(EVENTS),
+                new IterativeNodeMetaData.Settings(Collections.singletonList("events"), 1));
+        IterativeNodeMetaData valuePath = new IterativeNodeMetaData(Collections.singletonList(EVENTS + "/data[at0003]/value"), SETTINGS);
+
+        assertThat(skipEvents.iterativeAt(JSONB_PATH)).isEmpty();
+        assertThat(valuePath.iterativeAt(JSONB_PATH)).isEmpty();
+    }
+
+    @Test
+    public void compact() {
+        assertThat(IterativeNodeMetaData.compact(JSONB_PATH)).containsExactly(
+                "content[openEHR-EHR-OBSERVATION.sample.v1]", "data[at0001]", "events[at0002]", "data[at0003]");
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.aql.sql.queryimpl;
+
+import org.apache.commons.io.IOUtils;
+import org.ehrbase.service.CacheRule;
+import org.ehrbase.service.KnowledgeCacheHelper;
+import org.ehrbase.service.KnowledgeCacheService;
+import org.ehrbase.test_data.operationaltemplate.OperationalTemplateTestData;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PathProjectionTest {
+
+    private static final String JSONB_PATH = "/composition[openEHR-EHR-COMPOSITION.sample_encounter.v1],/content[openEHR-EHR-OBSERVATION.sample_blood_pressure.v1],0,/data[at0001],/events,/events[at0002],0,/data[at0003],/items[at0004],0,/value,magnitude";
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Rule
+    public CacheRule cacheRule = new CacheRule();
+
+    @Test
+    public void indexStatements() {
+        DSLContext context = DSL.using(SQLDialect.POSTGRES);
+        PathProjection cut = PathProjection.of("test", "/content[openEHR-EHR-OBSERVATION.sample_blood_pressure.v1]/value/magnitude", JSONB_PATH, "numeric");
+
+        String expression = "cast(\"ehr\".\"entry\".\"entry\" #>> '{" + JSONB_PATH + "}' as numeric)";
+        assertThat(context.renderInlined(cut.field())).isEqualTo(expression);
+        assertThat(cut.getIndexName()).startsWith("aql_path_idx_").hasSize(45);
+        assertThat(cut.createIndexStatement(context))
+                .isEqualTo("create index concurrently if not exists " + cut.getIndexName() + " on \"ehr\".\"entry\" ((" + expression + ")) where \"ehr\".\"entry\".\"template_id\" = 'test' and (" + expression + ") is not null");
+        assertThat(cut.dropIndexStatement()).isEqualTo("drop index concurrently if exists ehr." + cut.getIndexName());
+    }
+
+    @Test
+    public void indexNameDependsOnExpression() {
+        PathProjection numeric = PathProjection.of("test", "/a", "a", "numeric");
+
+        assertThat(PathProjection.of("test", "/a", "a", "numeric").getIndexName()).isEqualTo(numeric.getIndexName());
+        assertThat(PathProjection.of("test", "/a", "a", null).getIndexName()).isNotEqualTo(numeric.getIndexName());
+        assertThat(PathProjection.of("test", "/a", "b", "numeric").getIndexName()).isNotEqualTo(numeric.getIndexName());
+        assertThat(PathProjection.of("other", "/a", "a", "numeric").getIndexName()).isNotEqualTo(numeric.getIndexName());
+    }
+
+    @Test
+    public void hasCastType() {
+        assertThat(PathProjection.of("test", "/a", "a", "numeric").hasCastType(SQLDataType.NUMERIC)).isTrue();
+        assertThat(PathProjection.of("test", "/a", "a", "numeric").hasCastType(null)).isFalse();
+        assertThat(PathProjection.of("test", "/a", "a", null).hasCastType(null)).isTrue();
+    }
+
+    @Test
+    public void rejectInvalidPaths() throws Exception {
+        KnowledgeCacheService knowledge = KnowledgeCacheHelper.buildKnowledgeCache(testFolder, cacheRule);
+        knowledge.addOperationalTemplate(IOUtils.toByteArray(OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getStream()));
+        String templateId = OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getTemplateId();
+
+        assertThatThrownBy(() -> PathProjection.resolve(knowledge, KnowledgeCacheHelper.buildServerConfig(), templateId, "/content[openEHR-EHR-OBSERVATION.sample_blood_pressure.v1 and name/value='x']/data[at0001]"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PathProjection.resolve(knowledge, KnowledgeCacheHelper.buildServerConfig(), templateId, "/content[openEHR-EHR-OBSERVATION.sample_blood_pressure.v1]"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("does not designate a value");
+    }
+}
@@ -48,7 +48,7 @@ public class AqlQueryHandlerTest {
             mock[0] = new MockResult(0, null);
             return mock;
         }), testFolder, cacheRule), mock(FhirTerminologyServerR4AdaptorImpl.class));
-        AqlResult aqlResult = cut.process("select e/ehr_id/value from EHR e LIMIT 10 OFFSET 5");
+        AqlResult aqlResult = cut.processWithDiagnostics("select e/ehr_id/value from EHR e LIMIT 10 OFFSET 5", null);
         assertThat(aqlResult.getExplain().get(0)).hasSize(3).contains("10", "5");
         assertThat(aqlResult.getExplain().get(0).get(0).replaceAll("alias_\\d+", "")).isEqualToIgnoringWhitespace(
                         "select \"ehr_join\".\"id\" as \"/ehr_id/value\" " +
@@ -56,4 +56,15 @@ public class AqlQueryHandlerTest {
                         "right outer join \"ehr\".\"ehr\" as \"ehr_join\" on \"ehr_join\".\"id\" = \"composition_join\".\"ehr_id\" " +
                         "limit ? offset ?");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void normalize() {
+        assertThat(AqlQueryHandler.normalize("  select e/ehr_id/value\n  from EHR e\tLIMIT 10 "))
+                .isEqualTo("select e/ehr_id/value from EHR e LIMIT 10");
+        //quoted literals are kept as is
+        assertThat(AqlQueryHandler.normalize("select c from EHR e contains COMPOSITION c where c/name/value = 'a  b'"))
+                .isEqualTo("select c from EHR e contains COMPOSITION c where c/name/value = 'a  b'");
+        assertThat(AqlQueryHandler.normalize("select c\n from EHR e"))
+                .isEqualTo(AqlQueryHandler.normalize("select c from   EHR e"));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.dao.access.jooq;
+
+import com.nedap.archie.rm.generic.AuditDetails;
+import com.nedap.archie.rm.generic.PartySelf;
+import org.ehrbase.jooq.pg.enums.ContributionChangeType;
+import org.ehrbase.jooq.pg.tables.records.AuditDetailsRecord;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AuditDetailsAccessTest {
+
+    @Test
+    public void toAuditDetails() {
+        UUID systemId = UUID.randomUUID();
+        AuditDetailsRecord record = new AuditDetailsRecord();
+        record.setSystemId(systemId);
+        record.setChangeType(ContributionChangeType.modification);
+        record.setDescription("updated");
+        record.setTimeCommitted(Timestamp.valueOf(LocalDateTime.of(2021, 3, 1, 10, 15)));
+        PartySelf committer = new PartySelf();
+
+        AuditDetails auditDetails = AuditDetailsAccess.toAuditDetails(record, committer);
+
+        assertThat(auditDetails.getSystemId()).isEqualTo(systemId.toString());
+        assertThat(auditDetails.getCommitter()).isSameAs(committer);
+        assertThat(auditDetails.getTimeCommitted().getValue()).isEqualTo(LocalDateTime.of(2021, 3, 1, 10, 15));
+        assertThat(auditDetails.getChangeType().getValue()).isEqualTo("modification");
+        assertThat(auditDetails.getChangeType().getDefiningCode().getCodeString()).isEqualTo("251");
+        assertThat(auditDetails.getChangeType().getDefiningCode().getTerminologyId().getValue()).isEqualTo("openehr");
+        assertThat(auditDetails.getDescription().getValue()).isEqualTo("updated");
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.dao.access.jooq.party;
+
+import com.nedap.archie.rm.datatypes.CodePhrase;
+import com.nedap.archie.rm.datavalues.DvCodedText;
+import com.nedap.archie.rm.datavalues.DvIdentifier;
+import com.nedap.archie.rm.generic.PartyIdentified;
+import com.nedap.archie.rm.generic.PartyRelated;
+import com.nedap.archie.rm.generic.PartySelf;
+import com.nedap.archie.rm.support.identification.GenericId;
+import com.nedap.archie.rm.support.identification.HierObjectId;
+import com.nedap.archie.rm.support.identification.PartyRef;
+import com.nedap.archie.rm.support.identification.TerminologyId;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PartyIdentityHashTest {
+
+    @Test
+    public void identifiedByExternalRef() {
+        PartyRef partyRef = new PartyRef(new GenericId("9999999", "HOSPITAL-NS"), "DEMOGRAPHIC", "PERSON");
+
+        String hash = PartyIdentityHash.of(new PartyIdentified(partyRef, "Dr. Yamamoto", null));
+
+        assertThat(hash).hasSize(32).isEqualTo(PartyIdentityHash.of(new PartyIdentified(partyRef, "Dr. Y. Yamamoto", null)));
+        assertThat(PartyIdentityHash.of(new PartySelf(partyRef))).isEqualTo(hash);
+        assertThat(PartyIdentityHash.of(new PartySelf(new PartyRef(new HierObjectId("9999999"), "DEMOGRAPHIC", "PERSON")))).isNotEqualTo(hash);
+    }
+
+    @Test
+    public void identifiedByNameAndIdentifiers() {
+        DvIdentifier first = identifier("1");
+        DvIdentifier second = identifier("2");
+
+        String hash = PartyIdentityHash.of(new PartyIdentified(null, "Dr. Yamamoto", List.of(first, second)));
+
+        assertThat(PartyIdentityHash.of(new PartyIdentified(null, "Dr. Yamamoto", List.of(second, first)))).isEqualTo(hash);
+        assertThat(PartyIdentityHash.of(new PartyIdentified(null, "Dr. Yamamoto", List.of(first)))).isNotEqualTo(hash);
+        assertThat(PartyIdentityHash.of(new PartyIdentified(null, "Dr. Smith", List.of(first, second)))).isNotEqualTo(hash);
+
+        PartyRelated partyRelated = new PartyRelated(null, "Dr. Yamamoto", List.of(first, second), new DvCodedText("mother", new CodePhrase(new TerminologyId("openehr"), "10")));
+        assertThat(PartyIdentityHash.of(partyRelated)).isNotEqualTo(hash);
+    }
+
+    @Test
+    public void canonicalForm() {
+        assertThat(PartyIdentityHash.canonical(new PartySelf())).isEqualTo("self");
+        assertThat(PartyIdentityHash.canonical(new PartyIdentified(null, "Dr. Yamamoto", List.of(identifier("1")))))
+                .isEqualTo("identified\u001fDr. Yamamoto\u001e1\u001fissuer\u001fassigner\u001ftype");
+        // md5('self') and md5('self')::uuid in SQL
+        assertThat(PartyIdentityHash.of(new PartySelf())).isEqualTo("590f53e8699817c6fa498cc11a4cbe63");
+        assertThat(PartyIdentityHash.uuidOf("self")).isEqualTo(UUID.fromString("590f53e8-6998-17c6-fa49-8cc11a4cbe63"));
+    }
+
+    private static DvIdentifier identifier(String id) {
+        DvIdentifier identifier = new DvIdentifier();
+        identifier.setId(id);
+        identifier.setIssuer("issuer");
+        identifier.setAssigner("assigner");
+        identifier.setType("type");
+        return identifier;
+    }
+}
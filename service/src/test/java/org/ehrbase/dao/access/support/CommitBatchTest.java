@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.dao.access.support;
+
+import org.ehrbase.api.exception.InternalServerException;
+import org.ehrbase.jooq.pg.enums.ContributionChangeType;
+import org.ehrbase.jooq.pg.tables.records.AuditDetailsRecord;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.jooq.tools.jdbc.MockConnection;
+import org.jooq.tools.jdbc.MockResult;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.ehrbase.jooq.pg.Tables.AUDIT_DETAILS;
+import static org.ehrbase.jooq.pg.Tables.CONTRIBUTION;
+
+public class CommitBatchTest {
+
+    private final List<String[]> executions = new ArrayList<>();
+
+    private DSLContext context(int rows) {
+        return DSL.using(new MockConnection(ctx -> {
+            executions.add(ctx.batchSQL());
+            MockResult[] results = new MockResult[ctx.batchSQL().length];
+            for (int i = 0; i < results.length; i++)
+                results[i] = new MockResult(rows, null);
+            return results;
+        }), SQLDialect.POSTGRES);
+    }
+
+    @Test
+    public void executesAllInsertsInOneRoundTrip() {
+        DSLContext context = context(1);
+        UUID auditId = UUID.randomUUID();
+        AuditDetailsRecord audit = context.newRecord(AUDIT_DETAILS);
+        audit.setId(auditId);
+        audit.setChangeType(ContributionChangeType.creation);
+
+        CommitBatch cut = new CommitBatch(context);
+        cut.insert("auditDetails", audit);
+        cut.add("contribution", context.insertInto(CONTRIBUTION, CONTRIBUTION.ID, CONTRIBUTION.HAS_AUDIT).values(UUID.randomUUID(), auditId));
+        assertThat(cut.size()).isEqualTo(2);
+
+        cut.execute();
+
+        assertThat(executions).hasSize(1);
+        assertThat(executions.get(0)).hasSize(2);
+        assertThat(executions.get(0)[0]).contains(auditId.toString());
+        assertThat(audit.changed()).isFalse();
+        assertThat(cut.size()).isZero();
+    }
+
+    @Test
+    public void failsOnMissingRow() {
+        DSLContext context = context(0);
+        CommitBatch cut = new CommitBatch(context);
+        cut.add("contribution", context.insertInto(CONTRIBUTION, CONTRIBUTION.ID).values(UUID.randomUUID()));
+
+        assertThatThrownBy(cut::execute)
+                .isInstanceOf(InternalServerException.class)
+                .hasMessage("Couldn't store contribution");
+    }
+}
@@ -18,10 +18,15 @@
 
 package org.ehrbase.service;
 
+import org.ehcache.core.spi.service.StatisticsService;
+import org.ehcache.core.statistics.DefaultStatisticsService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.ehrbase.aql.containment.JsonPathQueryResult;
 import org.ehrbase.aql.containment.TemplateIdAqlTuple;
 import org.ehrbase.aql.containment.TemplateIdQueryTuple;
+import org.ehrbase.aql.sql.AqlQueryPlan;
 import org.ehrbase.aql.sql.queryimpl.ItemInfo;
+import org.ehrbase.configuration.CacheConfiguration;
 import org.ehrbase.validation.Validator;
 import org.ehrbase.webtemplate.model.WebTemplate;
 import org.junit.rules.TestWatcher;
@@ -39,26 +44,37 @@ import static org.ehrbase.configuration.CacheConfiguration.INTROSPECT_CACHE;
 import static org.ehrbase.configuration.CacheConfiguration.MULTI_VALUE_CACHE;
 import static org.ehrbase.configuration.CacheConfiguration.OPERATIONAL_TEMPLATE_CACHE;
 import static org.ehrbase.configuration.CacheConfiguration.QUERY_CACHE;
+import static org.ehrbase.configuration.CacheConfiguration.QUERY_PLAN_CACHE;
 import static org.ehrbase.configuration.CacheConfiguration.VALIDATOR_CACHE;
 import static org.ehrbase.configuration.CacheConfiguration.buildCache;
+import static org.ehrbase.configuration.CacheConfiguration.registerStatistics;
 
 public class CacheRule extends TestWatcher {
     public CacheManager cacheManager;
+    public StatisticsService statisticsService;
+    public TemplateWarmUpScheduler warmUpScheduler;
+    public KnowledgeCacheMetrics knowledgeCacheMetrics;
 
     @Override
     protected void starting(Description description) {
         CachingProvider cachingProvider = Caching.getCachingProvider();
         cacheManager = cachingProvider.getCacheManager();
+        statisticsService = new DefaultStatisticsService();
+        registerStatistics(cacheManager, statisticsService);
         buildCache(INTROSPECT_CACHE, UUID.class, WebTemplate.class, cacheManager, true);
         buildCache(OPERATIONAL_TEMPLATE_CACHE, String.class, OPERATIONALTEMPLATE.class, cacheManager, true);
         buildCache(VALIDATOR_CACHE, UUID.class, Validator.class, cacheManager, true);
         buildCache(QUERY_CACHE, TemplateIdQueryTuple.class, JsonPathQueryResult.class, cacheManager, true);
         buildCache(FIELDS_CACHE, TemplateIdAqlTuple.class, ItemInfo.class, cacheManager, true);
         buildCache(MULTI_VALUE_CACHE, String.class, List.class, cacheManager, false);
+        buildCache(QUERY_PLAN_CACHE, String.class, AqlQueryPlan.class, cacheManager, true);
+        warmUpScheduler = new TemplateWarmUpScheduler(new CacheConfiguration().getWarmUp().getParallelism(), null);
+        knowledgeCacheMetrics = new KnowledgeCacheMetrics(cacheManager, statisticsService, (MeterRegistry) null);
     }
 
     @Override
     protected void finished(Description description) {
+        warmUpScheduler.shutdown();
         cacheManager.close();
     }
 }
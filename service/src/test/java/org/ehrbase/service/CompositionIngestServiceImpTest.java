@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import com.nedap.archie.json.JacksonUtil;
+import com.nedap.archie.rm.archetyped.Archetyped;
+import com.nedap.archie.rm.archetyped.TemplateId;
+import com.nedap.archie.rm.composition.Composition;
+import com.nedap.archie.rm.datavalues.DvText;
+import com.nedap.archie.rm.support.identification.ArchetypeID;
+import org.ehrbase.api.definitions.ServerConfig;
+import org.ehrbase.api.dto.IngestResultDto;
+import org.ehrbase.api.service.ValidationService;
+import org.ehrbase.configuration.IngestConfiguration;
+import org.ehrbase.serialisation.jsonencoding.CanonicalJson;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+
+public class CompositionIngestServiceImpTest {
+
+    private static final UUID EHR_ID = UUID.fromString("2a3b673f-d1b1-44c5-9e38-dcadf67ff2fc");
+    //the writes of the compositions of this EHR fail
+    private static final UUID FAILING_EHR_ID = UUID.fromString("849bf097-bd16-44fc-a394-10676284a012");
+
+    private IngestConfiguration settings;
+    private IngestExecutor ingestExecutor;
+
+    /**
+     * Ingest service recording the committed batches instead of writing them
+     */
+    private class TestIngestService extends CompositionIngestServiceImp {
+        private final List<Integer> commits = new ArrayList<>();
+        private final List<Integer> batches = new ArrayList<>();
+
+        private TestIngestService() {
+            super(mock(KnowledgeCacheService.class), mock(ValidationService.class), null, mock(ServerConfig.class), settings, mock(StoredQueryResultCache.class), ingestExecutor, mock(PlatformTransactionManager.class));
+        }
+
+        @Override
+        Set<UUID> existingEhrs(List<UUID> ehrIds) {
+            return Set.of(EHR_ID, FAILING_EHR_ID);
+        }
+
+        @Override
+        void commit(List<Item> items, UUID systemId, UUID committerId, String description) {
+            commits.add(items.size());
+            if (items.stream().anyMatch(item -> FAILING_EHR_ID.equals(item.ehrId)))
+                throw new IllegalStateException("constraint violation");
+            items.forEach(item -> item.compositionId = UUID.randomUUID());
+        }
+
+        private List<IngestResultDto> ingest(String... lines) {
+            List<IngestResultDto> results = new ArrayList<>();
+            ingest(stream(lines), UUID.randomUUID(), UUID.randomUUID(), null, batch -> {
+                batches.add(batch.size());
+                results.addAll(batch);
+            });
+            return results;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        settings = new IngestConfiguration();
+        ingestExecutor = new IngestExecutor(2);
+    }
+
+    @After
+    public void tearDown() {
+        ingestExecutor.shutdown();
+    }
+
+    @Test
+    public void commitsByBatch() {
+        settings.setBatchSize(2);
+        TestIngestService cut = new TestIngestService();
+
+        List<IngestResultDto> results = cut.ingest(record(EHR_ID), record(EHR_ID), record(EHR_ID), record(EHR_ID), record(EHR_ID));
+
+        assertThat(cut.commits).containsExactly(2, 2, 1);
+        assertThat(cut.batches).containsExactly(2, 2, 1);
+        assertThat(results).extracting(IngestResultDto::getLine).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(results).allSatisfy(result -> {
+            assertThat(result.getUid()).endsWith("::1");
+            assertThat(result.getEhrId()).isEqualTo(EHR_ID.toString());
+            assertThat(result.getError()).isNull();
+        });
+    }
+
+    @Test
+    public void retriesFailedBatchRecordByRecord() {
+        settings.setBatchSize(3);
+        TestIngestService cut = new TestIngestService();
+
+        List<IngestResultDto> results = cut.ingest(record(EHR_ID), record(FAILING_EHR_ID), record(EHR_ID));
+
+        assertThat(cut.commits).containsExactly(3, 1, 1, 1);
+        assertThat(results)
+                .extracting(IngestResultDto::getLine, IngestResultDto::getEhrId, IngestResultDto::getError)
+                .containsExactly(
+                        tuple(1L, EHR_ID.toString(), null),
+                        tuple(2L, FAILING_EHR_ID.toString(), "constraint violation"),
+                        tuple(3L, EHR_ID.toString(), null));
+        assertThat(results.get(1).getUid()).isNull();
+        assertThat(results.get(2).getUid()).isNotNull();
+    }
+
+    @Test
+    public void reportsFailedRecords() {
+        UUID unknownEhrId = UUID.randomUUID();
+        TestIngestService cut = new TestIngestService();
+
+        List<IngestResultDto> results = cut.ingest("not json", "", "{\"ehr_id\": \"" + EHR_ID + "\"}", record(unknownEhrId), record(EHR_ID));
+
+        assertThat(cut.commits).containsExactly(1);
+        assertThat(results).extracting(IngestResultDto::getLine).containsExactly(1L, 3L, 4L, 5L);
+        assertThat(results.get(0).getEhrId()).isNull();
+        assertThat(results.get(1).getError()).contains("composition");
+        assertThat(results.get(2).getError()).isEqualTo("No EHR found with given ID: " + unknownEhrId);
+        assertThat(results.get(3).getError()).isNull();
+        assertThat(results.get(3).getUid()).isNotNull();
+    }
+
+    private static String record(UUID ehrId) {
+        Composition composition = new Composition();
+        composition.setArchetypeNodeId("openEHR-EHR-COMPOSITION.minimal.v1");
+        composition.setName(new DvText("minimal"));
+        Archetyped archetypeDetails = new Archetyped();
+        TemplateId templateId = new TemplateId();
+        templateId.setValue("minimal.v1");
+        archetypeDetails.setTemplateId(templateId);
+        archetypeDetails.setArchetypeId(new ArchetypeID("openEHR-EHR-COMPOSITION.minimal.v1"));
+        archetypeDetails.setRmVersion("1.0.4");
+        composition.setArchetypeDetails(archetypeDetails);
+
+        try {
+            String json = JacksonUtil.getObjectMapper().readTree(new CanonicalJson().marshal(composition)).toString();
+            return "{\"ehr_id\": \"" + ehrId + "\", \"composition\": " + json + "}";
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static InputStream stream(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", Arrays.asList(lines)).getBytes(StandardCharsets.UTF_8));
+    }
+}
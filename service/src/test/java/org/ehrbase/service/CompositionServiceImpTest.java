@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import com.nedap.archie.rm.archetyped.Archetyped;
+import com.nedap.archie.rm.composition.Composition;
+import com.nedap.archie.rm.datavalues.DvText;
+import com.nedap.archie.rm.support.identification.ObjectVersionId;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompositionServiceImpTest {
+
+    @Test
+    public void withUidLeavesTheCompositionUntouched() {
+        Composition composition = new Composition();
+        composition.setUid(new ObjectVersionId("2a3b673f-d1b1-44c5-9e38-dcadf67ff2fc::local.ehrbase.org::1"));
+        composition.setArchetypeNodeId("openEHR-EHR-COMPOSITION.minimal.v1");
+        composition.setName(new DvText("minimal"));
+        composition.setArchetypeDetails(new Archetyped());
+        composition.setContent(new ArrayList<>());
+
+        ObjectVersionId versionUid = new ObjectVersionId("2a3b673f-d1b1-44c5-9e38-dcadf67ff2fc::local.ehrbase.org::2");
+        Composition written = CompositionServiceImp.withUid(composition, versionUid);
+
+        assertThat(written.getUid()).isSameAs(versionUid);
+        assertThat(composition.getUid().getValue()).isEqualTo("2a3b673f-d1b1-44c5-9e38-dcadf67ff2fc::local.ehrbase.org::1");
+        assertThat(written.getArchetypeNodeId()).isEqualTo(composition.getArchetypeNodeId());
+        assertThat(written.getName()).isSameAs(composition.getName());
+        assertThat(written.getArchetypeDetails()).isSameAs(composition.getArchetypeDetails());
+        assertThat(written.getContent()).isEqualTo(composition.getContent());
+    }
+}
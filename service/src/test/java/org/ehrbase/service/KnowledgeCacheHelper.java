@@ -42,7 +42,7 @@ public class KnowledgeCacheHelper {
 
         templateFileStorageService.setOptPath(operationalTemplatesemplates.getPath());
 
-        KnowledgeCacheService knowledgeCacheService = new KnowledgeCacheService(templateFileStorageService, cacheRule.cacheManager, new CacheConfiguration());
+        KnowledgeCacheService knowledgeCacheService = new KnowledgeCacheService(templateFileStorageService, cacheRule.cacheManager, new CacheConfiguration(), cacheRule.warmUpScheduler, cacheRule.knowledgeCacheMetrics);
         knowledgeCacheService.addOperationalTemplate(IOUtils.toByteArray(TemplateTestData.IMMUNISATION_SUMMARY.getStream()));
         return knowledgeCacheService;
     }
@@ -91,6 +91,16 @@ public class KnowledgeCacheHelper {
                 this.useJsQuery = b;
             }
 
+            @Override
+            public Integer getAqlStreamFetchSize() {
+                return 1000;
+            }
+
+            @Override
+            public Integer getAqlBranchParallelism() {
+                return 1;
+            }
+
             @Override
             public boolean isDisableStrictValidation() {
                 return false;
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.ehrbase.configuration.CacheConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openehr.schemas.v1.OPERATIONALTEMPLATE;
+
+import javax.cache.Cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KnowledgeCacheMetricsTest {
+
+    @Rule
+    public CacheRule cacheRule = new CacheRule();
+
+    @Test
+    public void publishesCacheStatisticsAndLoadTimes() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        KnowledgeCacheMetrics metrics = new KnowledgeCacheMetrics(cacheRule.cacheManager, cacheRule.statisticsService, registry);
+
+        Cache<String, OPERATIONALTEMPLATE> cache = cacheRule.cacheManager.getCache(CacheConfiguration.OPERATIONAL_TEMPLATE_CACHE, String.class, OPERATIONALTEMPLATE.class);
+        assertThat(cache.get("template")).isNull();
+        cache.put("template", OPERATIONALTEMPLATE.Factory.newInstance());
+        assertThat(cache.get("template")).isNotNull();
+
+        assertThat(registry.get("cache.gets").tag("cache", CacheConfiguration.OPERATIONAL_TEMPLATE_CACHE).tag("result", "miss").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.gets").tag("cache", CacheConfiguration.OPERATIONAL_TEMPLATE_CACHE).tag("result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.puts").tag("cache", CacheConfiguration.OPERATIONAL_TEMPLATE_CACHE).functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("ehrbase.knowledge.cache.entries").tag("cache", CacheConfiguration.OPERATIONAL_TEMPLATE_CACHE).tag("tier", "OnHeap").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("ehrbase.knowledge.cache.entries").tag("cache", CacheConfiguration.VALIDATOR_CACHE).tag("tier", "OnHeap").gauge().value()).isZero();
+        assertThat(registry.get("ehrbase.knowledge.cache.size").tag("cache", CacheConfiguration.OPERATIONAL_TEMPLATE_CACHE).tag("tier", "OnHeap").gauge()).isNotNull();
+
+        metrics.record(KnowledgeCacheMetrics.Loader.VALIDATOR, System.nanoTime());
+        assertThat(registry.get("ehrbase.knowledge.load").tag("loader", "validator").timer().count()).isEqualTo(1);
+        assertThat(registry.get("ehrbase.knowledge.load").tag("loader", "web-template").timer().count()).isZero();
+    }
+}
@@ -18,22 +18,38 @@
 
 package org.ehrbase.service;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.ehrbase.aql.containment.JsonPathQueryResult;
+import org.ehrbase.aql.containment.TemplateIdAqlTuple;
+import org.ehrbase.aql.containment.TemplateIdQueryTuple;
+import org.ehrbase.aql.sql.queryimpl.ItemInfo;
+import org.ehrbase.aql.sql.queryimpl.PathProjection;
 import org.ehrbase.configuration.CacheConfiguration;
 import org.ehrbase.ehr.knowledge.TemplateMetaData;
 import org.ehrbase.ehr.knowledge.TemplateTestData;
 import org.ehrbase.test_data.operationaltemplate.OperationalTemplateTestData;
+import org.ehrbase.validation.Validator;
 import org.ehrbase.webtemplate.parser.NodeId;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.openehr.schemas.v1.OPERATIONALTEMPLATE;
+import org.openehr.schemas.v1.TemplateDocument;
 
+import javax.cache.Cache;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.ehrbase.configuration.CacheConfiguration.VALIDATOR_CACHE;
 
 /**
  * Created by christian on 5/10/2018.
@@ -100,6 +116,225 @@ public class KnowledgeCacheServiceTest {
                 .isEqualTo("DV_QUANTITY");
     }
 
+    @Test
+    public void testCachedOperationalTemplateDoesNotReadStorage() throws Exception {
+        KnowledgeCacheService knowledge = buildKnowledgeCache(testFolder, cacheRule);
+        knowledge.addOperationalTemplate(IOUtils.toByteArray(OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getStream()));
+        String templateId = OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getTemplateId();
+        OPERATIONALTEMPLATE template = knowledge.retrieveOperationalTemplate(templateId).orElseThrow();
+        UUID uuid = UUID.fromString(template.getUid().getValue());
+
+        // removed behind the back of the cache: only the revision-checked retrieval sees it
+        File file = new File(testFolder.getRoot(), "operational_templates/" + templateId + ".opt");
+        assertThat(file.delete()).isTrue();
+        assertThat(knowledge.getCachedOperationalTemplate(templateId)).containsSame(template);
+        assertThat(knowledge.getCachedOperationalTemplate(uuid)).containsSame(template);
+
+        assertThat(knowledge.retrieveOperationalTemplate(templateId)).isEmpty();
+        assertThat(knowledge.getCachedOperationalTemplate(templateId)).isEmpty();
+    }
+
+    @Test
+    public void testRetrieveOperationalTemplateChecksRevision() throws Exception {
+        KnowledgeCacheService knowledge = buildKnowledgeCache(testFolder, cacheRule);
+        knowledge.addOperationalTemplate(IOUtils.toByteArray(OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getStream()));
+        String templateId = OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getTemplateId();
+
+        OPERATIONALTEMPLATE template = knowledge.retrieveOperationalTemplate(templateId).orElseThrow();
+        UUID uuid = UUID.fromString(template.getUid().getValue());
+        // unchanged in storage: the cached instance is returned
+        assertThat(knowledge.retrieveOperationalTemplate(templateId)).containsSame(template);
+        assertThat(knowledge.retrieveOperationalTemplate(uuid)).containsSame(template);
+
+        Cache<UUID, Validator> validators = cacheRule.cacheManager.getCache(VALIDATOR_CACHE, UUID.class, Validator.class);
+        validators.put(uuid, new Validator(template));
+
+        // replaced in storage (f.e. by another node): read and parsed again
+        File file = new File(testFolder.getRoot(), "operational_templates/" + templateId + ".opt");
+        assertThat(file.setLastModified(file.lastModified() + 10000)).isTrue();
+        OPERATIONALTEMPLATE reloaded = knowledge.retrieveOperationalTemplate(templateId).orElseThrow();
+        assertThat(reloaded).isNotSameAs(template);
+        assertThat(reloaded.getTemplateId().getValue()).isEqualTo(templateId);
+        assertThat(validators.containsKey(uuid)).isFalse();
+        assertThat(knowledge.retrieveOperationalTemplate(templateId)).containsSame(reloaded);
+
+        // removed from storage
+        assertThat(file.delete()).isTrue();
+        assertThat(knowledge.retrieveOperationalTemplate(templateId)).isEmpty();
+        assertThat(knowledge.retrieveOperationalTemplate(uuid)).isEmpty();
+    }
+
+    @Test
+    public void testReplacementWithNewUidEvictsOldUid() throws Exception {
+        KnowledgeCacheService knowledge = buildKnowledgeCache(testFolder, cacheRule);
+        knowledge.addOperationalTemplate(IOUtils.toByteArray(OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getStream()));
+        String templateId = OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getTemplateId();
+        OPERATIONALTEMPLATE template = knowledge.retrieveOperationalTemplate(templateId).orElseThrow();
+        UUID uuid = UUID.fromString(template.getUid().getValue());
+
+        Cache<UUID, Validator> validators = cacheRule.cacheManager.getCache(VALIDATOR_CACHE, UUID.class, Validator.class);
+        validators.put(uuid, new Validator(template));
+
+        // replaced in storage by a version with another uid
+        UUID newUuid = UUID.randomUUID();
+        File file = new File(testFolder.getRoot(), "operational_templates/" + templateId + ".opt");
+        String content = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(file, content.replace(uuid.toString(), newUuid.toString()), StandardCharsets.UTF_8);
+        assertThat(file.setLastModified(file.lastModified() + 10000)).isTrue();
+
+        assertThat(knowledge.retrieveOperationalTemplate(templateId).orElseThrow().getUid().getValue()).isEqualTo(newUuid.toString());
+        assertThat(validators.containsKey(uuid)).isFalse();
+        assertThat(knowledge.retrieveOperationalTemplate(uuid)).isEmpty();
+    }
+
+    @Test
+    public void testWarmUpAtStartup() throws Exception {
+        KnowledgeCacheService knowledge = buildKnowledgeCache(testFolder, cacheRule);
+        knowledge.addOperationalTemplate(IOUtils.toByteArray(OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getStream()));
+        knowledge.addOperationalTemplate(IOUtils.toByteArray(OperationalTemplateTestData.IDCR_PROBLEM_LIST.getStream()));
+
+        // a new node on the same storage
+        TemplateFileStorageService storage = new TemplateFileStorageService(new File(testFolder.getRoot(), "operational_templates").getPath());
+        storage.init();
+        KnowledgeCacheService restarted = new KnowledgeCacheService(storage, cacheRule.cacheManager, new CacheConfiguration(), cacheRule.warmUpScheduler, cacheRule.knowledgeCacheMetrics);
+        restarted.init();
+
+        for (int i = 0; i < 100 && !restarted.isWarmedUp(); i++)
+            Thread.sleep(100);
+
+        assertThat(restarted.isWarmedUp()).isTrue();
+        assertThat(restarted.getWarmUpLoaded()).isEqualTo(2).isEqualTo(restarted.getWarmUpTotal());
+        assertThat(restarted.getAllTemplateIds()).containsExactlyInAnyOrder(
+                OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getTemplateId(), OperationalTemplateTestData.IDCR_PROBLEM_LIST.getTemplateId());
+        assertThat(restarted.findCandidateTemplates(Collections.singletonList(new NodeId("OBSERVATION", "openEHR-EHR-OBSERVATION.sample_blood_pressure.v1"))))
+                .containsExactly(OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getTemplateId());
+    }
+
+    @Test
+    public void testQueryPlanKeyChangesWithTemplateSet() throws Exception {
+        KnowledgeCacheService knowledge = buildKnowledgeCache(testFolder, cacheRule);
+        String aql = "select c from EHR e contains COMPOSITION c";
+
+        String before = knowledge.queryPlanKey(aql);
+        assertThat(knowledge.queryPlanKey(aql)).isEqualTo(before);
+        assertThat(knowledge.queryPlanKey(aql, true)).isNotEqualTo(before);
+
+        knowledge.addOperationalTemplate(IOUtils.toByteArray(OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getStream()));
+
+        assertThat(knowledge.queryPlanKey(aql)).isNotEqualTo(before);
+        assertThat(knowledge.getQueryPlan(before)).isNull();
+        assertThat(knowledge.getQueryPlanCacheMisses()).isEqualTo(1);
+        assertThat(knowledge.getQueryPlanCacheHits()).isZero();
+    }
+
+    @Test
+    public void testPathProjectionChangesTemplateRevision() throws Exception {
+        KnowledgeCacheService knowledge = buildKnowledgeCache(testFolder, cacheRule);
+        PathProjection projection = PathProjection.of("test", "/content[openEHR-EHR-OBSERVATION.a.v1]/value/magnitude", "a", "numeric");
+
+        long before = knowledge.getTemplateRevision();
+        knowledge.putPathProjection(projection);
+        assertThat(knowledge.getTemplateRevision()).isGreaterThan(before);
+        assertThat(knowledge.findPathProjection("test", "a")).isSameAs(projection);
+
+        long registered = knowledge.getTemplateRevision();
+        knowledge.removePathProjection(projection);
+        assertThat(knowledge.getTemplateRevision()).isGreaterThan(registered);
+        assertThat(knowledge.findPathProjection("test", "a")).isNull();
+    }
+
+
+    @Test
+    public void testFindCandidateTemplates() throws Exception {
+        KnowledgeCacheService knowledge = buildKnowledgeCache(testFolder, cacheRule);
+        knowledge.addOperationalTemplate(IOUtils.toByteArray(OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getStream()));
+        knowledge.addOperationalTemplate(IOUtils.toByteArray(OperationalTemplateTestData.IDCR_PROBLEM_LIST.getStream()));
+
+        String bloodPressure = OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getTemplateId();
+        NodeId observation = new NodeId("OBSERVATION", "openEHR-EHR-OBSERVATION.sample_blood_pressure.v1");
+
+        assertThat(knowledge.findCandidateTemplates(Collections.singletonList(new NodeId("COMPOSITION", null))))
+                .containsExactlyInAnyOrder(bloodPressure, OperationalTemplateTestData.IDCR_PROBLEM_LIST.getTemplateId());
+        assertThat(knowledge.findCandidateTemplates(Arrays.asList(new NodeId("COMPOSITION", null), observation)))
+                .containsExactly(bloodPressure);
+
+        JsonPathQueryResult result = knowledge.resolveForTemplate(bloodPressure, Collections.singletonList(observation));
+        assertThat(result.getAqlPath()).contains("/content[openEHR-EHR-OBSERVATION.sample_blood_pressure.v1]");
+
+        knowledge.deleteOperationalTemplate(knowledge.retrieveOperationalTemplate(bloodPressure).get());
+
+        assertThat(knowledge.findCandidateTemplates(Collections.singletonList(observation))).isEmpty();
+    }
+
+    @Test
+    public void testInvalidateCacheEvictsOnlyThatTemplate() throws Exception {
+        KnowledgeCacheService knowledge = buildKnowledgeCache(testFolder, cacheRule);
+        knowledge.addOperationalTemplate(IOUtils.toByteArray(OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getStream()));
+        knowledge.addOperationalTemplate(IOUtils.toByteArray(OperationalTemplateTestData.IDCR_PROBLEM_LIST.getStream()));
+
+        String bloodPressure = OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getTemplateId();
+        String problemList = OperationalTemplateTestData.IDCR_PROBLEM_LIST.getTemplateId();
+        List<NodeId> composition = Collections.singletonList(new NodeId("COMPOSITION", null));
+        String aql = "/context/start_time";
+        for (String templateId : Arrays.asList(bloodPressure, problemList)) {
+            knowledge.resolveForTemplate(templateId, composition);
+            knowledge.getInfo(templateId, aql);
+        }
+
+        knowledge.deleteOperationalTemplate(knowledge.retrieveOperationalTemplate(bloodPressure).get());
+
+        Cache<TemplateIdQueryTuple, JsonPathQueryResult> queryCache = cacheRule.cacheManager.getCache(CacheConfiguration.QUERY_CACHE, TemplateIdQueryTuple.class, JsonPathQueryResult.class);
+        Cache<TemplateIdAqlTuple, ItemInfo> fieldsCache = cacheRule.cacheManager.getCache(CacheConfiguration.FIELDS_CACHE, TemplateIdAqlTuple.class, ItemInfo.class);
+        assertThat(queryCache.containsKey(new TemplateIdQueryTuple(bloodPressure, composition))).isFalse();
+        assertThat(fieldsCache.containsKey(new TemplateIdAqlTuple(bloodPressure, aql))).isFalse();
+        assertThat(queryCache.containsKey(new TemplateIdQueryTuple(problemList, composition))).isTrue();
+        assertThat(fieldsCache.containsKey(new TemplateIdAqlTuple(problemList, aql))).isTrue();
+    }
+
+    @Test
+    public void testSyncTemplatesChangedByAnotherNode() throws Exception {
+        File folder = testFolder.newFolder("operational_templates");
+        TemplateFileStorageService storage = new TemplateFileStorageService(folder.getPath());
+        storage.init();
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.setTemplateSyncInterval(Duration.ZERO);
+        KnowledgeCacheService knowledge = new KnowledgeCacheService(storage, cacheRule.cacheManager, cacheConfiguration, cacheRule.warmUpScheduler, cacheRule.knowledgeCacheMetrics);
+        knowledge.init();
+        for (int i = 0; i < 100 && !knowledge.isWarmedUp(); i++)
+            Thread.sleep(100);
+        knowledge.addOperationalTemplate(IOUtils.toByteArray(OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getStream()));
+
+        String bloodPressure = OperationalTemplateTestData.BLOOD_PRESSURE_SIMPLE.getTemplateId();
+        String problemList = OperationalTemplateTestData.IDCR_PROBLEM_LIST.getTemplateId();
+        List<NodeId> composition = Collections.singletonList(new NodeId("COMPOSITION", null));
+        String aql = "/context/start_time";
+        knowledge.resolveForTemplate(bloodPressure, composition);
+        long revision = knowledge.getTemplateRevision();
+
+        Cache<TemplateIdQueryTuple, JsonPathQueryResult> queryCache = cacheRule.cacheManager.getCache(CacheConfiguration.QUERY_CACHE, TemplateIdQueryTuple.class, JsonPathQueryResult.class);
+        Cache<TemplateIdAqlTuple, ItemInfo> fieldsCache = cacheRule.cacheManager.getCache(CacheConfiguration.FIELDS_CACHE, TemplateIdAqlTuple.class, ItemInfo.class);
+
+        // the storage is changed by another node: added
+        storage.storeTemplate(TemplateDocument.Factory.parse(OperationalTemplateTestData.IDCR_PROBLEM_LIST.getStream()).getTemplate());
+        knowledge.syncTemplates().get(10, TimeUnit.SECONDS);
+        assertThat(knowledge.getAllTemplateIds()).contains(problemList);
+        assertThat(knowledge.getTemplateRevision()).isGreaterThan(revision);
+        knowledge.getInfo(problemList, aql);
+        assertThat(fieldsCache.containsKey(new TemplateIdAqlTuple(problemList, aql))).isTrue();
+
+        // replaced
+        File file = new File(folder, problemList + ".opt");
+        assertThat(file.setLastModified(file.lastModified() + 10000)).isTrue();
+        knowledge.syncTemplates().get(10, TimeUnit.SECONDS);
+        assertThat(fieldsCache.containsKey(new TemplateIdAqlTuple(problemList, aql))).isFalse();
+        assertThat(knowledge.getAllTemplateIds()).contains(problemList);
+
+        // deleted
+        assertThat(storage.deleteTemplate(bloodPressure)).isTrue();
+        knowledge.syncTemplates().get(10, TimeUnit.SECONDS);
+        assertThat(knowledge.getAllTemplateIds()).doesNotContain(bloodPressure);
+        assertThat(queryCache.containsKey(new TemplateIdQueryTuple(bloodPressure, composition))).isFalse();
+    }
 
     public static KnowledgeCacheService buildKnowledgeCache(TemporaryFolder folder, CacheRule cacheRule) throws Exception {
 
@@ -109,7 +344,7 @@ public class KnowledgeCacheServiceTest {
         TemplateFileStorageService templateFileStorageService = new TemplateFileStorageService();
         templateFileStorageService.setOptPath(operationalTemplatesemplates.getPath());
 
-        return new KnowledgeCacheService(templateFileStorageService, cacheRule.cacheManager, new CacheConfiguration());
+        return new KnowledgeCacheService(templateFileStorageService, cacheRule.cacheManager, new CacheConfiguration(), cacheRule.warmUpScheduler, cacheRule.knowledgeCacheMetrics);
     }
 
 
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PartyIdentityCacheTest {
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        PartyIdentityCache cut = new PartyIdentityCache(2, Duration.ofMinutes(10), Duration.ofMinutes(10), System::nanoTime);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        // no transaction: added right away
+        cut.putAfterCommit("first", first);
+        cut.putAfterCommit("second", second);
+        assertThat(cut.get("first")).isEqualTo(first);
+
+        cut.putAfterCommit("third", UUID.randomUUID());
+        assertThat(cut.size()).isEqualTo(2);
+        assertThat(cut.get("first")).isEqualTo(first);
+        assertThat(cut.get("second")).isNull();
+
+        cut.clearAfterCommit();
+        assertThat(cut.get("first")).isNull();
+    }
+
+    @Test
+    public void expiresAfterTtl() {
+        AtomicLong now = new AtomicLong();
+        PartyIdentityCache cut = new PartyIdentityCache(2, Duration.ofMinutes(10), Duration.ofMinutes(30), now::get);
+        UUID first = UUID.randomUUID();
+        cut.putAfterCommit("first", first);
+
+        now.set(Duration.ofMinutes(10).minusNanos(1).toNanos());
+        assertThat(cut.get("first")).isEqualTo(first);
+
+        now.set(Duration.ofMinutes(10).toNanos());
+        assertThat(cut.get("first")).isNull();
+        assertThat(cut.size()).isZero();
+
+        // purges spare the parties resolved within the TTL plus the max transaction time
+        assertThat(cut.getPurgeGrace()).isEqualTo(Duration.ofMinutes(40));
+    }
+
+    @Test
+    public void disabled() {
+        PartyIdentityCache cut = new PartyIdentityCache(0, Duration.ofMinutes(10), Duration.ofMinutes(10), System::nanoTime);
+        cut.putAfterCommit("first", UUID.randomUUID());
+
+        assertThat(cut.get("first")).isNull();
+        assertThat(cut.size()).isZero();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import org.ehrbase.jooq.pg.tables.records.ConceptRecord;
+import org.ehrbase.jooq.pg.tables.records.LanguageRecord;
+import org.ehrbase.jooq.pg.tables.records.TerritoryRecord;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReferenceDataRegistryTest {
+
+    private static final UUID CREATION = UUID.randomUUID();
+
+    private ReferenceDataRegistry cut;
+
+    @Before
+    public void setUp() {
+        cut = new ReferenceDataRegistry(null);
+        cut.load(
+                Arrays.asList(
+                        new ConceptRecord(CREATION, 249, "en", "creation"),
+                        new ConceptRecord(UUID.randomUUID(), 249, "de", "Erstellung")),
+                Collections.singletonList(new TerritoryRecord(276, "DE", "DEU", "Germany")),
+                Collections.singletonList(new LanguageRecord("en", "English")));
+    }
+
+    @Test
+    public void concepts() {
+        assertThat(cut.getConcept(249, "en").getId()).isEqualTo(CREATION);
+        assertThat(cut.getConcept(CREATION).getDescription()).isEqualTo("creation");
+        assertThat(cut.getConcept(249, "de").getDescription()).isEqualTo("Erstellung");
+        assertThat(cut.getConcept(250, "en")).isNull();
+    }
+
+    @Test
+    public void territoriesAndLanguages() {
+        assertThat(cut.getTerritoryCode("DE")).isEqualTo(276);
+        assertThat(cut.getTerritoryTwoLetter(276)).isEqualTo("DE");
+        assertThat(cut.getTerritoryCode("XX")).isNull();
+        assertThat(cut.isLanguage("en")).isTrue();
+        assertThat(cut.isLanguage("fr")).isFalse();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.ehrbase.aql.sql.QueryProcessor;
+import org.ehrbase.configuration.CacheConfiguration;
+import org.ehrbase.response.ehrscape.QueryResultDto;
+import org.ehrbase.response.ehrscape.query.ResultHolder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StoredQueryResultCacheTest {
+
+    private static final String NAME = "org.openehr::worklist";
+    private static final String TEMPLATE = "IDCR - Problem List.v1";
+    private static final UUID EHR_ID = UUID.fromString("2a3b673f-d1b1-44c5-9e38-dcadf67ff2fc");
+    private static final String QUERY = "select c from EHR e contains COMPOSITION c where e/ehr_id/value = $ehr_id";
+    private static final Map<String, Object> PARAMETERS = Collections.singletonMap("ehr_id", EHR_ID.toString());
+
+    private CacheConfiguration.StoredQuery settings;
+    private SimpleMeterRegistry meterRegistry;
+    private StoredQueryResultCache cut;
+
+    @Before
+    public void setUp() {
+        settings = new CacheConfiguration.StoredQuery();
+        settings.setEnabled(true);
+        meterRegistry = new SimpleMeterRegistry();
+        cut = new StoredQueryResultCache(settings, meterRegistry, Clock.fixed(Instant.EPOCH, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void hitAndMiss() {
+        StoredQueryResultCache.Key key = cut.key(NAME, "1.0.0", QUERY, PARAMETERS);
+        assertThat(cut.get(key, 0)).isNull();
+
+        QueryResultDto result = new QueryResultDto();
+        result.setExecutedAQL(QUERY);
+        cut.put(key, result, Collections.emptyMap(), Set.of(TEMPLATE), Set.of(EHR_ID), 0, cut.sequence());
+
+        assertThat(cut.get(cut.key(NAME, "1.0.0", QUERY, PARAMETERS), 0).getResult().getExecutedAQL()).isEqualTo(QUERY);
+        assertThat(cut.get(cut.key(NAME, "1.0.0", QUERY, Collections.singletonMap("ehr_id", UUID.randomUUID().toString())), 0)).isNull();
+        //template change
+        assertThat(cut.get(key, 1)).isNull();
+
+        assertThat(meterRegistry.counter(StoredQueryResultCache.METRIC_NAME, "query", NAME, "result", "hit").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter(StoredQueryResultCache.METRIC_NAME, "query", NAME, "result", "miss").count()).isEqualTo(3);
+    }
+
+    @Test
+    public void resultIsCopied() {
+        StoredQueryResultCache.Key key = cut.key(NAME, "1.0.0", QUERY, PARAMETERS);
+        QueryResultDto result = new QueryResultDto();
+        result.setResultSet(new ArrayList<>(List.of(new ResultHolder())));
+        cut.put(key, result, Collections.emptyMap(), Set.of(TEMPLATE), Set.of(EHR_ID), 0, cut.sequence());
+        result.getResultSet().clear();
+
+        QueryResultDto cached = cut.get(key, 0).getResult();
+        assertThat(cached).isNotSameAs(result).isNotSameAs(cut.get(key, 0).getResult());
+        assertThat(cached.getResultSet()).hasSize(1);
+        assertThatThrownBy(() -> cached.getResultSet().clear()).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void invalidateByTemplateAndEhr() {
+        StoredQueryResultCache.Key key = cut.key(NAME, "1.0.0", QUERY, PARAMETERS);
+        cut.put(key, new QueryResultDto(), Collections.emptyMap(), Set.of(TEMPLATE), Set.of(EHR_ID), 0, cut.sequence());
+
+        cut.invalidate(EHR_ID, Set.of("other.v1"));
+        cut.invalidate(UUID.randomUUID(), Set.of(TEMPLATE));
+        cut.invalidate(EHR_ID, StoredQueryResultCache.NO_COMPOSITION);
+        assertThat(cut.get(key, 0)).isNotNull();
+
+        cut.invalidate(EHR_ID, Set.of(TEMPLATE));
+        assertThat(cut.get(key, 0)).isNull();
+    }
+
+    @Test
+    public void queryWithoutTemplate() {
+        StoredQueryResultCache.Key key = cut.key(NAME, "1.0.0", "select e/ehr_id/value from EHR e", null);
+        cut.put(key, new QueryResultDto(), Collections.emptyMap(), Set.of(QueryProcessor.NIL_TEMPLATE), Collections.emptySet(), 0, cut.sequence());
+
+        cut.invalidate(UUID.randomUUID(), StoredQueryResultCache.NO_COMPOSITION);
+        assertThat(cut.get(key, 0)).isNull();
+    }
+
+    @Test
+    public void concurrentCommitIsNotStored() {
+        StoredQueryResultCache.Key key = cut.key(NAME, "1.0.0", QUERY, PARAMETERS);
+
+        long sequence = cut.sequence();
+        cut.invalidate(UUID.randomUUID(), Set.of(TEMPLATE));
+        cut.put(key, new QueryResultDto(), Collections.emptyMap(), Set.of(TEMPLATE), Set.of(EHR_ID), 0, sequence);
+        assertThat(cut.get(key, 0)).isNotNull();
+
+        sequence = cut.sequence();
+        cut.invalidate(EHR_ID, Set.of(TEMPLATE));
+        cut.put(key, new QueryResultDto(), Collections.emptyMap(), Set.of(TEMPLATE), Set.of(EHR_ID), 0, sequence);
+        assertThat(cut.get(key, 0)).isNull();
+    }
+
+    @Test
+    public void limits() {
+        CacheConfiguration.Limits limits = new CacheConfiguration.Limits();
+        limits.setMaxEntries(1);
+        settings.setQueries(Collections.singletonMap(NAME, limits));
+        settings.setTtl(Duration.ofSeconds(10));
+
+        StoredQueryResultCache.Key first = cut.key(NAME, "1.0.0", QUERY, PARAMETERS);
+        StoredQueryResultCache.Key second = cut.key(NAME, "1.0.0", QUERY, Collections.singletonMap("ehr_id", UUID.randomUUID().toString()));
+        cut.put(first, new QueryResultDto(), Collections.emptyMap(), Set.of(TEMPLATE), Set.of(EHR_ID), 0, cut.sequence());
+        cut.put(second, new QueryResultDto(), Collections.emptyMap(), Set.of(TEMPLATE), Set.of(EHR_ID), 0, cut.sequence());
+
+        assertThat(cut.get(first, 0)).isNull();
+        assertThat(cut.get(second, 0)).isNotNull();
+        assertThat(cut.isCached(NAME)).isTrue();
+
+        limits.setTtl(Duration.ZERO);
+        assertThat(cut.isCached(NAME)).isFalse();
+    }
+
+    @Test
+    public void expiry() {
+        settings.setTtl(Duration.ZERO.minusMillis(1));
+        StoredQueryResultCache.Key key = cut.key(NAME, "1.0.0", QUERY, PARAMETERS);
+        cut.put(key, new QueryResultDto(), Collections.emptyMap(), Set.of(TEMPLATE), Set.of(EHR_ID), 0, cut.sequence());
+
+        assertThat(cut.get(key, 0)).isNull();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2021 Vitasystems GmbH and Hannover Medical School.
+ *
+ * This file is part of project EHRbase
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehrbase.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TemplateWarmUpSchedulerTest {
+
+    @Test
+    public void recentlyUsedFirstAndCancelled() throws Exception {
+        TemplateWarmUpScheduler scheduler = new TemplateWarmUpScheduler(1, null);
+        List<String> ran = Collections.synchronizedList(new ArrayList<>());
+        try {
+            // keeps the only thread busy until all tasks are queued
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            scheduler.schedule("blocking", TemplateWarmUpScheduler.Kind.LOAD, cancelled -> {
+                started.countDown();
+                await(release);
+            });
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+            CompletableFuture<Void> preBuild = scheduler.schedule("a", TemplateWarmUpScheduler.Kind.PRE_BUILD, cancelled -> ran.add("a pre-build"));
+            CompletableFuture<Void> a = scheduler.schedule("a", TemplateWarmUpScheduler.Kind.LOAD, cancelled -> ran.add("a"));
+            CompletableFuture<Void> b = scheduler.schedule("b", TemplateWarmUpScheduler.Kind.LOAD, cancelled -> ran.add("b"));
+            CompletableFuture<Void> c = scheduler.schedule("c", TemplateWarmUpScheduler.Kind.LOAD, cancelled -> ran.add("c"));
+            assertThat(scheduler.getPending()).isEqualTo(4);
+
+            scheduler.touch("c");
+            scheduler.cancel("b");
+            assertThat(b).isDone();
+
+            release.countDown();
+            CompletableFuture.allOf(preBuild, a, c).get(10, TimeUnit.SECONDS);
+
+            // loads first, the recently used template ahead
+            assertThat(ran).containsExactly("c", "a", "a pre-build");
+            assertThat(scheduler.getPending()).isZero();
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void runningWorkSeesCancellation() throws Exception {
+        TemplateWarmUpScheduler scheduler = new TemplateWarmUpScheduler(1, null);
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            List<Boolean> seen = new ArrayList<>();
+            CompletableFuture<Void> preBuild = scheduler.schedule("a", TemplateWarmUpScheduler.Kind.PRE_BUILD, cancelled -> {
+                started.countDown();
+                while (!cancelled.getAsBoolean())
+                    Thread.onSpinWait();
+                seen.add(true);
+            });
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+            scheduler.cancel("a");
+
+            preBuild.get(10, TimeUnit.SECONDS);
+            assertThat(seen).containsExactly(true);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}